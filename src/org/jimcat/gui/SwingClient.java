@@ -25,6 +25,10 @@ import java.awt.Window;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 
 import javax.swing.JDialog;
@@ -37,6 +41,7 @@ import org.jimcat.gui.dialog.failurefeedbackdialog.FailureFeedbackDialog;
 import org.jimcat.gui.dialog.importdialog.ImportDialog;
 import org.jimcat.gui.dialog.printdialog.PrintDialog;
 import org.jimcat.gui.dialog.renamedialog.RenameDialog;
+import org.jimcat.gui.dialog.shutdowndialog.ShutdownDialog;
 import org.jimcat.gui.frame.AboutDialog;
 import org.jimcat.gui.frame.JimCatFrame;
 import org.jimcat.gui.fullscreen.FullScreenView;
@@ -47,6 +52,10 @@ import org.jimcat.gui.smartlisteditor.SmartListEditor;
 import org.jimcat.gui.splashscreen.SplashScreen;
 import org.jimcat.model.Image;
 import org.jimcat.model.SmartList;
+import org.jimcat.model.libraries.AlbumLibrary;
+import org.jimcat.model.libraries.ImageLibrary;
+import org.jimcat.model.libraries.SmartListLibrary;
+import org.jimcat.model.libraries.TagHierarchy;
 import org.jimcat.services.JobOperations;
 import org.jimcat.services.OperationsLocator;
 import org.jimcat.services.SystemOperations;
@@ -198,6 +207,8 @@ public final class SwingClient {
 		}
 
 		SplashScreen.setProgressText("Loading Library");
+		loadLibraries();
+
 		// create controles
 		tagControl = new TagControl(this);
 		imageControl = new ImageControl();
@@ -238,6 +249,47 @@ public final class SwingClient {
 		});
 	}
 
+	/**
+	 * Initialize all libraries in parallel. Images are loaded in background,
+	 * the GUI is shown as soon as a first chunk is available and filled in
+	 * progressively.
+	 */
+	private void loadLibraries() {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		List<Future<?>> loads = new ArrayList<Future<?>>();
+		loads.add(executor.submit(new Runnable() {
+			public void run() {
+				TagHierarchy.getInstance();
+			}
+		}));
+		loads.add(executor.submit(new Runnable() {
+			public void run() {
+				AlbumLibrary.getInstance();
+			}
+		}));
+		loads.add(executor.submit(new Runnable() {
+			public void run() {
+				SmartListLibrary.getInstance();
+			}
+		}));
+		executor.shutdown();
+
+		// starts streaming images
+		ImageLibrary images = ImageLibrary.getInstance();
+
+		try {
+			for (Future<?> load : loads) {
+				load.get();
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ee) {
+			throw new IllegalStateException("Couldn't load library", ee.getCause());
+		}
+
+		images.awaitFirstChunk();
+	}
+
 	/**
 	 * the actual startup process
 	 */
@@ -268,6 +320,9 @@ public final class SwingClient {
 		JobManager jobManager = jobOps.getJobManager();
 		jobManagerDialog = new JobManagerDialog(jobManager);
 
+		// start keeping watched folders in sync
+		OperationsLocator.getSystemOperations().startFolderWatching();
+
 		new Thread(guiLoader).start();
 
 		// add InstanceListener
@@ -289,6 +344,29 @@ public final class SwingClient {
 
 		mainFrame.setVisible(true);
 		SplashScreen.hideSplashScreen();
+
+		// continue work of the last session
+		offerJobResumption(jobManager);
+	}
+
+	/**
+	 * ask the user whether jobs left unfinished by the last session should be
+	 * resumed
+	 * 
+	 * @param jobManager
+	 */
+	private void offerJobResumption(JobManager jobManager) {
+		for (Job job : jobManager.loadResumableJobs()) {
+			String message = "The job \"" + job.getJobName() + "\" hasn't been finished.\n" + job.getJobDescription()
+			        + "\n\nDo you want to resume it?";
+			int result = JOptionPane.showConfirmDialog(mainFrame, message, "Resume job", JOptionPane.YES_NO_OPTION,
+			        JOptionPane.QUESTION_MESSAGE);
+			if (result == JOptionPane.YES_OPTION) {
+				jobManager.excecuteJob(job);
+			} else {
+				jobManager.discardResumableJob(job);
+			}
+		}
 	}
 
 	/**
@@ -315,7 +393,71 @@ public final class SwingClient {
 
 		// Shutdown backend
 		SystemOperations sysOp = OperationsLocator.getSystemOperations();
-		sysOp.shutdown();
+		if (sysOp.getPendingWrites() == 0) {
+			try {
+				sysOp.shutdown();
+			} catch (RuntimeException e) {
+				shutdownFailed(sysOp, null, e);
+			}
+			return;
+		}
+
+		// show the backlog while it is written
+		ShutdownDialog dialog = new ShutdownDialog(sysOp);
+		dialog.setVisible(true);
+		shutdownBackend(sysOp, dialog);
+	}
+
+	/**
+	 * shutdown the backend in a background thread, the dialog shows the
+	 * progress meanwhile
+	 * 
+	 * @param sysOp
+	 * @param dialog
+	 */
+	private void shutdownBackend(final SystemOperations sysOp, final ShutdownDialog dialog) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					sysOp.shutdown();
+				} catch (final RuntimeException e) {
+					EventQueue.invokeLater(new Runnable() {
+						public void run() {
+							shutdownFailed(sysOp, dialog, e);
+						}
+					});
+				}
+			}
+		}, "JimCat Shutdown");
+		thread.start();
+	}
+
+	/**
+	 * the backend couldn't be shut down. The user may retry or quit anyway,
+	 * changes not stored yet are lost then.
+	 * 
+	 * @param sysOp
+	 * @param dialog -
+	 *            the shown shutdown dialog, may be null
+	 * @param cause
+	 */
+	private void shutdownFailed(SystemOperations sysOp, ShutdownDialog dialog, RuntimeException cause) {
+		if (dialog != null) {
+			dialog.setVisible(false);
+			dialog.dispose();
+		}
+
+		String message = "Unable to shut down JimCat:\n" + cause.getMessage();
+		Object options[] = { "Retry", "Quit" };
+		int result = JOptionPane.showOptionDialog(null, message, "Shutdown failed", JOptionPane.YES_NO_OPTION,
+		        JOptionPane.ERROR_MESSAGE, null, options, options[0]);
+		if (result != JOptionPane.YES_OPTION) {
+			System.exit(1);
+		}
+
+		dialog = new ShutdownDialog(sysOp);
+		dialog.setVisible(true);
+		shutdownBackend(sysOp, dialog);
 	}
 
 	/**
@@ -30,6 +30,7 @@ import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -45,6 +46,7 @@ import org.jimcat.gui.frame.JimCatFrame;
 import org.jimcat.model.Image;
 import org.jimcat.services.imageexport.ExportDirectoryFilter;
 import org.jimcat.services.imageexport.ExportJob;
+import org.jimcat.services.imageexport.ExportProfile;
 
 /**
  * The export dialog is used to configure an export of images and to start a
@@ -73,6 +75,17 @@ public class ExportDialog extends JimCatDialog implements ActionListener {
 	 */
 	private final static String CANCEL_COMMAND = "cancel";
 
+	/**
+	 * names of the selectable export profiles
+	 */
+	private final static String[] PROFILE_NAMES = { "Original files", "Web (1600 pixel)", "Large (2048 pixel)" };
+
+	/**
+	 * the selectable export profiles, same order as PROFILE_NAMES
+	 */
+	private final static ExportProfile[] PROFILES = { ExportProfile.ORIGINAL, ExportProfile.WEB,
+	        ExportProfile.LARGE };
+
 	/**
 	 * the file chooser used for this import dialog
 	 */
@@ -83,6 +96,11 @@ public class ExportDialog extends JimCatDialog implements ActionListener {
 	 */
 	private JCheckBox onlySelection;
 
+	/**
+	 * used to select the export profile
+	 */
+	private JComboBox profile;
+
 	/**
 	 * used to validate choosen directory
 	 */
@@ -170,7 +188,16 @@ public class ExportDialog extends JimCatDialog implements ActionListener {
 		setOnlySelection(onlySelection.isSelected());
 		renamePanel.updateTable();
 
+		JPanel profileSelection = new JPanel();
+		profileSelection.setLayout(new BorderLayout());
+		profileSelection.setBorder(new EmptyBorder(10, 20, 0, 20));
+		JLabel profileLabel = new JLabel("Export as: ");
+		profileSelection.add(profileLabel, BorderLayout.WEST);
+		profile = new JComboBox(PROFILE_NAMES);
+		profileSelection.add(profile, BorderLayout.CENTER);
+
 		exportOptions.add(onlySelection, BorderLayout.NORTH);
+		exportOptions.add(profileSelection, BorderLayout.CENTER);
 		exportOptions.add(renamePanel, BorderLayout.SOUTH);
 
 		header.add(exportOptions, BorderLayout.SOUTH);
@@ -317,6 +344,7 @@ public class ExportDialog extends JimCatDialog implements ActionListener {
 		// create and configure export job
 		ExportJob job = new ExportJob();
 		job.setDestination(targetDirectory);
+		job.setProfile(PROFILES[profile.getSelectedIndex()]);
 
 		// give the job the list of file names
 
@@ -0,0 +1,152 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.gui.dialog.shutdowndialog;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Frame;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.BorderFactory;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
+
+import org.jimcat.services.SystemOperations;
+
+/**
+ * Shown while the backend shuts down. It displays the number of changes the
+ * persistence layer still has to store.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class ShutdownDialog extends JDialog implements ActionListener {
+
+	/**
+	 * ms between two updates of the displayed backlog
+	 */
+	private static final int REFRESH_INTERVAL = 200;
+
+	/**
+	 * source of the backlog
+	 */
+	private SystemOperations sysOp;
+
+	/**
+	 * the progress of storing the backlog
+	 */
+	private JProgressBar progressBar;
+
+	/**
+	 * the number of remaining changes
+	 */
+	private JLabel info;
+
+	/**
+	 * triggers updates
+	 */
+	private Timer timer;
+
+	/**
+	 * the biggest backlog seen so far
+	 */
+	private int backlog = 0;
+
+	/**
+	 * @param sysOp
+	 */
+	public ShutdownDialog(SystemOperations sysOp) {
+		super((Frame) null, "Shutting down JimCat", false);
+		this.sysOp = sysOp;
+
+		initComponents();
+
+		timer = new Timer(REFRESH_INTERVAL, this);
+	}
+
+	/**
+	 * build up content
+	 */
+	private void initComponents() {
+		setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+
+		progressBar = new JProgressBar();
+		info = new JLabel("Saving changes ...");
+
+		JPanel content = new JPanel(new BorderLayout(0, 5));
+		content.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+		content.add(info, BorderLayout.NORTH);
+		content.add(progressBar, BorderLayout.CENTER);
+		setContentPane(content);
+
+		setSize(300, 90);
+		setResizable(false);
+
+		Dimension size = getSize();
+		Dimension screensize = Toolkit.getDefaultToolkit().getScreenSize();
+		setLocation((screensize.width - size.width) / 2, (screensize.height - size.height) / 2);
+	}
+
+	/**
+	 * show or hide the dialog, the backlog is only polled while visible
+	 * 
+	 * @see java.awt.Dialog#setVisible(boolean)
+	 */
+	@Override
+	public void setVisible(boolean b) {
+		if (b) {
+			updateBacklog();
+			timer.start();
+		} else {
+			timer.stop();
+		}
+		super.setVisible(b);
+	}
+
+	/**
+	 * refresh the displayed backlog
+	 * 
+	 * @see java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+	 */
+	public void actionPerformed(ActionEvent e) {
+		updateBacklog();
+	}
+
+	/**
+	 * read the current backlog and show it
+	 */
+	private void updateBacklog() {
+		int pending = sysOp.getPendingWrites();
+		backlog = Math.max(backlog, pending);
+
+		progressBar.setMaximum(Math.max(1, backlog));
+		progressBar.setValue(backlog - pending);
+		if (pending > 0) {
+			info.setText("Saving changes ... " + pending + " left");
+		} else {
+			info.setText("Closing library ...");
+		}
+	}
+}
@@ -36,6 +36,7 @@ import org.jimcat.services.jobs.Job;
 import org.jimcat.services.jobs.JobCommand;
 import org.jimcat.services.jobs.JobFailureDescription;
 import org.jimcat.services.jobs.JobListener;
+import org.jimcat.services.jobs.JobMetrics;
 import org.jimcat.services.jobs.JobState;
 import org.jvnet.substance.SubstanceLookAndFeel;
 import org.jvnet.substance.button.StandardButtonShaper;
@@ -72,6 +73,11 @@ public class JobFace extends JPanel implements JobListener {
 	 */
 	private JLabel description;
 
+	/**
+	 * this label will show throughput and estimated time left
+	 */
+	private JLabel metrics;
+
 	/**
 	 * a small state indicator
 	 */
@@ -125,7 +131,7 @@ public class JobFace extends JPanel implements JobListener {
 		// Name/Description within header
 		JPanel infoHeader = new JPanel();
 		infoHeader.setOpaque(false);
-		infoHeader.setLayout(new GridLayout(2, 1));
+		infoHeader.setLayout(new GridLayout(3, 1));
 
 		// Define Fonts
 		Font jobDescriptionFont = new JLabel().getFont();
@@ -143,6 +149,12 @@ public class JobFace extends JPanel implements JobListener {
 		description.setFont(jobDescriptionFont);
 		infoHeader.add(description);
 
+		// Field for throughput
+		metrics = new JLabel();
+		metrics.setOpaque(false);
+		metrics.setFont(jobDescriptionFont.deriveFont(jobDescriptionFont.getSize2D() - 1));
+		infoHeader.add(metrics);
+
 		header.add(infoHeader, BorderLayout.CENTER);
 
 		// Info image
@@ -274,6 +286,7 @@ public class JobFace extends JPanel implements JobListener {
 			// update fields
 			name.setText(job.getJobName());
 			description.setText(job.getJobDescription());
+			metricsChanged(job);
 			// TODO: replace with image
 			infoImage.setText(job.getState().toString());
 			updateButtonState();
@@ -303,7 +316,7 @@ public class JobFace extends JPanel implements JobListener {
 
 		// rollback
 		boolean possible = true;
-		if (!displayedJob.supportsRollback() || state.isFinal() || state == JobState.UNDOFAILURE
+		if (!displayedJob.supportsRollback() || state.isFinal() || state == JobState.QUEUED || state == JobState.UNDOFAILURE
 		        || state == JobState.UNDOING || state == JobState.UNDOSUSPENDED) {
 			possible = false;
 		}
@@ -317,7 +330,7 @@ public class JobFace extends JPanel implements JobListener {
 		run.setEnabled(possible);
 
 		// suspend
-		suspend.setEnabled(!state.isFinal() && state.isRunable());
+		suspend.setEnabled(!state.isFinal() && state.isRunable() && state != JobState.QUEUED);
 
 		// cancel
 		cancel.setEnabled(!state.isFinal());
@@ -372,4 +385,25 @@ public class JobFace extends JPanel implements JobListener {
 		description.setText(job.getJobDescription());
 	}
 
+	/**
+	 * show throughput, estimated time left and stage times
+	 * 
+	 * @see org.jimcat.services.jobs.JobListener#metricsChanged(org.jimcat.services.jobs.Job)
+	 */
+	public void metricsChanged(Job job) {
+		JobMetrics jobMetrics = job.getMetrics();
+		if (jobMetrics.getActiveTime() == 0 || job.getState().isFinal()) {
+			metrics.setText(" ");
+			return;
+		}
+
+		String text = jobMetrics.getThroughputSummary();
+		long left = job.getEstimatedTimeLeft() / 1000;
+		if (left >= 0) {
+			text += " - " + (left / 60) + ":" + ((left % 60 < 10) ? "0" : "") + (left % 60) + " left";
+		}
+		metrics.setText(text);
+		metrics.setToolTipText("Time per stage: " + jobMetrics.getStageSummary());
+	}
+
 }
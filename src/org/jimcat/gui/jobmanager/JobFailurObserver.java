@@ -71,4 +71,13 @@ public class JobFailurObserver implements JobListener {
 		// do nothing
 	}
 
+	/**
+	 * just to implement the interface, does nothing
+	 * @see org.jimcat.services.jobs.JobListener#metricsChanged(org.jimcat.services.jobs.Job)
+	 */
+	@SuppressWarnings("unused")
+	public void metricsChanged(Job job) {
+		// do nothing
+	}
+
 }
@@ -17,8 +17,6 @@
 
 package org.jimcat.gui.perspective.boards;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -31,6 +29,7 @@ import org.jimcat.model.Image;
 import org.jimcat.model.libraries.LibraryView;
 import org.jimcat.model.notification.BeanChangeEvent;
 import org.jimcat.model.notification.CollectionListener;
+import org.jimcat.model.notification.IndexListener;
 
 /**
  * The list model used to wrap the library viewer - used by any Board
@@ -75,6 +74,7 @@ public class BoardModel implements WheelListModel<Image> {
 		this.view = view;
 		observer = new ViewObserver();
 		view.addListener(observer);
+		view.addIndexListener(observer);
 	}
 	
 	/**
@@ -139,7 +139,7 @@ public class BoardModel implements WheelListModel<Image> {
 	/**
 	 * a private class used to observe the library view
 	 */
-	private class ViewObserver implements CollectionListener<Image, LibraryView> {
+	private class ViewObserver implements CollectionListener<Image, LibraryView>, IndexListener<LibraryView> {
 
 		/**
 		 * react on big changes
@@ -163,46 +163,46 @@ public class BoardModel implements WheelListModel<Image> {
 		}
 
 		/**
-		 * react on added elements
+		 * react on added elements - positions are reported by intervalAdded
 		 * @param collection 
 		 * @param elements 
 		 * 
 		 * @see org.jimcat.model.notification.CollectionListener#elementsAdded(org.jimcat.model.notification.ObservableCollection,
 		 *      java.util.Set)
 		 */
+		@SuppressWarnings("unused")
 		public void elementsAdded(LibraryView collection, Set<Image> elements) {
+			// handled by intervalAdded
+		}
+
+		/**
+		 * react on deleted elements - positions are reported by
+		 * intervalRemoved
+		 * @param collection 
+		 * @param elements 
+		 * 
+		 * @see org.jimcat.model.notification.CollectionListener#elementsRemoved(org.jimcat.model.notification.ObservableCollection,
+		 *      java.util.Set)
+		 */
+		@SuppressWarnings("unused")
+		public void elementsRemoved(LibraryView collection, Set<Image> elements) {
+			// handled by intervalRemoved
+		}
+
+		/**
+		 * react on inserted images
+		 * @param collection 
+		 * @param index0 
+		 * @param index1 
+		 * 
+		 * @see org.jimcat.model.notification.IndexListener#intervalAdded(java.lang.Object, int, int)
+		 */
+		@SuppressWarnings("unused")
+		public void intervalAdded(LibraryView collection, int index0, int index1) {
 			if (active) {
-				// aggregate index ranges
-				int index[] = new int[elements.size()];
-	
-				// get list of indizes
-				List<Image> imgList = new ArrayList<Image>(elements);
-				for (int i = 0; i < index.length; i++) {
-					index[i] = collection.indexOf(imgList.get(i));
-				}
-	
-				// sort indizes
-				Arrays.sort(index);
-	
-				// aggregate events
-				int start = 0;
-				int end = start;
-				while (start < index.length) {
-					while (end < index.length - 1 && index[end] + 1 == index[end + 1]) {
-						end++;
-					}
-	
-					ListDataEvent event = new ListDataEvent(BoardModel.this, ListDataEvent.INTERVAL_ADDED, index[start],
-					        index[end]);
-	
-					// inform listener
-					for (ListDataListener l : listener) {
-						l.intervalAdded(event);
-					}
-	
-					// move pointer
-					start = end + 1;
-					end = start;
+				ListDataEvent event = new ListDataEvent(BoardModel.this, ListDataEvent.INTERVAL_ADDED, index0, index1);
+				for (ListDataListener l : listener) {
+					l.intervalAdded(event);
 				}
 			} else {
 				dirty = true;
@@ -210,18 +210,21 @@ public class BoardModel implements WheelListModel<Image> {
 		}
 
 		/**
-		 * react on deleted elements
+		 * react on removed images
 		 * @param collection 
-		 * @param elements 
+		 * @param index0 
+		 * @param index1 
 		 * 
-		 * @see org.jimcat.model.notification.CollectionListener#elementsRemoved(org.jimcat.model.notification.ObservableCollection,
-		 *      java.util.Set)
+		 * @see org.jimcat.model.notification.IndexListener#intervalRemoved(java.lang.Object, int, int)
 		 */
 		@SuppressWarnings("unused")
-		public void elementsRemoved(LibraryView collection, Set<Image> elements) {
+		public void intervalRemoved(LibraryView collection, int index0, int index1) {
 			if (active) {
-				// its to expensive to give excat information => cheaper to exchange all
-				basementChanged(collection);
+				ListDataEvent event = new ListDataEvent(BoardModel.this, ListDataEvent.INTERVAL_REMOVED, index0,
+				        index1);
+				for (ListDataListener l : listener) {
+					l.intervalRemoved(event);
+				}
 			} else {
 				dirty = true;
 			}
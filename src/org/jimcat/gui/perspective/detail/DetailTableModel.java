@@ -17,8 +17,6 @@
 
 package org.jimcat.gui.perspective.detail;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -31,6 +29,7 @@ import org.jimcat.model.Image;
 import org.jimcat.model.libraries.LibraryView;
 import org.jimcat.model.notification.BeanChangeEvent;
 import org.jimcat.model.notification.CollectionListener;
+import org.jimcat.model.notification.IndexListener;
 
 /**
  * Represents the DetailTabelModel behind the DetailTable within the Detail
@@ -40,7 +39,8 @@ import org.jimcat.model.notification.CollectionListener;
  * 
  * @author Herbert
  */
-public class DetailTableModel implements TableModel, CollectionListener<Image, LibraryView> {
+public class DetailTableModel implements TableModel, CollectionListener<Image, LibraryView>,
+        IndexListener<LibraryView> {
 
 	/**
 	 * a list of listeners
@@ -70,6 +70,7 @@ public class DetailTableModel implements TableModel, CollectionListener<Image, L
 		this.view = view;
 		listeners = new CopyOnWriteArrayList<TableModelListener>();
 		this.view.addListener(this);
+		this.view.addIndexListener(this);
 	}
 
 	/**
@@ -205,24 +206,20 @@ public class DetailTableModel implements TableModel, CollectionListener<Image, L
 	}
 
 	/**
-	 * A single row was added
+	 * Rows were added, handled by intervalAdded
 	 * @param collection 
 	 * @param elements 
 	 * 
 	 * @see org.jimcat.model.notification.CollectionListener#elementsAdded(org.jimcat.model.notification.ObservableCollection,
 	 *      java.util.Set)
 	 */
+	@SuppressWarnings("unused")
 	public void elementsAdded(LibraryView collection, Set<Image> elements) {
-		if (active) {
-			// inform listener
-			notifyListener(collection, elements, TableModelEvent.INSERT);
-		} else {
-			dirty = true;
-		}
+		// positions are reported by intervalAdded
 	}
 
 	/**
-	 * some elements has been removed, inform the listeners
+	 * Rows were removed, handled by intervalRemoved
 	 * @param collection 
 	 * @param elements 
 	 * 
@@ -231,58 +228,42 @@ public class DetailTableModel implements TableModel, CollectionListener<Image, L
 	 */
 	@SuppressWarnings("unused")
 	public void elementsRemoved(LibraryView collection, Set<Image> elements) {
-		if (active) {
-			// it's to expensive to calculate former indizes -> just exchange all
-			// Trigger TableModelEvent
-			TableModelEvent event = new TableModelEvent(this);
+		// positions are reported by intervalRemoved
+	}
 
-			// inform listeners
-			notifyListener(event);
+	/**
+	 * some rows were inserted, inform the listeners
+	 * @param collection 
+	 * @param index0 
+	 * @param index1 
+	 * 
+	 * @see org.jimcat.model.notification.IndexListener#intervalAdded(java.lang.Object, int, int)
+	 */
+	@SuppressWarnings("unused")
+	public void intervalAdded(LibraryView collection, int index0, int index1) {
+		if (active) {
+			notifyListener(new TableModelEvent(this, index0, index1, TableModelEvent.ALL_COLUMNS,
+			        TableModelEvent.INSERT));
 		} else {
 			dirty = true;
 		}
 	}
 
 	/**
-	 * notify listeners about a change
+	 * some rows were deleted, inform the listeners
+	 * @param collection 
+	 * @param index0 
+	 * @param index1 
 	 * 
-	 * @param collection -
-	 *            a collection to get indizes from
-	 * @param elements -
-	 *            the list of images modified
-	 * @param type -
-	 *            TableModelEvent INSERT / UPDATE / DELETE
+	 * @see org.jimcat.model.notification.IndexListener#intervalRemoved(java.lang.Object, int, int)
 	 */
-	private void notifyListener(LibraryView collection, Set<Image> elements, int type) {
-		// aggregate index ranges
-		int index[] = new int[elements.size()];
-
-		// get list of indizes
-		List<Image> imgList = new ArrayList<Image>(elements);
-		for (int i = 0; i < index.length; i++) {
-			index[i] = collection.indexOf(imgList.get(i));
-		}
-
-		// sort indizes
-		Arrays.sort(index);
-
-		// aggregate events
-		int start = 0;
-		int end = start;
-		while (start < index.length) {
-			while (end < index.length - 1 && index[end] + 1 == index[end + 1]) {
-				end++;
-			}
-
-			TableModelEvent event = new TableModelEvent(this, index[start], index[end], TableModelEvent.ALL_COLUMNS,
-			        type);
-
-			// inform listener
-			notifyListener(event);
-
-			// move pointer
-			start = end + 1;
-			end = start;
+	@SuppressWarnings("unused")
+	public void intervalRemoved(LibraryView collection, int index0, int index1) {
+		if (active) {
+			notifyListener(new TableModelEvent(this, index0, index1, TableModelEvent.ALL_COLUMNS,
+			        TableModelEvent.DELETE));
+		} else {
+			dirty = true;
 		}
 	}
 
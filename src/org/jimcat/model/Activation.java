@@ -0,0 +1,105 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.model;
+
+/**
+ * Hook for lazily loaded model objects. Large parts of an image which are not
+ * needed for every image (like the thumbnail data) may be left unloaded by the
+ * persistence layer. The model requests them on first access using this
+ * class. Without an installed activator, all objects are assumed to be
+ * loaded completely.
+ * 
+ * An activator may unload objects again. Objects are loaded and unloaded
+ * holding the lock of this class only, so lazy content has to be read holding
+ * it as well, after activating the object again.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public final class Activation {
+
+	/**
+	 * loads lazy objects on demand
+	 */
+	public interface Activator {
+
+		/**
+		 * make sure the given object is loaded completely. Called holding the
+		 * lock of Activation, other objects may only be unloaded within.
+		 * 
+		 * @param o -
+		 *            a model object, never null
+		 */
+		void activate(Object o);
+	}
+
+	/**
+	 * the installed activator, may be null
+	 */
+	private static volatile Activator activator = null;
+
+	/**
+	 * held while objects are activated or deactivated
+	 */
+	private static final Object lock = new Object();
+
+	/**
+	 * no instances
+	 */
+	private Activation() {
+		// utility class
+	}
+
+	/**
+	 * @param activator -
+	 *            the activator to use or null if everything is loaded
+	 */
+	public static void setActivator(Activator activator) {
+		Activation.activator = activator;
+	}
+
+	/**
+	 * ensure the given object is loaded
+	 * 
+	 * @param <T>
+	 * @param o -
+	 *            the object, may be null
+	 * @return the given object
+	 */
+	public static <T> T activate(T o) {
+		Activator current = activator;
+		if (o != null && current != null) {
+			synchronized (lock) {
+				current.activate(o);
+			}
+		}
+		return o;
+	}
+
+	/**
+	 * Get the lock held while objects are activated or deactivated. Reading
+	 * lazy content holding this lock after activating the object guarantees
+	 * that it isn't unloaded meanwhile.
+	 * 
+	 * @return the lock
+	 */
+	public static Object getLock() {
+		return lock;
+	}
+}
@@ -23,6 +23,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.builder.ToStringBuilder;
@@ -35,12 +36,34 @@ import org.jimcat.model.tag.Tag;
 /**
  * The main representation of a managed image within the system.
  * 
+ * Every image is identified by a numeric id, assigned on creation and stored
+ * with the image. Equality and hash codes are based on this id only, so they
+ * are cheap and don't change if the file is renamed.
+ * 
  * $Id: Image.java 999 2007-09-14 20:02:58Z cleiter $
  * 
  * @author Herbert
  */
 public class Image implements ObservableBean<Image>, Comparable<Image> {
 
+	/**
+	 * the next id to assign. Starts at a value derived from the current time,
+	 * so ids assigned before the library is loaded don't collide with ids
+	 * assigned by former sessions.
+	 */
+	private static final AtomicLong NEXT_IMAGE_ID = new AtomicLong(System.currentTimeMillis() << 16);
+
+	/**
+	 * the identity of this image, 0 for images stored by older versions until
+	 * an id is assigned on first use
+	 */
+	private volatile long imageId;
+
+	/**
+	 * true if the id was assigned to an image stored without one
+	 */
+	private transient boolean newImageId = false;
+
 	private String title;
 
 	private ImageRating rating = ImageRating.NONE;
@@ -63,6 +86,55 @@ public class Image implements ObservableBean<Image>, Comparable<Image> {
 
 	private transient ListenerManager<Image> listenerManager = new ListenerManager<Image>(this);
 
+	/**
+	 * create a new image with a new id
+	 */
+	public Image() {
+		imageId = NEXT_IMAGE_ID.getAndIncrement();
+	}
+
+	/**
+	 * Make sure ids assigned from now on are greater than the given one. It is
+	 * called with the ids of loaded images, so new ids are unique even if the
+	 * clock has been set back.
+	 * 
+	 * @param maxImageId
+	 */
+	public static void reserveImageIds(long maxImageId) {
+		long next = NEXT_IMAGE_ID.get();
+		while (next <= maxImageId && !NEXT_IMAGE_ID.compareAndSet(next, maxImageId + 1)) {
+			next = NEXT_IMAGE_ID.get();
+		}
+	}
+
+	/**
+	 * get the stable identity of this image. Images stored by older versions
+	 * get a new id on first access.
+	 * 
+	 * @return the id of this image
+	 */
+	public long getImageId() {
+		long id = imageId;
+		if (id != 0) {
+			return id;
+		}
+		synchronized (this) {
+			if (imageId == 0) {
+				imageId = NEXT_IMAGE_ID.getAndIncrement();
+				newImageId = true;
+			}
+			return imageId;
+		}
+	}
+
+	/**
+	 * @return true if the id was assigned to an image stored without one, so
+	 *         the image has to be saved to keep it
+	 */
+	public synchronized boolean isNewImageId() {
+		return newImageId;
+	}
+
 	/**
 	 * add a Tag to this image - will fire a propertyChanged event
 	 * 
@@ -265,10 +337,10 @@ public class Image implements ObservableBean<Image>, Comparable<Image> {
 	}
 
 	/**
-	 * @return the thumbnail
+	 * @return the thumbnail, loaded on first access
 	 */
 	public Thumbnail getThumbnail() {
-		return thumbnail;
+		return Activation.activate(thumbnail);
 	}
 
 	/**
@@ -304,38 +376,20 @@ public class Image implements ObservableBean<Image>, Comparable<Image> {
 	}
 
 	/**
-	 * 
-	 * The equals method of Image checks wheter the absolute file of two images
-	 * is equal to determine if two images are equal. So it uses the equals
-	 * method of the absolute files derived from the file object stored in the
-	 * metadata of the images. This is because there should only be one image
-	 * with a given absolute path in the database. If any of the needed
-	 * parameters is null in this or the other Image this method delegetes the
-	 * equals to the equals in the superclass.
+	 * Two images are equal if they have the same id. Unlike the path, the id
+	 * doesn't change during the lifetime of an image.
 	 * 
 	 * @see java.lang.Object#equals(java.lang.Object)
 	 */
 	@Override
 	public boolean equals(Object obj) {
-
+		if (this == obj) {
+			return true;
+		}
 		if (!(obj instanceof Image)) {
 			return false;
 		}
-
-		Image other = (Image) obj;
-
-		if (this.getMetadata() == null || other.getMetadata() == null) {
-			return super.equals(other);
-		}
-
-		if (this.getMetadata().getPath() == null || other.getMetadata().getPath() == null) {
-			return super.equals(other);
-		}
-
-		File thisPath = this.getMetadata().getPath().getAbsoluteFile();
-		File otherPath = other.getMetadata().getPath().getAbsoluteFile();
-
-		return thisPath.equals(otherPath);
+		return getImageId() == ((Image) obj).getImageId();
 	}
 
 	/**
@@ -345,11 +399,8 @@ public class Image implements ObservableBean<Image>, Comparable<Image> {
 	 */
 	@Override
 	public int hashCode() {
-		// get hashcode from path
-		if (getMetadata() != null && getMetadata().getPath() != null) {
-			return getMetadata().getPath().hashCode();
-		}
-		return super.hashCode();
+		long id = getImageId();
+		return (int) (id ^ (id >>> 32));
 	}
 
 	/**
@@ -432,7 +483,8 @@ public class Image implements ObservableBean<Image>, Comparable<Image> {
 	}
 
 	/**
-	 * compares two Images in there natural order (file path)
+	 * compares two Images in there natural order (file path), images having
+	 * the same path are ordered by id to be consistent with equals
 	 * 
 	 * @param o
 	 * @return the result of the compareTo method as specified in java
@@ -460,6 +512,12 @@ public class Image implements ObservableBean<Image>, Comparable<Image> {
 			return 1;
 
 		// none of them is null, so delegate to compareTo from String
-		return path1.compareTo(path2);
+		int result = path1.compareTo(path2);
+		if (result != 0) {
+			return result;
+		}
+		long id1 = getImageId();
+		long id2 = o.getImageId();
+		return (id1 < id2) ? -1 : ((id1 == id2) ? 0 : 1);
 	}
 }
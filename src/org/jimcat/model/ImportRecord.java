@@ -0,0 +1,104 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.model;
+
+import org.joda.time.DateTime;
+
+/**
+ * 
+ * Describes a single import of images. Import records are stored persistently
+ * so the next import id and some import statistics are available without
+ * looking at every image of the library.
+ * 
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class ImportRecord {
+
+	/**
+	 * the id of this import, shared by all images within the import
+	 */
+	private long importId;
+
+	/**
+	 * when was this import started
+	 */
+	private DateTime date;
+
+	/**
+	 * the path of the directory / file the import was started for
+	 */
+	private String rootPath;
+
+	/**
+	 * number of images added to the library by this import
+	 */
+	private int fileCount;
+
+	/**
+	 * create a new import record
+	 * 
+	 * @param importId
+	 * @param date
+	 * @param rootPath
+	 */
+	public ImportRecord(long importId, DateTime date, String rootPath) {
+		this.importId = importId;
+		this.date = date;
+		this.rootPath = rootPath;
+	}
+
+	/**
+	 * @return the importId
+	 */
+	public long getImportId() {
+		return importId;
+	}
+
+	/**
+	 * @return the date
+	 */
+	public DateTime getDate() {
+		return date;
+	}
+
+	/**
+	 * @return the rootPath
+	 */
+	public String getRootPath() {
+		return rootPath;
+	}
+
+	/**
+	 * @return the fileCount
+	 */
+	public int getFileCount() {
+		return fileCount;
+	}
+
+	/**
+	 * @param fileCount
+	 *            the fileCount to set
+	 */
+	public void setFileCount(int fileCount) {
+		this.fileCount = fileCount;
+	}
+
+}
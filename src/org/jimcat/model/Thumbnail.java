@@ -55,7 +55,9 @@ public class Thumbnail {
 	private Long id;
 
 	/**
-	 * image raw data - one array for each size
+	 * image raw data - one array for each size. It may be unloaded by the
+	 * persistence layer at any time, so it is only read holding the lock of
+	 * Activation.
 	 */
 	private SortedMap<Integer, byte[]> data;
 
@@ -111,23 +113,34 @@ public class Thumbnail {
 	 * @return a thumb nail with the given size
 	 */
 	public BufferedImage getImage(int size) {
-		if (data == null) {
-			return null;
-		}
-
-		// get next higher thumb nail size
 		int dim = -1;
-		Iterator<Integer> iter = data.keySet().iterator();
-		while (iter.hasNext() && dim < size) {
-			dim = iter.next();
+		byte jpeg[];
+		synchronized (Activation.getLock()) {
+			// may have been unloaded since the image returned it
+			Activation.activate(this);
+			if (data == null || data.isEmpty()) {
+				return null;
+			}
+
+			// get next higher thumb nail size
+			Iterator<Integer> iter = data.keySet().iterator();
+			while (iter.hasNext() && dim < size) {
+				dim = iter.next();
+			}
+			jpeg = data.get(dim);
 		}
 
 		// construct image
 		try {
-			return ImageUtil.loadImage(data.get(dim), ImageQuality.getBest());
+			return ImageUtil.loadImage(jpeg, ImageQuality.getBest());
 		} catch (IOException ioe) {
 			// make dimension unusable
-			data.remove(dim);
+			synchronized (Activation.getLock()) {
+				Activation.activate(this);
+				if (data != null) {
+					data.remove(dim);
+				}
+			}
 		}
 		return null;
 	}
@@ -138,11 +151,7 @@ public class Thumbnail {
 	 * @return - the contained image or null, if there is no image contained
 	 */
 	public BufferedImage getMaxSizeImage() {
-		// get biggest available thumb nail
-		int max = 0;
-		for (int size : data.keySet()) {
-			max = size;
-		}
-		return getImage(max);
+		// the next higher size of any size is the biggest one
+		return getImage(Integer.MAX_VALUE);
 	}
 }
@@ -18,15 +18,20 @@
 package org.jimcat.model.libraries;
 
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jimcat.model.notification.BeanChangeEvent;
 import org.jimcat.model.notification.BeanModification;
 import org.jimcat.model.notification.BeanModificationListener;
 import org.jimcat.model.notification.BeanModificationManager;
+import org.jimcat.model.notification.BeanProperty;
 import org.jimcat.model.notification.CollectionListener;
 import org.jimcat.model.notification.CollectionListenerManager;
 import org.jimcat.model.notification.ObservableBean;
@@ -69,25 +74,200 @@ public class AbstractLibrary<T extends ObservableBean<T>, U extends AbstractLibr
 	 */
 	private ModificationListener modificationListener = new ModificationListener();
 
+	/**
+	 * the thread loading the content in background, null if there is none
+	 */
+	private volatile Thread loader = null;
+
+	/**
+	 * lock guarding the load state
+	 */
+	private final Object loadLock = new Object();
+
+	/**
+	 * true if the whole content has been loaded
+	 */
+	private boolean loaded = false;
+
+	/**
+	 * the reason the loader stopped before the whole content was loaded
+	 */
+	private Throwable loadFailure = null;
+
+	/**
+	 * the number of chunks loaded in background
+	 */
+	private int loadedChunks = 0;
+
 	/**
 	 * default constructor requesting repository to use
 	 * 
 	 * @param repository
 	 */
-	@SuppressWarnings("unchecked")
 	public AbstractLibrary(Repository<T> repository) {
+		this(repository, true);
+	}
+
+	/**
+	 * constructor requesting repository to use
+	 * 
+	 * @param repository
+	 * @param load -
+	 *            if false, the library starts empty and the content has to be
+	 *            loaded using loadInBackground(..)
+	 */
+	@SuppressWarnings("unchecked")
+	protected AbstractLibrary(Repository<T> repository, boolean load) {
 		this.repository = repository;
 
 		manager = new CollectionListenerManager<T, U>((U) this);
 		content = Collections.synchronizedSet(new HashSet<T>());
 
 		// load albums
-		add(repository.getAll());
+		if (load) {
+			add(repository.getAll());
+			loaded = true;
+		}
 
 		// init done
 		initStep = false;
 	}
 
+	/**
+	 * Start loading the content of the repository within a background thread.
+	 * Elements are added in chunks of the given size, so listeners are
+	 * notified progressively.
+	 * 
+	 * @param chunkSize
+	 */
+	protected void loadInBackground(final int chunkSize) {
+		loader = new Thread(new Runnable() {
+			public void run() {
+				loadChunks(chunkSize);
+			}
+		}, getClass().getSimpleName() + " loader");
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	/**
+	 * load the repository content chunk by chunk - executed by the loader
+	 * 
+	 * @param chunkSize
+	 */
+	private void loadChunks(int chunkSize) {
+		Throwable failure = null;
+		try {
+			Iterator<T> iter = iterateRepository();
+			Set<T> chunk = new HashSet<T>();
+			while (iter.hasNext()) {
+				chunk.add(iter.next());
+				if (chunk.size() >= chunkSize || !iter.hasNext()) {
+					chunkLoaded(chunk);
+					add(chunk);
+					chunk = new HashSet<T>();
+					synchronized (loadLock) {
+						loadedChunks++;
+						loadLock.notifyAll();
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} catch (Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			synchronized (loadLock) {
+				loaded = failure == null;
+				loadFailure = failure;
+				loader = null;
+				loadLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * called by the loader for each chunk before it is added. Subclasses may
+	 * use it to upgrade elements stored by older versions.
+	 * 
+	 * @param chunk
+	 */
+	protected void chunkLoaded(Set<T> chunk) {
+		// nothing to do by default
+	}
+
+	/**
+	 * the source of elements loaded in background. Subclasses may use a more
+	 * lazy way than the default getAll().
+	 * 
+	 * @return an iterator over all stored elements
+	 */
+	protected Iterator<T> iterateRepository() {
+		return repository.getAll().iterator();
+	}
+
+	/**
+	 * @return true if the whole content of the repository has been loaded
+	 */
+	public boolean isLoaded() {
+		synchronized (loadLock) {
+			return loaded;
+		}
+	}
+
+	/**
+	 * Block until the whole content of the repository has been loaded. Has to
+	 * be used by operations which require to know all elements, e.g. to avoid
+	 * duplicates.
+	 * 
+	 * @throws IllegalStateException -
+	 *             if loading failed or the thread has been interrupted while
+	 *             waiting, the content is incomplete then
+	 */
+	public void awaitLoaded() throws IllegalStateException {
+		synchronized (loadLock) {
+			while (!loaded) {
+				if (loadFailure != null) {
+					throw new IllegalStateException("unable to load " + getClass().getSimpleName(), loadFailure);
+				}
+				if (!waitForLoader()) {
+					throw new IllegalStateException("interrupted while loading " + getClass().getSimpleName());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Block until a first chunk of elements or the whole content has been
+	 * loaded.
+	 */
+	public void awaitFirstChunk() {
+		synchronized (loadLock) {
+			while (!loaded && loadedChunks == 0 && loadFailure == null) {
+				if (!waitForLoader()) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * wait for a notification of the loader, loadLock has to be hold
+	 * 
+	 * @return false if the thread has been interrupted
+	 */
+	private boolean waitForLoader() {
+		try {
+			loadLock.wait();
+			return true;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
 	/**
 	 * add the given element to this library
 	 * 
@@ -124,8 +304,8 @@ public class AbstractLibrary<T extends ObservableBean<T>, U extends AbstractLibr
 		// inform listeners
 		getManager().notifyAdded(newbies);
 
-		// save changes
-		if (!initStep) {
+		// save changes - loaded elements are stored already
+		if (!initStep && Thread.currentThread() != loader) {
 			repository.save(elements);
 		}
 
@@ -224,13 +404,14 @@ public class AbstractLibrary<T extends ObservableBean<T>, U extends AbstractLibr
 
 			// clear album set
 			content.clear();
+		}
 
-			// inform listeners - fire basementChanged event
-			getManager().notifyExchange();
+		// inform listeners - fire basementChanged event
+		// not holding the content lock, listeners may lock themselves
+		getManager().notifyExchange();
 
-			// changes have been made
-			return true;
-		}
+		// changes have been made
+		return true;
 	}
 
 	/**
@@ -284,8 +465,9 @@ public class AbstractLibrary<T extends ObservableBean<T>, U extends AbstractLibr
 		if (content.contains(element)) {
 			manager.notifyUpdated(Collections.singletonList(event));
 
-			// save changes
-			repository.save(Collections.singleton(element));
+			// save changed property only
+			Set<BeanProperty> properties = EnumSet.of(event.getProperty());
+			repository.update(Collections.singletonMap(element, properties));
 		} else {
 			// Failure, remove listener -> should never happen
 			element.removeListener(this);
@@ -334,7 +516,7 @@ public class AbstractLibrary<T extends ObservableBean<T>, U extends AbstractLibr
 
 			// extract information
 			List<BeanChangeEvent<T>> filteredEvents = new LinkedList<BeanChangeEvent<T>>();
-			Set<T> beansToSave = new HashSet<T>();
+			Map<T, Set<BeanProperty>> beansToSave = new HashMap<T, Set<BeanProperty>>();
 
 			for (BeanChangeEvent<T> event : events) {
 				// the changed element
@@ -343,7 +525,12 @@ public class AbstractLibrary<T extends ObservableBean<T>, U extends AbstractLibr
 				if (content.contains(element)) {
 					// register to lists
 					filteredEvents.add(event);
-					beansToSave.add(element);
+					Set<BeanProperty> properties = beansToSave.get(element);
+					if (properties == null) {
+						properties = EnumSet.noneOf(BeanProperty.class);
+						beansToSave.put(element, properties);
+					}
+					properties.add(event.getProperty());
 				} else {
 					// Failure, remove listener -> should never happen
 					element.removeListener(AbstractLibrary.this);
@@ -354,7 +541,7 @@ public class AbstractLibrary<T extends ObservableBean<T>, U extends AbstractLibr
 			getManager().notifyUpdated(filteredEvents);
 
 			// save changes
-			repository.save(beansToSave);
+			repository.update(beansToSave);
 		}
 
 	}
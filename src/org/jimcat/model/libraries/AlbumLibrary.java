@@ -46,7 +46,7 @@ public final class AlbumLibrary extends AbstractLibrary<Album, AlbumLibrary> {
 	 * 
 	 * @return the singelton factory
 	 */
-	public static AlbumLibrary getInstance() {
+	public synchronized static AlbumLibrary getInstance() {
 		if (INSTANCE == null) {
 			INSTANCE = new AlbumLibrary();
 		}
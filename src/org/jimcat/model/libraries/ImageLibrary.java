@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -49,6 +50,11 @@ import org.jimcat.persistence.RepositoryLocator;
  */
 public final class ImageLibrary extends AbstractLibrary<Image, ImageLibrary> {
 
+	/**
+	 * the number of images added at once while loading the library
+	 */
+	private static final int LOAD_CHUNK_SIZE = 500;
+
 	/**
 	 * the singelton instance
 	 */
@@ -65,26 +71,62 @@ public final class ImageLibrary extends AbstractLibrary<Image, ImageLibrary> {
 	private boolean isDuplicateSetDirty = true;
 
 	/**
-	 * constructor loading images from the repository (singelton constructor)
+	 * constructor starting to load images from the repository in background
+	 * (singelton constructor)
 	 */
 	private ImageLibrary() {
-		super(RepositoryLocator.getImageRepository());
+		super(RepositoryLocator.getImageRepository(), false);
 
 		// a list of duplicates -must by synchronized
 		duplicates = Collections.synchronizedSet(new LinkedHashSet<Image>());
+
+		// images are added in chunks, see awaitLoaded()
+		loadInBackground(LOAD_CHUNK_SIZE);
 	}
 
 	/**
 	 * 
 	 * @return the singelton instance of this library type
 	 */
-	public static ImageLibrary getInstance() {
+	public synchronized static ImageLibrary getInstance() {
 		if (INSTANCE == null) {
 			INSTANCE = new ImageLibrary();
 		}
 		return INSTANCE;
 	}
 
+	/**
+	 * images are activated while iterating
+	 * 
+	 * @see org.jimcat.model.libraries.AbstractLibrary#iterateRepository()
+	 */
+	@Override
+	protected Iterator<Image> iterateRepository() {
+		return RepositoryLocator.getImageRepository().iterateAll();
+	}
+
+	/**
+	 * New ids have to be greater than those of loaded images. Images stored
+	 * without id got one when they were hashed, it is saved now.
+	 * 
+	 * @see org.jimcat.model.libraries.AbstractLibrary#chunkLoaded(java.util.Set)
+	 */
+	@Override
+	protected void chunkLoaded(Set<Image> chunk) {
+		long maxImageId = 0;
+		List<Image> newIds = new ArrayList<Image>();
+		for (Image image : chunk) {
+			maxImageId = Math.max(maxImageId, image.getImageId());
+			if (image.isNewImageId()) {
+				newIds.add(image);
+			}
+		}
+		Image.reserveImageIds(maxImageId);
+		if (!newIds.isEmpty()) {
+			RepositoryLocator.getImageRepository().save(newIds);
+		}
+	}
+
 	/**
 	 * add a set of new element to this library
 	 * 
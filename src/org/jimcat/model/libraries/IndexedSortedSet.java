@@ -0,0 +1,454 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.model.libraries;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A sorted set supporting positional access. It is implemented as a treap
+ * (randomized balanced search tree) whose nodes know the size of their
+ * subtree.
+ * 
+ * Adding an element costs O(log n) comparisons. Removing an element, getting
+ * the element at a position and getting the position of an element are
+ * O(log n) and don't use the comparator at all. Therefore an element whose
+ * sort key has changed can still be removed and added again to move it to its
+ * new position.
+ * 
+ * This class isn't thread save.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ * @param <E>
+ */
+final class IndexedSortedSet<E> {
+
+	/**
+	 * the nodes of this tree, indexed by element
+	 */
+	private Map<E, Node<E>> nodes = new HashMap<E, Node<E>>();
+
+	/**
+	 * the root of this tree
+	 */
+	private Node<E> root;
+
+	/**
+	 * the comparator used to sort elements
+	 */
+	private Comparator<? super E> comparator;
+
+	/**
+	 * source of node priorities
+	 */
+	private Random random = new Random();
+
+	/**
+	 * create a new, empty set sorted by the given comparator
+	 * 
+	 * @param comparator
+	 */
+	IndexedSortedSet(Comparator<? super E> comparator) {
+		this.comparator = comparator;
+	}
+
+	/**
+	 * @return the number of contained elements
+	 */
+	int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * @param element
+	 * @return true if the given element is contained
+	 */
+	boolean contains(Object element) {
+		return nodes.containsKey(element);
+	}
+
+	/**
+	 * @return an unmodifiable, unsorted set view of the contained elements
+	 */
+	Set<E> asSet() {
+		return Collections.unmodifiableSet(nodes.keySet());
+	}
+
+	/**
+	 * remove all elements
+	 */
+	void clear() {
+		nodes.clear();
+		root = null;
+	}
+
+	/**
+	 * replace the content of this set by the given elements, sorted by the
+	 * given comparator. This is cheaper than adding them one by one.
+	 * 
+	 * @param elements
+	 * @param newComparator
+	 */
+	@SuppressWarnings("unchecked")
+	void reset(Collection<? extends E> elements, Comparator<? super E> newComparator) {
+		comparator = newComparator;
+		E sorted[] = (E[]) elements.toArray();
+		Arrays.sort(sorted, comparator);
+		build(sorted);
+	}
+
+	/**
+	 * resort the content of this set using the given comparator
+	 * 
+	 * @param newComparator
+	 */
+	@SuppressWarnings("unchecked")
+	void sort(Comparator<? super E> newComparator) {
+		comparator = newComparator;
+		// in order - already sorted parts are cheap to merge
+		E sorted[] = (E[]) toArray(new Object[size()]);
+		Arrays.sort(sorted, comparator);
+		build(sorted);
+	}
+
+	/**
+	 * add the given element at its sorted position
+	 * 
+	 * @param element
+	 * @return true if the element wasn't contained before
+	 */
+	boolean add(E element) {
+		if (nodes.containsKey(element)) {
+			return false;
+		}
+
+		Node<E> node = new Node<E>(element, random.nextInt());
+		nodes.put(element, node);
+		if (root == null) {
+			root = node;
+			return true;
+		}
+
+		// insert as leaf
+		Node<E> parent = root;
+		while (true) {
+			parent.size++;
+			if (comparator.compare(element, parent.element) < 0) {
+				if (parent.left == null) {
+					parent.left = node;
+					break;
+				}
+				parent = parent.left;
+			} else {
+				if (parent.right == null) {
+					parent.right = node;
+					break;
+				}
+				parent = parent.right;
+			}
+		}
+		node.parent = parent;
+
+		// restore heap order
+		while (node.parent != null && node.parent.priority < node.priority) {
+			rotateUp(node);
+		}
+		return true;
+	}
+
+	/**
+	 * remove the given element
+	 * 
+	 * @param element
+	 * @return true if the element was contained
+	 */
+	boolean remove(Object element) {
+		Node<E> node = nodes.remove(element);
+		if (node == null) {
+			return false;
+		}
+
+		// move node down until it has at most one child
+		while (node.left != null && node.right != null) {
+			if (node.left.priority > node.right.priority) {
+				rotateUp(node.left);
+			} else {
+				rotateUp(node.right);
+			}
+		}
+
+		// unlink it
+		Node<E> child = node.left;
+		if (child == null) {
+			child = node.right;
+		}
+		Node<E> parent = node.parent;
+		if (child != null) {
+			child.parent = parent;
+		}
+		if (parent == null) {
+			root = child;
+		} else if (parent.left == node) {
+			parent.left = child;
+		} else {
+			parent.right = child;
+		}
+		for (; parent != null; parent = parent.parent) {
+			parent.size--;
+		}
+		return true;
+	}
+
+	/**
+	 * get the position of the given element
+	 * 
+	 * @param element
+	 * @return the index of the element or -1 if it isn't contained
+	 */
+	int indexOf(Object element) {
+		Node<E> node = nodes.get(element);
+		if (node == null) {
+			return -1;
+		}
+		int index = size(node.left);
+		for (; node.parent != null; node = node.parent) {
+			if (node.parent.right == node) {
+				index += size(node.parent.left) + 1;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * get the element at the given position
+	 * 
+	 * @param index
+	 * @return the element at the given position
+	 * @throws IndexOutOfBoundsException
+	 */
+	E get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		Node<E> node = root;
+		while (true) {
+			int leftSize = size(node.left);
+			if (index < leftSize) {
+				node = node.left;
+			} else if (index == leftSize) {
+				return node.element;
+			} else {
+				index -= leftSize + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * copy all elements in sorted order into an array. Works like
+	 * Collection.toArray(T[]).
+	 * 
+	 * @param <T>
+	 * @param a
+	 * @return the array containing all elements
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T[] toArray(T a[]) {
+		int size = size();
+		if (a.length < size) {
+			a = (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+		}
+		int i = 0;
+		for (Node<E> node = first(root); node != null; node = successor(node)) {
+			a[i++] = (T) node.element;
+		}
+		if (a.length > size) {
+			a[size] = null;
+		}
+		return a;
+	}
+
+	/**
+	 * build a new tree from the given sorted elements in linear time
+	 * 
+	 * @param sorted
+	 */
+	private void build(E sorted[]) {
+		clear();
+
+		// the right spine of the tree, root at index 0
+		List<Node<E>> spine = new ArrayList<Node<E>>();
+		for (E element : sorted) {
+			Node<E> node = new Node<E>(element, random.nextInt());
+			nodes.put(element, node);
+
+			// nodes with a lower priority become the left subtree
+			Node<E> last = null;
+			while (!spine.isEmpty() && spine.get(spine.size() - 1).priority < node.priority) {
+				last = spine.remove(spine.size() - 1);
+				last.size = 1 + size(last.left) + size(last.right);
+			}
+			node.left = last;
+			if (last != null) {
+				last.parent = node;
+			}
+			if (!spine.isEmpty()) {
+				Node<E> parent = spine.get(spine.size() - 1);
+				parent.right = node;
+				node.parent = parent;
+			}
+			spine.add(node);
+		}
+
+		// complete sizes of the remaining spine
+		for (int i = spine.size() - 1; i >= 0; i--) {
+			Node<E> node = spine.get(i);
+			node.size = 1 + size(node.left) + size(node.right);
+		}
+		if (!spine.isEmpty()) {
+			root = spine.get(0);
+		}
+	}
+
+	/**
+	 * rotate the given node above its parent
+	 * 
+	 * @param node
+	 */
+	private void rotateUp(Node<E> node) {
+		Node<E> parent = node.parent;
+		Node<E> grandParent = parent.parent;
+
+		if (parent.left == node) {
+			parent.left = node.right;
+			if (node.right != null) {
+				node.right.parent = parent;
+			}
+			node.right = parent;
+		} else {
+			parent.right = node.left;
+			if (node.left != null) {
+				node.left.parent = parent;
+			}
+			node.left = parent;
+		}
+		parent.parent = node;
+
+		node.parent = grandParent;
+		if (grandParent == null) {
+			root = node;
+		} else if (grandParent.left == parent) {
+			grandParent.left = node;
+		} else {
+			grandParent.right = node;
+		}
+
+		node.size = parent.size;
+		parent.size = 1 + size(parent.left) + size(parent.right);
+	}
+
+	/**
+	 * @param <E>
+	 * @param node
+	 * @return the leftmost node of the given subtree or null
+	 */
+	private static <E> Node<E> first(Node<E> node) {
+		if (node != null) {
+			while (node.left != null) {
+				node = node.left;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * @param <E>
+	 * @param node
+	 * @return the next node in sorted order or null
+	 */
+	private static <E> Node<E> successor(Node<E> node) {
+		if (node.right != null) {
+			return first(node.right);
+		}
+		while (node.parent != null && node.parent.right == node) {
+			node = node.parent;
+		}
+		return node.parent;
+	}
+
+	/**
+	 * @param node
+	 * @return the size of the given subtree, 0 for null
+	 */
+	private static int size(Node<?> node) {
+		if (node == null) {
+			return 0;
+		}
+		return node.size;
+	}
+
+	/**
+	 * a single node of the tree
+	 * 
+	 * @param <E>
+	 */
+	private static final class Node<E> {
+
+		/**
+		 * the stored element
+		 */
+		private final E element;
+
+		/**
+		 * the random heap priority, parents have higher ones
+		 */
+		private final int priority;
+
+		/**
+		 * the number of nodes within this subtree
+		 */
+		private int size = 1;
+
+		/**
+		 * the children and the parent
+		 */
+		private Node<E> left, right, parent;
+
+		/**
+		 * create a new leaf
+		 * 
+		 * @param element
+		 * @param priority
+		 */
+		private Node(E element, int priority) {
+			this.element = element;
+			this.priority = priority;
+		}
+	}
+}
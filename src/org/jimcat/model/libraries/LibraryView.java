@@ -2,12 +2,17 @@ package org.jimcat.model.libraries;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jimcat.model.Image;
 import org.jimcat.model.comparator.NullComparator;
@@ -15,6 +20,7 @@ import org.jimcat.model.filter.Filter;
 import org.jimcat.model.notification.BeanChangeEvent;
 import org.jimcat.model.notification.CollectionListener;
 import org.jimcat.model.notification.CollectionListenerManager;
+import org.jimcat.model.notification.IndexListener;
 import org.jimcat.model.notification.ObservableCollection;
 
 /**
@@ -25,6 +31,15 @@ import org.jimcat.model.notification.ObservableCollection;
  * comparator. Operations like add and remove are not supported because an
  * ImageCollection is just a view, use ImageLibrary.
  * 
+ * The content is kept sorted incrementally, so adding, removing or moving a
+ * single image costs O(log n). IndexListeners are informed about the exact
+ * positions affected.
+ * 
+ * The library is modified by the background loader and by jobs while the user
+ * interface is reading a view. Therefore all operations are synchronized on
+ * the view, listeners are notified while holding this lock. Threads other
+ * than the event dispatcher should use getSnapshot() to iterate.
+ * 
  * 
  * $Id: LibraryView.java 942 2007-06-16 09:07:47Z 07g1t1u3 $
  * 
@@ -33,9 +48,9 @@ import org.jimcat.model.notification.ObservableCollection;
 public class LibraryView implements ObservableCollection<Image, LibraryView>, CollectionListener<Image, ImageLibrary> {
 
 	/**
-	 * the current content of this view (Hash)
+	 * the current content of this view, sorted
 	 */
-	private HashSet<Image> content;
+	private IndexedSortedSet<Image> content;
 
 	/**
 	 * the matched images as array, correct sorting
@@ -47,6 +62,17 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 */
 	private boolean arrayDirty = true;
 
+	/**
+	 * the position of every image within contentArray, null if it has to be
+	 * rebuilt
+	 */
+	private Map<Image, Integer> positions;
+
+	/**
+	 * listeners interested in positions of changed images
+	 */
+	private List<IndexListener<LibraryView>> indexListeners = new CopyOnWriteArrayList<IndexListener<LibraryView>>();
+
 	/**
 	 * the collection listener manager used by this view (which is just another
 	 * kind of collection)
@@ -87,6 +113,12 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 */
 	private List<BeanChangeEvent<Image>> holdBackChanges;
 
+	/**
+	 * set if images were added while changes were hold back. Their position
+	 * may be wrong, because sort keys of tree nodes have changed.
+	 */
+	private boolean resortRequired = false;
+
 	/**
 	 * small constructor creating an unfiltered, unsorted list fed by the given
 	 * library
@@ -112,6 +144,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 
 		this.comparator = new SaveComparator(comparator);
 		this.library = library;
+		this.content = new IndexedSortedSet<Image>(this.comparator);
 
 		listenerManager = new CollectionListenerManager<Image, LibraryView>(this);
 		holdBackChanges = new LinkedList<BeanChangeEvent<Image>>();
@@ -147,7 +180,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * 
 	 * @return an unmodifiable mutating list of currently matched images
 	 */
-	public List<Image> getImages() {
+	public synchronized List<Image> getImages() {
 		return Collections.unmodifiableList(Arrays.asList(getContentArray()));
 	}
 
@@ -156,7 +189,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * 
 	 * @return a snapshot of the currently maching images.
 	 */
-	public List<Image> getSnapshot() {
+	public synchronized List<Image> getSnapshot() {
 		return new ArrayList<Image>(Arrays.asList(getContentArray()));
 	}
 
@@ -166,23 +199,34 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * @param index
 	 * @return the image with the given index
 	 */
-	public Image getImage(int index) {
-		return getContentArray()[index];
+	public synchronized Image getImage(int index) {
+		if (arrayDirty) {
+			// don't materialize whole array for single lookups
+			return content.get(index);
+		}
+		return contentArray[index];
 	}
 
 	/**
 	 * get index of given image
 	 * 
+	 * This doesn't use the comparator. It is a hash lookup if the content
+	 * array is up to date, O(log n) else.
+	 * 
 	 * @param img
 	 * @return index of given image
 	 * 
 	 * @see List#indexOf(Object)
 	 */
-	public int indexOf(Image img) {
-		if (getContent().contains(img)) {
-			return Arrays.binarySearch(getContentArray(), img, comparator);
+	public synchronized int indexOf(Image img) {
+		if (arrayDirty) {
+			return content.indexOf(img);
+		}
+		Integer index = getPositions().get(img);
+		if (index == null) {
+			return -1;
 		}
-		return -1;
+		return index.intValue();
 	}
 
 	/**
@@ -193,7 +237,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * 
 	 * @param newFilter
 	 */
-	public void setFilter(Filter newFilter) {
+	public synchronized void setFilter(Filter newFilter) {
 		// check if there is any change
 		if (filter == newFilter) {
 			return;
@@ -213,7 +257,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * @param newFilter
 	 * @param newSorting
 	 */
-	public void updateView(Filter newFilter, Comparator<Image> newSorting) {
+	public synchronized void updateView(Filter newFilter, Comparator<Image> newSorting) {
 		// update filter
 		boolean filterRequired = (filter != newFilter);
 		filter = newFilter;
@@ -249,28 +293,33 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * this methode is synchronizing filter / sorting and library base
 	 */
 	private void updateContent() {
-		content = new HashSet<Image>(library.size());
+		content.clear();
+		// invalidate other content lists
+		arrayDirty = true;
+		Set<Image> matching = new HashSet<Image>(library.size());
 
+		// the library may be modified concurrently, toArray is atomic
 		if (filter == null) {
-			content.addAll(library.getAll());
+			Collections.addAll(matching, library.getAll().toArray(new Image[0]));
 		} else {
 			// try to reduce set of possible members
-			Set<Image> base = filter.possibleMembers();
+			Collection<Image> base = filter.possibleMembers();
 			if (base == null) {
-				base = library.getAll();
+				base = Arrays.asList(library.getAll().toArray(new Image[0]));
 			}
 			for (Image image : base) {
 				// there may be images added during match processing
 				// (duplicates)
 				// => contains check important
-				if (!content.contains(image) && filter.matches(image)) {
-					content.add(image);
+				if (!matching.contains(image) && !content.contains(image) && filter.matches(image)) {
+					matching.add(image);
 				}
 			}
 		}
 
-		// invalidate other content lists
-		arrayDirty = true;
+		// sort all at once
+		matching.addAll(content.asSet());
+		content.reset(matching, comparator);
 	}
 
 	/**
@@ -279,7 +328,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * this will notify listeners about a basement exchange
 	 */
 	private void sort() {
-		// sorting will be lacy evaluated
+		content.sort(comparator);
 		arrayDirty = true;
 
 		// inform listeners about changes - this also affects filter
@@ -292,7 +341,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * @return a clean hash set of contained images
 	 */
 	private Set<Image> getContent() {
-		return content;
+		return content.asSet();
 	}
 
 	/**
@@ -302,24 +351,65 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 */
 	private Image[] getContentArray() {
 		if (arrayDirty) {
-			contentArray = getContent().toArray(new Image[0]);
-			Arrays.sort(contentArray, comparator);
+			// already sorted
+			contentArray = content.toArray(new Image[content.size()]);
+			positions = null;
 			arrayDirty = false;
 		}
 		return contentArray;
 	}
 
+	/**
+	 * get the positions of all images within the content array
+	 * 
+	 * @return a map from image to index within getContentArray()
+	 */
+	private Map<Image, Integer> getPositions() {
+		Image array[] = getContentArray();
+		if (positions == null) {
+			positions = new HashMap<Image, Integer>(array.length * 4 / 3 + 1);
+			for (int i = 0; i < array.length; i++) {
+				positions.put(array[i], Integer.valueOf(i));
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * move a single image within a clean content array, so it doesn't has to
+	 * be rebuilt. Only the images in between are shifted.
+	 * 
+	 * @param from
+	 * @param to
+	 */
+	private void moveWithinArray(int from, int to) {
+		Image img = contentArray[from];
+		if (from < to) {
+			System.arraycopy(contentArray, from + 1, contentArray, from, to - from);
+		} else {
+			System.arraycopy(contentArray, to, contentArray, to + 1, from - to);
+		}
+		contentArray[to] = img;
+
+		// update positions of shifted images
+		if (positions != null) {
+			for (int i = Math.min(from, to); i <= Math.max(from, to); i++) {
+				positions.put(contentArray[i], Integer.valueOf(i));
+			}
+		}
+	}
+
 	/**
 	 * @return the comparator
 	 */
-	public Comparator<Image> getComparator() {
+	public synchronized Comparator<Image> getComparator() {
 		return comparator.comparator;
 	}
 
 	/**
 	 * @param comparator
 	 */
-	public void setComparator(Comparator<Image> comparator) {
+	public synchronized void setComparator(Comparator<Image> comparator) {
 		this.comparator = new SaveComparator(comparator);
 		sort();
 	}
@@ -329,7 +419,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * 
 	 * @return true if freezed, false else
 	 */
-	public boolean isFreezed() {
+	public synchronized boolean isFreezed() {
 		return freezed;
 	}
 
@@ -338,13 +428,20 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * 
 	 * @param freezed
 	 */
-	public void setFreezed(boolean freezed) {
+	public synchronized void setFreezed(boolean freezed) {
 		if (this.freezed && !freezed) {
 			this.freezed = freezed;
 			// freeze lock is removed
-			// fake update event
-			elementsUpdated(library, holdBackChanges);
-			holdBackChanges.clear();
+			if (resortRequired) {
+				// positions of new images may be wrong
+				resortRequired = false;
+				holdBackChanges.clear();
+				filter();
+			} else {
+				// fake update event
+				elementsUpdated(library, holdBackChanges);
+				holdBackChanges.clear();
+			}
 		}
 		this.freezed = freezed;
 	}
@@ -355,7 +452,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * @param image
 	 * @return true if the given image is within this view
 	 */
-	public boolean contains(Image image) {
+	public synchronized boolean contains(Image image) {
 		return getContent().contains(image);
 	}
 
@@ -364,7 +461,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * 
 	 * @return the number of images in this view
 	 */
-	public int size() {
+	public synchronized int size() {
 		return getContent().size();
 	}
 
@@ -386,6 +483,25 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 		listenerManager.removeListener(listener);
 	}
 
+	/**
+	 * add a listener interested in the positions of added and removed images.
+	 * Index events are sent before the corresponding collection events.
+	 * 
+	 * @param listener
+	 */
+	public void addIndexListener(IndexListener<LibraryView> listener) {
+		indexListeners.add(listener);
+	}
+
+	/**
+	 * remove an index listener from this view
+	 * 
+	 * @param listener
+	 */
+	public void removeIndexListener(IndexListener<LibraryView> listener) {
+		indexListeners.remove(listener);
+	}
+
 	/**
 	 * If there is a deep structural exchange
 	 * @param collection 
@@ -393,7 +509,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 * @see org.jimcat.model.notification.CollectionListener#basementChanged(org.jimcat.model.notification.ObservableCollection)
 	 */
 	@SuppressWarnings("unused")
-	public void basementChanged(ImageLibrary collection) {
+	public synchronized void basementChanged(ImageLibrary collection) {
 		// revalidate all images
 		filter();
 	}
@@ -407,15 +523,14 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 *      java.util.Set)
 	 */
 	@SuppressWarnings("unused")
-	public void elementsAdded(ImageLibrary collection, Set<Image> elements) {
+	public synchronized void elementsAdded(ImageLibrary collection, Set<Image> elements) {
 		// the list of added images
 		Set<Image> newbies = new HashSet<Image>();
 
 		// add images
-		Set<Image> matching = getContent();
 		for (Image img : elements) {
 			if (filter == null || filter.matches(img)) {
-				if (matching.add(img)) {
+				if (content.add(img)) {
 					newbies.add(img);
 					arrayDirty = true;
 				}
@@ -424,6 +539,10 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 
 		// notify listener
 		if (newbies.size() > 0) {
+			if (isFreezed() && !holdBackChanges.isEmpty()) {
+				resortRequired = true;
+			}
+			fireIntervalsAdded(indicesOf(newbies));
 			listenerManager.notifyAdded(newbies);
 		}
 	}
@@ -440,23 +559,28 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 *      java.util.Set)
 	 */
 	@SuppressWarnings("unused")
-	public void elementsRemoved(ImageLibrary collection, Set<Image> elements) {
+	public synchronized void elementsRemoved(ImageLibrary collection, Set<Image> elements) {
 		// list of removed items
 		Set<Image> victems = new HashSet<Image>();
-
-		// iterate through elements
-		Set<Image> matching = getContent();
 		for (Image img : elements) {
-			if (matching.remove(img)) {
+			if (content.contains(img)) {
 				victems.add(img);
-				arrayDirty = true;
 			}
 		}
+		if (victems.size() == 0) {
+			return;
+		}
 
-		// inform listeners
-		if (victems.size() > 0) {
-			listenerManager.notifyRemoved(victems);
+		// get positions before removing
+		int index[] = indicesOf(victems);
+		for (Image img : victems) {
+			content.remove(img);
 		}
+		arrayDirty = true;
+
+		// inform listeners
+		fireIntervalsRemoved(index);
+		listenerManager.notifyRemoved(victems);
 	}
 
 	/**
@@ -468,7 +592,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 	 *      java.util.List)
 	 */
 	@SuppressWarnings("unused")
-	public void elementsUpdated(ImageLibrary collection, List<BeanChangeEvent<Image>> events) {
+	public synchronized void elementsUpdated(ImageLibrary collection, List<BeanChangeEvent<Image>> events) {
 
 		// the current state
 		Set<Image> matching = getContent();
@@ -494,6 +618,7 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 		List<BeanChangeEvent<Image>> changes = new LinkedList<BeanChangeEvent<Image>>();
 		Set<Image> added = new HashSet<Image>();
 		Set<Image> removed = new HashSet<Image>();
+		Set<Image> updated = new LinkedHashSet<Image>();
 
 		// iterate through events
 		for (BeanChangeEvent<Image> event : events) {
@@ -502,30 +627,176 @@ public class LibraryView implements ObservableCollection<Image, LibraryView>, Co
 			Image element = event.getSource();
 			if (filter == null || filter.matches(element)) {
 				// if it isn't already in the list
-				if (matching.add(element)) {
+				if (!matching.contains(element)) {
 					added.add(element);
-					arrayDirty = true;
 				} else {
 					// just inform listeners about update
 					changes.add(event);
+					updated.add(element);
 				}
-			} else {
+			} else if (matching.contains(element)) {
 				// remove it anyway and inform
-				if (content.remove(element)) {
-					removed.add(element);
-					arrayDirty = true;
-				}
+				removed.add(element);
+			}
+		}
+		if (added.size() == 0 && removed.size() == 0 && updated.size() == 0) {
+			return;
+		}
+
+		// remember old positions, updated ones in iteration order
+		boolean wasDirty = arrayDirty;
+		int oldRemoved[] = indicesOf(removed);
+		int oldUpdated[] = new int[updated.size()];
+		int i = 0;
+		for (Image img : updated) {
+			oldUpdated[i++] = content.indexOf(img);
+		}
+
+		// sort keys of updated images may have changed => remove all of them
+		// before inserting anything, so the tree is consistent again
+		for (Image img : removed) {
+			content.remove(img);
+		}
+		for (Image img : updated) {
+			content.remove(img);
+		}
+		for (Image img : updated) {
+			content.add(img);
+		}
+		for (Image img : added) {
+			content.add(img);
+		}
+
+		// get new positions
+		int newAdded[] = indicesOf(added);
+		int newUpdated[] = new int[updated.size()];
+		i = 0;
+		for (Image img : updated) {
+			newUpdated[i++] = content.indexOf(img);
+		}
+
+		// updated images stayed in place if their positions relative to the
+		// remaining images haven't changed - else treat them as removed and
+		// added again
+		boolean inPlace = true;
+		for (i = 0; i < oldUpdated.length && inPlace; i++) {
+			int oldPos = oldUpdated[i] - countLower(oldRemoved, oldUpdated[i]);
+			int newPos = newUpdated[i] - countLower(newAdded, newUpdated[i]);
+			inPlace = (oldPos == newPos);
+		}
+		if (!inPlace) {
+			oldRemoved = merge(oldRemoved, oldUpdated);
+			newAdded = merge(newAdded, newUpdated);
+		}
+
+		// patch content array if possible
+		if (added.size() > 0 || removed.size() > 0) {
+			arrayDirty = true;
+		} else if (!inPlace) {
+			if (!wasDirty && updated.size() == 1) {
+				moveWithinArray(oldUpdated[0], newUpdated[0]);
+			} else {
+				arrayDirty = true;
 			}
 		}
 
 		// inform listeners
 		if (!isFiltering) {
+			fireIntervalsRemoved(oldRemoved);
+			fireIntervalsAdded(newAdded);
 			listenerManager.notifyRemoved(removed);
 			listenerManager.notifyAdded(added);
 			listenerManager.notifyUpdated(changes);
 		}
 	}
 
+	/**
+	 * get the current positions of the given images
+	 * 
+	 * @param images
+	 * @return the sorted positions
+	 */
+	private int[] indicesOf(Collection<Image> images) {
+		int index[] = new int[images.size()];
+		int i = 0;
+		for (Image img : images) {
+			index[i++] = content.indexOf(img);
+		}
+		Arrays.sort(index);
+		return index;
+	}
+
+	/**
+	 * count values lower than the given one
+	 * 
+	 * @param sorted -
+	 *            a sorted array of distinct values
+	 * @param value
+	 * @return the number of values lower than value
+	 */
+	private static int countLower(int sorted[], int value) {
+		int pos = Arrays.binarySearch(sorted, value);
+		if (pos < 0) {
+			return -pos - 1;
+		}
+		return pos;
+	}
+
+	/**
+	 * @param a
+	 * @param b
+	 * @return a sorted array containing all values of a and b
+	 */
+	private static int[] merge(int a[], int b[]) {
+		int res[] = new int[a.length + b.length];
+		System.arraycopy(a, 0, res, 0, a.length);
+		System.arraycopy(b, 0, res, a.length, b.length);
+		Arrays.sort(res);
+		return res;
+	}
+
+	/**
+	 * inform index listeners about added images
+	 * 
+	 * @param index -
+	 *            sorted new positions
+	 */
+	private void fireIntervalsAdded(int index[]) {
+		// ascending, so every interval refers to the final positions
+		int start = 0;
+		while (start < index.length) {
+			int end = start;
+			while (end < index.length - 1 && index[end] + 1 == index[end + 1]) {
+				end++;
+			}
+			for (IndexListener<LibraryView> listener : indexListeners) {
+				listener.intervalAdded(this, index[start], index[end]);
+			}
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * inform index listeners about removed images
+	 * 
+	 * @param index -
+	 *            sorted former positions
+	 */
+	private void fireIntervalsRemoved(int index[]) {
+		// descending, so lower positions are still valid
+		int end = index.length - 1;
+		while (end >= 0) {
+			int start = end;
+			while (start > 0 && index[start - 1] + 1 == index[start]) {
+				start--;
+			}
+			for (IndexListener<LibraryView> listener : indexListeners) {
+				listener.intervalRemoved(this, index[start], index[end]);
+			}
+			end = start - 1;
+		}
+	}
+
 	/**
 	 * private class to wrapp a save comparator around any comparator
 	 */
@@ -64,7 +64,7 @@ public class SmartListLibrary extends AbstractLibrary<SmartList, SmartListLibrar
 	 * 
 	 * @return an instance of SmartListLibrary
 	 */
-	public static SmartListLibrary getInstance() {
+	public synchronized static SmartListLibrary getInstance() {
 		if (INSTANCE == null) {
 			INSTANCE = new SmartListLibrary();
 		}
@@ -0,0 +1,57 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.model.notification;
+
+/**
+ * An interface describing a listener interested in the positions of elements
+ * within a sorted collection, like javax.swing.event.ListDataListener.
+ * 
+ * Indices are inclusive. If several intervals change at once, every call
+ * refers to the state reached after all previous calls, so listeners may
+ * apply them one after another.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ * @param <U>
+ */
+public interface IndexListener<U> {
+
+	/**
+	 * will be called if elements have been inserted at the given positions
+	 * 
+	 * @param collection
+	 * @param index0 -
+	 *            the first new index
+	 * @param index1 -
+	 *            the last new index
+	 */
+	void intervalAdded(U collection, int index0, int index1);
+
+	/**
+	 * will be called if the elements at the given positions have been removed
+	 * 
+	 * @param collection
+	 * @param index0 -
+	 *            the first removed index
+	 * @param index1 -
+	 *            the last removed index
+	 */
+	void intervalRemoved(U collection, int index0, int index1);
+
+}
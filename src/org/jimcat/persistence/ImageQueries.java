@@ -0,0 +1,120 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jimcat.model.Image;
+import org.jimcat.model.ImageMetadata;
+import org.joda.time.DateTime;
+
+/**
+ * In memory implementation of the ImageRepository queries for backends
+ * holding all images anyway.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public final class ImageQueries {
+
+	/**
+	 * no instances
+	 */
+	private ImageQueries() {
+		// utility class
+	}
+
+	/**
+	 * @param images
+	 * @param path
+	 * @return all images stored at the given path
+	 * @see ImageRepository#getByPath(File)
+	 */
+	public static Set<Image> getByPath(Collection<Image> images, File path) {
+		Set<Image> result = new HashSet<Image>();
+		String absolutePath = path.getAbsolutePath();
+		for (Image image : images) {
+			ImageMetadata metadata = image.getMetadata();
+			if (metadata != null && metadata.getPath() != null
+			        && absolutePath.equals(metadata.getPath().getAbsolutePath())) {
+				result.add(image);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param images
+	 * @param checksum
+	 * @return all images with the given checksum
+	 * @see ImageRepository#getByChecksum(String)
+	 */
+	public static Set<Image> getByChecksum(Collection<Image> images, String checksum) {
+		Set<Image> result = new HashSet<Image>();
+		for (Image image : images) {
+			ImageMetadata metadata = image.getMetadata();
+			if (metadata != null && checksum.equals(metadata.getChecksum())) {
+				result.add(image);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param images
+	 * @param importId
+	 * @return all images added by the given import
+	 * @see ImageRepository#getByImport(long)
+	 */
+	public static Set<Image> getByImport(Collection<Image> images, long importId) {
+		Set<Image> result = new HashSet<Image>();
+		for (Image image : images) {
+			ImageMetadata metadata = image.getMetadata();
+			if (metadata != null && metadata.getImportId() == importId) {
+				result.add(image);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param images
+	 * @param from
+	 * @param to
+	 * @return all images added within the given range
+	 * @see ImageRepository#getByDateAdded(DateTime, DateTime)
+	 */
+	public static Set<Image> getByDateAdded(Collection<Image> images, DateTime from, DateTime to) {
+		Set<Image> result = new HashSet<Image>();
+		for (Image image : images) {
+			ImageMetadata metadata = image.getMetadata();
+			if (metadata == null || metadata.getDateAdded() == null) {
+				continue;
+			}
+			DateTime added = metadata.getDateAdded();
+			if ((from == null || !added.isBefore(from)) && (to == null || !added.isAfter(to))) {
+				result.add(image);
+			}
+		}
+		return result;
+	}
+}
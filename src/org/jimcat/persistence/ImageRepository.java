@@ -17,7 +17,12 @@
 
 package org.jimcat.persistence;
 
+import java.io.File;
+import java.util.Iterator;
+import java.util.Set;
+
 import org.jimcat.model.Image;
+import org.joda.time.DateTime;
 
 /**
  * This is a Interface to closure the generic repository definition.
@@ -27,5 +32,46 @@ import org.jimcat.model.Image;
  * @author Herbert
  */
 public interface ImageRepository extends Repository<Image> {
-	// nothing else
+
+	/**
+	 * Iterate over all stored images. Backends may load the images while
+	 * iterating instead of materializing all of them at once.
+	 * 
+	 * @return an iterator over all images
+	 */
+	Iterator<Image> iterateAll();
+
+	/**
+	 * Get all images stored at the given path
+	 * 
+	 * @param path
+	 * @return the matching images, normally a single one
+	 */
+	Set<Image> getByPath(File path);
+
+	/**
+	 * Get all images with the given checksum
+	 * 
+	 * @param checksum
+	 * @return the images with this content
+	 */
+	Set<Image> getByChecksum(String checksum);
+
+	/**
+	 * Get all images added by the import with the given id
+	 * 
+	 * @param importId
+	 * @return the imported images
+	 */
+	Set<Image> getByImport(long importId);
+
+	/**
+	 * Get all images added within the given range. Both bounds are inclusive,
+	 * null is an open bound.
+	 * 
+	 * @param from
+	 * @param to
+	 * @return the images added within this range
+	 */
+	Set<Image> getByDateAdded(DateTime from, DateTime to);
 }
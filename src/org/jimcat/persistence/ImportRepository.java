@@ -0,0 +1,38 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence;
+
+import org.jimcat.model.ImportRecord;
+
+/**
+ * Repository for the records of all imports done up to now.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public interface ImportRepository extends Repository<ImportRecord> {
+
+	/**
+	 * get the highest import id used by any stored import record
+	 * 
+	 * @return the highest import id or -1 if there is no record
+	 */
+	long getMaxImportId();
+
+}
@@ -18,8 +18,11 @@
 package org.jimcat.persistence;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
+import org.jimcat.model.notification.BeanProperty;
+
 /**
  * a generic interface for kind of data beans
  * 
@@ -46,6 +49,16 @@ public interface Repository<T> {
 	 */
 	void save(Collection<T> elements);
 
+	/**
+	 * Update already stored elements. Only the given properties of each element
+	 * have been changed. Implementations unable to store single properties may
+	 * save the whole element instead.
+	 * 
+	 * @param changes -
+	 *            the changed properties per element
+	 */
+	void update(Map<T, Set<BeanProperty>> changes);
+
 	/**
 	 * Delete a collection of elements within this repository
 	 * 
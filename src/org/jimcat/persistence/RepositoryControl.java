@@ -39,8 +39,31 @@ public interface RepositoryControl {
 	public boolean configurationExists();
 
 	/**
-	 * Calling this methode should force the persistencylayer to shut down. No
-	 * further calls will be made after this.
+	 * Write all changes made up to now and wait until they are stored, but
+	 * not longer than the given time.
+	 * 
+	 * @param timeout -
+	 *            the maximum time to wait in ms
+	 * @return true if all changes are stored, false if the time passed or the
+	 *         thread has been interrupted
+	 * @throws IllegalStateException -
+	 *             if changes couldn't be written
+	 */
+	public boolean flush(long timeout) throws IllegalStateException;
+
+	/**
+	 * Get the number of changes which are not stored yet. It may be used to
+	 * report the progress of a flush or shutdown, so it must not block or
+	 * reopen a repository which has been shut down.
+	 * 
+	 * @return the number of pending writes, 0 after shutdown
+	 */
+	public int getPendingWrites();
+
+	/**
+	 * Calling this methode should force the persistencylayer to shut down. All
+	 * pending writes are stored before. No further calls will be made after
+	 * this.
 	 */
 	public void shutdown();
 }
@@ -19,13 +19,22 @@ package org.jimcat.persistence;
 
 import org.jimcat.persistence.db4o.Db4oAlbumRepository;
 import org.jimcat.persistence.db4o.Db4oImageRepository;
+import org.jimcat.persistence.db4o.Db4oImportRepository;
 import org.jimcat.persistence.db4o.Db4oRepositoryControl;
 import org.jimcat.persistence.db4o.Db4oSmartListRepository;
 import org.jimcat.persistence.db4o.Db4oTagRepository;
+import org.jimcat.persistence.log.LogAlbumRepository;
+import org.jimcat.persistence.log.LogImageRepository;
+import org.jimcat.persistence.log.LogImportRepository;
+import org.jimcat.persistence.log.LogRepositoryControl;
+import org.jimcat.persistence.log.LogSmartListRepository;
+import org.jimcat.persistence.log.LogTagRepository;
 import org.jimcat.persistence.mock.MockImageRepository;
+import org.jimcat.persistence.mock.MockImportRepository;
 import org.jimcat.persistence.mock.MockTagRepository;
 import org.jimcat.persistence.xstream.XStreamAlbumRepository;
 import org.jimcat.persistence.xstream.XStreamImageRepository;
+import org.jimcat.persistence.xstream.XStreamImportRepository;
 import org.jimcat.persistence.xstream.XStreamRepositoryControl;
 import org.jimcat.persistence.xstream.XStreamSmartListRepository;
 import org.jimcat.persistence.xstream.XStreamTagRepository;
@@ -46,7 +55,7 @@ public final class RepositoryLocator {
 	 * an enumeration of supported configuration setups
 	 */
 	public enum ConfigType {
-		XSTREAM, MOCK, DB4O, CONFIG
+		XSTREAM, MOCK, DB4O, LOG, CONFIG
 	}
 
 	private static RepositoryControl repositoryControl;
@@ -55,6 +64,8 @@ public final class RepositoryLocator {
 
 	private static ImageRepository imageRepository;
 
+	private static ImportRepository importRepository;
+
 	private static SmartListRepository smartListRepository;
 
 	private static TagRepository tagRepository;
@@ -106,6 +117,8 @@ public final class RepositoryLocator {
 				type = ConfigType.MOCK;
 			} else if (s.equalsIgnoreCase("db4o")) {
 				type = ConfigType.DB4O;
+			} else if (s.equalsIgnoreCase("log")) {
+				type = ConfigType.LOG;
 			} else {
 				type = ConfigType.DB4O; // default mode
 			}
@@ -115,11 +128,13 @@ public final class RepositoryLocator {
 		case MOCK:
 			tagRepository = new MockTagRepository();
 			imageRepository = new MockImageRepository();
+			importRepository = new MockImportRepository();
 			break;
 		case XSTREAM:
 			tagRepository = new XStreamTagRepository();
 			smartListRepository = new XStreamSmartListRepository();
 			imageRepository = new XStreamImageRepository();
+			importRepository = new XStreamImportRepository();
 			albumRepository = new XStreamAlbumRepository();
 			repositoryControl = new XStreamRepositoryControl();
 			break;
@@ -127,9 +142,18 @@ public final class RepositoryLocator {
 			tagRepository = new Db4oTagRepository();
 			smartListRepository = new Db4oSmartListRepository();
 			imageRepository = new Db4oImageRepository();
+			importRepository = new Db4oImportRepository();
 			albumRepository = new Db4oAlbumRepository();
 			repositoryControl = new Db4oRepositoryControl();
 			break;
+		case LOG:
+			tagRepository = new LogTagRepository();
+			smartListRepository = new LogSmartListRepository();
+			imageRepository = new LogImageRepository();
+			importRepository = new LogImportRepository();
+			albumRepository = new LogAlbumRepository();
+			repositoryControl = new LogRepositoryControl();
+			break;
 		case CONFIG:
 			throw new IllegalStateException("Internal Java Error");
 		}
@@ -183,6 +207,15 @@ public final class RepositoryLocator {
 		return imageRepository;
 	}
 
+	/**
+	 * 
+	 * @return the ImportRepository
+	 */
+	public static ImportRepository getImportRepository() {
+		check();
+		return importRepository;
+	}
+
 	/**
 	 * 
 	 * @return the SmartListRepository
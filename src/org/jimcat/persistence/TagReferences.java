@@ -0,0 +1,87 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.jimcat.model.Image;
+import org.jimcat.model.tag.Tag;
+import org.jimcat.model.tag.TagGroup;
+
+/**
+ * Tags aren't saved if images are tagged, so backends storing single records
+ * only know the image side of this bidirectional relation. This class rebuilds
+ * the tag side from it.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public final class TagReferences {
+
+	/**
+	 * no instances
+	 */
+	private TagReferences() {
+		// utility class
+	}
+
+	/**
+	 * make the images of all tags match the tags of the given images
+	 * 
+	 * @param root -
+	 *            the root of the tag tree
+	 * @param images -
+	 *            all stored images
+	 */
+	public static void repair(TagGroup root, Collection<Image> images) {
+		List<Tag> tags = new ArrayList<Tag>();
+		collectTags(root, tags);
+		for (Tag tag : tags) {
+			for (Image image : new ArrayList<Image>(tag.getImages())) {
+				if (!images.contains(image) || !image.hasTag(tag)) {
+					tag.removeImage(image);
+				}
+			}
+		}
+		for (Image image : images) {
+			for (Tag tag : image.getTags()) {
+				tag.addImage(image);
+			}
+		}
+	}
+
+	/**
+	 * @param group
+	 * @param tags -
+	 *            all tags within the given subtree are added to this list
+	 */
+	private static void collectTags(TagGroup group, List<Tag> tags) {
+		if (group == null) {
+			return;
+		}
+		if (group instanceof Tag) {
+			tags.add((Tag) group);
+		}
+		for (TagGroup sub : group.getSubTags()) {
+			collectTags(sub, tags);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.db4o;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.jimcat.model.Activation.Activator;
+import org.jimcat.services.configuration.Configuration;
+
+import com.db4o.ObjectContainer;
+
+/**
+ * Activates lazily loaded objects (thumbnails, see Db4oUtil) on first access.
+ * 
+ * Activated objects are kept within a bounded LRU cache of
+ * db4o.activation.cache (default 500) entries. The least recently used one is
+ * deactivated again if the cache is full, so the memory used by thumbnail data
+ * doesn't grow with the size of the library. This happens within
+ * activate(..), which is called holding the lock of Activation only. Readers
+ * of lazy content hold this lock as well, so an object is never deactivated
+ * while it is read.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class Db4oActivator implements Activator {
+
+	/**
+	 * depth needed to load an object including its collections and their
+	 * content
+	 */
+	private static final int ACTIVATION_DEPTH = 3;
+
+	/**
+	 * the database
+	 */
+	private ObjectContainer db;
+
+	/**
+	 * activated objects, in order of their last access
+	 */
+	private Map<IdentityKey, Object> active;
+
+	/**
+	 * @param db -
+	 *            the database to activate objects from
+	 */
+	public Db4oActivator(ObjectContainer db) {
+		this.db = db;
+		final int size = Math.max(1, Configuration.getInt("db4o.activation.cache", 500));
+		active = new LinkedHashMap<IdentityKey, Object>(size, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<IdentityKey, Object> eldest) {
+				if (size() > size) {
+					deactivate(eldest.getKey().getObject());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * activate the given object if it is stored within the database
+	 * 
+	 * @see org.jimcat.model.Activation.Activator#activate(java.lang.Object)
+	 */
+	public void activate(Object o) {
+		synchronized (active) {
+			IdentityKey key = new IdentityKey(o);
+			if (active.get(key) != null) {
+				// already active - just marked as recently used
+				return;
+			}
+			if (!db.ext().isStored(o)) {
+				// a new object, loaded completely anyway
+				return;
+			}
+			db.activate(o, ACTIVATION_DEPTH);
+			active.put(key, o);
+		}
+	}
+
+	/**
+	 * release the content of an object no longer used
+	 * 
+	 * @param o
+	 */
+	private void deactivate(Object o) {
+		if (db.ext().isStored(o)) {
+			db.deactivate(o, ACTIVATION_DEPTH);
+		}
+	}
+
+	/**
+	 * @return the number of currently activated objects
+	 */
+	public int getActiveCount() {
+		synchronized (active) {
+			return active.size();
+		}
+	}
+}
@@ -19,15 +19,20 @@ package org.jimcat.persistence.db4o;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 
 import com.db4o.ObjectContainer;
 import com.db4o.ObjectSet;
 import com.db4o.query.Predicate;
+import com.db4o.query.Query;
 
 /**
  * Common base class for all DB4O DAOs
  * 
+ * Writes are queued by the Db4oWriteQueue. Pending writes are flushed before
+ * any query.
+ * 
  * $Id$
  * 
  * @author Christoph
@@ -35,15 +40,44 @@ import com.db4o.query.Predicate;
 public class Db4oDao {
 
 	protected <T> Set<T> get(T template) {
+		flushPending();
 		ObjectSet<T> objectSet = db().get(template);
 		return toSet(objectSet);
 	}
 
 	protected <T> Set<T> get(Predicate<T> predicate) {
+		flushPending();
 		ObjectSet<T> objectSet = db().query(predicate);
 		return toSet(objectSet);
 	}
 
+	/**
+	 * execute a SODA query created by query()
+	 * 
+	 * @param <T>
+	 * @param query
+	 * @return the result as a set
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> Set<T> get(Query query) {
+		flushPending();
+		ObjectSet<T> objectSet = query.execute();
+		return toSet(objectSet);
+	}
+
+	/**
+	 * create a new SODA query constrained to the given class. Pending writes
+	 * are flushed on execution by get(Query).
+	 * 
+	 * @param clazz
+	 * @return the query
+	 */
+	protected Query query(Class<?> clazz) {
+		Query query = db().query();
+		query.constrain(clazz);
+		return query;
+	}
+
 	private <T> Set<T> toSet(ObjectSet<T> objectSet) {
 		return new HashSet<T>(objectSet);
 	}
@@ -53,42 +87,86 @@ public class Db4oDao {
 	}
 
 	protected <T> Set<T> getAll(final Class<T> t) {
+		flushPending();
 		return toSet(db().query(t));
 	}
 
-	protected void set(final Object o) {
-		Db4oUtil.execute(new Runnable() {
-			public void run() {
-				db().set(o);
-			}
-		});
+	/**
+	 * iterate over all stored instances of the given class. Objects are
+	 * activated while iterating.
+	 * 
+	 * @param <T>
+	 * @param t
+	 * @return an iterator over the result
+	 */
+	protected <T> Iterator<T> iterate(final Class<T> t) {
+		flushPending();
+		return db().query(t).iterator();
+	}
+
+	/**
+	 * queries have to see all queued writes
+	 */
+	private void flushPending() {
+		if (queue().getPendingCount() > 0) {
+			queue().flush();
+		}
+	}
+
+	/**
+	 * queue saving the given object, see Db4oWriteQueue
+	 * 
+	 * @param o
+	 */
+	protected void set(Object o) {
+		queue().set(o);
+	}
+
+	/**
+	 * queue saving the given object up to the given depth of its object
+	 * graph, see Db4oWriteQueue
+	 * 
+	 * @param o
+	 * @param depth
+	 */
+	protected void set(Object o, int depth) {
+		queue().set(o, depth);
+	}
+
+	/**
+	 * queue deleting the given object, see Db4oWriteQueue
+	 * 
+	 * @param o
+	 */
+	protected void delete(Object o) {
+		queue().delete(o);
 	}
 
-	protected void delete(final Object o) {
-		Db4oUtil.execute(new Runnable() {
-			public void run() {
-				db().delete(o);
-			}
-		});
+	/**
+	 * queue saving all given objects
+	 * 
+	 * @param c
+	 */
+	protected void set(Collection<?> c) {
+		Db4oWriteQueue queue = queue();
+		for (Object o : c) {
+			queue.set(o);
+		}
 	}
 
-	protected void set(final Collection<?> c) {
-		Db4oUtil.execute(new Runnable() {
-			public void run() {
-				for (Object o : c) {
-					db().set(o);
-				}
-			}
-		});
+	/**
+	 * queue deleting all given objects
+	 * 
+	 * @param c
+	 */
+	protected void delete(Collection<?> c) {
+		Db4oWriteQueue queue = queue();
+		for (Object o : c) {
+			queue.delete(o);
+		}
 	}
 
-	protected void delete(final Collection<?> c) {
-		Db4oUtil.execute(new Runnable() {
-			public void run() {
-				for (Object o : c) {
-					db().delete(o);
-				}
-			}
-		});
+	private Db4oWriteQueue queue() {
+		return Db4oUtil.getWriteQueue();
 	}
 }
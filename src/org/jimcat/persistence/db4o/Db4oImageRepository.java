@@ -17,11 +17,20 @@
 
 package org.jimcat.persistence.db4o;
 
+import java.io.File;
+import java.lang.reflect.Field;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import org.jimcat.model.Image;
+import org.jimcat.model.notification.BeanProperty;
 import org.jimcat.persistence.ImageRepository;
+import org.joda.time.DateTime;
+
+import com.db4o.query.Query;
 
 /**
  * Image repository for DB4O backend.
@@ -32,6 +41,35 @@ import org.jimcat.persistence.ImageRepository;
  */
 public class Db4oImageRepository extends Db4oDao implements ImageRepository {
 
+	/**
+	 * update depth storing the image and the objects it owns (metadata,
+	 * thumbnail, the tag and album set objects), but not the referenced tags
+	 * and albums
+	 */
+	private static final int FULL_DEPTH = 2;
+
+	/**
+	 * update depth storing the fields of the image only. New objects
+	 * referenced by it are stored completely anyway.
+	 */
+	private static final int FIELD_DEPTH = 1;
+
+	/**
+	 * update depth storing a HashSet, its backing HashMap and the map entries
+	 * referring to the elements, but not the elements themselves
+	 */
+	private static final int COLLECTION_DEPTH = 3;
+
+	/**
+	 * the set of tags of an image
+	 */
+	private static final Field TAGS_FIELD = getImageField("tags");
+
+	/**
+	 * the set of albums of an image
+	 */
+	private static final Field ALBUMS_FIELD = getImageField("albums");
+
 	/**
 	 * Load all images from the persistence layer.
 	 * 
@@ -56,6 +94,130 @@ public class Db4oImageRepository extends Db4oDao implements ImageRepository {
 	 * @param images
 	 */
 	public void save(final Collection<Image> images) {
-		set(images);
+		for (Image image : images) {
+			set(image, FULL_DEPTH);
+			set(getSet(image, TAGS_FIELD), COLLECTION_DEPTH);
+			set(getSet(image, ALBUMS_FIELD), COLLECTION_DEPTH);
+		}
+	}
+
+	/**
+	 * Save only changed objects. The fields of the image are always stored,
+	 * the owned objects only if they have been changed. Changing the tags of
+	 * an image won't rewrite its thumbnail and metadata.
+	 * 
+	 * @see org.jimcat.persistence.Repository#update(java.util.Map)
+	 */
+	public void update(Map<Image, Set<BeanProperty>> changes) {
+		for (Entry<Image, Set<BeanProperty>> entry : changes.entrySet()) {
+			Image image = entry.getKey();
+			Set<BeanProperty> properties = entry.getValue();
+			set(image, FIELD_DEPTH);
+			if (properties.contains(BeanProperty.IMAGE_TAGS)) {
+				set(getSet(image, TAGS_FIELD), COLLECTION_DEPTH);
+			}
+			if (properties.contains(BeanProperty.IMAGE_ALBUMS)) {
+				set(getSet(image, ALBUMS_FIELD), COLLECTION_DEPTH);
+			}
+			if (properties.contains(BeanProperty.IMAGE_METADATA) && image.getMetadata() != null) {
+				set(image.getMetadata(), FIELD_DEPTH);
+			}
+			if (properties.contains(BeanProperty.IMAGE_EXIF_META) && image.getExifMetadata() != null) {
+				set(image.getExifMetadata(), FIELD_DEPTH);
+			}
+			if (properties.contains(BeanProperty.IMAGE_THUMBNAIL) && image.getThumbnail() != null) {
+				set(image.getThumbnail(), FIELD_DEPTH);
+			}
+		}
+	}
+
+	/**
+	 * The sets of an image are only accessible as unmodifiable views, but db4o
+	 * has to store the set object itself.
+	 * 
+	 * @param name
+	 * @return the accessible field of the image class
+	 */
+	private static Field getImageField(String name) {
+		try {
+			Field field = Image.class.getDeclaredField(name);
+			field.setAccessible(true);
+			return field;
+		} catch (NoSuchFieldException nsfe) {
+			throw new IllegalStateException("unable to access field " + name, nsfe);
+		}
+	}
+
+	/**
+	 * @param image
+	 * @param field
+	 * @return the set stored within the given field of the image
+	 */
+	private static Object getSet(Image image, Field field) {
+		try {
+			return field.get(image);
+		} catch (IllegalAccessException iae) {
+			throw new IllegalStateException("unable to read field " + field.getName(), iae);
+		}
+	}
+
+	/**
+	 * images are activated one by one while iterating
+	 * 
+	 * @see org.jimcat.persistence.ImageRepository#iterateAll()
+	 */
+	public Iterator<Image> iterateAll() {
+		return iterate(Image.class);
+	}
+
+	/**
+	 * uses the index on the path
+	 * 
+	 * @see org.jimcat.persistence.ImageRepository#getByPath(java.io.File)
+	 */
+	public Set<Image> getByPath(File path) {
+		Query query = query(Image.class);
+		query.descend("metadata").descend("path").constrain(path.getAbsolutePath());
+		return get(query);
+	}
+
+	/**
+	 * uses the index on the checksum
+	 * 
+	 * @see org.jimcat.persistence.ImageRepository#getByChecksum(java.lang.String)
+	 */
+	public Set<Image> getByChecksum(String checksum) {
+		Query query = query(Image.class);
+		query.descend("metadata").descend("checksum").constrain(checksum);
+		return get(query);
+	}
+
+	/**
+	 * uses the index on the import id
+	 * 
+	 * @see org.jimcat.persistence.ImageRepository#getByImport(long)
+	 */
+	public Set<Image> getByImport(long importId) {
+		Query query = query(Image.class);
+		query.descend("metadata").descend("importId").constrain(Long.valueOf(importId));
+		return get(query);
+	}
+
+	/**
+	 * uses the index on the milliseconds of all joda DateTimes
+	 * 
+	 * @see org.jimcat.persistence.ImageRepository#getByDateAdded(org.joda.time.DateTime,
+	 *      org.joda.time.DateTime)
+	 */
+	public Set<Image> getByDateAdded(DateTime from, DateTime to) {
+		Query query = query(Image.class);
+		Query millis = query.descend("metadata").descend("dateAdded").descend("iMillis");
+		if (from != null) {
+			millis.constrain(Long.valueOf(from.getMillis())).greater().equal();
+		}
+		if (to != null) {
+			millis.constrain(Long.valueOf(to.getMillis())).smaller().equal();
+		}
+		return get(query);
 	}
 }
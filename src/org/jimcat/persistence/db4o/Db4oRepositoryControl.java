@@ -38,7 +38,21 @@ public class Db4oRepositoryControl implements RepositoryControl {
 	}
 	
 	/**
-	 * Close DB4O
+	 * @see org.jimcat.persistence.RepositoryControl#flush(long)
+	 */
+	public boolean flush(long timeout) {
+		return Db4oUtil.getWriteQueue().flush(timeout);
+	}
+
+	/**
+	 * @see org.jimcat.persistence.RepositoryControl#getPendingWrites()
+	 */
+	public int getPendingWrites() {
+		return Db4oUtil.getWriteQueue().getPendingCount();
+	}
+
+	/**
+	 * Close DB4O, pending writes are committed before
 	 */
 	public void shutdown() {
 		Db4oUtil.shutdown();
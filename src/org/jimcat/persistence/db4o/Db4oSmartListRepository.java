@@ -18,9 +18,11 @@
 package org.jimcat.persistence.db4o;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 import org.jimcat.model.SmartList;
+import org.jimcat.model.notification.BeanProperty;
 import org.jimcat.persistence.SmartListRepository;
 
 /**
@@ -59,4 +61,12 @@ public class Db4oSmartListRepository extends Db4oDao implements SmartListReposit
 		set(smartlists);
 	}
 
+	/**
+	 * Single properties can't be saved, the whole elements are saved instead.
+	 * 
+	 * @see org.jimcat.persistence.Repository#update(java.util.Map)
+	 */
+	public void update(Map<SmartList, Set<BeanProperty>> changes) {
+		save(changes.keySet());
+	}
 }
@@ -18,12 +18,16 @@
 package org.jimcat.persistence.db4o;
 
 import java.io.File;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import org.jimcat.model.Activation;
 import org.jimcat.model.Album;
 import org.jimcat.model.Image;
+import org.jimcat.model.ImageMetadata;
+import org.jimcat.model.Thumbnail;
 import org.jimcat.model.tag.TagGroup;
 
 import com.db4o.Db4o;
@@ -32,6 +36,12 @@ import com.db4o.config.Configuration;
 import com.db4o.config.ObjectClass;
 import com.db4o.config.ObjectField;
 import com.db4o.config.TSerializable;
+import com.db4o.events.CancellableObjectEventArgs;
+import com.db4o.events.Event4;
+import com.db4o.events.EventArgs;
+import com.db4o.events.EventListener4;
+import com.db4o.events.EventRegistry;
+import com.db4o.events.EventRegistryFactory;
 
 /**
  * DB4O Utility Class
@@ -43,10 +53,13 @@ import com.db4o.config.TSerializable;
  */
 public class Db4oUtil {
 
-	private static ExecutorService executor = Executors.newSingleThreadExecutor(new InternalThreadFactory());
+	private static ScheduledExecutorService executor = Executors
+	        .newSingleThreadScheduledExecutor(new InternalThreadFactory());
 
 	private static ObjectContainer db;
 
+	private static Db4oWriteQueue writeQueue;
+
 	private static String userHome = System.getProperty("user.home", ".");
 
 	private static String configDir = userHome + "/.jimcat/";
@@ -55,10 +68,11 @@ public class Db4oUtil {
 		Configuration config = Db4o.configure();
 
 		configJodaTime(config);
+		configIndexes(config);
+		configLazyActivation(config);
 
 		config.objectClass(TagGroup.class).cascadeOnUpdate(true);
 		config.objectClass(Album.class).cascadeOnUpdate(true);
-		config.objectClass(Image.class).cascadeOnUpdate(true);
 
 		File configDirFile = new File(configDir);
 		if (!configDirFile.exists()) {
@@ -66,6 +80,58 @@ public class Db4oUtil {
 		}
 
 		db = Db4o.openFile(configDirFile + "/jimcat.yap");
+		writeQueue = new Db4oWriteQueue(db, executor);
+		registerUpdateGuard(db);
+		Activation.setActivator(new Db4oActivator(db));
+	}
+
+	/**
+	 * index the fields used by the queries of the repositories
+	 * 
+	 * @param config
+	 */
+	private static void configIndexes(Configuration config) {
+		ObjectClass oc = config.objectClass(ImageMetadata.class);
+		oc.objectField("path").indexed(true);
+		oc.objectField("checksum").indexed(true);
+		oc.objectField("importId").indexed(true);
+
+		oc = config.objectClass(Image.class);
+		oc.objectField("rating").indexed(true);
+	}
+
+	/**
+	 * Thumbnails are loaded with the image, but their data isn't. The data is
+	 * activated on first access by the Db4oActivator.
+	 * 
+	 * ExifMetadata is a stored object of its own as well, but it stays eagerly
+	 * activated: the Exif comparators, filters and the date histogram read it
+	 * for every image of the library, so deferring it would only move the cost
+	 * to the first sort.
+	 * 
+	 * @param config
+	 */
+	private static void configLazyActivation(Configuration config) {
+		config.objectClass(Thumbnail.class).maximumActivationDepth(1);
+	}
+
+	/**
+	 * Storing an object which isn't activated would overwrite its content with
+	 * null values. This may happen if an image referring to a not activated
+	 * thumbnail is saved, so such updates are canceled.
+	 * 
+	 * @param container
+	 */
+	private static void registerUpdateGuard(final ObjectContainer container) {
+		EventRegistry registry = EventRegistryFactory.forObjectContainer(container);
+		registry.updating().addListener(new EventListener4() {
+			public void onEvent(Event4 e, EventArgs args) {
+				CancellableObjectEventArgs cancellable = (CancellableObjectEventArgs) args;
+				if (!container.ext().isActive(cancellable.object())) {
+					cancellable.cancel();
+				}
+			}
+		});
 	}
 
 	private static void configJodaTime(Configuration config) {
@@ -142,11 +208,34 @@ public class Db4oUtil {
 
 	/**
 	 * 
-	 * shutdown the database
+	 * @return the queue used to write to the database
+	 */
+	public static Db4oWriteQueue getWriteQueue() {
+		return writeQueue;
+	}
+
+	/**
+	 * 
+	 * shutdown the database. All pending writes and tasks are finished before,
+	 * the database isn't closed while the executor is still running.
 	 */
 	public static void shutdown() {
+		Activation.setActivator(null);
+		writeQueue.flush();
 		executor.shutdown();
+		boolean interrupted = false;
+		while (!executor.isTerminated()) {
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ie) {
+				// closing while writing would lose data
+				interrupted = true;
+			}
+		}
 		db.close();
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	/**
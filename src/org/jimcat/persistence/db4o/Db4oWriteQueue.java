@@ -0,0 +1,330 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.db4o;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jimcat.services.configuration.Configuration;
+
+import com.db4o.ObjectContainer;
+
+/**
+ * A write-behind queue for DB4O.
+ * 
+ * Saves and deletes are not executed immediately. They are collected by object
+ * identity, so saving the same object several times results in a single
+ * db.set. Saves may be limited to a depth of the object graph; a coalesced
+ * save uses the deepest of the requested depths.
+ * 
+ * Pending operations are written by the db4o executor at most
+ * db4o.flush.delay milliseconds (default 500) after the first of them was
+ * queued, or as soon as db4o.flush.batch (default 1000) operations are
+ * pending. Every batch is committed once.
+ * 
+ * flush() is a barrier: it returns after all operations queued before have
+ * been committed. flush(timeout) gives up waiting after the given time, the
+ * operations are written anyway.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class Db4oWriteQueue {
+
+	/**
+	 * the kind of a pending operation
+	 */
+	private enum Operation {
+		SET, DELETE;
+	}
+
+	/**
+	 * use the update depth configured for the class of the object
+	 */
+	public static final int DEFAULT_DEPTH = 0;
+
+	/**
+	 * the executor used to access the database
+	 */
+	private ScheduledExecutorService executor;
+
+	/**
+	 * the database
+	 */
+	private ObjectContainer db;
+
+	/**
+	 * guards pending and the flush flags
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * pending operations by object identity, in order of their last change
+	 */
+	private Map<IdentityKey, PendingOperation> pending = new LinkedHashMap<IdentityKey, PendingOperation>();
+
+	/**
+	 * number of operations taken by the running write, but not written yet
+	 */
+	private volatile int writing = 0;
+
+	/**
+	 * is there a flush scheduled for the pending operations
+	 */
+	private boolean flushScheduled = false;
+
+	/**
+	 * is there a flush of a full batch submitted, but not started yet
+	 */
+	private boolean flushImmediateScheduled = false;
+
+	/**
+	 * the maximum time between queueing and writing an operation
+	 */
+	private long flushDelay = Configuration.getInt("db4o.flush.delay", 500);
+
+	/**
+	 * the maximum number of operations committed at once
+	 */
+	private int batchSize = Math.max(1, Configuration.getInt("db4o.flush.batch", 1000));
+
+	/**
+	 * the task writing pending operations
+	 */
+	private Runnable flushTask = new Runnable() {
+		public void run() {
+			write();
+		}
+	};
+
+	/**
+	 * @param db -
+	 *            the database to write to
+	 * @param executor -
+	 *            the only thread writing to the database
+	 */
+	public Db4oWriteQueue(ObjectContainer db, ScheduledExecutorService executor) {
+		this.db = db;
+		this.executor = executor;
+	}
+
+	/**
+	 * queue saving the given object
+	 * 
+	 * @param o
+	 */
+	public void set(Object o) {
+		enqueue(o, Operation.SET, DEFAULT_DEPTH);
+	}
+
+	/**
+	 * queue saving the given object up to the given depth of its object graph.
+	 * Depth 1 stores the fields of the object itself, depth 2 also the fields
+	 * of objects referenced by it and so on.
+	 * 
+	 * @param o
+	 * @param depth -
+	 *            the update depth or DEFAULT_DEPTH
+	 */
+	public void set(Object o, int depth) {
+		enqueue(o, Operation.SET, depth);
+	}
+
+	/**
+	 * queue deleting the given object
+	 * 
+	 * @param o
+	 */
+	public void delete(Object o) {
+		enqueue(o, Operation.DELETE, DEFAULT_DEPTH);
+	}
+
+	/**
+	 * add an operation. A pending operation on the same object is replaced,
+	 * two saves are merged.
+	 * 
+	 * @param o
+	 * @param operation
+	 * @param depth
+	 */
+	private void enqueue(Object o, Operation operation, int depth) {
+		synchronized (lock) {
+			IdentityKey key = new IdentityKey(o);
+			PendingOperation last = pending.remove(key);
+			if (last != null && last.operation == Operation.SET && operation == Operation.SET) {
+				depth = mergeDepth(last.depth, depth);
+			}
+			pending.put(key, new PendingOperation(operation, depth));
+
+			if (pending.size() >= batchSize) {
+				// write full batch as soon as possible, once
+				if (!flushImmediateScheduled) {
+					executor.execute(flushTask);
+					flushImmediateScheduled = true;
+				}
+			} else if (!flushScheduled) {
+				// bound latency
+				executor.schedule(flushTask, flushDelay, TimeUnit.MILLISECONDS);
+			}
+			flushScheduled = true;
+		}
+	}
+
+	/**
+	 * get the depth satisfying both given depths
+	 * 
+	 * @param a
+	 * @param b
+	 * @return the merged depth
+	 */
+	private static int mergeDepth(int a, int b) {
+		if (a == DEFAULT_DEPTH || b == DEFAULT_DEPTH) {
+			return DEFAULT_DEPTH;
+		}
+		return Math.max(a, b);
+	}
+
+	/**
+	 * write all pending operations and wait until they have been committed
+	 */
+	public void flush() {
+		Future<?> barrier = executor.submit(flushTask);
+		boolean interrupted = false;
+		while (true) {
+			try {
+				barrier.get();
+				break;
+			} catch (InterruptedException ie) {
+				// the flush has to be finished anyway
+				interrupted = true;
+			} catch (ExecutionException ee) {
+				throw new IllegalStateException("Couldn't write to database", ee.getCause());
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * write all pending operations and wait until they have been committed,
+	 * but not longer than the given time
+	 * 
+	 * @param timeout -
+	 *            the maximum time to wait in ms
+	 * @return true if all operations queued before have been committed
+	 */
+	public boolean flush(long timeout) {
+		Future<?> barrier = executor.submit(flushTask);
+		try {
+			barrier.get(timeout, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (TimeoutException te) {
+			return false;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException ee) {
+			throw new IllegalStateException("Couldn't write to database", ee.getCause());
+		}
+	}
+
+	/**
+	 * @return the number of operations not written yet, including those of a
+	 *         running write
+	 */
+	public int getPendingCount() {
+		synchronized (lock) {
+			return pending.size() + writing;
+		}
+	}
+
+	/**
+	 * write all pending operations in batches. Must be executed by the
+	 * executor.
+	 */
+	private void write() {
+		List<Entry<IdentityKey, PendingOperation>> operations;
+		synchronized (lock) {
+			operations = new ArrayList<Entry<IdentityKey, PendingOperation>>(pending.entrySet());
+			pending = new LinkedHashMap<IdentityKey, PendingOperation>();
+			flushScheduled = false;
+			flushImmediateScheduled = false;
+			writing = operations.size();
+		}
+
+		try {
+			int count = 0;
+			for (Entry<IdentityKey, PendingOperation> entry : operations) {
+				Object o = entry.getKey().getObject();
+				PendingOperation operation = entry.getValue();
+				if (operation.operation == Operation.DELETE) {
+					db.delete(o);
+				} else if (operation.depth == DEFAULT_DEPTH) {
+					db.set(o);
+				} else {
+					db.ext().set(o, operation.depth);
+				}
+				count++;
+				if (count % batchSize == 0) {
+					db.commit();
+					writing = operations.size() - count;
+				}
+			}
+			if (count % batchSize != 0) {
+				db.commit();
+			}
+		} finally {
+			writing = 0;
+		}
+	}
+
+	/**
+	 * a queued operation
+	 */
+	private static class PendingOperation {
+
+		/**
+		 * what to do
+		 */
+		private final Operation operation;
+
+		/**
+		 * the update depth of a save
+		 */
+		private final int depth;
+
+		/**
+		 * @param operation
+		 * @param depth
+		 */
+		public PendingOperation(Operation operation, int depth) {
+			this.operation = operation;
+			this.depth = depth;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.db4o;
+
+/**
+ * Wraps an object to compare it by identity. Used as key of maps holding
+ * persistent objects, whose equals and hashCode might change or be expensive.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+class IdentityKey {
+
+	/**
+	 * the wrapped object
+	 */
+	private Object object;
+
+	/**
+	 * @param object
+	 */
+	public IdentityKey(Object object) {
+		this.object = object;
+	}
+
+	/**
+	 * @return the wrapped object
+	 */
+	public Object getObject() {
+		return object;
+	}
+
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(object);
+	}
+
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof IdentityKey && ((IdentityKey) obj).object == object;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.log;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jimcat.model.Album;
+import org.jimcat.model.notification.BeanProperty;
+import org.jimcat.persistence.AlbumRepository;
+
+/**
+ * Album repository for the log-structured backend.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class LogAlbumRepository implements AlbumRepository {
+
+	/**
+	 * the store holding all albums
+	 */
+	private LogStore store = LogStore.getInstance();
+
+	/**
+	 * Load all albums from the persistence layer.
+	 * 
+	 * @return a set with all albums
+	 */
+	public Set<Album> getAll() {
+		Set<Album> all = store.getAlbums();
+		synchronized (all) {
+			return new HashSet<Album>(all);
+		}
+	}
+
+	/**
+	 * Delete a collection of albums
+	 * 
+	 * @param albums
+	 *            the albums to be deleted
+	 */
+	public void remove(Collection<Album> albums) {
+		store.remove(albums);
+	}
+
+	/**
+	 * Save a collection of albums
+	 * 
+	 * @param albums
+	 *            the albums to be saved
+	 */
+	public void save(Collection<Album> albums) {
+		store.save(albums);
+	}
+
+	/**
+	 * Single properties can't be saved, the whole elements are saved instead.
+	 * 
+	 * @see org.jimcat.persistence.Repository#update(java.util.Map)
+	 */
+	public void update(Map<Album, Set<BeanProperty>> changes) {
+		save(changes.keySet());
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.log;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.jimcat.model.Image;
+import org.jimcat.model.notification.BeanProperty;
+import org.jimcat.persistence.ImageQueries;
+import org.jimcat.persistence.ImageRepository;
+import org.joda.time.DateTime;
+
+/**
+ * Image repository for the log-structured backend. All images are kept in
+ * memory, queries are answered by ImageQueries.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class LogImageRepository implements ImageRepository {
+
+	/**
+	 * the store holding all images
+	 */
+	private LogStore store = LogStore.getInstance();
+
+	/**
+	 * the images of the store, synchronize on it for iteration
+	 */
+	private Set<Image> images = store.getImages();
+
+	/**
+	 * Load all images from the persistence layer.
+	 * 
+	 * @return a set of all images
+	 */
+	public Set<Image> getAll() {
+		synchronized (images) {
+			return new HashSet<Image>(images);
+		}
+	}
+
+	/**
+	 * Remove a collection of images
+	 * 
+	 * @param images
+	 *            the images to be removed
+	 */
+	public void remove(Collection<Image> images) {
+		store.remove(images);
+	}
+
+	/**
+	 * Save a collection of images
+	 * 
+	 * @param images
+	 *            the images to be saved
+	 */
+	public void save(Collection<Image> images) {
+		store.save(images);
+	}
+
+	/**
+	 * Single properties can't be saved, the whole elements are saved instead.
+	 * Multiple updates of an image are written once anyway.
+	 * 
+	 * @see org.jimcat.persistence.Repository#update(java.util.Map)
+	 */
+	public void update(Map<Image, Set<BeanProperty>> changes) {
+		save(changes.keySet());
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#iterateAll()
+	 */
+	public Iterator<Image> iterateAll() {
+		return getAll().iterator();
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByPath(java.io.File)
+	 */
+	public Set<Image> getByPath(File path) {
+		synchronized (images) {
+			return ImageQueries.getByPath(images, path);
+		}
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByChecksum(java.lang.String)
+	 */
+	public Set<Image> getByChecksum(String checksum) {
+		synchronized (images) {
+			return ImageQueries.getByChecksum(images, checksum);
+		}
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByImport(long)
+	 */
+	public Set<Image> getByImport(long importId) {
+		synchronized (images) {
+			return ImageQueries.getByImport(images, importId);
+		}
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByDateAdded(org.joda.time.DateTime,
+	 *      org.joda.time.DateTime)
+	 */
+	public Set<Image> getByDateAdded(DateTime from, DateTime to) {
+		synchronized (images) {
+			return ImageQueries.getByDateAdded(images, from, to);
+		}
+	}
+}
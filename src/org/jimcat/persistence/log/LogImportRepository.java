@@ -0,0 +1,96 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.log;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jimcat.model.ImportRecord;
+import org.jimcat.model.notification.BeanProperty;
+import org.jimcat.persistence.ImportRepository;
+
+/**
+ * Import repository for the log-structured backend.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class LogImportRepository implements ImportRepository {
+
+	/**
+	 * the store holding all import records
+	 */
+	private LogStore store = LogStore.getInstance();
+
+	/**
+	 * Load all import records from the persistence layer.
+	 * 
+	 * @return a set with all import records
+	 */
+	public Set<ImportRecord> getAll() {
+		Set<ImportRecord> all = store.getImports();
+		synchronized (all) {
+			return new HashSet<ImportRecord>(all);
+		}
+	}
+
+	/**
+	 * get the highest import id stored
+	 * 
+	 * @see org.jimcat.persistence.ImportRepository#getMaxImportId()
+	 */
+	public long getMaxImportId() {
+		long max = -1;
+		for (ImportRecord record : getAll()) {
+			max = Math.max(max, record.getImportId());
+		}
+		return max;
+	}
+
+	/**
+	 * Delete a collection of import records
+	 * 
+	 * @param records
+	 *            the records to be deleted
+	 */
+	public void remove(Collection<ImportRecord> records) {
+		store.remove(records);
+	}
+
+	/**
+	 * Save a collection of import records
+	 * 
+	 * @param records
+	 *            the records to be saved
+	 */
+	public void save(Collection<ImportRecord> records) {
+		store.save(records);
+	}
+
+	/**
+	 * Single properties can't be saved, the whole elements are saved instead.
+	 * 
+	 * @see org.jimcat.persistence.Repository#update(java.util.Map)
+	 */
+	public void update(Map<ImportRecord, Set<BeanProperty>> changes) {
+		save(changes.keySet());
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jimcat.model.Image;
+import org.jimcat.model.tag.TagGroup;
+import org.jimcat.persistence.db4o.Db4oAlbumRepository;
+import org.jimcat.persistence.db4o.Db4oImageRepository;
+import org.jimcat.persistence.db4o.Db4oImportRepository;
+import org.jimcat.persistence.db4o.Db4oSmartListRepository;
+import org.jimcat.persistence.db4o.Db4oTagRepository;
+import org.jimcat.persistence.db4o.Db4oUtil;
+import org.jimcat.services.failurefeedback.FailureFeedbackService;
+
+/**
+ * Copies a library stored by the db4o backend into a new library log. This is
+ * done automatically the first time the log backend is used, but may be run
+ * manually as well.
+ * 
+ * The log is written to a temporary file first, so an interrupted migration is
+ * repeated on next start. The db4o database is left untouched.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public final class LogMigration {
+
+	/**
+	 * name of the db4o database file
+	 */
+	private static final String DB4O_FILE = "jimcat.yap";
+
+	/**
+	 * number of images saved at once
+	 */
+	private static final int CHUNK_SIZE = 200;
+
+	/**
+	 * utility class
+	 */
+	private LogMigration() {
+	}
+
+	/**
+	 * @param directory -
+	 *            the configuration directory
+	 * @return true if there is a db4o database to migrate
+	 */
+	public static boolean isRequired(File directory) {
+		return new File(directory, DB4O_FILE).exists();
+	}
+
+	/**
+	 * copy the db4o library into the given log file
+	 * 
+	 * @param log
+	 * @return the number of migrated images
+	 * @throws IOException
+	 */
+	public static int migrate(File log) throws IOException {
+		File tmp = new File(log.getPath() + ".migrating");
+		if (tmp.exists() && !tmp.delete()) {
+			throw new IOException("unable to delete " + tmp);
+		}
+
+		LogStore store = new LogStore(tmp);
+		int count = 0;
+		try {
+			TagGroup root = new Db4oTagRepository().getTagTree();
+			if (root != null) {
+				new LogTagRepository(store).save(root);
+			}
+			store.save(new Db4oAlbumRepository().getAll());
+			store.save(new Db4oSmartListRepository().getAll());
+			store.save(new Db4oImportRepository().getAll());
+
+			List<Image> chunk = new ArrayList<Image>(CHUNK_SIZE);
+			Iterator<Image> iter = new Db4oImageRepository().iterateAll();
+			while (iter.hasNext()) {
+				Image image = iter.next();
+				// thumbnails are activated lazily
+				image.getThumbnail();
+				chunk.add(image);
+				if (chunk.size() >= CHUNK_SIZE) {
+					store.save(chunk);
+					count += chunk.size();
+					chunk.clear();
+				}
+			}
+			store.save(chunk);
+			count += chunk.size();
+		} finally {
+			store.close();
+			Db4oUtil.shutdown();
+		}
+
+		if (!tmp.renameTo(log)) {
+			throw new IOException("unable to rename " + tmp + " to " + log);
+		}
+		return count;
+	}
+
+	/**
+	 * migrate the db4o library of the current user, if there is no library log
+	 * yet. Failures are reported like those of the store.
+	 * 
+	 * @param args
+	 */
+	public static void main(String args[]) {
+		FailureFeedbackService.startUp();
+		File directory = new File(System.getProperty("user.home", "."), ".jimcat");
+		File log = new File(directory, LogStore.LOG_FILE);
+		try {
+			if (log.exists()) {
+				throw new IOException(log + " exists already");
+			}
+			if (!isRequired(directory)) {
+				throw new IOException("There is no db4o library to migrate");
+			}
+			migrate(log);
+		} catch (IOException ioe) {
+			LogStore.reportFailure("Unable to migrate the db4o library", ioe);
+		}
+	}
+}
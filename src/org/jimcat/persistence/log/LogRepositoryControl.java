@@ -0,0 +1,64 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.log;
+
+import org.jimcat.persistence.RepositoryControl;
+
+/**
+ * Repository control of the log-structured backend.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class LogRepositoryControl implements RepositoryControl {
+
+	/**
+	 * a new log is empty and needs the default configuration
+	 * 
+	 * @see org.jimcat.persistence.RepositoryControl#configurationExists()
+	 */
+	public boolean configurationExists() {
+		return !LogStore.getInstance().isEmpty();
+	}
+
+	/**
+	 * @see org.jimcat.persistence.RepositoryControl#flush(long)
+	 */
+	public boolean flush(long timeout) {
+		return LogStore.getInstance().flush(timeout);
+	}
+
+	/**
+	 * doesn't reopen the log after shutdown
+	 * 
+	 * @see org.jimcat.persistence.RepositoryControl#getPendingWrites()
+	 */
+	public int getPendingWrites() {
+		return LogStore.getPendingWrites();
+	}
+
+	/**
+	 * write all pending records and close the log
+	 * 
+	 * @see org.jimcat.persistence.RepositoryControl#shutdown()
+	 */
+	public void shutdown() {
+		LogStore.shutdown();
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.log;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jimcat.model.SmartList;
+import org.jimcat.model.notification.BeanProperty;
+import org.jimcat.persistence.SmartListRepository;
+
+/**
+ * SmartList repository for the log-structured backend.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class LogSmartListRepository implements SmartListRepository {
+
+	/**
+	 * the store holding all smart lists
+	 */
+	private LogStore store = LogStore.getInstance();
+
+	/**
+	 * Load all smart lists from the persistence layer.
+	 * 
+	 * @return a set with all smart lists
+	 */
+	public Set<SmartList> getAll() {
+		Set<SmartList> all = store.getSmartLists();
+		synchronized (all) {
+			return new HashSet<SmartList>(all);
+		}
+	}
+
+	/**
+	 * Delete a collection of smart lists
+	 * 
+	 * @param smartLists
+	 *            the smart lists to be deleted
+	 */
+	public void remove(Collection<SmartList> smartLists) {
+		store.remove(smartLists);
+	}
+
+	/**
+	 * Save a collection of smart lists
+	 * 
+	 * @param smartLists
+	 *            the smart lists to be saved
+	 */
+	public void save(Collection<SmartList> smartLists) {
+		store.save(smartLists);
+	}
+
+	/**
+	 * Single properties can't be saved, the whole elements are saved instead.
+	 * 
+	 * @see org.jimcat.persistence.Repository#update(java.util.Map)
+	 */
+	public void update(Map<SmartList, Set<BeanProperty>> changes) {
+		save(changes.keySet());
+	}
+}
@@ -0,0 +1,1068 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+
+import org.jimcat.model.Album;
+import org.jimcat.model.Image;
+import org.jimcat.model.ImportRecord;
+import org.jimcat.model.SmartList;
+import org.jimcat.model.Thumbnail;
+import org.jimcat.model.tag.TagGroup;
+import org.jimcat.persistence.TagReferences;
+import org.jimcat.persistence.xstream.EntityConverter;
+import org.jimcat.persistence.xstream.EntityRegistry;
+import org.jimcat.persistence.xstream.XStreamBackup;
+import org.jimcat.services.ServiceLocator;
+import org.jimcat.services.configuration.Configuration;
+import org.jimcat.services.failurefeedback.FailureDescription;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+
+/**
+ * A log-structured store for the whole library. All entities are kept within a
+ * single file as a sequence of records:
+ * 
+ * <pre>
+ * int length | int crc32 | long id | byte operation | payload
+ * </pre>
+ * 
+ * The payload is the XStream binary encoding of a single entity, other entities
+ * are referenced by their id (see EntityConverter). The last record of an id
+ * wins, a remove record drops it. The checksum covers all other fields of the
+ * record.
+ * 
+ * Thumbnails belong to the images referring to them. A thumbnail is removed as
+ * soon as no image refers to it any more.
+ * 
+ * Opening the store reads the file sequentially, builds an index of the live
+ * records and decodes them. A torn or corrupted tail is cut off. Changes are
+ * encoded immediately by the calling thread, but written by a single writer
+ * thread in batches. Multiple changes of the same entity within a batch are
+ * written once. A batch is written after log.flush.delay ms (default 200) or as
+ * soon as log.flush.batch records (default 500) are pending.
+ * 
+ * Records superseded by later ones are dead. If dead records take more space
+ * than live ones (and at least log.compact.size bytes), the writer copies all
+ * live records to a new file and replaces the log with it. If a batch can't be
+ * written, it stays pending and is retried later.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class LogStore {
+
+	/**
+	 * name of the log file
+	 */
+	static final String LOG_FILE = "library.log";
+
+	/**
+	 * the first bytes of any log file ("JIMCATL2")
+	 */
+	private static final long MAGIC = 0x4A494D4341544C32L;
+
+	/**
+	 * size of the file header
+	 */
+	private static final int FILE_HEADER_SIZE = 8;
+
+	/**
+	 * size of a record header: length, crc, id and operation
+	 */
+	private static final int RECORD_HEADER_SIZE = 17;
+
+	/**
+	 * operation code of a save record
+	 */
+	private static final byte SAVE = 1;
+
+	/**
+	 * operation code of a remove record
+	 */
+	private static final byte REMOVE = 2;
+
+	/**
+	 * the shared instance, null if not opened or closed
+	 */
+	private static volatile LogStore instance;
+
+	/**
+	 * set by shutdown(), the store is never reopened afterwards
+	 */
+	private static boolean closed = false;
+
+	/**
+	 * position and size of a live record
+	 */
+	private static class Location {
+		/**
+		 * offset of the record header within the file
+		 */
+		private long offset;
+
+		/**
+		 * size including the header
+		 */
+		private int size;
+
+		/**
+		 * @param offset
+		 * @param size
+		 */
+		private Location(long offset, int size) {
+			this.offset = offset;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * the log file
+	 */
+	private File file;
+
+	/**
+	 * random access to the log file
+	 */
+	private RandomAccessFile raf;
+
+	/**
+	 * the channel of raf
+	 */
+	private FileChannel channel;
+
+	/**
+	 * the position the next record is written at
+	 */
+	private long end;
+
+	/**
+	 * ids of all entities
+	 */
+	private EntityRegistry registry = new EntityRegistry();
+
+	/**
+	 * XStream configured to write single entities
+	 */
+	private XStream stream;
+
+	/**
+	 * the entity converter used by stream
+	 */
+	private EntityConverter converter;
+
+	/**
+	 * location of the live record of each id, only accessed by the writer
+	 */
+	private Map<Long, Location> index = new HashMap<Long, Location>();
+
+	/**
+	 * space used by live records
+	 */
+	private long liveBytes = 0;
+
+	/**
+	 * space used by superseded records
+	 */
+	private long deadBytes = 0;
+
+	/**
+	 * id of the thumbnail of each image id
+	 */
+	private Map<Long, Long> thumbnails = new HashMap<Long, Long>();
+
+	/**
+	 * number of images referring to each thumbnail id
+	 */
+	private Map<Long, Integer> thumbnailUsage = new HashMap<Long, Integer>();
+
+	/**
+	 * encoded records not written yet by id
+	 */
+	private Map<Long, byte[]> pending = new LinkedHashMap<Long, byte[]>();
+
+	/**
+	 * number of records taken by the running write, but not written yet
+	 */
+	private volatile int writing = 0;
+
+	/**
+	 * true if a flush of the pending records is scheduled
+	 */
+	private boolean flushScheduled = false;
+
+	/**
+	 * the single thread writing to the file
+	 */
+	private ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "JimCat Log Writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * the flush task
+	 */
+	private Callable<Object> flushTask = new Callable<Object>() {
+		public Object call() throws IOException {
+			write();
+			return null;
+		}
+	};
+
+	/**
+	 * ms to wait for further changes before writing
+	 */
+	private long flushDelay = Configuration.getInt("log.flush.delay", 200);
+
+	/**
+	 * number of pending records written immediately
+	 */
+	private int flushBatch = Configuration.getInt("log.flush.batch", 500);
+
+	/**
+	 * minimum size of dead records worth a compaction
+	 */
+	private long compactionSize = Configuration.getInt("log.compact.size", 8 * 1024 * 1024);
+
+	/**
+	 * force written batches to disk
+	 */
+	private boolean sync = "true".equals(Configuration.getString("log.sync", "true"));
+
+	/**
+	 * the root of the tag tree
+	 */
+	private TagGroup tagRoot;
+
+	/**
+	 * all images
+	 */
+	private Set<Image> images = Collections.synchronizedSet(new HashSet<Image>());
+
+	/**
+	 * all albums
+	 */
+	private Set<Album> albums = Collections.synchronizedSet(new HashSet<Album>());
+
+	/**
+	 * all smart lists
+	 */
+	private Set<SmartList> smartLists = Collections.synchronizedSet(new HashSet<SmartList>());
+
+	/**
+	 * all import records
+	 */
+	private Set<ImportRecord> imports = Collections.synchronizedSet(new HashSet<ImportRecord>());
+
+	/**
+	 * get the store of the library within ~/.jimcat. It is opened on first
+	 * access, an existing db4o database is migrated first.
+	 * 
+	 * @return the shared instance
+	 * @throws IllegalStateException -
+	 *             if the store can't be opened or has been shut down
+	 */
+	public synchronized static LogStore getInstance() throws IllegalStateException {
+		if (closed) {
+			throw new IllegalStateException("library log has been shut down");
+		}
+		if (instance == null) {
+			File directory = new File(System.getProperty("user.home", "."), ".jimcat");
+			try {
+				File log = new File(directory, LOG_FILE);
+				if (!log.exists() && LogMigration.isRequired(directory)) {
+					LogMigration.migrate(log);
+				}
+				instance = new LogStore(log);
+			} catch (IOException ioe) {
+				throw new IllegalStateException("unable to open library log: " + ioe.getMessage());
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * flush and close the shared instance, if it was opened
+	 */
+	public synchronized static void shutdown() {
+		closed = true;
+		if (instance != null) {
+			try {
+				instance.close();
+			} finally {
+				instance = null;
+			}
+		}
+	}
+
+	/**
+	 * Get the number of records not written by the shared instance. This
+	 * doesn't open the store and doesn't wait for a running shutdown.
+	 * 
+	 * @return the number of pending records, 0 if the store is closed
+	 */
+	public static int getPendingWrites() {
+		LogStore store = instance;
+		if (store == null) {
+			return 0;
+		}
+		return store.getPendingCount();
+	}
+
+	/**
+	 * open the given log file, it is created if necessary
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public LogStore(File file) throws IOException {
+		this.file = file;
+
+		stream = XStreamBackup.createXStream();
+		converter = new EntityConverter(registry, stream.getMapper(), stream.getReflectionProvider(), true);
+		stream.registerConverter(converter, XStream.PRIORITY_VERY_HIGH);
+
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+		open();
+		load();
+		removeUnusedThumbnails();
+	}
+
+	/**
+	 * @return the root of the tag tree or null if none was stored
+	 */
+	public TagGroup getTagRoot() {
+		return tagRoot;
+	}
+
+	/**
+	 * @return all images, synchronize on it for iteration
+	 */
+	public Set<Image> getImages() {
+		return images;
+	}
+
+	/**
+	 * @return all albums, synchronize on it for iteration
+	 */
+	public Set<Album> getAlbums() {
+		return albums;
+	}
+
+	/**
+	 * @return all smart lists, synchronize on it for iteration
+	 */
+	public Set<SmartList> getSmartLists() {
+		return smartLists;
+	}
+
+	/**
+	 * @return all import records, synchronize on it for iteration
+	 */
+	public Set<ImportRecord> getImports() {
+		return imports;
+	}
+
+	/**
+	 * @return true if nothing has been stored yet
+	 */
+	public boolean isEmpty() {
+		return tagRoot == null && images.isEmpty() && albums.isEmpty() && smartLists.isEmpty();
+	}
+
+	/**
+	 * Save the given entities and all entities they refer to which haven't been
+	 * stored yet.
+	 * 
+	 * @param entities
+	 */
+	public synchronized void save(Collection<?> entities) {
+		List<Object> queue = new ArrayList<Object>(entities);
+		while (!queue.isEmpty()) {
+			Object current = queue.remove(0);
+			long id = registry.getId(current);
+			converter.setRoot(current);
+			enqueue(id, encode(SAVE, id, marshal(current)));
+			registry.setPersisted(current);
+			addToContainer(current);
+			if (current instanceof Image) {
+				updateThumbnail(id, ((Image) current).getThumbnail());
+			}
+			for (Object discovered : converter.takeDiscovered()) {
+				if (!registry.isPersisted(discovered) && !queue.contains(discovered)) {
+					queue.add(discovered);
+				}
+			}
+		}
+		converter.setRoot(null);
+	}
+
+	/**
+	 * remove the given entities
+	 * 
+	 * @param entities
+	 */
+	public synchronized void remove(Collection<?> entities) {
+		for (Object entity : entities) {
+			removeFromContainer(entity);
+			if (registry.isPersisted(entity)) {
+				long id = registry.getId(entity);
+				if (entity instanceof Image) {
+					updateThumbnail(id, null);
+				}
+				enqueue(id, encode(REMOVE, id, new byte[0]));
+				registry.remove(entity);
+			}
+		}
+	}
+
+	/**
+	 * remember the thumbnail of an image. The one used before is removed if no
+	 * other image refers to it.
+	 * 
+	 * @param imageId
+	 * @param thumbnail -
+	 *            the current thumbnail, null if there is none
+	 */
+	private void updateThumbnail(long imageId, Thumbnail thumbnail) {
+		Long key = Long.valueOf(imageId);
+		Long old;
+		if (thumbnail == null) {
+			old = thumbnails.remove(key);
+		} else {
+			Long id = Long.valueOf(registry.getId(thumbnail));
+			old = thumbnails.put(key, id);
+			if (id.equals(old)) {
+				return;
+			}
+			Integer usage = thumbnailUsage.get(id);
+			thumbnailUsage.put(id, Integer.valueOf(usage == null ? 1 : usage.intValue() + 1));
+		}
+		if (old != null) {
+			int usage = thumbnailUsage.get(old).intValue() - 1;
+			if (usage > 0) {
+				thumbnailUsage.put(old, Integer.valueOf(usage));
+			} else {
+				thumbnailUsage.remove(old);
+				removeOrphan(old.longValue());
+			}
+		}
+	}
+
+	/**
+	 * Collect the thumbnails of all loaded images and remove all other stored
+	 * thumbnails. Older versions kept replaced thumbnails.
+	 */
+	private synchronized void removeUnusedThumbnails() {
+		synchronized (images) {
+			for (Image image : images) {
+				updateThumbnail(registry.getId(image), image.getThumbnail());
+			}
+		}
+		for (Long id : new ArrayList<Long>(index.keySet())) {
+			if (registry.get(id.longValue()) instanceof Thumbnail && !thumbnailUsage.containsKey(id)) {
+				removeOrphan(id.longValue());
+			}
+		}
+	}
+
+	/**
+	 * remove an entity nobody refers to any more
+	 * 
+	 * @param id
+	 */
+	private void removeOrphan(long id) {
+		Object entity = registry.get(id);
+		if (entity != null && registry.isPersisted(entity)) {
+			enqueue(id, encode(REMOVE, id, new byte[0]));
+			registry.remove(entity);
+		}
+	}
+
+	/**
+	 * write all pending records and wait until they are on disk
+	 * 
+	 * @throws IllegalStateException -
+	 *             if the records couldn't be written, they stay pending
+	 */
+	public void flush() throws IllegalStateException {
+		Future<?> barrier = writer.submit(flushTask);
+		boolean interrupted = false;
+		while (true) {
+			try {
+				barrier.get();
+				break;
+			} catch (InterruptedException ie) {
+				// the flush has to be finished anyway
+				interrupted = true;
+			} catch (ExecutionException ee) {
+				throw new IllegalStateException("unable to write library log", ee.getCause());
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * write all pending records and wait until they are on disk, but not
+	 * longer than the given time
+	 * 
+	 * @param timeout -
+	 *            the maximum time to wait in ms
+	 * @return true if all records saved before are on disk
+	 * @throws IllegalStateException -
+	 *             if the records couldn't be written, they stay pending
+	 */
+	public boolean flush(long timeout) throws IllegalStateException {
+		try {
+			writer.submit(flushTask).get(timeout, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (TimeoutException te) {
+			return false;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException ee) {
+			throw new IllegalStateException("unable to write library log", ee.getCause());
+		}
+	}
+
+	/**
+	 * @return the number of records not written yet
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size() + writing;
+	}
+
+	/**
+	 * flush pending records and close the file. The file is closed even if
+	 * the flush fails, a retry of the failed records is awaited.
+	 * 
+	 * @throws IllegalStateException -
+	 *             if pending records couldn't be written
+	 */
+	public void close() throws IllegalStateException {
+		try {
+			flush();
+		} finally {
+			closeFile();
+		}
+	}
+
+	/**
+	 * stop the writer and close the file
+	 */
+	private void closeFile() {
+		writer.shutdown();
+		boolean interrupted = false;
+		while (!writer.isTerminated()) {
+			try {
+				writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ie) {
+				// a running compaction has to be finished
+				interrupted = true;
+			}
+		}
+		try {
+			channel.close();
+			raf.close();
+		} catch (IOException ioe) {
+			// all records are written already
+			reportFailure("Unable to close the library log", ioe);
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * report a failure through the failure feedback service
+	 * 
+	 * @param msg
+	 * @param cause
+	 */
+	static void reportFailure(String msg, Throwable cause) {
+		FailureDescription description = new FailureDescription(cause, "Library Log", msg);
+		ServiceLocator.getFailureFeedbackService().reportFailure(description);
+	}
+
+	/**
+	 * add an encoded record to the pending ones and schedule the writer
+	 * 
+	 * @param id
+	 * @param record
+	 */
+	private void enqueue(long id, byte record[]) {
+		Long key = Long.valueOf(id);
+		// keep the order of first modification
+		pending.put(key, record);
+
+		if (pending.size() >= flushBatch) {
+			writer.submit(flushTask);
+			flushScheduled = true;
+		} else if (!flushScheduled) {
+			writer.schedule(flushTask, flushDelay, TimeUnit.MILLISECONDS);
+			flushScheduled = true;
+		}
+	}
+
+	/**
+	 * write all pending records using a single gathering write. Runs on the
+	 * writer thread only.
+	 * 
+	 * @throws IOException
+	 */
+	private void write() throws IOException {
+		Map<Long, byte[]> batch;
+		synchronized (this) {
+			flushScheduled = false;
+			if (pending.isEmpty()) {
+				return;
+			}
+			batch = pending;
+			pending = new LinkedHashMap<Long, byte[]>();
+			writing = batch.size();
+		}
+
+		ByteBuffer buffers[] = new ByteBuffer[batch.size()];
+		long total = 0;
+		int i = 0;
+		for (byte record[] : batch.values()) {
+			buffers[i++] = ByteBuffer.wrap(record);
+			total += record.length;
+		}
+
+		try {
+			// drop what a failed write may have left behind
+			if (channel.size() > end) {
+				channel.truncate(end);
+			}
+			channel.position(end);
+			long written = 0;
+			while (written < total) {
+				written += channel.write(buffers);
+			}
+			if (sync) {
+				channel.force(false);
+			}
+		} catch (IOException ioe) {
+			requeue(batch, ioe);
+			throw ioe;
+		} catch (RuntimeException re) {
+			requeue(batch, re);
+			throw re;
+		} finally {
+			writing = 0;
+		}
+
+		long offset = end;
+		for (Map.Entry<Long, byte[]> entry : batch.entrySet()) {
+			byte record[] = entry.getValue();
+			updateIndex(entry.getKey(), record[RECORD_HEADER_SIZE - 1], offset, record.length);
+			offset += record.length;
+		}
+		end = offset;
+
+		if (deadBytes > liveBytes && deadBytes >= compactionSize) {
+			compact();
+		}
+	}
+
+	/**
+	 * Put a batch which couldn't be written back in front of the pending
+	 * records and schedule a retry. Records changed meanwhile keep their newer
+	 * version.
+	 * 
+	 * @param batch
+	 * @param cause -
+	 *            the reason of the failed write
+	 */
+	private synchronized void requeue(Map<Long, byte[]> batch, Exception cause) {
+		reportFailure("Unable to write the library log, " + batch.size() + " changes will be retried", cause);
+		Map<Long, byte[]> merged = new LinkedHashMap<Long, byte[]>(batch);
+		merged.putAll(pending);
+		pending = merged;
+		if (!flushScheduled) {
+			try {
+				writer.schedule(flushTask, flushDelay, TimeUnit.MILLISECONDS);
+				flushScheduled = true;
+			} catch (RejectedExecutionException ree) {
+				// closing - records stay pending
+			}
+		}
+	}
+
+	/**
+	 * update the index for a record written or read
+	 * 
+	 * @param id
+	 * @param operation
+	 * @param offset
+	 * @param size
+	 */
+	private void updateIndex(Long id, byte operation, long offset, int size) {
+		Location old;
+		if (operation == SAVE) {
+			old = index.put(id, new Location(offset, size));
+			liveBytes += size;
+		} else {
+			old = index.remove(id);
+			// the remove record itself is dead as well
+			deadBytes += size;
+		}
+		if (old != null) {
+			liveBytes -= old.size;
+			deadBytes += old.size;
+		}
+	}
+
+	/**
+	 * copy all live records into a new file and replace the log with it. Runs
+	 * on the writer thread only.
+	 * 
+	 * @throws IOException
+	 */
+	private void compact() throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		RandomAccessFile target = new RandomAccessFile(tmp, "rw");
+		SortedMap<Long, Long> byOffset = new TreeMap<Long, Long>();
+		for (Map.Entry<Long, Location> entry : index.entrySet()) {
+			byOffset.put(Long.valueOf(entry.getValue().offset), entry.getKey());
+		}
+
+		Map<Long, Location> newIndex = new HashMap<Long, Location>();
+		long position = FILE_HEADER_SIZE;
+		try {
+			FileChannel out = target.getChannel();
+			out.truncate(0);
+			writeHeader(out);
+			for (Long id : byOffset.values()) {
+				Location location = index.get(id);
+				long copied = 0;
+				while (copied < location.size) {
+					copied += channel.transferTo(location.offset + copied, location.size - copied, out);
+				}
+				newIndex.put(id, new Location(position, location.size));
+				position += location.size;
+			}
+			out.force(true);
+		} finally {
+			target.close();
+		}
+
+		channel.close();
+		raf.close();
+		if (!file.delete()) {
+			// still in use - keep on using the old file
+			raf = new RandomAccessFile(file, "rw");
+			channel = raf.getChannel();
+			tmp.delete();
+			return;
+		}
+		if (!tmp.renameTo(file)) {
+			throw new IOException("unable to replace " + file + " by compacted log");
+		}
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		end = position;
+		index = newIndex;
+		deadBytes = 0;
+	}
+
+	/**
+	 * open the file and check or write the file header
+	 * 
+	 * @throws IOException
+	 */
+	private void open() throws IOException {
+		// a compaction may have been interrupted after the old file was deleted
+		File tmp = new File(file.getPath() + ".tmp");
+		if (!file.exists() && tmp.exists()) {
+			tmp.renameTo(file);
+		}
+
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		if (channel.size() == 0) {
+			writeHeader(channel);
+			channel.force(true);
+		} else {
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			channel.read(header, 0);
+			header.flip();
+			long magic = 0;
+			if (header.remaining() == FILE_HEADER_SIZE) {
+				magic = header.getLong();
+			}
+			if (magic != MAGIC) {
+				channel.close();
+				raf.close();
+				throw new IOException(file + " is no JimCat library log");
+			}
+		}
+		end = FILE_HEADER_SIZE;
+	}
+
+	/**
+	 * write the file header
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeHeader(FileChannel out) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+		header.putLong(MAGIC);
+		header.flip();
+		out.write(header, 0);
+	}
+
+	/**
+	 * scan the file, build the index and decode all live records
+	 * 
+	 * @throws IOException
+	 */
+	private void load() throws IOException {
+		long size = channel.size();
+		channel.position(FILE_HEADER_SIZE);
+		// not closed, it would close the channel
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel),
+		        64 * 1024));
+
+		// the offset of the last record of each live id, in file order
+		Map<Long, Long> live = new LinkedHashMap<Long, Long>();
+		CRC32 crc = new CRC32();
+		byte header[] = new byte[RECORD_HEADER_SIZE];
+		byte chunk[] = new byte[64 * 1024];
+		long position = FILE_HEADER_SIZE;
+		while (size - position >= RECORD_HEADER_SIZE) {
+			in.readFully(header);
+			ByteBuffer fields = ByteBuffer.wrap(header);
+			int length = fields.getInt();
+			int checksum = fields.getInt();
+			long id = fields.getLong();
+			byte operation = fields.get();
+			if (length < 0 || length > size - position - RECORD_HEADER_SIZE
+			        || (operation != SAVE && operation != REMOVE)) {
+				break;
+			}
+
+			// check the record without keeping the payload
+			crc.reset();
+			crc.update(header, 0, 4);
+			crc.update(header, 8, RECORD_HEADER_SIZE - 8);
+			int remaining = length;
+			while (remaining > 0) {
+				int count = Math.min(remaining, chunk.length);
+				in.readFully(chunk, 0, count);
+				crc.update(chunk, 0, count);
+				remaining -= count;
+			}
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+
+			Long key = Long.valueOf(id);
+			updateIndex(key, operation, position, RECORD_HEADER_SIZE + length);
+			live.remove(key);
+			if (operation == SAVE) {
+				live.put(key, Long.valueOf(position));
+			}
+			position += RECORD_HEADER_SIZE + length;
+		}
+		end = position;
+
+		if (end < size) {
+			String msg = "Ignoring " + (size - end) + " bytes of an incomplete record in " + file;
+			reportFailure(msg, new IOException(msg));
+			channel.truncate(end);
+		}
+
+		ByteBuffer lengthField = ByteBuffer.allocate(4);
+		for (Map.Entry<Long, Long> entry : live.entrySet()) {
+			long offset = entry.getValue().longValue();
+			lengthField.clear();
+			read(lengthField, offset);
+			ByteBuffer payload = ByteBuffer.allocate(lengthField.getInt(0));
+			read(payload, offset + RECORD_HEADER_SIZE);
+			apply(entry.getKey().longValue(), unmarshal(payload.array()));
+		}
+
+		if (!live.isEmpty()) {
+			TagReferences.repair(tagRoot, images);
+		}
+	}
+
+	/**
+	 * fill the given buffer from the file
+	 * 
+	 * @param buffer
+	 * @param offset -
+	 *            the position within the file
+	 * @throws IOException
+	 */
+	private void read(ByteBuffer buffer, long offset) throws IOException {
+		long position = offset;
+		while (buffer.hasRemaining()) {
+			int count = channel.read(buffer, position);
+			if (count < 0) {
+				throw new EOFException("unexpected end of " + file);
+			}
+			position += count;
+		}
+	}
+
+	/**
+	 * merge a decoded entity into the registered instance
+	 * 
+	 * @param id
+	 * @param entity
+	 */
+	private void apply(long id, Object entity) {
+		Object existing = registry.get(id);
+		if (existing == null) {
+			registry.register(id, entity);
+		} else if (existing != entity) {
+			// others refer to the registered instance
+			converter.copyFields(entity, existing);
+			entity = existing;
+		}
+		addToContainer(entity);
+	}
+
+	/**
+	 * add a stored entity to its container
+	 * 
+	 * @param entity
+	 */
+	private void addToContainer(Object entity) {
+		if (entity instanceof Image) {
+			images.add((Image) entity);
+		} else if (entity instanceof Album) {
+			albums.add((Album) entity);
+		} else if (entity instanceof SmartList) {
+			smartLists.add((SmartList) entity);
+		} else if (entity instanceof ImportRecord) {
+			imports.add((ImportRecord) entity);
+		} else if (entity instanceof TagGroup && ((TagGroup) entity).isRoot()) {
+			tagRoot = (TagGroup) entity;
+		}
+	}
+
+	/**
+	 * remove a deleted entity from its container
+	 * 
+	 * @param entity
+	 */
+	private void removeFromContainer(Object entity) {
+		images.remove(entity);
+		albums.remove(entity);
+		smartLists.remove(entity);
+		imports.remove(entity);
+	}
+
+	/**
+	 * @param entity
+	 * @return the XStream binary encoding of the entity
+	 */
+	private byte[] marshal(Object entity) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		BinaryStreamWriter out = new BinaryStreamWriter(buffer);
+		stream.marshal(entity, out);
+		out.flush();
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * @param payload
+	 * @return the decoded entity
+	 */
+	private Object unmarshal(byte payload[]) {
+		return stream.unmarshal(new BinaryStreamReader(new ByteArrayInputStream(payload)));
+	}
+
+	/**
+	 * @param operation
+	 * @param id
+	 * @param payload
+	 * @return the complete record
+	 */
+	private static byte[] encode(byte operation, long id, byte payload[]) {
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+		record.putInt(payload.length);
+		record.putInt(0);
+		record.putLong(id);
+		record.put(operation);
+		record.put(payload);
+		record.putInt(4, checksum(record.array()));
+		return record.array();
+	}
+
+	/**
+	 * @param record -
+	 *            a complete record
+	 * @return the checksum of all fields but the checksum itself
+	 */
+	private static int checksum(byte record[]) {
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, 4);
+		crc.update(record, 8, record.length - 8);
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jimcat.model.tag.TagGroup;
+import org.jimcat.persistence.TagRepository;
+
+/**
+ * Tag repository for the log-structured backend.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class LogTagRepository implements TagRepository {
+
+	/**
+	 * the store holding the tag tree
+	 */
+	private LogStore store;
+
+	/**
+	 * a repository for the shared store
+	 */
+	public LogTagRepository() {
+		this(LogStore.getInstance());
+	}
+
+	/**
+	 * @param store -
+	 *            the store to use
+	 */
+	LogTagRepository(LogStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Get the root element of the tag tree
+	 * 
+	 * @return the root tag group
+	 */
+	public TagGroup getTagTree() {
+		return store.getTagRoot();
+	}
+
+	/**
+	 * Save the tag tree
+	 * 
+	 * @param tagGroup
+	 */
+	public void save(TagGroup tagGroup) {
+		List<TagGroup> groups = new ArrayList<TagGroup>();
+		collect(tagGroup, groups);
+		store.save(groups);
+	}
+
+	/**
+	 * @param group
+	 * @param groups -
+	 *            all groups of the given subtree are added to this list
+	 */
+	private void collect(TagGroup group, List<TagGroup> groups) {
+		groups.add(group);
+		for (TagGroup sub : group.getSubTags()) {
+			collect(sub, groups);
+		}
+	}
+}
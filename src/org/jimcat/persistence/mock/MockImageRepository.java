@@ -17,13 +17,20 @@
 
 package org.jimcat.persistence.mock;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import org.jimcat.model.Image;
+import org.jimcat.model.notification.BeanProperty;
+import org.jimcat.persistence.ImageQueries;
 import org.jimcat.persistence.ImageRepository;
+import org.joda.time.DateTime;
 
 /**
  * The MockImageRepository is used for Testing.
@@ -89,4 +96,48 @@ public class MockImageRepository implements ImageRepository {
 		}
 	}
 
+	/**
+	 * Single properties can't be saved, the whole elements are saved instead.
+	 * 
+	 * @see org.jimcat.persistence.Repository#update(java.util.Map)
+	 */
+	public void update(Map<Image, Set<BeanProperty>> changes) {
+		save(changes.keySet());
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#iterateAll()
+	 */
+	public Iterator<Image> iterateAll() {
+		return new ArrayList<Image>(imageList).iterator();
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByPath(java.io.File)
+	 */
+	public Set<Image> getByPath(File path) {
+		return ImageQueries.getByPath(imageList, path);
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByChecksum(java.lang.String)
+	 */
+	public Set<Image> getByChecksum(String checksum) {
+		return ImageQueries.getByChecksum(imageList, checksum);
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByImport(long)
+	 */
+	public Set<Image> getByImport(long importId) {
+		return ImageQueries.getByImport(imageList, importId);
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByDateAdded(org.joda.time.DateTime,
+	 *      org.joda.time.DateTime)
+	 */
+	public Set<Image> getByDateAdded(DateTime from, DateTime to) {
+		return ImageQueries.getByDateAdded(imageList, from, to);
+	}
 }
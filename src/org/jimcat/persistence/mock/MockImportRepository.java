@@ -0,0 +1,91 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.mock;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jimcat.model.ImportRecord;
+import org.jimcat.model.notification.BeanProperty;
+import org.jimcat.persistence.ImportRepository;
+
+/**
+ * The MockImportRepository is used for Testing.
+ * 
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class MockImportRepository implements ImportRepository {
+
+	private Set<ImportRecord> importList = new HashSet<ImportRecord>();
+
+	/**
+	 * 
+	 * return all import records in the repository
+	 * 
+	 * @see org.jimcat.persistence.Repository#getAll()
+	 */
+	public Set<ImportRecord> getAll() {
+		return Collections.unmodifiableSet(importList);
+	}
+
+	/**
+	 * get the highest import id stored
+	 * 
+	 * @see org.jimcat.persistence.ImportRepository#getMaxImportId()
+	 */
+	public long getMaxImportId() {
+		long max = -1;
+		for (ImportRecord record : importList) {
+			max = Math.max(max, record.getImportId());
+		}
+		return max;
+	}
+
+	/**
+	 * remove a collection of import records
+	 * 
+	 * @see org.jimcat.persistence.Repository#remove(java.util.Collection)
+	 */
+	public void remove(Collection<ImportRecord> records) {
+		importList.removeAll(records);
+	}
+
+	/**
+	 * save a collection of import records
+	 * 
+	 * @see org.jimcat.persistence.Repository#save(java.util.Collection)
+	 */
+	public void save(Collection<ImportRecord> records) {
+		importList.addAll(records);
+	}
+
+	/**
+	 * Single properties can't be saved, the whole elements are saved instead.
+	 * 
+	 * @see org.jimcat.persistence.Repository#update(java.util.Map)
+	 */
+	public void update(Map<ImportRecord, Set<BeanProperty>> changes) {
+		save(changes.keySet());
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.xstream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.converters.reflection.ReflectionConverter;
+import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.mapper.Mapper;
+
+/**
+ * Converter for all entities (see EntityRegistry).
+ * 
+ * Within a snapshot, every entity is written completely, tagged with its id.
+ * Within a journal record, only the root entity is written completely, all
+ * other entities are written as references to their id. Entities referenced
+ * before being persisted are collected, they need a record of their own.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class EntityConverter implements Converter {
+
+	/**
+	 * attribute holding the id of an entity written completely
+	 */
+	private static final String ID_ATTRIBUTE = "eid";
+
+	/**
+	 * attribute holding the id of a referenced entity
+	 */
+	private static final String REFERENCE_ATTRIBUTE = "eref";
+
+	/**
+	 * the registry for entity ids
+	 */
+	private EntityRegistry registry;
+
+	/**
+	 * writes and reads the fields of entities
+	 */
+	private ReflectionConverter delegate;
+
+	/**
+	 * used to create entities referenced before their record is read
+	 */
+	private ReflectionProvider reflectionProvider;
+
+	/**
+	 * true for journal records, false for snapshots
+	 */
+	private boolean journal;
+
+	/**
+	 * the root entity of the currently written journal record
+	 */
+	private Object root = null;
+
+	/**
+	 * entities referenced but not persisted yet
+	 */
+	private List<Object> discovered = new ArrayList<Object>();
+
+	/**
+	 * entities read or written completely by a snapshot
+	 */
+	private List<Object> visited = new ArrayList<Object>();
+
+	/**
+	 * @param registry
+	 * @param mapper
+	 * @param reflectionProvider
+	 * @param journal -
+	 *            true if used to read and write journal records
+	 */
+	public EntityConverter(EntityRegistry registry, Mapper mapper, ReflectionProvider reflectionProvider,
+	        boolean journal) {
+		this.registry = registry;
+		this.reflectionProvider = reflectionProvider;
+		this.journal = journal;
+		delegate = new ReflectionConverter(mapper, reflectionProvider);
+	}
+
+	/**
+	 * @param root -
+	 *            the root entity of the next journal record
+	 */
+	public void setRoot(Object root) {
+		this.root = root;
+	}
+
+	/**
+	 * @return entities referenced but not persisted since the last call
+	 */
+	public List<Object> takeDiscovered() {
+		List<Object> result = discovered;
+		discovered = new ArrayList<Object>();
+		return result;
+	}
+
+	/**
+	 * @return entities read or written completely by a snapshot since the last
+	 *         call
+	 */
+	public List<Object> takeVisited() {
+		List<Object> result = visited;
+		visited = new ArrayList<Object>();
+		return result;
+	}
+
+	/**
+	 * Copy all persistent fields, including null values. Used to merge a
+	 * record read into the registered instance of the entity, which is
+	 * referenced by others.
+	 * 
+	 * @param source
+	 * @param target
+	 */
+	public void copyFields(Object source, final Object target) {
+		reflectionProvider.visitSerializableFields(source, new ReflectionProvider.Visitor() {
+			@SuppressWarnings("unchecked")
+			public void visit(String name, Class type, Class definedIn, Object value) {
+				reflectionProvider.writeField(target, name, value, definedIn);
+			}
+		});
+	}
+
+	/**
+	 * @see com.thoughtworks.xstream.converters.ConverterMatcher#canConvert(java.lang.Class)
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean canConvert(Class type) {
+		return EntityRegistry.isEntity(type);
+	}
+
+	/**
+	 * @see com.thoughtworks.xstream.converters.Converter#marshal(java.lang.Object,
+	 *      com.thoughtworks.xstream.io.HierarchicalStreamWriter,
+	 *      com.thoughtworks.xstream.converters.MarshallingContext)
+	 */
+	public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+		long id = registry.getId(source);
+		if (journal && source != root) {
+			writer.addAttribute(REFERENCE_ATTRIBUTE, String.valueOf(id));
+			if (!registry.isPersisted(source)) {
+				discovered.add(source);
+			}
+			return;
+		}
+		writer.addAttribute(ID_ATTRIBUTE, String.valueOf(id));
+		delegate.marshal(source, writer, context);
+		if (!journal) {
+			visited.add(source);
+		}
+	}
+
+	/**
+	 * @see com.thoughtworks.xstream.converters.Converter#unmarshal(com.thoughtworks.xstream.io.HierarchicalStreamReader,
+	 *      com.thoughtworks.xstream.converters.UnmarshallingContext)
+	 */
+	public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+		String reference = reader.getAttribute(REFERENCE_ATTRIBUTE);
+		if (reference != null) {
+			return resolve(Long.parseLong(reference), context.getRequiredType());
+		}
+
+		String id = reader.getAttribute(ID_ATTRIBUTE);
+		Object result = delegate.unmarshal(reader, context);
+		if (!journal) {
+			// journal records are merged into the registered entity later
+			if (id != null) {
+				registry.register(Long.parseLong(id), result);
+			}
+			visited.add(result);
+		}
+		return result;
+	}
+
+	/**
+	 * get the entity with the given id. If it isn't known yet, an empty
+	 * instance is created. It is filled by the record following later.
+	 * 
+	 * @param id
+	 * @param type
+	 * @return the entity
+	 */
+	private Object resolve(long id, Class<?> type) {
+		synchronized (registry) {
+			Object result = registry.get(id);
+			if (result == null) {
+				result = reflectionProvider.newInstance(type);
+				registry.register(id, result);
+			}
+			return result;
+		}
+	}
+}
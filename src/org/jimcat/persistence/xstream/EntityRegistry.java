@@ -0,0 +1,162 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.xstream;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jimcat.model.Album;
+import org.jimcat.model.Image;
+import org.jimcat.model.ImportRecord;
+import org.jimcat.model.SmartList;
+import org.jimcat.model.Thumbnail;
+import org.jimcat.model.tag.TagGroup;
+
+/**
+ * Assigns stable ids to the entities of the model, so journal records can
+ * refer to other entities instead of containing them.
+ * 
+ * An entity is persisted as soon as it is contained by a completed snapshot or
+ * the journal contains a record for it.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class EntityRegistry {
+
+	/**
+	 * the classes of all entities (and their subclasses)
+	 */
+	private static final Class<?> ENTITY_CLASSES[] = new Class<?>[] { Image.class, Thumbnail.class, Album.class,
+	        SmartList.class, ImportRecord.class, TagGroup.class };
+
+	/**
+	 * ids by entity
+	 */
+	private Map<Object, Long> ids = new IdentityHashMap<Object, Long>();
+
+	/**
+	 * entities by id
+	 */
+	private Map<Long, Object> entities = new HashMap<Long, Object>();
+
+	/**
+	 * entities having a record within a completed snapshot or the journal
+	 */
+	private Map<Object, Boolean> persisted = new IdentityHashMap<Object, Boolean>();
+
+	/**
+	 * the next id to use
+	 */
+	private long nextId = 1;
+
+	/**
+	 * @param type
+	 * @return true if instances of the given type are entities
+	 */
+	public static boolean isEntity(Class<?> type) {
+		for (Class<?> entity : ENTITY_CLASSES) {
+			if (entity.isAssignableFrom(type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * get the id of an entity, a new one is assigned if necessary
+	 * 
+	 * @param entity
+	 * @return the id
+	 */
+	public synchronized long getId(Object entity) {
+		Long id = ids.get(entity);
+		if (id == null) {
+			id = Long.valueOf(nextId++);
+			ids.put(entity, id);
+			entities.put(id, entity);
+		}
+		return id.longValue();
+	}
+
+	/**
+	 * @param id
+	 * @return the entity with the given id or null
+	 */
+	public synchronized Object get(long id) {
+		return entities.get(Long.valueOf(id));
+	}
+
+	/**
+	 * register an entity loaded with the given id
+	 * 
+	 * @param id
+	 * @param entity
+	 */
+	public synchronized void register(long id, Object entity) {
+		ids.put(entity, Long.valueOf(id));
+		entities.put(Long.valueOf(id), entity);
+		persisted.put(entity, Boolean.TRUE);
+		nextId = Math.max(nextId, id + 1);
+	}
+
+	/**
+	 * forget an entity
+	 * 
+	 * @param entity
+	 */
+	public synchronized void remove(Object entity) {
+		Long id = ids.remove(entity);
+		if (id != null) {
+			entities.remove(id);
+		}
+		persisted.remove(entity);
+	}
+
+	/**
+	 * @param entity
+	 * @return true if the entity is persisted
+	 */
+	public synchronized boolean isPersisted(Object entity) {
+		return persisted.containsKey(entity);
+	}
+
+	/**
+	 * mark the given entity as persisted
+	 * 
+	 * @param entity
+	 */
+	public synchronized void setPersisted(Object entity) {
+		persisted.put(entity, Boolean.TRUE);
+	}
+
+	/**
+	 * replace the set of persisted entities, e.g. after writing a new snapshot
+	 * 
+	 * @param entities
+	 */
+	public synchronized void setPersisted(Collection<Object> entities) {
+		persisted.clear();
+		for (Object entity : entities) {
+			persisted.put(entity, Boolean.TRUE);
+		}
+	}
+}
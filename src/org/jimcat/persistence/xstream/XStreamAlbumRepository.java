@@ -19,9 +19,11 @@ package org.jimcat.persistence.xstream;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.jimcat.model.Album;
+import org.jimcat.model.notification.BeanProperty;
 import org.jimcat.persistence.AlbumRepository;
 
 /**
@@ -44,7 +46,9 @@ public class XStreamAlbumRepository implements AlbumRepository {
 	 * @return a set with all albums
 	 */
 	public Set<Album> getAll() {
-		return new HashSet<Album>(albumList);
+		synchronized (XStreamBackup.getJournal()) {
+			return new HashSet<Album>(albumList);
+		}
 	}
 
 	/**
@@ -54,7 +58,11 @@ public class XStreamAlbumRepository implements AlbumRepository {
 	 *            the albums to be deleted
 	 */
 	public void remove(Collection<Album> albums) {
-		albumList.removeAll(albums);
+		XStreamJournal journal = XStreamBackup.getJournal();
+		synchronized (journal) {
+			albumList.removeAll(albums);
+			journal.remove(albums);
+		}
 	}
 
 	/**
@@ -64,6 +72,19 @@ public class XStreamAlbumRepository implements AlbumRepository {
 	 *            the albums to be saved
 	 */
 	public void save(Collection<Album> albums) {
-		albumList.addAll(albums);
+		XStreamJournal journal = XStreamBackup.getJournal();
+		synchronized (journal) {
+			albumList.addAll(albums);
+			journal.save(albums);
+		}
+	}
+
+	/**
+	 * Single properties can't be saved, the whole elements are saved instead.
+	 * 
+	 * @see org.jimcat.persistence.Repository#update(java.util.Map)
+	 */
+	public void update(Map<Album, Set<BeanProperty>> changes) {
+		save(changes.keySet());
 	}
 }
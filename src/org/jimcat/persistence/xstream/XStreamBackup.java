@@ -20,16 +20,13 @@ package org.jimcat.persistence.xstream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import javax.imageio.ImageIO;
 
@@ -37,9 +34,11 @@ import org.apache.commons.io.IOUtils;
 import org.jimcat.model.Album;
 import org.jimcat.model.ExifMetadata;
 import org.jimcat.model.Image;
+import org.jimcat.model.ImportRecord;
 import org.jimcat.model.ImageMetadata;
 import org.jimcat.model.ImageRating;
 import org.jimcat.model.SmartList;
+import org.jimcat.model.tag.TagGroup;
 import org.jimcat.model.Thumbnail;
 import org.jimcat.model.filter.Filter;
 import org.jimcat.model.filter.HasTagsFilter;
@@ -73,17 +72,12 @@ public final class XStreamBackup {
 	 */
 	private static final boolean USE_CENTRAL_DEFAULT = true;
 
-	/**
-	 * enable output file ziping
-	 */
-	private static final boolean ENABLE_ZIP = true;
-
 	private static String userHome = System.getProperty("user.home", ".");
 
 	private static String configDir = userHome + "/.jimcat/";
 
 	/**
-	 * a filename for XML - Backup
+	 * a filename for XML - Backup, only read if there is no snapshot yet
 	 */
 	private static final String BACKUP_FILE = configDir + "demo.dat";
 
@@ -92,6 +86,11 @@ public final class XStreamBackup {
 	 */
 	private static XStreamBackup INSTANCE;
 
+	/**
+	 * snapshot and journal keeping the stored instance
+	 */
+	private static XStreamJournal journal;
+
 	/**
 	 * the tagtree
 	 */
@@ -113,32 +112,88 @@ public final class XStreamBackup {
 	public Set<SmartList> smartLists;
 
 	/**
-	 * this loads the configuration from an XML File or uses the default
-	 * configuration
+	 * the set of stored import records
+	 */
+	public Set<ImportRecord> imports;
+
+	/**
+	 * this loads the stored snapshot and journal. If there is none, the
+	 * configuration from an XML File or the default configuration is used to
+	 * start a new one.
 	 * 
 	 * @return an instance of xstream backup
+	 * @throws IllegalStateException -
+	 *             if the stored library can't be loaded. It is never replaced
+	 *             by demo data.
 	 */
-	public static XStreamBackup getInstance() {
+	public synchronized static XStreamBackup getInstance() {
 		if (INSTANCE != null) {
 			return INSTANCE;
 		}
+		XStreamJournal stored = new XStreamJournal(new File(configDir));
+		if (stored.hasData()) {
+			try {
+				INSTANCE = stored.load();
+			} catch (Exception e) {
+				throw new IllegalStateException("unable to load library from " + configDir
+				        + ", snapshot and journals are left untouched: " + e, e);
+			}
+			journal = stored;
+			return INSTANCE;
+		}
+
+		XStreamBackup data = loadInitialData();
 		try {
-			INSTANCE = loadFromFile();
+			stored.create(data);
+		} catch (IOException ioe) {
+			System.out.println("Error writing snapshot");
+			ioe.printStackTrace();
+		}
+		journal = stored;
+		INSTANCE = data;
+		return INSTANCE;
+	}
+
+	/**
+	 * @return the journal all changes have to be written to
+	 */
+	static XStreamJournal getJournal() {
+		getInstance();
+		return journal;
+	}
+
+	/**
+	 * write a final snapshot and close the journal
+	 */
+	public synchronized static void shutdown() {
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	/**
+	 * load data from the XML File or create the default configuration
+	 * 
+	 * @return the loaded data
+	 */
+	private static XStreamBackup loadInitialData() {
+		try {
+			XStreamBackup result = loadFromFile();
 			System.out.println("Demo data loaded from config file");
-			if (INSTANCE != null) {
-				return INSTANCE;
+			if (result != null) {
+				return result;
 			}
 		} catch (Exception e) {
 			System.out.println("Error loading Demo Config File - using default setting");
 		}
 		// load default config
-		INSTANCE = new XStreamBackup();
+		XStreamBackup result = new XStreamBackup();
 		if (USE_CENTRAL_DEFAULT) {
-			INSTANCE.loadCentralDefaultConfig();
+			result.loadCentralDefaultConfig();
 		} else {
-			INSTANCE.makeDefaultConfig();
+			result.makeDefaultConfig();
 		}
-		return INSTANCE;
+		return result;
 	}
 
 	/**
@@ -146,7 +201,7 @@ public final class XStreamBackup {
 	 * 
 	 * @return a new Xstream
 	 */
-	private static XStream getXStream() {
+	public static XStream createXStream() {
 		XStream stream = new XStream();
 		stream.alias("DemoConfig", XStreamBackup.class);
 		stream.alias("Tag", Tag.class);
@@ -154,6 +209,7 @@ public final class XStreamBackup {
 		stream.alias("Image", Image.class);
 		stream.alias("Album", Album.class);
 		stream.alias("SmartList", SmartList.class);
+		stream.alias("Import", ImportRecord.class);
 		return stream;
 	}
 
@@ -165,7 +221,7 @@ public final class XStreamBackup {
 	 * @throws IOException
 	 */
 	public synchronized static XStreamBackup loadFromFile() throws FileNotFoundException, IOException {
-		XStream stream = getXStream();
+		XStream stream = createXStream();
 		File store = new File(BACKUP_FILE);
 
 		InputStream in = null;
@@ -183,6 +239,11 @@ public final class XStreamBackup {
 			}
 
 			res = (XStreamBackup) stream.fromXML(in);
+
+			// files written by older versions don't contain import records
+			if (res != null && res.imports == null) {
+				res.imports = new HashSet<ImportRecord>();
+			}
 		} finally {
 			IOUtils.closeQuietly(in);
 		}
@@ -190,28 +251,6 @@ public final class XStreamBackup {
 		return res;
 	}
 
-	/**
-	 * saves the configuration to a file
-	 * 
-	 * @throws IOException
-	 */
-	public synchronized static void saveToFile() throws IOException {
-		XStream stream = getXStream();
-		File store = new File(BACKUP_FILE);
-		store.createNewFile();
-
-		OutputStream out = null;
-		try {
-			out = new FileOutputStream(store);
-			if (ENABLE_ZIP) {
-				out = new GZIPOutputStream(out);
-			}
-			stream.toXML(INSTANCE, out);
-		} finally {
-			IOUtils.closeQuietly(out);
-		}
-	}
-
 	/**
 	 * a very long list of DemoDataGeneration
 	 */
@@ -220,6 +259,31 @@ public final class XStreamBackup {
 		images = new HashSet<Image>();
 		albumList = new HashSet<Album>();
 		smartLists = new HashSet<SmartList>();
+		imports = new HashSet<ImportRecord>();
+	}
+
+	/**
+	 * @return a new container without any data, but a tag root
+	 */
+	public static XStreamBackup createEmpty() {
+		XStreamBackup result = new XStreamBackup();
+		result.tagRoot = new TagGroup(true);
+		result.tagRoot.setName("root");
+		return result;
+	}
+
+	/**
+	 * @return a container with copies of the sets of this one, the entities
+	 *         are shared
+	 */
+	XStreamBackup copy() {
+		XStreamBackup result = new XStreamBackup();
+		result.tagRoot = tagRoot;
+		result.images.addAll(images);
+		result.albumList.addAll(albumList);
+		result.smartLists.addAll(smartLists);
+		result.imports.addAll(imports);
+		return result;
 	}
 
 	/**
@@ -17,12 +17,18 @@
 
 package org.jimcat.persistence.xstream;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import org.jimcat.model.Image;
+import org.jimcat.model.notification.BeanProperty;
+import org.jimcat.persistence.ImageQueries;
 import org.jimcat.persistence.ImageRepository;
+import org.joda.time.DateTime;
 
 /**
  * 
@@ -41,7 +47,10 @@ public class XStreamImageRepository implements ImageRepository {
 	 * @return a set of all images
 	 */
 	public Set<Image> getAll() {
-		return new HashSet<Image>(XStreamBackup.getInstance().images);
+		Set<Image> library = XStreamBackup.getInstance().images;
+		synchronized (XStreamBackup.getJournal()) {
+			return new HashSet<Image>(library);
+		}
 	}
 
 	/**
@@ -53,8 +62,11 @@ public class XStreamImageRepository implements ImageRepository {
 	public void remove(Collection<Image> images) {
 		// remove from images
 		Set<Image> library = XStreamBackup.getInstance().images;
-
-		library.removeAll(images);
+		XStreamJournal journal = XStreamBackup.getJournal();
+		synchronized (journal) {
+			library.removeAll(images);
+			journal.remove(images);
+		}
 	}
 
 	/**
@@ -66,7 +78,67 @@ public class XStreamImageRepository implements ImageRepository {
 	public void save(Collection<Image> images) {
 		// add to library if not existing
 		Set<Image> library = XStreamBackup.getInstance().images;
+		XStreamJournal journal = XStreamBackup.getJournal();
+		synchronized (journal) {
+			library.addAll(images);
+			journal.save(images);
+		}
+	}
+
+	/**
+	 * Single properties can't be saved, the whole elements are saved instead.
+	 * 
+	 * @see org.jimcat.persistence.Repository#update(java.util.Map)
+	 */
+	public void update(Map<Image, Set<BeanProperty>> changes) {
+		save(changes.keySet());
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#iterateAll()
+	 */
+	public Iterator<Image> iterateAll() {
+		return getAll().iterator();
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByPath(java.io.File)
+	 */
+	public Set<Image> getByPath(File path) {
+		Set<Image> library = XStreamBackup.getInstance().images;
+		synchronized (XStreamBackup.getJournal()) {
+			return ImageQueries.getByPath(library, path);
+		}
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByChecksum(java.lang.String)
+	 */
+	public Set<Image> getByChecksum(String checksum) {
+		Set<Image> library = XStreamBackup.getInstance().images;
+		synchronized (XStreamBackup.getJournal()) {
+			return ImageQueries.getByChecksum(library, checksum);
+		}
+	}
 
-		library.addAll(images);
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByImport(long)
+	 */
+	public Set<Image> getByImport(long importId) {
+		Set<Image> library = XStreamBackup.getInstance().images;
+		synchronized (XStreamBackup.getJournal()) {
+			return ImageQueries.getByImport(library, importId);
+		}
+	}
+
+	/**
+	 * @see org.jimcat.persistence.ImageRepository#getByDateAdded(org.joda.time.DateTime,
+	 *      org.joda.time.DateTime)
+	 */
+	public Set<Image> getByDateAdded(DateTime from, DateTime to) {
+		Set<Image> library = XStreamBackup.getInstance().images;
+		synchronized (XStreamBackup.getJournal()) {
+			return ImageQueries.getByDateAdded(library, from, to);
+		}
 	}
 }
@@ -0,0 +1,770 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.persistence.xstream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.IOUtils;
+import org.jimcat.model.Album;
+import org.jimcat.model.Image;
+import org.jimcat.model.ImportRecord;
+import org.jimcat.model.SmartList;
+import org.jimcat.model.tag.TagGroup;
+import org.jimcat.persistence.TagReferences;
+import org.jimcat.services.ServiceLocator;
+import org.jimcat.services.configuration.Configuration;
+import org.jimcat.services.failurefeedback.FailureDescription;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+
+/**
+ * Durable storage for the XStream backend: a binary snapshot of the complete
+ * XStreamBackup plus an append-only journal of all changes since.
+ * 
+ * Every save or remove appends a record to the journal immediately. A record
+ * contains a single entity, other entities are referenced by their id (see
+ * EntityConverter). Loading reads the snapshot and replays the journal.
+ * 
+ * If the journal grows beyond xstream.journal.compact bytes (default 32 MB), a
+ * new snapshot is written in background. Therefore, a new journal generation
+ * is started first, so changes made while the snapshot is written are
+ * replayed on top of it. The containers are copied when the generation is
+ * started, the snapshot is written without holding the monitor of the journal.
+ * Old generations are deleted as soon as the snapshot is complete.
+ * 
+ * The containers of the XStreamBackup are guarded by the monitor of this
+ * journal. Repositories have to hold it while changing or copying them.
+ * 
+ * If a record can't be appended, the failure is reported to the user and a
+ * new journal generation is started, so later records don't follow the
+ * incomplete one.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class XStreamJournal {
+
+	/**
+	 * name of the snapshot file
+	 */
+	private static final String SNAPSHOT_FILE = "library.snapshot";
+
+	/**
+	 * name of a new snapshot while it is written
+	 */
+	private static final String SNAPSHOT_TMP_FILE = SNAPSHOT_FILE + ".tmp";
+
+	/**
+	 * prefix of journal files, followed by the generation
+	 */
+	private static final String JOURNAL_PREFIX = "library.";
+
+	/**
+	 * extension of journal files
+	 */
+	private static final String JOURNAL_EXTENSION = ".journal";
+
+	/**
+	 * the kind of a journal record
+	 */
+	private enum Operation {
+		SAVE, REMOVE;
+	}
+
+	/**
+	 * a single change
+	 */
+	private static class Record {
+
+		/**
+		 * what happened
+		 */
+		private Operation operation;
+
+		/**
+		 * the id of the entity
+		 */
+		private long id;
+
+		/**
+		 * the saved entity, null if removed
+		 */
+		private Object entity;
+	}
+
+	/**
+	 * the root of a snapshot
+	 */
+	private static class Snapshot {
+
+		/**
+		 * the first journal generation to replay
+		 */
+		private long generation;
+
+		/**
+		 * the stored data
+		 */
+		private XStreamBackup backup;
+	}
+
+	/**
+	 * directory containing snapshot and journal
+	 */
+	private File directory;
+
+	/**
+	 * the ids of all entities
+	 */
+	private EntityRegistry registry = new EntityRegistry();
+
+	/**
+	 * xstream used to write journal records
+	 */
+	private XStream journalStream;
+
+	/**
+	 * converter of journalStream
+	 */
+	private EntityConverter journalConverter;
+
+	/**
+	 * xstream used to write snapshots
+	 */
+	private XStream snapshotStream;
+
+	/**
+	 * converter of snapshotStream
+	 */
+	private EntityConverter snapshotConverter;
+
+	/**
+	 * the stored data
+	 */
+	private XStreamBackup backup;
+
+	/**
+	 * the current journal generation
+	 */
+	private long generation = 0;
+
+	/**
+	 * the file of the current journal
+	 */
+	private FileOutputStream journalFile;
+
+	/**
+	 * stream to the current journal
+	 */
+	private DataOutputStream journal;
+
+	/**
+	 * size of the current journal
+	 */
+	private long journalSize = 0;
+
+	/**
+	 * entities saved since the current journal generation has been started
+	 */
+	private Map<Object, Boolean> savedSinceRotation = new IdentityHashMap<Object, Boolean>();
+
+	/**
+	 * entities removed since the current journal generation has been started
+	 */
+	private Map<Object, Boolean> removedSinceRotation = new IdentityHashMap<Object, Boolean>();
+
+	/**
+	 * only one snapshot is written at a time
+	 */
+	private final Object compactionLock = new Object();
+
+	/**
+	 * is there a compaction pending
+	 */
+	private AtomicBoolean compactionPending = new AtomicBoolean(false);
+
+	/**
+	 * executes background compactions
+	 */
+	private ExecutorService compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "xstream compaction");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		}
+	});
+
+	/**
+	 * journal size triggering a compaction
+	 */
+	private long compactionThreshold = Configuration.getInt("xstream.journal.compact", 32 * 1024 * 1024);
+
+	/**
+	 * sync the journal to disk after each record
+	 */
+	private boolean sync = "true".equals(Configuration.getString("xstream.journal.sync", "false"));
+
+	/**
+	 * @param directory -
+	 *            the directory to store snapshot and journal in
+	 */
+	public XStreamJournal(File directory) {
+		this.directory = directory;
+
+		journalStream = XStreamBackup.createXStream();
+		journalConverter = new EntityConverter(registry, journalStream.getMapper(), journalStream
+		        .getReflectionProvider(), true);
+		journalStream.registerConverter(journalConverter, XStream.PRIORITY_VERY_HIGH);
+		journalStream.alias("Record", Record.class);
+
+		snapshotStream = XStreamBackup.createXStream();
+		snapshotConverter = new EntityConverter(registry, snapshotStream.getMapper(), snapshotStream
+		        .getReflectionProvider(), false);
+		snapshotStream.registerConverter(snapshotConverter, XStream.PRIORITY_VERY_HIGH);
+		snapshotStream.alias("Snapshot", Snapshot.class);
+	}
+
+	/**
+	 * @return true if there is a snapshot to load
+	 */
+	public boolean exists() {
+		return getSnapshotFile() != null;
+	}
+
+	/**
+	 * @return true if there is any snapshot or journal in the directory
+	 */
+	public boolean hasData() {
+		return exists() || !getJournalFiles().isEmpty();
+	}
+
+	/**
+	 * get the snapshot to load. The temporary one is only used if the crash
+	 * happened after the old snapshot has been deleted, then it is complete.
+	 * 
+	 * @return the snapshot file or null if there is none
+	 */
+	private File getSnapshotFile() {
+		File snapshot = new File(directory, SNAPSHOT_FILE);
+		if (snapshot.exists()) {
+			return snapshot;
+		}
+		File tmp = new File(directory, SNAPSHOT_TMP_FILE);
+		if (tmp.exists()) {
+			return tmp;
+		}
+		return null;
+	}
+
+	/**
+	 * load the snapshot and replay the journal
+	 * 
+	 * @return the stored data
+	 * @throws IOException
+	 */
+	public synchronized XStreamBackup load() throws IOException {
+		File file = getSnapshotFile();
+		if (file == null) {
+			throw new IOException("No snapshot in " + directory);
+		}
+		Snapshot snapshot;
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(file));
+			snapshot = (Snapshot) snapshotStream.unmarshal(new BinaryStreamReader(in));
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		registry.setPersisted(snapshotConverter.takeVisited());
+		backup = snapshot.backup;
+
+		// replay all journals written since
+		generation = snapshot.generation;
+		int replayed = 0;
+		for (Map.Entry<Long, File> entry : getJournalFiles().entrySet()) {
+			if (entry.getKey().longValue() >= snapshot.generation) {
+				replayed += replay(entry.getValue());
+				generation = Math.max(generation, entry.getKey().longValue());
+			}
+		}
+		if (replayed > 0) {
+			TagReferences.repair(backup.tagRoot, backup.images);
+		}
+
+		openJournal();
+		return backup;
+	}
+
+	/**
+	 * Start a new storage for the given data by writing a first snapshot.
+	 * Existing snapshots or journals are never replaced.
+	 * 
+	 * @param data
+	 * @throws IOException -
+	 *             if there is stored data already
+	 */
+	public void create(XStreamBackup data) throws IOException {
+		synchronized (this) {
+			if (hasData()) {
+				throw new IOException("Refusing to replace the library stored in " + directory);
+			}
+			directory.mkdirs();
+
+			backup = data;
+			generation = 0;
+			openJournal();
+		}
+		compact();
+	}
+
+	/**
+	 * append a save record for all given entities
+	 * 
+	 * @param entities
+	 */
+	public synchronized void save(Collection<?> entities) {
+		try {
+			ensureJournal();
+			for (Object entity : entities) {
+				append(Operation.SAVE, entity);
+			}
+			finishAppend();
+		} catch (IOException ioe) {
+			appendFailed(ioe);
+		}
+	}
+
+	/**
+	 * append a remove record for all given entities
+	 * 
+	 * @param entities
+	 */
+	public synchronized void remove(Collection<?> entities) {
+		try {
+			ensureJournal();
+			for (Object entity : entities) {
+				append(Operation.REMOVE, entity);
+			}
+			finishAppend();
+		} catch (IOException ioe) {
+			appendFailed(ioe);
+		}
+	}
+
+	/**
+	 * reopen the journal if a former failure has closed it
+	 * 
+	 * @throws IOException
+	 */
+	private void ensureJournal() throws IOException {
+		if (journal == null) {
+			generation++;
+			openJournal();
+		}
+	}
+
+	/**
+	 * report a failed append. The current journal may end with an incomplete
+	 * record, so it is closed. The next append starts a new generation, the
+	 * incomplete record is cut off on load.
+	 * 
+	 * @param cause
+	 */
+	private void appendFailed(IOException cause) {
+		closeJournal();
+		reportFailure("Unable to write the library journal, recent changes may be lost", cause);
+	}
+
+	/**
+	 * report a failure through the failure feedback service
+	 * 
+	 * @param msg
+	 * @param cause
+	 */
+	private static void reportFailure(String msg, Throwable cause) {
+		FailureDescription description = new FailureDescription(cause, "XStream Journal", msg);
+		ServiceLocator.getFailureFeedbackService().reportFailure(description);
+	}
+
+	/**
+	 * write a final snapshot and close the journal
+	 */
+	public void close() {
+		compactor.shutdown();
+		try {
+			compact();
+		} catch (IOException ioe) {
+			// the journal is kept, so nothing is lost
+			reportFailure("Unable to write the library snapshot", ioe);
+		}
+		synchronized (this) {
+			closeJournal();
+		}
+	}
+
+	/**
+	 * Write a new snapshot and delete journals contained by it.
+	 * 
+	 * @throws IOException
+	 */
+	public void compact() throws IOException {
+		synchronized (compactionLock) {
+			compactionPending.set(false);
+
+			Snapshot snapshot = new Snapshot();
+			File tmp = new File(directory, SNAPSHOT_TMP_FILE);
+			synchronized (this) {
+				// changes from now on are replayed on top of the new snapshot
+				closeJournal();
+				generation++;
+				openJournal();
+				savedSinceRotation = new IdentityHashMap<Object, Boolean>();
+				removedSinceRotation = new IdentityHashMap<Object, Boolean>();
+				snapshot.generation = generation;
+				snapshot.backup = backup.copy();
+			}
+
+			// write snapshot - entities changed meanwhile are journaled again
+			FileOutputStream file = null;
+			try {
+				file = new FileOutputStream(tmp);
+				OutputStream out = new BufferedOutputStream(file);
+				BinaryStreamWriter writer = new BinaryStreamWriter(out);
+				snapshotStream.marshal(snapshot, writer);
+				writer.flush();
+				out.flush();
+				file.getFD().sync();
+			} catch (IOException ioe) {
+				snapshotConverter.takeVisited();
+				throw ioe;
+			} catch (RuntimeException re) {
+				// e.g. an entity changed by the GUI, old generations are kept
+				snapshotConverter.takeVisited();
+				throw new IOException("Couldn't write snapshot: " + re);
+			} finally {
+				IOUtils.closeQuietly(file);
+			}
+
+			// rename is atomic where the platform supports replacing, else
+			// the complete tmp file is loaded if the old one is missing
+			File target = new File(directory, SNAPSHOT_FILE);
+			if (!tmp.renameTo(target) && (!target.delete() || !tmp.renameTo(target))) {
+				throw new IOException("Couldn't replace " + target);
+			}
+
+			// older journals are contained by the snapshot
+			synchronized (this) {
+				List<Object> persisted = snapshotConverter.takeVisited();
+				persisted.removeAll(removedSinceRotation.keySet());
+				persisted.addAll(savedSinceRotation.keySet());
+				registry.setPersisted(persisted);
+				for (Map.Entry<Long, File> entry : getJournalFiles().entrySet()) {
+					if (entry.getKey().longValue() < snapshot.generation) {
+						entry.getValue().delete();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * append a single record, entities referenced but not persisted yet are
+	 * saved as well
+	 * 
+	 * @param operation
+	 * @param entity
+	 * @throws IOException
+	 */
+	private void append(Operation operation, Object entity) throws IOException {
+		Record record = new Record();
+		record.operation = operation;
+		if (operation == Operation.REMOVE) {
+			if (!registry.isPersisted(entity)) {
+				// never written
+				return;
+			}
+			record.id = registry.getId(entity);
+			write(record);
+			registry.remove(entity);
+			savedSinceRotation.remove(entity);
+			removedSinceRotation.put(entity, Boolean.TRUE);
+			return;
+		}
+
+		List<Object> pending = new ArrayList<Object>();
+		pending.add(entity);
+		while (!pending.isEmpty()) {
+			Object current = pending.remove(0);
+			record.id = registry.getId(current);
+			record.entity = current;
+			journalConverter.setRoot(current);
+			write(record);
+			registry.setPersisted(current);
+			savedSinceRotation.put(current, Boolean.TRUE);
+			removedSinceRotation.remove(current);
+			for (Object discovered : journalConverter.takeDiscovered()) {
+				if (!registry.isPersisted(discovered) && !pending.contains(discovered)) {
+					pending.add(discovered);
+				}
+			}
+		}
+		journalConverter.setRoot(null);
+	}
+
+	/**
+	 * write a record to the journal
+	 * 
+	 * @param record
+	 * @throws IOException
+	 */
+	private void write(Record record) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		BinaryStreamWriter writer = new BinaryStreamWriter(buffer);
+		journalStream.marshal(record, writer);
+		writer.flush();
+
+		journal.writeInt(buffer.size());
+		buffer.writeTo(journal);
+		journalSize += buffer.size() + 4;
+	}
+
+	/**
+	 * flush appended records, trigger compaction if necessary
+	 * 
+	 * @throws IOException
+	 */
+	private void finishAppend() throws IOException {
+		journal.flush();
+		if (sync) {
+			journalFile.getFD().sync();
+		}
+
+		if (journalSize > compactionThreshold && compactionPending.compareAndSet(false, true)) {
+			compactor.execute(new Runnable() {
+				public void run() {
+					try {
+						compact();
+					} catch (IOException ioe) {
+						// the journal is kept, so nothing is lost
+						reportFailure("Unable to write the library snapshot", ioe);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Replay a single journal file. A torn last record (e.g. after a crash) is
+	 * cut off, so records appended later on don't follow garbage.
+	 * 
+	 * @param file
+	 * @return the number of replayed records
+	 * @throws IOException
+	 */
+	private int replay(File file) throws IOException {
+		int count = 0;
+		long length = file.length();
+		long valid = 0;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			while (valid < length) {
+				int size = -1;
+				byte data[];
+				Record record;
+				try {
+					size = in.readInt();
+					if (size < 0 || valid + 4 + size > length) {
+						// torn length or data
+						break;
+					}
+					data = new byte[size];
+					in.readFully(data);
+					record = (Record) journalStream.unmarshal(new BinaryStreamReader(new ByteArrayInputStream(data)));
+				} catch (EOFException eof) {
+					break;
+				} catch (RuntimeException re) {
+					if (valid + 4 + size == length) {
+						// last record only partially written
+						break;
+					}
+					throw new IOException("Corrupt record at " + valid + " in " + file + ": " + re);
+				}
+				apply(record);
+				count++;
+				valid += 4 + size;
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+
+		if (valid < length) {
+			System.out.println("Truncating torn record at " + valid + " in " + file);
+			truncate(file, valid);
+		}
+		return count;
+	}
+
+	/**
+	 * cut off the given file
+	 * 
+	 * @param file
+	 * @param length -
+	 *            the new length
+	 * @throws IOException
+	 */
+	private void truncate(File file, long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * apply a replayed record to the loaded data
+	 * 
+	 * @param record
+	 */
+	private void apply(Record record) {
+		Object existing = registry.get(record.id);
+		if (record.operation == Operation.REMOVE) {
+			if (existing != null) {
+				removeFromBackup(existing);
+				registry.remove(existing);
+			}
+			return;
+		}
+
+		Object entity = record.entity;
+		if (existing == null) {
+			registry.register(record.id, entity);
+		} else if (existing != entity) {
+			// others refer to the registered instance
+			journalConverter.copyFields(entity, existing);
+			entity = existing;
+		}
+		addToBackup(entity);
+	}
+
+	/**
+	 * register a saved entity within the matching container
+	 * 
+	 * @param entity
+	 */
+	private void addToBackup(Object entity) {
+		if (entity instanceof Image) {
+			backup.images.add((Image) entity);
+		} else if (entity instanceof Album) {
+			backup.albumList.add((Album) entity);
+		} else if (entity instanceof SmartList) {
+			backup.smartLists.add((SmartList) entity);
+		} else if (entity instanceof ImportRecord) {
+			backup.imports.add((ImportRecord) entity);
+		} else if (entity instanceof TagGroup && ((TagGroup) entity).isRoot()) {
+			backup.tagRoot = (TagGroup) entity;
+		}
+	}
+
+	/**
+	 * remove a deleted entity from its container
+	 * 
+	 * @param entity
+	 */
+	private void removeFromBackup(Object entity) {
+		backup.images.remove(entity);
+		backup.albumList.remove(entity);
+		backup.smartLists.remove(entity);
+		backup.imports.remove(entity);
+	}
+
+	/**
+	 * @return all journal files by generation
+	 */
+	private SortedMap<Long, File> getJournalFiles() {
+		SortedMap<Long, File> result = new TreeMap<Long, File>();
+		File files[] = directory.listFiles();
+		if (files == null) {
+			return result;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith(JOURNAL_PREFIX) && name.endsWith(JOURNAL_EXTENSION)) {
+				try {
+					String number = name.substring(JOURNAL_PREFIX.length(), name.length()
+					        - JOURNAL_EXTENSION.length());
+					result.put(Long.valueOf(number), file);
+				} catch (NumberFormatException nfe) {
+					// not a journal
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * open the journal of the current generation for appending
+	 * 
+	 * @throws IOException
+	 */
+	private void openJournal() throws IOException {
+		File file = new File(directory, JOURNAL_PREFIX + generation + JOURNAL_EXTENSION);
+		journalFile = new FileOutputStream(file, true);
+		journal = new DataOutputStream(new BufferedOutputStream(journalFile));
+		journalSize = file.length();
+	}
+
+	/**
+	 * close the current journal
+	 */
+	private void closeJournal() {
+		IOUtils.closeQuietly(journal);
+		journal = null;
+		journalFile = null;
+	}
+}
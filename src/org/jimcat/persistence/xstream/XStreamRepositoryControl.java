@@ -37,17 +37,28 @@ public class XStreamRepositoryControl implements RepositoryControl {
 		return true;
 	}
 
+	/**
+	 * every change is appended to the journal immediately
+	 * 
+	 * @see org.jimcat.persistence.RepositoryControl#flush(long)
+	 */
+	public boolean flush(long timeout) {
+		return true;
+	}
+
+	/**
+	 * @see org.jimcat.persistence.RepositoryControl#getPendingWrites()
+	 */
+	public int getPendingWrites() {
+		return 0;
+	}
+
 	/**
 	 * @see org.jimcat.persistence.RepositoryControl#shutdown()
 	 */
 	public void shutdown() {
-		// just save results
-		try {
-			XStreamBackup.saveToFile();
-		} catch (Exception e) {
-			System.out.println("Error saving DummyConfig");
-			e.printStackTrace();
-		}
+		// changes are journaled already - just write a final snapshot
+		XStreamBackup.shutdown();
 	}
 
 }
@@ -19,9 +19,11 @@ package org.jimcat.persistence.xstream;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.jimcat.model.SmartList;
+import org.jimcat.model.notification.BeanProperty;
 import org.jimcat.persistence.SmartListRepository;
 
 /**
@@ -43,7 +45,9 @@ public class XStreamSmartListRepository implements SmartListRepository {
 	 * @return a set of all smartlists
 	 */
 	public Set<SmartList> getAll() {
-		return new HashSet<SmartList>(smartLists);
+		synchronized (XStreamBackup.getJournal()) {
+			return new HashSet<SmartList>(smartLists);
+		}
 	}
 
 	/**
@@ -52,7 +56,11 @@ public class XStreamSmartListRepository implements SmartListRepository {
 	 * @param lists
 	 */
 	public void remove(Collection<SmartList> lists) {
-		this.smartLists.removeAll(lists);
+		XStreamJournal journal = XStreamBackup.getJournal();
+		synchronized (journal) {
+			this.smartLists.removeAll(lists);
+			journal.remove(lists);
+		}
 	}
 
 	/**
@@ -61,6 +69,19 @@ public class XStreamSmartListRepository implements SmartListRepository {
 	 * @param lists
 	 */
 	public void save(Collection<SmartList> lists) {
-		this.smartLists.addAll(lists);
+		XStreamJournal journal = XStreamBackup.getJournal();
+		synchronized (journal) {
+			this.smartLists.addAll(lists);
+			journal.save(lists);
+		}
+	}
+
+	/**
+	 * Single properties can't be saved, the whole elements are saved instead.
+	 * 
+	 * @see org.jimcat.persistence.Repository#update(java.util.Map)
+	 */
+	public void update(Map<SmartList, Set<BeanProperty>> changes) {
+		save(changes.keySet());
 	}
 }
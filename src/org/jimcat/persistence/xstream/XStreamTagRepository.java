@@ -17,6 +17,9 @@
 
 package org.jimcat.persistence.xstream;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.jimcat.model.tag.TagGroup;
 import org.jimcat.persistence.TagRepository;
 
@@ -45,8 +48,21 @@ public class XStreamTagRepository implements TagRepository {
 	 * 
 	 * @param tagGroup
 	 */
-	@SuppressWarnings("unused")
 	public void save(TagGroup tagGroup) {
-		// do nothing
+		List<TagGroup> groups = new ArrayList<TagGroup>();
+		collect(tagGroup, groups);
+		XStreamBackup.getJournal().save(groups);
+	}
+
+	/**
+	 * @param group
+	 * @param groups -
+	 *            all groups of the given subtree are added to this list
+	 */
+	private void collect(TagGroup group, List<TagGroup> groups) {
+		groups.add(group);
+		for (TagGroup sub : group.getSubTags()) {
+			collect(sub, groups);
+		}
 	}
 }
@@ -18,6 +18,7 @@
 package org.jimcat.services;
 
 import org.jimcat.services.failurefeedback.FailureFeedbackService;
+import org.jimcat.services.folderwatch.FolderWatchService;
 import org.jimcat.services.imagemanager.ImageManager;
 import org.jimcat.services.imagemanager.ImageManagerImpl;
 import org.jimcat.services.instancecontrol.InstanceControl;
@@ -62,6 +63,12 @@ public final class ServiceLocator {
 	 */
 	private static final JobManager jobManager = new JobManager();
 
+	/**
+	 * the folder watch service used by this system - created on first access
+	 * because it depends on the library
+	 */
+	private static FolderWatchService folderWatchService;
+
 	/**
      * @return the imageManager
      */
@@ -83,6 +90,16 @@ public final class ServiceLocator {
     	return jobManager;
     }
 
+	/**
+     * @return the folderWatchService
+     */
+    public static synchronized FolderWatchService getFolderWatchService() {
+    	if (folderWatchService == null) {
+    		folderWatchService = new FolderWatchService(jobManager);
+    	}
+    	return folderWatchService;
+    }
+
 	/**
      * @return the failureFeedbackService
      */
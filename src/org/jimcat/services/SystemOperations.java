@@ -39,6 +39,14 @@ public interface SystemOperations {
 	 */
 	public void shutdown() throws IllegalStateException;
 
+	/**
+	 * get the number of changes not stored by the persistence layer yet. A
+	 * shutdown waits until all of them are stored.
+	 * 
+	 * @return the number of pending writes
+	 */
+	public int getPendingWrites();
+
 	/**
 	 * call this methode to access the systems configuration modul - the
 	 * configuration is useing string-pairs
@@ -92,4 +100,10 @@ public interface SystemOperations {
 	 * @param listener
 	 */
 	public void removeFailureFeedbackListener(FailureFeedbackListener listener);
+
+	/**
+	 * starts the background service keeping the watched folders and the
+	 * library in sync. Does nothing if there are no folders to watch.
+	 */
+	public void startFolderWatching();
 }
@@ -0,0 +1,608 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.folderwatch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import org.jimcat.model.Image;
+import org.jimcat.model.ImageMetadata;
+import org.jimcat.model.libraries.ImageLibrary;
+import org.jimcat.services.ServiceLocator;
+import org.jimcat.services.configuration.Configuration;
+import org.jimcat.services.failurefeedback.FailureDescription;
+import org.jimcat.services.imagedelete.RemoveJob;
+import org.jimcat.services.imageimport.ImportFileNameFilter;
+import org.jimcat.services.imageimport.ImportJob;
+import org.jimcat.services.imageupdate.UpdateJob;
+import org.jimcat.services.jobs.JobManager;
+import org.jimcat.services.jobs.JobPriority;
+
+/**
+ * This service keeps the library in sync with a set of watched root folders.
+ * 
+ * The folders are polled periodically. JimCat is compiled for Java 5 (see
+ * java.level within build.xml), so there is no file system notification API.
+ * To keep a scan cheap on large folder trees, it doesn't look at every file:
+ * <ul>
+ * <li>every known directory is checked for a new modification date, only
+ * directories with files added, removed or renamed are listed again</li>
+ * <li>a limited number of files is checked for a new size or modification
+ * date per scan, so files changed in place are found within a few scans</li>
+ * </ul>
+ * The files themselves are never read by this service. Changes are collected
+ * until the folders have been quiet for a while. Afterwards the changed paths
+ * are handed over to the JobManager as incremental import, update and remove
+ * jobs.
+ * 
+ * On the first scan the folders are compared against the library, so changes
+ * made while JimCat wasn't running are picked up too.
+ * 
+ * The service is configured by the configuration values
+ * <ul>
+ * <li>folderwatch.roots - the folders to watch, separated by the platform path
+ * separator. If there is none, the service isn't started.</li>
+ * <li>folderwatch.interval - seconds between two scans (default 10)</li>
+ * <li>folderwatch.delay - seconds the folders have to be quiet before changes
+ * are dispatched (default 5)</li>
+ * <li>folderwatch.verify - number of files checked for modifications in place
+ * per scan (default 1000)</li>
+ * </ul>
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class FolderWatchService implements Runnable {
+
+	/**
+	 * directories modified within this time (in ms) before they were listed
+	 * are listed again by the next scan. The modification date of some file
+	 * systems is too coarse to notice a second change within this period.
+	 */
+	private static final long RACY_PERIOD = 2000;
+
+	/**
+	 * a reference to the image library
+	 */
+	private static ImageLibrary library = ImageLibrary.getInstance();
+
+	/**
+	 * helps filtering interesting elements
+	 */
+	private static ImportFileNameFilter fileNameFilter = new ImportFileNameFilter();
+
+	/**
+	 * the job manager used to execute resulting jobs
+	 */
+	private JobManager jobManager;
+
+	/**
+	 * the watched root folders
+	 */
+	private List<File> roots;
+
+	/**
+	 * the time between two scans in ms
+	 */
+	private long interval;
+
+	/**
+	 * the time the folders have to be quiet before changes are dispatched in ms
+	 */
+	private long delay;
+
+	/**
+	 * the number of files checked for modifications per scan
+	 */
+	private int verifyCount;
+
+	/**
+	 * the state of all known directories, null before the first scan
+	 */
+	private Map<File, DirectoryState> directories = null;
+
+	/**
+	 * directories in the order their files are checked for modifications
+	 */
+	private LinkedList<DirectoryState> verifyQueue = new LinkedList<DirectoryState>();
+
+	/**
+	 * paths changed since the last dispatch
+	 */
+	private Set<File> pending = new HashSet<File>();
+
+	/**
+	 * the time of the last detected change
+	 */
+	private long lastChange = 0;
+
+	/**
+	 * the thread running this service, null if not started
+	 */
+	private Thread thread;
+
+	/**
+	 * used to stop the service
+	 */
+	private volatile boolean killed = false;
+
+	/**
+	 * creates a new service using the given job manager. Watched folders are
+	 * read from the configuration.
+	 * 
+	 * @param jobManager
+	 */
+	public FolderWatchService(JobManager jobManager) {
+		this.jobManager = jobManager;
+
+		// read configuration
+		roots = new ArrayList<File>();
+		String rootList = Configuration.getString("folderwatch.roots", "");
+		StringTokenizer tokenizer = new StringTokenizer(rootList, File.pathSeparator);
+		while (tokenizer.hasMoreTokens()) {
+			String path = tokenizer.nextToken().trim();
+			if (path.length() > 0) {
+				roots.add(new File(path).getAbsoluteFile());
+			}
+		}
+		interval = Configuration.getInt("folderwatch.interval", 10) * 1000L;
+		delay = Configuration.getInt("folderwatch.delay", 5) * 1000L;
+		verifyCount = Configuration.getInt("folderwatch.verify", 1000);
+	}
+
+	/**
+	 * starts the service within its own background thread. If there are no
+	 * folders to watch, nothing will happen.
+	 */
+	public synchronized void startup() {
+		if (thread != null || killed || roots.isEmpty()) {
+			return;
+		}
+		thread = new Thread(this, "folder watch service");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * stops this service. No more jobs will be started after this call.
+	 */
+	public synchronized void shutdown() {
+		killed = true;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * @return the watched folders
+	 */
+	public List<File> getRoots() {
+		return new ArrayList<File>(roots);
+	}
+
+	/**
+	 * the scan loop
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		while (!killed) {
+			try {
+				scan();
+
+				// dispatch changes once the folders became quiet
+				if (!pending.isEmpty() && System.currentTimeMillis() - lastChange >= delay) {
+					dispatch();
+				}
+			} catch (RuntimeException e) {
+				if (Thread.interrupted()) {
+					// killed or woken up while waiting for the library
+					continue;
+				}
+				// report problem, but keep on watching
+				String msg = "Error while watching folders";
+				FailureDescription desc = new FailureDescription(e, "Folder Watch Service", msg);
+				ServiceLocator.getFailureFeedbackService().reportFailure(desc);
+			}
+
+			try {
+				// wait for next scan
+				Thread.sleep(pending.isEmpty() ? interval : Math.min(interval, delay));
+			} catch (InterruptedException ie) {
+				// killed or just woken up - loop condition decides
+			}
+		}
+	}
+
+	/**
+	 * scans all watched folders and records changed paths
+	 */
+	private void scan() {
+		Set<File> changed = new HashSet<File>();
+		if (directories == null) {
+			// first scan - compare against library
+			directories = new HashMap<File, DirectoryState>();
+			for (File root : roots) {
+				if (root.isDirectory()) {
+					addDirectory(root, null);
+				}
+			}
+			Map<File, FileStamp> current = new HashMap<File, FileStamp>();
+			for (DirectoryState state : directories.values()) {
+				current.putAll(state.files);
+			}
+			changed.addAll(getDifferencesToLibrary(current));
+		} else {
+			// roots created meanwhile
+			for (File root : roots) {
+				if (!directories.containsKey(root) && root.isDirectory()) {
+					addDirectory(root, changed);
+				}
+			}
+
+			// directories with added, removed or renamed entries
+			for (File dir : new ArrayList<File>(directories.keySet())) {
+				if (killed) {
+					return;
+				}
+				DirectoryState state = directories.get(dir);
+				if (state != null && (state.racy || dir.lastModified() != state.lastModified)) {
+					updateDirectory(state, changed);
+				}
+			}
+
+			// files modified in place
+			verifyFiles(changed);
+		}
+
+		// register changes
+		if (!changed.isEmpty()) {
+			pending.addAll(changed);
+			lastChange = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * recursively add a directory and its content to the known directories
+	 * 
+	 * @param dir
+	 * @param changed -
+	 *            collects all contained image files, may be null
+	 */
+	private void addDirectory(File dir, Set<File> changed) {
+		DirectoryState state = new DirectoryState(dir);
+		directories.put(dir, state);
+		verifyQueue.addLast(state);
+		updateDirectory(state, changed);
+	}
+
+	/**
+	 * list a directory again and record added and removed files
+	 * 
+	 * @param state -
+	 *            the last known state of the directory
+	 * @param changed -
+	 *            collects new and removed image files, may be null
+	 */
+	private void updateDirectory(DirectoryState state, Set<File> changed) {
+		// the date has to be read first, changes while listing are found later
+		long modified = state.dir.lastModified();
+		File[] content = state.dir.listFiles(fileNameFilter);
+		if (content == null) {
+			// directory has been removed
+			removeDirectory(state.dir, changed);
+			return;
+		}
+
+		Map<File, FileStamp> files = new HashMap<File, FileStamp>();
+		Set<File> subDirs = new HashSet<File>();
+		for (File file : content) {
+			if (killed) {
+				return;
+			}
+			if (file.isDirectory()) {
+				subDirs.add(file);
+				if (!directories.containsKey(file)) {
+					addDirectory(file, changed);
+				}
+			} else {
+				FileStamp stamp = new FileStamp(file.length(), file.lastModified());
+				files.put(file, stamp);
+				if (changed != null && !stamp.equals(state.files.get(file))) {
+					// new or modified
+					changed.add(file);
+				}
+			}
+		}
+		for (File file : state.files.keySet()) {
+			if (changed != null && !files.containsKey(file)) {
+				// deleted
+				changed.add(file);
+			}
+		}
+		for (File dir : state.subDirs) {
+			if (!subDirs.contains(dir)) {
+				removeDirectory(dir, changed);
+			}
+		}
+
+		state.files = files;
+		state.subDirs = subDirs;
+		state.lastModified = modified;
+		state.racy = System.currentTimeMillis() - modified < RACY_PERIOD;
+	}
+
+	/**
+	 * recursively forget a removed directory
+	 * 
+	 * @param dir
+	 * @param changed -
+	 *            collects all image files contained before, may be null
+	 */
+	private void removeDirectory(File dir, Set<File> changed) {
+		DirectoryState state = directories.remove(dir);
+		if (state == null) {
+			return;
+		}
+		if (changed != null) {
+			changed.addAll(state.files.keySet());
+		}
+		for (File subDir : state.subDirs) {
+			removeDirectory(subDir, changed);
+		}
+	}
+
+	/**
+	 * check the next files of the verify queue for a new size or modification
+	 * date
+	 * 
+	 * @param changed -
+	 *            collects modified files
+	 */
+	private void verifyFiles(Set<File> changed) {
+		int checked = 0;
+		int count = verifyQueue.size();
+		for (int i = 0; i < count && checked < verifyCount && !killed; i++) {
+			DirectoryState state = verifyQueue.removeFirst();
+			if (directories.get(state.dir) != state) {
+				// directory has been removed
+				continue;
+			}
+			verifyQueue.addLast(state);
+			for (Map.Entry<File, FileStamp> entry : state.files.entrySet()) {
+				File file = entry.getKey();
+				FileStamp stamp = new FileStamp(file.length(), file.lastModified());
+				if (!stamp.equals(entry.getValue())) {
+					entry.setValue(stamp);
+					changed.add(file);
+				}
+				checked++;
+			}
+		}
+	}
+
+	/**
+	 * find all paths which differ between the given folder state and the
+	 * library
+	 * 
+	 * @param current
+	 * @return a set of new, changed and deleted paths
+	 */
+	private Set<File> getDifferencesToLibrary(Map<File, FileStamp> current) {
+		Set<File> result = new HashSet<File>(current.keySet());
+		for (Image img : getLibraryImages()) {
+			ImageMetadata metadata = img.getMetadata();
+			File path = metadata.getPath();
+			if (!isWatched(path)) {
+				continue;
+			}
+			FileStamp stamp = current.get(path);
+			FileStamp known = new FileStamp(metadata.getSize(), metadata.getModificationDate().getMillis());
+			if (stamp == null || !stamp.equals(known)) {
+				// deleted or changed
+				result.add(path);
+			} else {
+				// known and unchanged
+				result.remove(path);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * hand pending changes over to the job manager
+	 */
+	private void dispatch() {
+		// find images within library
+		Map<File, Image> images = new HashMap<File, Image>();
+		for (Image img : getLibraryImages()) {
+			File path = img.getMetadata().getPath();
+			if (pending.contains(path)) {
+				images.put(path, img);
+			}
+		}
+
+		// classify changes
+		List<File> toImport = new LinkedList<File>();
+		List<Image> toUpdate = new LinkedList<Image>();
+		Set<Image> toRemove = new HashSet<Image>();
+		for (File file : pending) {
+			Image img = images.get(file);
+			boolean exists = file.exists();
+			if (exists && img == null) {
+				toImport.add(file);
+			} else if (exists) {
+				toUpdate.add(img);
+			} else if (img != null) {
+				toRemove.add(img);
+			}
+		}
+		pending.clear();
+
+		// the service may have been stopped meanwhile
+		if (killed) {
+			return;
+		}
+
+		// create jobs - background work, so use a low priority
+		if (!toRemove.isEmpty()) {
+			RemoveJob job = new RemoveJob(jobManager);
+			job.setImageSet(toRemove);
+			job.setPriority(JobPriority.LOW);
+			jobManager.excecuteJob(job);
+		}
+		if (!toUpdate.isEmpty()) {
+			UpdateJob job = new UpdateJob();
+			job.setUpdateList(toUpdate);
+			job.setPriority(JobPriority.LOW);
+			jobManager.excecuteJob(job);
+		}
+		if (!toImport.isEmpty()) {
+			ImportJob job = new ImportJob(jobManager);
+			job.setFiles(toImport);
+			job.setPriority(JobPriority.LOW);
+			jobManager.excecuteJob(job);
+		}
+	}
+
+	/**
+	 * @return a copy of the current library content
+	 */
+	private List<Image> getLibraryImages() {
+		// unknown files would be imported twice otherwise
+		library.awaitLoaded();
+		return new ArrayList<Image>(library.getAll());
+	}
+
+	/**
+	 * checks if the given path is within one of the watched folders
+	 * 
+	 * @param path
+	 * @return true if the path is watched by this service
+	 */
+	private boolean isWatched(File path) {
+		if (path == null) {
+			return false;
+		}
+		String name = path.getAbsolutePath();
+		for (File root : roots) {
+			String prefix = root.getPath();
+			if (!prefix.endsWith(File.separator)) {
+				prefix = prefix + File.separator;
+			}
+			if (name.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * the observed state of a directory
+	 */
+	private static class DirectoryState {
+
+		/**
+		 * the directory
+		 */
+		private File dir;
+
+		/**
+		 * the modification date of the directory when it was listed
+		 */
+		private long lastModified = 0;
+
+		/**
+		 * true if the directory has to be listed again by the next scan
+		 */
+		private boolean racy = false;
+
+		/**
+		 * the image files directly contained
+		 */
+		private Map<File, FileStamp> files = new HashMap<File, FileStamp>();
+
+		/**
+		 * the directories directly contained
+		 */
+		private Set<File> subDirs = new HashSet<File>();
+
+		/**
+		 * @param dir
+		 */
+		private DirectoryState(File dir) {
+			this.dir = dir;
+		}
+	}
+
+	/**
+	 * the observed state of a single file
+	 */
+	private static class FileStamp {
+
+		/**
+		 * the size of the file
+		 */
+		private long size;
+
+		/**
+		 * the modification date of the file
+		 */
+		private long lastModified;
+
+		/**
+		 * create a new stamp
+		 * 
+		 * @param size
+		 * @param lastModified
+		 */
+		private FileStamp(long size, long lastModified) {
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FileStamp)) {
+				return false;
+			}
+			FileStamp other = (FileStamp) obj;
+			return size == other.size && lastModified == other.lastModified;
+		}
+
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return (int) (size ^ lastModified);
+		}
+	}
+}
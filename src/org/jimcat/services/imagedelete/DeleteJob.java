@@ -21,24 +21,28 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Set;
 
 import org.jimcat.model.Image;
 import org.jimcat.model.libraries.ImageLibrary;
-import org.jimcat.services.jobs.Job;
+import org.jimcat.services.configuration.Configuration;
 import org.jimcat.services.jobs.JobManager;
-import org.jimcat.services.jobs.JobUtils;
+import org.jimcat.services.jobs.JobResource;
+import org.jimcat.services.jobs.ParallelJob;
 
 /**
  * This job is used to delete a set of images from the disk.
  * 
+ * Files are deleted in parallel. Deleted images are removed from the library
+ * in batches, so duplicates and listeners are only updated once per batch.
+ * 
  * 
  * $Id$
  * 
  * @author Herbert
  */
-public class DeleteJob extends Job {
+public class DeleteJob extends ParallelJob<Image, Boolean> {
 
 	/**
 	 * a reference to the image library
@@ -46,20 +50,19 @@ public class DeleteJob extends Job {
 	private static ImageLibrary library = ImageLibrary.getInstance();
 
 	/**
-	 * the set of images to be deleted
+	 * the number of images removed from the library at once
 	 */
-	private Set<Image> imageSet;
+	private static final int DELETE_BATCH_SIZE = 250;
 
 	/**
-	 * the list internally used to iterate. => it is generated from the imageSet
-	 * at startup
+	 * the set of images to be deleted
 	 */
-	private List<Image> imageList;
+	private Set<Image> imageSet;
 
 	/**
-	 * used to iterate through list (needed by nature of job)
+	 * processed images not yet removed from the library
 	 */
-	private int progressPointer = 0;
+	private Set<Image> processed = new HashSet<Image>();
 
 	/**
 	 * creates a new delete job, default values for all
@@ -82,85 +85,113 @@ public class DeleteJob extends Job {
 	}
 
 	/**
-	 * indicates the current progress. (percentage of performed deleting
-	 * operations)
+	 * used to generate a list of images out of the set
 	 * 
-	 * @see org.jimcat.services.jobs.Job#getPercentage()
+	 * @see org.jimcat.services.jobs.ParallelJob#preExecution()
 	 */
 	@Override
-	public int getPercentage() {
-		// if size is 0, return 100%
-		if (imageSet.size() == 0) {
-			return 100;
-		}
-		return (int) ((progressPointer / (float) imageSet.size()) * 100);
+	public void preExecution() {
+		// just generate list
+		setItems(new ArrayList<Image>(imageSet));
+
+		// set up workers
+		super.preExecution();
 	}
 
 	/**
-	 * used to generate a list of images out of the set
+	 * the number of files deleted in parallel
 	 * 
-	 * @see org.jimcat.services.jobs.Job#preExecution()
+	 * @see org.jimcat.services.jobs.ParallelJob#getThreadCount()
 	 */
 	@Override
-	public void preExecution() {
-		// just generate list
-		imageList = new ArrayList<Image>(imageSet);
+	protected int getThreadCount() {
+		return Configuration.getInt("delete.threads", 4);
 	}
 
 	/**
-	 * Rollback isn't supported, this should never be called
+	 * delete the file of the given image. This is called by a worker thread.
 	 * 
-	 * @see org.jimcat.services.jobs.Job#nextRollbackStep()
+	 * @see org.jimcat.services.jobs.ParallelJob#processItem(java.lang.Object)
 	 */
 	@Override
-	public boolean nextRollbackStep() {
-		throw new UnsupportedOperationException("Delete Job doesn't support rollback operation");
+	protected Boolean processItem(Image img) throws Exception {
+		File victem = img.getMetadata().getPath();
+		if (victem != null && victem.exists() && !victem.delete()) {
+			throw new IOException("Couldn't delete " + victem.getAbsolutePath());
+		}
+		return Boolean.TRUE;
 	}
 
 	/**
-	 * do next delete step
+	 * remember image for removing it from the library. Images are removed
+	 * even if the file couldn't be deleted and the user choose to ignore it.
 	 * 
-	 * @see org.jimcat.services.jobs.Job#nextStep()
+	 * @see org.jimcat.services.jobs.ParallelJob#itemFinished(java.lang.Object,
+	 *      java.lang.Object)
 	 */
 	@Override
-	public boolean nextStep() {
-
-		// check if job is finished
-		if (imageList.size() == progressPointer) {
-			return true;
-		}
+	protected void itemFinished(Image img, Boolean result) {
+		processed.add(img);
+	}
 
-		// get victem
-		Image img = imageList.get(progressPointer);
-		File victem = img.getMetadata().getPath();
+	/**
+	 * @see org.jimcat.services.jobs.ParallelJob#getFailureMessage(java.lang.Object)
+	 */
+	@Override
+	protected String getFailureMessage(Image img) {
+		return "Couldn't delete file " + img.getMetadata().getPath() + ".";
+	}
 
-		// check if victem is null
-		if (victem != null) {
-			// delete victem
-			try {
-				JobUtils.deleteFile(victem, this);
-			} catch (IOException ioe) {
-				// user choose to cancel job
-				// => finish step
-				return false;
-			}
+	/**
+	 * do next delete step. Processed images are removed from the library once
+	 * a batch is complete.
+	 * 
+	 * @see org.jimcat.services.jobs.ParallelJob#nextStep()
+	 */
+	@Override
+	public boolean nextStep() {
+		boolean finished = super.nextStep();
+		if (finished || processed.size() >= DELETE_BATCH_SIZE) {
+			removeProcessed();
+		}
+		if (getFinishedCount() % DELETE_BATCH_SIZE == 0 || finished) {
+			setJobDescription("Deleting images (" + getFinishedCount() + "/" + imageSet.size() + ") ...");
 		}
+		return finished;
+	}
 
-		// remove from library
-		library.remove(img);
+	/**
+	 * remove all processed images from the library at once
+	 */
+	private void removeProcessed() {
+		if (processed.size() > 0) {
+			library.remove(processed);
+			processed = new HashSet<Image>();
+		}
+	}
 
-		// continue
-		progressPointer++;
-		return imageSet.size() == progressPointer;
+	/**
+	 * Rollback isn't supported, this should never be called
+	 * 
+	 * @see org.jimcat.services.jobs.ParallelJob#nextRollbackStep()
+	 */
+	@Override
+	public boolean nextRollbackStep() {
+		throw new UnsupportedOperationException("Delete Job doesn't support rollback operation");
 	}
 
 	/**
 	 * setup last message after execution
 	 * 
-	 * @see org.jimcat.services.jobs.Job#postExecution()
+	 * @see org.jimcat.services.jobs.ParallelJob#postExecution()
 	 */
 	@Override
 	public void postExecution() {
+		super.postExecution();
+
+		// images deleted before the job was canceled
+		removeProcessed();
+
 		switch (getState()) {
 		case FINISHED: {
 			setJobDescription("Delete of " + imageSet.size() + " images finished successfully");
@@ -175,6 +206,16 @@ public class DeleteJob extends Job {
 		}
 	}
 
+	/**
+	 * deleting images is limited by the file system
+	 * 
+	 * @see org.jimcat.services.jobs.Job#getResource()
+	 */
+	@Override
+	public JobResource getResource() {
+		return JobResource.IO;
+	}
+
 	/**
 	 * returns false, delete job doesn't support rollback operations
 	 * 
@@ -0,0 +1,164 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.imagedelete;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.jimcat.model.Image;
+import org.jimcat.model.libraries.ImageLibrary;
+import org.jimcat.services.jobs.Job;
+import org.jimcat.services.jobs.JobManager;
+import org.jimcat.services.jobs.JobResource;
+
+/**
+ * This job is used to remove a set of images from the library without touching
+ * their files on the disk.
+ * 
+ * It is used to drop images whose files have disappeared.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class RemoveJob extends Job {
+
+	/**
+	 * a reference to the image library
+	 */
+	private static ImageLibrary library = ImageLibrary.getInstance();
+
+	/**
+	 * the set of images to be removed
+	 */
+	private Set<Image> imageSet;
+
+	/**
+	 * true if the images have been removed
+	 */
+	private boolean done = false;
+
+	/**
+	 * creates a new remove job, default values for all
+	 */
+	public RemoveJob() {
+		this(null);
+	}
+
+	/**
+	 * creates a new remove job using the given JobManager
+	 * 
+	 * @param manager
+	 */
+	public RemoveJob(JobManager manager) {
+		super(manager, "Image-Remove", "removing images from library ...");
+
+		// setup empty image set
+		imageSet = Collections.emptySet();
+	}
+
+	/**
+	 * the images are removed within one step
+	 * 
+	 * @see org.jimcat.services.jobs.Job#getPercentage()
+	 */
+	@Override
+	public int getPercentage() {
+		return done ? 100 : 0;
+	}
+
+	/**
+	 * remove all images at once
+	 * 
+	 * @see org.jimcat.services.jobs.Job#nextStep()
+	 */
+	@Override
+	public boolean nextStep() {
+		library.remove(imageSet);
+		done = true;
+		return true;
+	}
+
+	/**
+	 * Rollback isn't supported, this should never be called
+	 * 
+	 * @see org.jimcat.services.jobs.Job#nextRollbackStep()
+	 */
+	@Override
+	public boolean nextRollbackStep() {
+		throw new UnsupportedOperationException("Remove Job doesn't support rollback operation");
+	}
+
+	/**
+	 * setup last message after execution
+	 * 
+	 * @see org.jimcat.services.jobs.Job#postExecution()
+	 */
+	@Override
+	public void postExecution() {
+		switch (getState()) {
+		case FINISHED: {
+			setJobDescription(imageSet.size() + " images removed from library");
+			break;
+		}
+		case ABORTED: {
+			setJobDescription("Remove aborted");
+			break;
+		}
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * removing images only changes the library
+	 * 
+	 * @see org.jimcat.services.jobs.Job#getResource()
+	 */
+	@Override
+	public JobResource getResource() {
+		return JobResource.CPU;
+	}
+
+	/**
+	 * returns false, remove job doesn't support rollback operations
+	 * 
+	 * @see org.jimcat.services.jobs.Job#supportsRollback()
+	 */
+	@Override
+	public boolean supportsRollback() {
+		return false;
+	}
+
+	/**
+	 * @return the imageSet
+	 */
+	public Set<Image> getImageSet() {
+		return Collections.unmodifiableSet(imageSet);
+	}
+
+	/**
+	 * @param imageSet
+	 *            the imageSet to set
+	 */
+	public void setImageSet(Set<Image> imageSet) {
+		checkConfigState();
+		this.imageSet = imageSet;
+	}
+
+}
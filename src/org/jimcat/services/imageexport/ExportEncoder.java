@@ -0,0 +1,353 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.imageexport;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import org.jimcat.model.Image;
+import org.jimcat.model.ImageMetadata;
+import org.jimcat.model.ImageRotation;
+import org.jimcat.services.ServiceLocator;
+import org.jimcat.services.imagemanager.ImageQuality;
+import org.jimcat.services.imagemanager.ImageUtil;
+
+/**
+ * Creates the content of a scaled and re-encoded export file.
+ * 
+ * Sources already decoded by the ImageManager are used if they are big
+ * enough, otherwise the original file is decoded. Exif metadata of the
+ * original file is copied into the result if requested by the profile. Its
+ * pixel dimensions are updated, and its orientation is reset if the image has
+ * been rotated by the user, because the exported pixels are rotated already.
+ * 
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+final class ExportEncoder {
+
+	/**
+	 * JPEG start of image marker
+	 */
+	private static final int SOI = 0xD8;
+
+	/**
+	 * JPEG start of scan marker, no more metadata segments follow
+	 */
+	private static final int SOS = 0xDA;
+
+	/**
+	 * JPEG APP0 (JFIF) marker
+	 */
+	private static final int APP0 = 0xE0;
+
+	/**
+	 * JPEG APP1 (Exif) marker
+	 */
+	private static final int APP1 = 0xE1;
+
+	/**
+	 * position of the TIFF header within an Exif segment (after marker,
+	 * length and "Exif\0\0"), all offsets of the Exif data are relative to it
+	 */
+	private static final int TIFF_START = 10;
+
+	/**
+	 * Exif tags updated by the export
+	 */
+	private static final int TAG_ORIENTATION = 0x0112;
+
+	private static final int TAG_EXIF_IFD = 0x8769;
+
+	private static final int TAG_PIXEL_X_DIMENSION = 0xA002;
+
+	private static final int TAG_PIXEL_Y_DIMENSION = 0xA003;
+
+	/**
+	 * TIFF field types of the updated tags
+	 */
+	private static final int TYPE_SHORT = 3;
+
+	private static final int TYPE_LONG = 4;
+
+	/**
+	 * private constructor making this class uninstanceable
+	 */
+	private ExportEncoder() {
+		// nothing to do
+	}
+
+	/**
+	 * create the export file content of the given image
+	 * 
+	 * @param img -
+	 *            the image to export
+	 * @param profile -
+	 *            the profile describing the result
+	 * @return the content of the export file
+	 * @throws IOException -
+	 *             if the image couldn't be loaded or encoded
+	 */
+	public static byte[] encode(Image img, ExportProfile profile) throws IOException {
+		ImageMetadata metadata = img.getMetadata();
+		Dimension box = new Dimension(profile.getMaxSize(), profile.getMaxSize());
+
+		// 1) try to use a cached source
+		BufferedImage result = null;
+		Dimension target = ImageUtil.getScaledDimension(metadata.getWidth(), metadata.getHeight(), box, false);
+		Dimension source = ImageUtil.getScaledDimension(metadata.getWidth(), metadata.getHeight(), ImageUtil
+		        .getSourceBoundingBox(), false);
+		if (target.width <= source.width && target.height <= source.height) {
+			result = ServiceLocator.getImageManager().getImageIfAvailable(img, box, ImageQuality.getBest());
+		}
+
+		// 2) load original if necessary
+		byte[] original = null;
+		if (result == null || profile.isKeepMetadata()) {
+			original = ImageUtil.loadFile(metadata.getPath());
+		}
+		if (result == null) {
+			result = ImageUtil.loadImage(original, box, ImageQuality.getBest());
+			result = ImageUtil.rotateImage(result, img.getRotation());
+		}
+
+		// 3) encode
+		byte[] encoded = ImageUtil.encodeJpeg(result, profile.getQuality());
+		if (original == null) {
+			return encoded;
+		}
+		byte[] exif = findExifSegment(original);
+		if (exif != null) {
+			ImageRotation rotation = img.getRotation();
+			boolean rotated = rotation != null && rotation != ImageRotation.ROTATION_0;
+			exif = updateExifSegment(exif, result.getWidth(), result.getHeight(), rotated);
+		}
+		return insertSegment(encoded, exif);
+	}
+
+	/**
+	 * find the Exif segment within the given JPEG data
+	 * 
+	 * @param jpeg
+	 * @return the complete segment including its marker or null if there is
+	 *         no Exif segment
+	 */
+	private static byte[] findExifSegment(byte[] jpeg) {
+		if (!isMarker(jpeg, 0, SOI)) {
+			return null;
+		}
+
+		int pos = 2;
+		while (pos + 4 <= jpeg.length && (jpeg[pos] & 0xFF) == 0xFF) {
+			int marker = jpeg[pos + 1] & 0xFF;
+			if (marker == SOS) {
+				break;
+			}
+			int end = pos + 2 + getSegmentLength(jpeg, pos);
+			if (end > jpeg.length) {
+				break;
+			}
+			if (marker == APP1 && end - pos > 10 && jpeg[pos + 4] == 'E' && jpeg[pos + 5] == 'x'
+			        && jpeg[pos + 6] == 'i' && jpeg[pos + 7] == 'f') {
+				byte[] segment = new byte[end - pos];
+				System.arraycopy(jpeg, pos, segment, 0, segment.length);
+				return segment;
+			}
+			pos = end;
+		}
+		return null;
+	}
+
+	/**
+	 * update the pixel dimensions and maybe the orientation of the given Exif
+	 * segment, so it describes the exported pixels
+	 * 
+	 * @param segment -
+	 *            the segment, it is modified
+	 * @param width
+	 * @param height
+	 * @param resetOrientation -
+	 *            if true, the orientation is set to normal
+	 * @return the segment or null if it is malformed and should be dropped
+	 */
+	private static byte[] updateExifSegment(byte[] segment, int width, int height, boolean resetOrientation) {
+		if (segment.length < TIFF_START + 8) {
+			return null;
+		}
+		boolean little;
+		if (segment[TIFF_START] == 'I' && segment[TIFF_START + 1] == 'I') {
+			little = true;
+		} else if (segment[TIFF_START] == 'M' && segment[TIFF_START + 1] == 'M') {
+			little = false;
+		} else {
+			return null;
+		}
+		int ifd = readInt(segment, TIFF_START + 4, little);
+		if (!updateIfd(segment, ifd, little, width, height, resetOrientation, true)) {
+			return null;
+		}
+		return segment;
+	}
+
+	/**
+	 * update the tags of a single image file directory
+	 * 
+	 * @param segment
+	 * @param ifd -
+	 *            offset of the directory, relative to the TIFF header
+	 * @param little -
+	 *            byte order
+	 * @param width
+	 * @param height
+	 * @param resetOrientation
+	 * @param followExif -
+	 *            if true, the Exif sub directory is updated as well
+	 * @return false if the directory is malformed
+	 */
+	private static boolean updateIfd(byte[] segment, int ifd, boolean little, int width, int height,
+	        boolean resetOrientation, boolean followExif) {
+		int pos = TIFF_START + ifd;
+		if (ifd < 8 || pos + 2 > segment.length) {
+			return false;
+		}
+		int count = readShort(segment, pos, little);
+		if (pos + 2 + count * 12 > segment.length) {
+			return false;
+		}
+		for (int i = 0; i < count; i++) {
+			int entry = pos + 2 + i * 12;
+			int tag = readShort(segment, entry, little);
+			if (tag == TAG_ORIENTATION && resetOrientation) {
+				writeValue(segment, entry, 1, little);
+			} else if (tag == TAG_PIXEL_X_DIMENSION) {
+				writeValue(segment, entry, width, little);
+			} else if (tag == TAG_PIXEL_Y_DIMENSION) {
+				writeValue(segment, entry, height, little);
+			} else if (tag == TAG_EXIF_IFD && followExif) {
+				int sub = readInt(segment, entry + 8, little);
+				if (!updateIfd(segment, sub, little, width, height, resetOrientation, false)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * write a single SHORT or LONG value into the given directory entry
+	 * 
+	 * @param segment
+	 * @param entry -
+	 *            position of the entry within the segment
+	 * @param value
+	 * @param little -
+	 *            byte order
+	 */
+	private static void writeValue(byte[] segment, int entry, int value, boolean little) {
+		int type = readShort(segment, entry + 2, little);
+		if (type == TYPE_SHORT) {
+			int pos = entry + 8;
+			int shortValue = Math.min(value, 0xFFFF);
+			segment[pos + (little ? 0 : 1)] = (byte) shortValue;
+			segment[pos + (little ? 1 : 0)] = (byte) (shortValue >> 8);
+		} else if (type == TYPE_LONG) {
+			for (int i = 0; i < 4; i++) {
+				segment[entry + 8 + (little ? i : 3 - i)] = (byte) (value >> (8 * i));
+			}
+		}
+	}
+
+	/**
+	 * @param data
+	 * @param pos
+	 * @param little -
+	 *            byte order
+	 * @return the unsigned 16 bit value at the given position
+	 */
+	private static int readShort(byte[] data, int pos, boolean little) {
+		int first = data[pos] & 0xFF;
+		int second = data[pos + 1] & 0xFF;
+		return little ? (second << 8) | first : (first << 8) | second;
+	}
+
+	/**
+	 * @param data
+	 * @param pos
+	 * @param little -
+	 *            byte order
+	 * @return the 32 bit value at the given position
+	 */
+	private static int readInt(byte[] data, int pos, boolean little) {
+		int high = readShort(data, little ? pos + 2 : pos, little);
+		int low = readShort(data, little ? pos : pos + 2, little);
+		return (high << 16) | low;
+	}
+
+	/**
+	 * insert the given segment into encoded JPEG data. It is placed after the
+	 * JFIF segment, if there is one.
+	 * 
+	 * @param jpeg
+	 * @param segment -
+	 *            may be null
+	 * @return the resulting JPEG data
+	 */
+	private static byte[] insertSegment(byte[] jpeg, byte[] segment) {
+		if (segment == null || !isMarker(jpeg, 0, SOI)) {
+			return jpeg;
+		}
+
+		int pos = 2;
+		if (isMarker(jpeg, pos, APP0) && pos + 4 <= jpeg.length) {
+			pos += 2 + getSegmentLength(jpeg, pos);
+		}
+
+		byte[] result = new byte[jpeg.length + segment.length];
+		System.arraycopy(jpeg, 0, result, 0, pos);
+		System.arraycopy(segment, 0, result, pos, segment.length);
+		System.arraycopy(jpeg, pos, result, pos + segment.length, jpeg.length - pos);
+		return result;
+	}
+
+	/**
+	 * check whether there is the given marker at the given position
+	 * 
+	 * @param jpeg
+	 * @param pos
+	 * @param marker
+	 * @return true if the marker is there
+	 */
+	private static boolean isMarker(byte[] jpeg, int pos, int marker) {
+		return pos + 2 <= jpeg.length && (jpeg[pos] & 0xFF) == 0xFF && (jpeg[pos + 1] & 0xFF) == marker;
+	}
+
+	/**
+	 * read the length of the segment starting at the given position. The
+	 * length doesn't include the marker itself.
+	 * 
+	 * @param jpeg
+	 * @param pos
+	 * @return the length of the segment
+	 */
+	private static int getSegmentLength(byte[] jpeg, int pos) {
+		return ((jpeg[pos + 2] & 0xFF) << 8) | (jpeg[pos + 3] & 0xFF);
+	}
+}
@@ -19,13 +19,25 @@ package org.jimcat.services.imageexport;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.jimcat.model.Image;
+import org.jimcat.services.configuration.Configuration;
+import org.jimcat.services.jobs.FileNameIndex;
 import org.jimcat.services.jobs.Job;
+import org.jimcat.services.jobs.JobFailureDescription;
+import org.jimcat.services.jobs.JobFailureOption;
 import org.jimcat.services.jobs.JobManager;
+import org.jimcat.services.jobs.JobResource;
 import org.jimcat.services.jobs.JobUtils;
 
 /**
@@ -37,6 +49,10 @@ import org.jimcat.services.jobs.JobUtils;
  * supported and on rollback all previously copied images of this export job are
  * deleted.
  * 
+ * Instead of copying the originals, images can be scaled and encoded as JPEG
+ * by setting an ExportProfile. Images are encoded in parallel, the encoded
+ * files are written one after the other.
+ * 
  * 
  * $Id$
  * 
@@ -68,11 +84,31 @@ public class ExportJob extends Job {
 	 */
 	private File destination;
 
+	/**
+	 * reserves names of exported files within the destination directory
+	 */
+	private FileNameIndex nameIndex;
+
 	/**
 	 * the index of the next image to import
 	 */
 	private int imageIndex = 0;
 
+	/**
+	 * describes the files to write
+	 */
+	private ExportProfile profile = ExportProfile.ORIGINAL;
+
+	/**
+	 * workers used to encode images
+	 */
+	private ExecutorService encoder;
+
+	/**
+	 * the number of workers used to encode images
+	 */
+	private int encoderThreads;
+
 	/**
 	 * 
 	 * default constructor
@@ -94,6 +130,30 @@ public class ExportJob extends Job {
 		this.undoList = new LinkedList<File>();
 	}
 
+	/**
+	 * index the destination directory and set up workers if images have to be
+	 * encoded
+	 * 
+	 * @see org.jimcat.services.jobs.Job#preExecution()
+	 */
+	@Override
+	public void preExecution() {
+		nameIndex = new FileNameIndex(destination);
+
+		if (profile.isCopyingOriginals()) {
+			return;
+		}
+		encoderThreads = Math.max(1, Configuration.getInt("export.threads", Runtime.getRuntime()
+		        .availableProcessors()));
+		encoder = Executors.newFixedThreadPool(encoderThreads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ExportJob encoder");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
 	/**
 	 * Retruns the percentage of finished work, which means in this case how
 	 * many images have been exported already.
@@ -150,6 +210,9 @@ public class ExportJob extends Job {
 		if (imagesToExport.size() == 0) {
 			return true;
 		}
+		if (!profile.isCopyingOriginals()) {
+			return nextEncodingStep();
+		}
 		// get the image from imagesToExport and get the file
 		// from this image
 		Image img = imagesToExport.get(imageIndex);
@@ -159,8 +222,12 @@ public class ExportJob extends Job {
 
 		try {
 			// copy file
+			long start = System.nanoTime();
 			file = copyFile(file);
 			undoList.add(file);
+			getMetrics().addStageTime("copy", start);
+			getMetrics().addItems(1);
+			getMetrics().addBytes(file.length());
 		} catch (IOException ioe) {
 			// copieing wasn't successfull - finish this element
 			// set the file null to mark the failure
@@ -175,6 +242,155 @@ public class ExportJob extends Job {
 		return imageIndex >= imagesToExport.size();
 	}
 
+	/**
+	 * encode the next images in parallel and write the results to the
+	 * destination directory. The result files are named and written in order,
+	 * so the names and the undo list are the same as when copying originals.
+	 * 
+	 * @return true if all images have been exported
+	 */
+	private boolean nextEncodingStep() {
+		int end = Math.min(imageIndex + encoderThreads * 2, imagesToExport.size());
+
+		// encode images
+		List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>(end - imageIndex);
+		for (final Image img : imagesToExport.subList(imageIndex, end)) {
+			tasks.add(new Callable<byte[]>() {
+				public byte[] call() throws Exception {
+					long start = System.nanoTime();
+					try {
+						return ExportEncoder.encode(img, profile);
+					} finally {
+						getMetrics().addStageTime("encode", start);
+					}
+				}
+			});
+		}
+		List<Future<byte[]>> results;
+		try {
+			results = encoder.invokeAll(tasks);
+		} catch (InterruptedException ie) {
+			// the job thread should stop, keep the flag for the caller
+			Thread.currentThread().interrupt();
+			cancel();
+			return false;
+		}
+
+		// write results
+		for (Future<byte[]> result : results) {
+			Image img = imagesToExport.get(imageIndex);
+			setJobDescription("Exporting File (" + (imageIndex + 1) + "/" + imagesToExport.size() + ") ... "
+			        + img.getTitle());
+
+			File file = null;
+			try {
+				byte[] content = getEncodedContent(img, result);
+				if (content != null) {
+					long start = System.nanoTime();
+					file = getTargetFile(extractFile(img), ".jpg");
+					if (JobUtils.writeFile(content, file, this)) {
+						undoList.add(file);
+						getMetrics().addStageTime("write", start);
+						getMetrics().addItems(1);
+						getMetrics().addBytes(content.length);
+					} else {
+						file = null;
+					}
+				}
+			} catch (IOException ioe) {
+				// job has been canceled or will be reverted - finish this step
+				return false;
+			}
+
+			if (file != null) {
+				// writing was successfull, save the last export path
+				img.setLastExportPath(file.getAbsolutePath());
+			}
+			imageIndex++;
+		}
+		return imageIndex >= imagesToExport.size();
+	}
+
+	/**
+	 * get the encoded content of the given image. If encoding failed, the user
+	 * is asked what to do.
+	 * 
+	 * @param img -
+	 *            the exported image
+	 * @param result -
+	 *            the result of the encoding
+	 * @return the encoded content or null if the image should be skipped
+	 * @throws IOException -
+	 *             if the user decided to cancel or rollback the job or the
+	 *             job thread has been interrupted
+	 */
+	private byte[] getEncodedContent(Image img, Future<byte[]> result) throws IOException {
+		Exception cause;
+		try {
+			return result.get();
+		} catch (ExecutionException ee) {
+			cause = (ee.getCause() instanceof Exception) ? (Exception) ee.getCause() : ee;
+		} catch (InterruptedException ie) {
+			// the job thread should stop, keep the flag for the caller
+			Thread.currentThread().interrupt();
+			cancel();
+			throw new IOException("interrupted while exporting image " + img.getTitle());
+		}
+
+		while (true) {
+			// create a failure description
+			JobFailureDescription desc = new JobFailureDescription();
+			desc.setCause(cause);
+			desc.setDescription("Error exporting image " + img.getTitle() + ".\n"
+			        + "Please make sure the file is accessable.");
+
+			// create a list of options
+			List<JobFailureOption> options = new LinkedList<JobFailureOption>();
+			options.add(JobFailureOption.Retry);
+			options.add(JobFailureOption.Ignore);
+			options.add(JobFailureOption.Rollback);
+			options.add(JobFailureOption.Cancel);
+			desc.setOptions(options);
+
+			// select default option
+			desc.setRespond(JobFailureOption.Retry);
+
+			// request failer handling
+			requestFailureHandling(desc);
+
+			// handle reaction
+			switch (desc.getRespond()) {
+			case Retry:
+				try {
+					return ExportEncoder.encode(img, profile);
+				} catch (IOException ioe) {
+					cause = ioe;
+				} catch (RuntimeException re) {
+					cause = re;
+				}
+				break;
+			case Rollback:
+				rollback();
+				throw new IOException("error exporting image " + img.getTitle());
+			case Cancel:
+				cancel();
+				throw new IOException("error exporting image " + img.getTitle());
+			default:
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * copying files is limited by the disc, encoding images by the processor
+	 * 
+	 * @see org.jimcat.services.jobs.Job#getResource()
+	 */
+	@Override
+	public JobResource getResource() {
+		return profile.isCopyingOriginals() ? JobResource.IO : JobResource.CPU;
+	}
+
 	/**
 	 * The export function supports roolback, so this method returns true
 	 * 
@@ -193,6 +409,10 @@ public class ExportJob extends Job {
 	 */
 	@Override
 	public void postExecution() {
+		if (encoder != null) {
+			encoder.shutdownNow();
+		}
+
 		switch (getState()) {
 		case FINISHED: {
 			setJobDescription("Export of " + imagesToExport.size() + " images finished successfully");
@@ -242,6 +462,22 @@ public class ExportJob extends Job {
 		return file;
 	}
 
+	/**
+	 * @return the profile
+	 */
+	public ExportProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @param profile
+	 *            the profile to set
+	 */
+	public void setProfile(ExportProfile profile) {
+		checkConfigState();
+		this.profile = profile;
+	}
+
 	/**
 	 * @return the imagesToExport
 	 */
@@ -279,25 +515,42 @@ public class ExportJob extends Job {
 		}
 
 		// 1. determine destination file name
-		File copy = null;
+		File copy = getTargetFile(source, getFileType(source));
+
+		// 2. copy file to destination
+		JobUtils.copyFile(source, copy, this);
+
+		// 3. return result
+		return copy;
+	}
+
+	/**
+	 * determine the next destination file name
+	 * 
+	 * @param source -
+	 *            the exported file
+	 * @param fileType -
+	 *            the file type of the destination including the point before
+	 *            it
+	 * @return a free file within the destination directory
+	 */
+	private File getTargetFile(File source, String fileType) {
 		String newFileName;
 		if (imagesToExportNames != null && imagesToExportNames.size() > namesIndex) {
 			newFileName = imagesToExportNames.get(namesIndex);
-			if (!newFileName.endsWith(getFileType(source))) {
-				newFileName = newFileName + getFileType(source);
+			// replace the file type of the source
+			String sourceType = (source == null) ? "" : getFileType(source);
+			if (sourceType.length() > 0 && newFileName.endsWith(sourceType)) {
+				newFileName = newFileName.substring(0, newFileName.length() - sourceType.length());
+			}
+			if (!newFileName.endsWith(fileType)) {
+				newFileName = newFileName + fileType;
 			}
 		} else {
 			newFileName = "unknown";
 		}
-		copy = new File(destination, newFileName);
-		copy = JobUtils.getNextFreeCopyFileName(destination, copy, false);
 		namesIndex++;
-
-		// 2. copy file to destination
-		JobUtils.copyFile(source, copy, this);
-
-		// 3. return result
-		return copy;
+		return nameIndex.reserve(new File(destination, newFileName), false);
 	}
 
 	/**
@@ -0,0 +1,114 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.imageexport;
+
+/**
+ * An export profile describes how images are written by an ExportJob.
+ * 
+ * The default profile copies the original files. Any other profile scales
+ * images to fit into a square of the given size and encodes them as JPEG.
+ * 
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public final class ExportProfile {
+
+	/**
+	 * copy original files byte by byte
+	 */
+	public static final ExportProfile ORIGINAL = new ExportProfile(0, 1f, true);
+
+	/**
+	 * images for the web, at most 1600 pixel wide or high
+	 */
+	public static final ExportProfile WEB = new ExportProfile(1600, 0.85f, false);
+
+	/**
+	 * large images, at most 2048 pixel wide or high
+	 */
+	public static final ExportProfile LARGE = new ExportProfile(2048, 0.9f, true);
+
+	/**
+	 * the maximum width and height of exported images, 0 for original files
+	 */
+	private final int maxSize;
+
+	/**
+	 * the JPEG quality between 0 and 1
+	 */
+	private final float quality;
+
+	/**
+	 * should exif metadata be kept
+	 */
+	private final boolean keepMetadata;
+
+	/**
+	 * create a new export profile
+	 * 
+	 * @param maxSize -
+	 *            the maximum width and height of exported images, 0 to copy
+	 *            original files
+	 * @param quality -
+	 *            the JPEG quality between 0 and 1
+	 * @param keepMetadata -
+	 *            should exif metadata be kept
+	 */
+	public ExportProfile(int maxSize, float quality, boolean keepMetadata) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("maxSize must not be negative");
+		}
+		if (quality < 0 || quality > 1) {
+			throw new IllegalArgumentException("quality has to be between 0 and 1");
+		}
+		this.maxSize = maxSize;
+		this.quality = quality;
+		this.keepMetadata = keepMetadata;
+	}
+
+	/**
+	 * @return true if original files are copied
+	 */
+	public boolean isCopyingOriginals() {
+		return maxSize == 0;
+	}
+
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return the quality
+	 */
+	public float getQuality() {
+		return quality;
+	}
+
+	/**
+	 * @return the keepMetadata
+	 */
+	public boolean isKeepMetadata() {
+		return keepMetadata;
+	}
+
+}
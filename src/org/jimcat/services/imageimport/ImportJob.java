@@ -19,8 +19,8 @@ package org.jimcat.services.imageimport;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -29,20 +29,26 @@ import org.apache.commons.io.FileUtils;
 import org.jimcat.model.Album;
 import org.jimcat.model.Image;
 import org.jimcat.model.ImageRating;
-import org.jimcat.model.comparator.NullComparator;
-import org.jimcat.model.filter.Filter;
-import org.jimcat.model.filter.ImportFilter;
-import org.jimcat.model.filter.ImportFilter.Type;
+import org.jimcat.model.ImportRecord;
+import org.jimcat.model.libraries.AlbumLibrary;
 import org.jimcat.model.libraries.ImageLibrary;
-import org.jimcat.model.libraries.LibraryView;
+import org.jimcat.model.libraries.TagHierarchy;
 import org.jimcat.model.tag.Tag;
+import org.jimcat.model.tag.TagGroup;
+import org.jimcat.persistence.ImportRepository;
+import org.jimcat.persistence.RepositoryLocator;
 import org.jimcat.services.configuration.Configuration;
 import org.jimcat.services.imagemanager.ImageQuality;
 import org.jimcat.services.imagemanager.ImageUtil;
+import org.jimcat.services.jobs.FileNameIndex;
 import org.jimcat.services.jobs.Job;
+import org.jimcat.services.jobs.JobCheckpoint;
 import org.jimcat.services.jobs.JobFailureDescription;
 import org.jimcat.services.jobs.JobFailureOption;
 import org.jimcat.services.jobs.JobManager;
+import org.jimcat.services.jobs.JobMetrics;
+import org.jimcat.services.jobs.JobResource;
+import org.jimcat.services.jobs.JobState;
 import org.jimcat.services.jobs.JobUtils;
 import org.joda.time.DateTime;
 
@@ -51,6 +57,10 @@ import org.joda.time.DateTime;
  * 
  * It should be used to import images to the system.
  * 
+ * While importing images, the job is checkpointed. A resumed import continues
+ * with the next file of its file list, a rollback of a resumed import also
+ * reverts the images imported before.
+ * 
  * $Id: ImportJob.java 934 2007-06-15 08:40:58Z 07g1t1u2 $
  * 
  * @author Herbert
@@ -64,6 +74,11 @@ public class ImportJob extends Job {
 		PREPARING, RUNNING;
 	}
 
+	/**
+	 * the number of journal entries reverted within a single rollback step
+	 */
+	private static final int ROLLBACK_BATCH_SIZE = 100;
+
 	/**
 	 * the maximal import id used up to now
 	 */
@@ -87,13 +102,18 @@ public class ImportJob extends Job {
 	/**
 	 * an id for this import
 	 */
-	private long importId = getNewImportID();
+	private long importId;
 
 	/**
 	 * the date when this import Job was started
 	 */
 	private DateTime addedDate;
 
+	/**
+	 * the persistent record describing this import
+	 */
+	private ImportRecord record;
+
 	/**
 	 * list of files / directories to import
 	 */
@@ -114,6 +134,11 @@ public class ImportJob extends Job {
 	 */
 	private File destination;
 
+	/**
+	 * reserves names of copies within the destination directory
+	 */
+	private FileNameIndex nameIndex;
+
 	/**
 	 * a list of Tags which will be attached to all imported images
 	 */
@@ -155,9 +180,19 @@ public class ImportJob extends Job {
 	private boolean ignoreAll = false;
 
 	/**
-	 * images which have to be undone
+	 * journal of images added to the library by this job
+	 */
+	private List<Image> addedImages = new ArrayList<Image>();
+
+	/**
+	 * journal of files copied by this job
+	 */
+	private List<File> copiedFiles = new ArrayList<File>();
+
+	/**
+	 * the number of journal entries when the rollback started
 	 */
-	private List<Image> undoList = null;
+	private int journalSize = -1;
 
 	/**
 	 * creates a new import job, default values for all
@@ -174,6 +209,9 @@ public class ImportJob extends Job {
 	public ImportJob(JobManager manager) {
 		super(manager, "Image-Import", "Adding images to library ...");
 
+		// the id is shown by the import dialog before the job is started
+		importId = getNewImportID();
+
 		// set up default destination direcotry
 		String destPath = Configuration.getConfigBaseDirectory() + "import/" + importId + "/";
 		destPath = Configuration.getString("backupdirectory", destPath);
@@ -187,8 +225,25 @@ public class ImportJob extends Job {
 	 */
 	@Override
 	public void preExecution() {
+		// duplicates are detected using the complete library
+		library.awaitLoaded();
+
+		// index names used within the destination directory
+		if (copyImages) {
+			nameIndex = new FileNameIndex(destination);
+		}
+
+		// a resumed import keeps its record
+		if (record != null) {
+			return;
+		}
+
 		// gerate TimeStamp when import starts
 		addedDate = new DateTime();
+
+		// store import record => reserves the import id persistently
+		record = new ImportRecord(importId, addedDate, getRootPath());
+		getImportRepository().save(Collections.singleton(record));
 	}
 
 	/**
@@ -204,6 +259,10 @@ public class ImportJob extends Job {
 		if (state == ImportState.PREPARING) {
 			return 0;
 		}
+		// while reverting, progress is the part of the journal left
+		if (journalSize > 0) {
+			return (int) (((addedImages.size() + copiedFiles.size()) / (float) journalSize) * 100);
+		}
 		// if list length is 0, return 100%
 		if (files.size() == 0) {
 			return 100;
@@ -327,11 +386,20 @@ public class ImportJob extends Job {
 		// do not ignore images if you have to copy them
 		if (!file.isDirectory() && (!alreadyIncluded || isCopyImages())) {
 
+			// the content of the file, if it was already read while copying
+			byte[] content = null;
+			JobMetrics metrics = getMetrics();
+
 			// copy this image to a backup location
 			if (isCopyImages()) {
 				try {
 					// copy file
-					file = copyFile(file);
+					long start = System.nanoTime();
+					File copy = nameIndex.reserve(file, true);
+					content = JobUtils.copyAndLoadFile(file, copy, this);
+					metrics.addStageTime("copy", start);
+					copiedFiles.add(copy);
+					file = copy;
 				} catch (IOException ioe) {
 					// copieing wasn't successfull - finish this element
 					return false;
@@ -368,7 +436,15 @@ public class ImportJob extends Job {
 			boolean loaded = false;
 			do {
 				try {
-					Image tmp = ImageUtil.resolveImage(file, ImageQuality.getBest(), importId, addedDate);
+					// the copy is already in memory, don't read it again
+					byte[] data = content;
+					if (data == null) {
+						long start = System.nanoTime();
+						data = ImageUtil.loadFile(file);
+						metrics.addStageTime("read", start);
+					}
+					Image tmp = ImageUtil.resolveImage(data, ImageQuality.getBest(), file, importId, addedDate, metrics);
+					long start = System.nanoTime();
 
 					// add Thumbnail to local
 					img.setThumbnail(tmp.getThumbnail());
@@ -381,6 +457,7 @@ public class ImportJob extends Job {
 
 					// add to library
 					library.add(img);
+					addedImages.add(img);
 
 					// add default tags
 					for (Tag t : defaultTags) {
@@ -392,6 +469,9 @@ public class ImportJob extends Job {
 						img.addToAlbum(defaultAlbum);
 					}
 
+					metrics.addStageTime("commit", start);
+					metrics.addItems(1);
+					metrics.addBytes(data.length);
 					imported++;
 					loaded = true;
 				} catch (Exception ioe) {
@@ -440,6 +520,10 @@ public class ImportJob extends Job {
 	/**
 	 * this will revert the next part of work privouslly done by this job.
 	 * 
+	 * The rollback replays the journal of this job backwards. First all added
+	 * images are removed from the library, afterwards copied files are
+	 * deleted. Both is done in batches.
+	 * 
 	 * @see org.jimcat.services.jobs.Job#nextRollbackStep()
 	 */
 	@Override
@@ -448,43 +532,26 @@ public class ImportJob extends Job {
 		if (state == ImportState.PREPARING) {
 			return true;
 		}
-		// create undolist if it is first step
-		if (undoList == null) {
-			// create a libraryview containing added images
-			Filter filter = new ImportFilter(Type.EXACT, importId);
-			Comparator<Image> comparator = new NullComparator();
-			LibraryView view = new LibraryView(ImageLibrary.getInstance(), filter, comparator);
-
-			// get list of images
-			undoList = new LinkedList<Image>(view.getImages());
-
-			// dispose view, its not needed any more
-			view.dispose();
-
-			// if there is nothing to do, finish job
-			if (undoList.size() == 0) {
-				return true;
-			}
+		// remember size of journal for progress information
+		if (journalSize == -1) {
+			journalSize = addedImages.size() + copiedFiles.size();
 		}
 
-		// if there is nothing to do in special
-		if (!isCopyImages()) {
-			// delete all images at once
-			library.remove(new HashSet<Image>(undoList));
-			return true;
+		// 1) remove next batch of images from the library
+		if (addedImages.size() > 0) {
+			List<Image> batch = addedImages.subList(Math.max(0, addedImages.size() - ROLLBACK_BATCH_SIZE),
+			        addedImages.size());
+			setJobDescription("Removing images from library (" + addedImages.size() + " left) ...");
+			library.remove(new HashSet<Image>(batch));
+			batch.clear();
+			return addedImages.size() == 0 && copiedFiles.size() == 0;
 		}
 
-		// get last image
-		Image img = undoList.get(undoList.size() - 1);
-
-		// inform user about progress
-		fileIndex--;
-		setJobDescription("Reverting File (" + (fileIndex + 1) + "/" + files.size() + ") ... " + img.getTitle());
-
-		// if this job is copieing files, undo it too
-		if (isCopyImages()) {
-			// remove file
-			File file = img.getMetadata().getPath();
+		// 2) delete next batch of copied files
+		int end = Math.max(0, copiedFiles.size() - ROLLBACK_BATCH_SIZE);
+		for (int i = copiedFiles.size() - 1; i >= end; i--) {
+			File file = copiedFiles.get(i);
+			setJobDescription("Reverting File (" + (i + 1) + "/" + copiedFiles.size() + ") ... " + file.getName());
 			try {
 				JobUtils.deleteFile(file, this);
 			} catch (IOException ioe) {
@@ -492,16 +559,11 @@ public class ImportJob extends Job {
 				// finish step
 				return false;
 			}
+			copiedFiles.remove(i);
 		}
 
-		// remove image from library
-		library.remove(img);
-
-		// image removed
-		undoList.remove(img);
-
 		// remove directory when finished
-		if (undoList.size() == 0 && isCopyImages() && destination.exists()) {
+		if (copiedFiles.size() == 0 && isCopyImages() && destination.exists()) {
 			try {
 				FileUtils.deleteDirectory(destination);
 			} catch (IOException ioe) {
@@ -509,7 +571,7 @@ public class ImportJob extends Job {
 			}
 		}
 
-		return undoList.size() == 0;
+		return copiedFiles.size() == 0;
 	}
 
 	/**
@@ -519,6 +581,10 @@ public class ImportJob extends Job {
 	 */
 	@Override
 	public void postExecution() {
+		// update import statistics
+		record.setFileCount(getState() == JobState.REVERTED ? 0 : imported);
+		getImportRepository().save(Collections.singleton(record));
+
 		switch (getState()) {
 		case FINISHED: {
 			setJobDescription(imported + " images successfully imported, " + allreadyContained + " already contained, "
@@ -538,6 +604,188 @@ public class ImportJob extends Job {
 		}
 	}
 
+	/**
+	 * store file list, position and journal. Nothing is stored while
+	 * searching for files, this is repeated if the import is resumed.
+	 * 
+	 * @see org.jimcat.services.jobs.Job#createCheckpoint()
+	 */
+	@Override
+	protected JobCheckpoint createCheckpoint() {
+		if (state == ImportState.PREPARING) {
+			return null;
+		}
+
+		JobCheckpoint checkpoint = new JobCheckpoint(this);
+		checkpoint.setLong("importId", importId);
+		checkpoint.setLong("addedDate", addedDate.getMillis());
+		checkpoint.setBoolean("recursive", recursive);
+		checkpoint.setBoolean("copyImages", copyImages);
+		checkpoint.setFile("destination", destination);
+		checkpoint.setFiles("files", files);
+		checkpoint.setInt("fileIndex", fileIndex);
+		checkpoint.setInt("imported", imported);
+		checkpoint.setInt("allreadyContained", allreadyContained);
+		checkpoint.setInt("ignored", ignored);
+		checkpoint.setBoolean("ignoreAll", ignoreAll);
+		checkpoint.setFiles("copiedFiles", copiedFiles);
+
+		// tags are identified by their position within the tag tree
+		TagGroup root = TagHierarchy.getInstance().getTagHierarchyRoot();
+		List<String> tagPaths = new ArrayList<String>();
+		List<String> tagNames = new ArrayList<String>();
+		for (Tag tag : defaultTags) {
+			String path = getTagPath(root, tag);
+			if (path != null) {
+				tagPaths.add(path);
+				tagNames.add(tag.getName());
+			}
+		}
+		checkpoint.setStrings("defaultTagPaths", tagPaths);
+		checkpoint.setStrings("defaultTagNames", tagNames);
+		checkpoint.setString("defaultAlbum", (defaultAlbum == null) ? null : defaultAlbum.getName());
+		return checkpoint;
+	}
+
+	/**
+	 * continue an import at the stored position. The journal of added images
+	 * is rebuilt using the import id.
+	 * 
+	 * @see org.jimcat.services.jobs.Job#restoreCheckpoint(org.jimcat.services.jobs.JobCheckpoint)
+	 */
+	@Override
+	protected void restoreCheckpoint(JobCheckpoint checkpoint) throws IllegalArgumentException {
+		importId = checkpoint.getLong("importId", -1);
+		record = null;
+		for (ImportRecord stored : getImportRepository().getAll()) {
+			if (stored.getImportId() == importId) {
+				record = stored;
+			}
+		}
+		if (record == null) {
+			throw new IllegalArgumentException("Unknown import " + importId);
+		}
+
+		addedDate = new DateTime(checkpoint.getLong("addedDate", record.getDate().getMillis()));
+		recursive = checkpoint.getBoolean("recursive", false);
+		copyImages = checkpoint.getBoolean("copyImages", false);
+		destination = checkpoint.getFile("destination");
+		files = checkpoint.getFiles("files");
+		fileIndex = checkpoint.getInt("fileIndex", 0);
+		imported = checkpoint.getInt("imported", 0);
+		allreadyContained = checkpoint.getInt("allreadyContained", 0);
+		ignored = checkpoint.getInt("ignored", 0);
+		ignoreAll = checkpoint.getBoolean("ignoreAll", false);
+		copiedFiles = checkpoint.getFiles("copiedFiles");
+		state = ImportState.RUNNING;
+
+		// images added before
+		addedImages = new ArrayList<Image>(RepositoryLocator.getImageRepository().getByImport(importId));
+
+		// default tags and album
+		List<String> tagPaths = checkpoint.getStrings("defaultTagPaths");
+		List<String> tagNames = checkpoint.getStrings("defaultTagNames");
+		TagGroup root = TagHierarchy.getInstance().getTagHierarchyRoot();
+		defaultTags = new ArrayList<Tag>();
+		for (int i = 0; i < tagPaths.size(); i++) {
+			defaultTags.add(getTagByPath(root, tagPaths.get(i), tagNames.get(i)));
+		}
+		String albumName = checkpoint.getString("defaultAlbum");
+		defaultAlbum = (albumName == null) ? null : findAlbum(albumName, addedImages);
+
+		setJobDescription("Resuming import (" + fileIndex + "/" + files.size() + ") ...");
+	}
+
+	/**
+	 * get the position of a tag within the tag tree
+	 * 
+	 * @param group -
+	 *            the group to search
+	 * @param tag
+	 * @return the indices of all groups on the way to the tag separated by /,
+	 *         null if the tag isn't part of this group
+	 */
+	private static String getTagPath(TagGroup group, Tag tag) {
+		List<TagGroup> children = group.getSubTags();
+		for (int i = 0; i < children.size(); i++) {
+			TagGroup child = children.get(i);
+			if (child == tag) {
+				return String.valueOf(i);
+			}
+			String path = getTagPath(child, tag);
+			if (path != null) {
+				return i + "/" + path;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * get the tag stored at the given position
+	 * 
+	 * @param root -
+	 *            the root of the tag tree
+	 * @param path -
+	 *            a path created by getTagPath
+	 * @param name -
+	 *            the name the tag had when the path was created
+	 * @return the tag
+	 * @throws IllegalArgumentException -
+	 *             if this tag doesn't exist any more
+	 */
+	private static Tag getTagByPath(TagGroup root, String path, String name) throws IllegalArgumentException {
+		TagGroup group = root;
+		try {
+			for (String index : path.split("/")) {
+				group = group.getSubTags().get(Integer.parseInt(index));
+			}
+		} catch (RuntimeException re) {
+			throw new IllegalArgumentException("Unknown tag " + path, re);
+		}
+		if (!(group instanceof Tag) || !group.getName().equals(name)) {
+			throw new IllegalArgumentException("Tag " + name + " has been moved or renamed");
+		}
+		return (Tag) group;
+	}
+
+	/**
+	 * get the album with the given name. Albums have no other identity, so if
+	 * there are several albums with this name, the one containing the images
+	 * imported before is chosen.
+	 * 
+	 * @param name
+	 * @param imported -
+	 *            images already added by this import
+	 * @return the album
+	 * @throws IllegalArgumentException -
+	 *             if there is no unique album
+	 */
+	private static Album findAlbum(String name, List<Image> imported) throws IllegalArgumentException {
+		AlbumLibrary library = AlbumLibrary.getInstance();
+		library.awaitLoaded();
+
+		List<Album> candidates = new ArrayList<Album>();
+		for (Album album : library.getAll()) {
+			if (name.equals(album.getName()) && album.getImages().containsAll(imported)) {
+				candidates.add(album);
+			}
+		}
+		if (candidates.size() != 1) {
+			throw new IllegalArgumentException("Album " + name + " can't be identified");
+		}
+		return candidates.get(0);
+	}
+
+	/**
+	 * importing images is limited by reading files
+	 * 
+	 * @see org.jimcat.services.jobs.Job#getResource()
+	 */
+	@Override
+	public JobResource getResource() {
+		return JobResource.IO;
+	}
+
 	/**
 	 * This type of job supportes a rollback
 	 * 
@@ -661,42 +909,62 @@ public class ImportJob extends Job {
 	}
 
 	/**
-	 * this methode will copy the given file to the backup destination.
+	 * get the common root of all files selected for this import
 	 * 
-	 * @param source -
-	 *            the file to copy
-	 * @return - the file - representation of the copy or null if copy wasn'
-	 *         successfull
-	 * @throws IOException -
-	 *             if copien wasn't successfull
+	 * @return the path of the root or null if there are no files
 	 */
-	private File copyFile(File source) throws IOException {
-		// 1. get destination file name
-		File copy = JobUtils.getNextFreeCopyFileName(destination, source, true);
+	private String getRootPath() {
+		if (files == null || files.size() == 0) {
+			return null;
+		}
+		if (files.size() == 1) {
+			return files.get(0).getAbsolutePath();
+		}
 
-		// 2. copy to destination
-		JobUtils.copyFile(source, copy, this);
+		// find common parent directory
+		File root = files.get(0).getAbsoluteFile().getParentFile();
+		for (File file : files) {
+			String path = file.getAbsolutePath();
+			while (root != null && !path.startsWith(root.getPath() + File.separator)) {
+				root = root.getParentFile();
+			}
+		}
+		return (root == null) ? null : root.getPath();
+	}
 
-		// 3. return copy
-		return copy;
+	/**
+	 * @return the repository storing import records
+	 */
+	private static ImportRepository getImportRepository() {
+		return RepositoryLocator.getImportRepository();
 	}
 
 	/**
-	 * this will generate a new import ID
+	 * this will generate a new import ID.
+	 * 
+	 * The highest id used up to now is taken from the stored import records.
+	 * Only libraries created before import records have been introduced are
+	 * scanned once to find the maximum id. This scan has to wait until the
+	 * library has been loaded completely.
 	 * 
 	 * @return the new import ID
+	 * @throws IllegalStateException -
+	 *             if the library couldn't be loaded
 	 */
-	private static long getNewImportID() {
+	private static long getNewImportID() throws IllegalStateException {
 		synchronized (idLock) {
 			// generate new id
 			// if MAX_IMPORT_ID isn't up do date
 			if (MAX_IMPORT_ID == -1) {
-				// find maximal value
-				long max = -1;
-				for (Image img : library.getAll()) {
-					long tmp = img.getMetadata().getImportId();
-					if (max < tmp) {
-						max = tmp;
+				long max = getImportRepository().getMaxImportId();
+				if (max == -1) {
+					// no records yet => find maximal value within library
+					library.awaitLoaded();
+					for (Image img : library.getAll()) {
+						long tmp = img.getMetadata().getImportId();
+						if (max < tmp) {
+							max = tmp;
+						}
 					}
 				}
 				MAX_IMPORT_ID = max + 1;
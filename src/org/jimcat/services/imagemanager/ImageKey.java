@@ -18,7 +18,6 @@
 package org.jimcat.services.imagemanager;
 
 import java.awt.Dimension;
-import java.io.File;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.builder.HashCodeBuilder;
@@ -100,7 +99,7 @@ public class ImageKey {
 	@Override
 	public int hashCode() {
 		HashCodeBuilder builder = new HashCodeBuilder();
-		builder.append(img);
+		builder.append(img.getImageId());
 		builder.append(dim);
 		builder.append(rotation);
 		return builder.toHashCode();
@@ -131,10 +130,8 @@ public class ImageKey {
 			return false;
 		}
 
-		// end with represented file.
-		File file1 = this.img.getMetadata().getPath();
-		File file2 = other.img.getMetadata().getPath();
-		if (!ObjectUtils.equals(file1, file2)) {
+		// end with represented image
+		if (this.img.getImageId() != other.img.getImageId()) {
 			return false;
 		}
 
@@ -83,7 +83,7 @@ public final class ImageManagerImpl implements ImageManager {
 		// startup preloadservice
 		Thread loader = new Thread(preloadService);
 		loader.setDaemon(true);
-		loader.setPriority(2);
+		loader.setPriority(PreloadService.THREAD_PRIORITY);
 		loader.start();
 	}
 
@@ -30,15 +30,21 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Iterator;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
 import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
@@ -48,6 +54,7 @@ import org.jimcat.model.ImageMetadata;
 import org.jimcat.model.ImageRotation;
 import org.jimcat.model.Thumbnail;
 import org.jimcat.services.ServiceLocator;
+import org.jimcat.services.jobs.JobMetrics;
 import org.joda.time.DateTime;
 import org.joda.time.IllegalFieldValueException;
 import org.joda.time.format.DateTimeFormat;
@@ -112,6 +119,11 @@ public final class ImageUtil {
 	 */
 	private static final Dimension IMAGE_TILE_SIZE = new Dimension(3840, 2400);
 
+	/**
+	 * the size of the buffer used to calculate checksums of files
+	 */
+	private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+
 	/**
 	 * private constructor making this class uninstanceable
 	 */
@@ -344,11 +356,38 @@ public final class ImageUtil {
 	 */
 	public static Image resolveImage(byte content[], ImageQuality quality, File file, long importId, DateTime addedDate)
 	        throws IOException {
+		return resolveImage(content, quality, file, importId, addedDate, null);
+	}
+
+	/**
+	 * this methode will resolve the given information to an Image object. The
+	 * time spent for decoding, creating the thumbnail, hashing and reading exif
+	 * data is recorded as stages of the given metrics.
+	 * 
+	 * @param content -
+	 *            the content of the file as byte array
+	 * @param quality -
+	 *            the quality used to render contained image
+	 * @param file -
+	 *            the file containing the image
+	 * @param importId -
+	 *            the import id of the resulting image
+	 * @param addedDate -
+	 *            the added date of the resulting image
+	 * @param metrics -
+	 *            the metrics of the calling job or null
+	 * @return - a fullfeatured image object
+	 * @throws IOException
+	 */
+	public static Image resolveImage(byte content[], ImageQuality quality, File file, long importId,
+	        DateTime addedDate, JobMetrics metrics) throws IOException {
 
 		Image img = new Image();
+		long start = System.nanoTime();
 
 		// load image
 		BufferedImage image = loadImage(content, quality);
+		start = addStageTime(metrics, "decode", start);
 
 		// check if image could be read
 		if (image == null)
@@ -357,16 +396,19 @@ public final class ImageUtil {
 		// create Thumbnail
 		Thumbnail thumbnail = new Thumbnail(image);
 		img.setThumbnail(thumbnail);
+		start = addStageTime(metrics, "thumbnail", start);
 
 		// create ImageMetaData
 		String checksum = ImageUtil.getChecksum(content);
 		Dimension dim = getImageDimension(content);
 		ImageMetadata metadata = createMetadata(file, dim.width, dim.height, checksum, importId, addedDate);
 		img.setMetadata(metadata);
+		start = addStageTime(metrics, "hash", start);
 
 		// create exif date
 		ExifMetadata exifMetadata = ImageUtil.readExifMetadata(content);
 		img.setExifMetadata(exifMetadata);
+		addStageTime(metrics, "exif", start);
 
 		// flush cache
 		ServiceLocator.getImageManager().flushImage(img, image);
@@ -374,6 +416,22 @@ public final class ImageUtil {
 		return img;
 	}
 
+	/**
+	 * record a stage if there are metrics
+	 * 
+	 * @param metrics -
+	 *            the metrics or null
+	 * @param stage
+	 * @param start
+	 * @return the start time of the next stage
+	 */
+	private static long addStageTime(JobMetrics metrics, String stage, long start) {
+		if (metrics == null) {
+			return start;
+		}
+		return metrics.addStageTime(stage, start);
+	}
+
 	/**
 	 * use this methode to load an image from disc
 	 * 
@@ -403,6 +461,36 @@ public final class ImageUtil {
 	 *             if something goes wrong
 	 */
 	public static BufferedImage loadImage(byte[] data, ImageQuality quality) throws IOException {
+		return loadImage(data, SOURCE_BOUNDING_BOX, quality);
+	}
+
+	/**
+	 * get the size images loaded by loadImage(data, quality) are limited to.
+	 * Images within the ImageManager cache are not bigger than this size.
+	 * 
+	 * @return the bounding box of source images
+	 */
+	public static Dimension getSourceBoundingBox() {
+		return new Dimension(SOURCE_BOUNDING_BOX);
+	}
+
+	/**
+	 * use this methode to load an image from a given byte array fitting into
+	 * the given bounding box
+	 * 
+	 * @param data -
+	 *            the byte array containing an encoded image
+	 * @param boundingBox -
+	 *            the maximum size of the resulting image
+	 * @param quality
+	 *            the rendering quality
+	 * @return - a Buffered Image containing image. Its size is limited by the
+	 *         given bounding box
+	 * @throws IOException -
+	 *             if something goes wrong
+	 */
+	public static BufferedImage loadImage(byte[] data, Dimension boundingBox, ImageQuality quality)
+	        throws IOException {
 
 		// read first element
 		ImageReader reader = getReaderForImage(data);
@@ -410,7 +498,7 @@ public final class ImageUtil {
 		// get image dimension and calculate resulting image size
 		int width = reader.getWidth(0);
 		int height = reader.getHeight(0);
-		Dimension size = getScaledDimension(width, height, SOURCE_BOUNDING_BOX, false);
+		Dimension size = getScaledDimension(width, height, boundingBox, false);
 
 		// performe read
 		BufferedImage bi = null;
@@ -443,6 +531,48 @@ public final class ImageUtil {
 		return bi;
 	}
 
+	/**
+	 * encode the given image as JPEG
+	 * 
+	 * @param img -
+	 *            the image to encode
+	 * @param compressionQuality -
+	 *            the JPEG quality between 0 and 1
+	 * @return a byte array containing the encoded image
+	 * @throws IOException -
+	 *             if the image couldn't be encoded
+	 */
+	public static byte[] encodeJpeg(BufferedImage img, float compressionQuality) throws IOException {
+		// JPEG doesn't support alpha values
+		if (img.getColorModel().hasAlpha()) {
+			BufferedImage rgb = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = rgb.createGraphics();
+			g.drawImage(img, 0, 0, null);
+			g.dispose();
+			img = rgb;
+		}
+
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageOutputStream ios = null;
+		try {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(compressionQuality);
+
+			ios = ImageIO.createImageOutputStream(out);
+			writer.setOutput(ios);
+			writer.write(null, new IIOImage(img, null, null), param);
+			ios.flush();
+		} finally {
+			writer.dispose();
+			if (ios != null) {
+				ios.close();
+			}
+		}
+		return out.toByteArray();
+	}
+
 	/**
 	 * this methode is used to read a file into an internal byte array.
 	 * 
@@ -487,23 +617,64 @@ public final class ImageUtil {
 			// calculate checksum
 			MessageDigest mdAlgorithm = MessageDigest.getInstance("MD5");
 			mdAlgorithm.update(file);
-			byte[] checksum = mdAlgorithm.digest();
+			result = toHexString(mdAlgorithm.digest());
 
-			// format to hex string
-			StringBuffer buffer = new StringBuffer(checksum.length * 2);
-			for (byte b : checksum) {
-				buffer.append(Integer.toHexString((b & 0xF0) >> 4));
-				buffer.append(Integer.toHexString(b & 0x0F));
+		} catch (NoSuchAlgorithmException nsae) {
+			// should never happen
+			nsae.printStackTrace();
+		}
+		return result;
+	}
+
+	/**
+	 * used to calculate the checksum of a file without loading it into memory
+	 * at once. The result is equal to getChecksum(loadFile(file)).
+	 * 
+	 * @param file
+	 * @return - the MD5 checksum as string or null on error
+	 * @throws IOException -
+	 *             if the file couldn't be read
+	 */
+	public static String getChecksum(File file) throws IOException {
+		String result = null;
+		FileInputStream in = null;
+		try {
+			// calculate checksum
+			MessageDigest mdAlgorithm = MessageDigest.getInstance("MD5");
+			in = new FileInputStream(file);
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				mdAlgorithm.update(buffer);
+				buffer.clear();
 			}
-			result = buffer.toString().toUpperCase();
+			result = toHexString(mdAlgorithm.digest());
 
 		} catch (NoSuchAlgorithmException nsae) {
 			// should never happen
 			nsae.printStackTrace();
+		} finally {
+			IOUtils.closeQuietly(in);
 		}
 		return result;
 	}
 
+	/**
+	 * format a checksum to an upper case hex string
+	 * 
+	 * @param checksum
+	 * @return the hex representation of the given checksum
+	 */
+	private static String toHexString(byte[] checksum) {
+		StringBuffer buffer = new StringBuffer(checksum.length * 2);
+		for (byte b : checksum) {
+			buffer.append(Integer.toHexString((b & 0xF0) >> 4));
+			buffer.append(Integer.toHexString(b & 0x0F));
+		}
+		return buffer.toString().toUpperCase();
+	}
+
 	/**
 	 * create a ImageMetadata object from given information
 	 * 
@@ -29,6 +29,12 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public class PreloadService implements Runnable {
 
+	/**
+	 * the priority of the thread loading images, it is above the priority of
+	 * all jobs
+	 */
+	public static final int THREAD_PRIORITY = Thread.MIN_PRIORITY + 3;
+
 	/**
 	 * used to kill this service
 	 */
@@ -92,7 +98,7 @@ public class PreloadService implements Runnable {
 	 */
 	public void run() {
 		// "endless loop" until this thread got killed
-		Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+		Thread.currentThread().setPriority(THREAD_PRIORITY);
 		ImageKey order = getNextOrder();
 		while (order != POISEND_ORDER) {
 			// load image
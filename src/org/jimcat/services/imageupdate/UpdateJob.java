@@ -19,22 +19,50 @@ package org.jimcat.services.imageupdate;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.jimcat.model.Image;
 import org.jimcat.model.ImageMetadata;
+import org.jimcat.model.libraries.ImageLibrary;
 import org.jimcat.model.notification.BeanModificationManager;
+import org.jimcat.services.configuration.Configuration;
 import org.jimcat.services.imagemanager.ImageQuality;
 import org.jimcat.services.imagemanager.ImageUtil;
+import org.jimcat.services.imageupdate.UpdateReport.Change;
 import org.jimcat.services.jobs.Job;
+import org.jimcat.services.jobs.JobCheckpoint;
+import org.jimcat.services.jobs.JobMetrics;
+import org.jimcat.services.jobs.JobResource;
 import org.joda.time.DateTime;
 
 /**
  * The update job updates the image data, metadata, exif metadata and thumbnail
  * if the checksum or/and the modification date has changed.
  * 
+ * The update is devided into two sections. In the first part all images are
+ * verified in parallel. By default only the size and the modification date of
+ * a file are compared to the stored metadata, only files with changed stats
+ * are read to compare their checksum. The result is an UpdateReport.
+ * 
+ * In the second part, all modified images are resolved again one by one.
+ * Images which have only been touched just get new metadata.
+ * 
+ * The job is checkpointed, images are identified by their path.
+ * 
  * 
  * $Id$
  * 
@@ -42,16 +70,84 @@ import org.joda.time.DateTime;
  */
 public class UpdateJob extends Job {
 
+	/**
+	 * a small enumeration to control process flow
+	 */
+	enum UpdateState {
+		VERIFYING, UPDATING;
+	}
+
+	/**
+	 * number of images verified within a single step
+	 */
+	private static final int VERIFY_CHUNK_SIZE = 64;
+
 	/**
 	 * list of images to update
 	 */
 	private List<Image> updateList;
 
+	/**
+	 * should every file be read to compare checksums, even if size and
+	 * modification date are unchanged?
+	 */
+	private boolean fullVerify = false;
+
+	/**
+	 * should the job stop after creating the report?
+	 */
+	private boolean reportOnly = false;
+
+	/**
+	 * the current state of execution. It is read by getPercentage() from other
+	 * threads, so the lists of a state are assigned before switching to it.
+	 */
+	private volatile UpdateState state = UpdateState.VERIFYING;
+
 	/**
 	 * used to remember progress
 	 */
 	private int currentImage;
 
+	/**
+	 * the result of the verification
+	 */
+	private UpdateReport report = new UpdateReport();
+
+	/**
+	 * the images to be processed within the updating section
+	 */
+	private List<Image> pendingList;
+
+	/**
+	 * workers used to verify images
+	 */
+	private ExecutorService verifier;
+
+	/**
+	 * limits the number of files read at the same time
+	 */
+	private Semaphore readPermits;
+
+	/**
+	 * set up worker threads
+	 * 
+	 * @see org.jimcat.services.jobs.Job#preExecution()
+	 */
+	@Override
+	public void preExecution() {
+		int threads = Configuration.getInt("update.verifythreads", Runtime.getRuntime().availableProcessors());
+		int reads = Configuration.getInt("update.parallelreads", 2);
+		verifier = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "UpdateJob verifier");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		readPermits = new Semaphore(Math.max(1, reads));
+	}
+
 	/**
 	 * get progress information
 	 * 
@@ -59,12 +155,13 @@ public class UpdateJob extends Job {
 	 */
 	@Override
 	public int getPercentage() {
+		List<Image> list = (state == UpdateState.VERIFYING) ? updateList : pendingList;
 		// if list length is 0, return 100%
-		if (updateList.size() == 0) {
+		if (list.size() == 0) {
 			return 100;
 		}
-		// percentage of imported images
-		return (int) ((currentImage / (float) updateList.size()) * 100);
+		// percentage of processed images
+		return (int) ((currentImage / (float) list.size()) * 100);
 	}
 
 	/**
@@ -78,61 +175,178 @@ public class UpdateJob extends Job {
 	}
 
 	/**
-	 * in every step one image is updated. If there are no images left the job
-	 * stops. In every step the image data, metadata and thumbnail are updated.
+	 * While verifying, every step checks a chunk of images in parallel. When
+	 * updating, every step updates a single image. If there are no images left
+	 * the job stops.
 	 * 
 	 * @see org.jimcat.services.jobs.Job#nextStep()
 	 */
 	@Override
 	public boolean nextStep() {
-		// if there are no images within the filelist
-		if (updateList.size() == 0) {
+		if (state == UpdateState.VERIFYING) {
+			if (!nextVerifyingStep()) {
+				return false;
+			}
+			setJobDescription(report.toString());
+			if (reportOnly) {
+				return true;
+			}
+
+			// switch to update section
+			List<Image> pending = new ArrayList<Image>(report.getImages(Change.MODIFIED));
+			pending.addAll(report.getImages(Change.TOUCHED));
+			pendingList = pending;
+			currentImage = 0;
+			state = UpdateState.UPDATING;
+		}
+
+		// if there are no images left
+		if (currentImage >= pendingList.size()) {
 			return true;
 		}
 
 		// getFile
-		Image image = updateList.get(currentImage);
-		setJobDescription("Updateing image (" + (currentImage + 1) + "/" + updateList.size() + ") ... "
+		Image image = pendingList.get(currentImage);
+		setJobDescription("Updateing image (" + (currentImage + 1) + "/" + pendingList.size() + ") ... "
 		        + image.getTitle());
 
-		updateImage(image);
+		// modified images are followed by touched images
+		boolean touched = currentImage >= report.getCount(Change.MODIFIED);
+		updateImage(image, touched);
+		getMetrics().addItems(1);
 
 		// increment position
 		currentImage++;
-		return currentImage >= updateList.size();
+		return currentImage >= pendingList.size();
 	}
 
 	/**
-	 * update given image if necessary
+	 * verify the next chunk of images
 	 * 
-	 * @param image
+	 * @return true if all images have been verified
 	 */
-	private void updateImage(Image image) {
+	private boolean nextVerifyingStep() {
+		int end = Math.min(currentImage + VERIFY_CHUNK_SIZE, updateList.size());
+		setJobDescription("Verifying images (" + end + "/" + updateList.size() + ") ...");
+
+		List<Callable<Change>> tasks = new ArrayList<Callable<Change>>(end - currentImage);
+		for (final Image image : updateList.subList(currentImage, end)) {
+			tasks.add(new Callable<Change>() {
+				public Change call() throws Exception {
+					return verifyImage(image);
+				}
+			});
+		}
+
 		try {
-			// 1) Load File
-			File file = image.getMetadata().getPath();
-			byte[] content = ImageUtil.loadFile(image.getMetadata().getPath());
-
-			// 2) check modification date and checksum
-			// cheap first => check modification date
-			long localModificationDate = image.getMetadata().getModificationDate().getMillis();
-			long currentModificationDate = file.lastModified();
-			String checksum = ImageUtil.getChecksum(content);
-
-			if (localModificationDate == currentModificationDate) {
-				// check checksum
-				if (ObjectUtils.equals(checksum, image.getMetadata().getChecksum())) {
-					// no udpate necessary
-					return;
+			List<Future<Change>> results = verifier.invokeAll(tasks);
+			for (int i = 0; i < results.size(); i++) {
+				Change change;
+				try {
+					change = results.get(i).get();
+				} catch (ExecutionException ee) {
+					ee.printStackTrace();
+					change = Change.MISSING;
 				}
+				report.add(updateList.get(currentImage + i), change);
 			}
+			getMetrics().addItems(results.size());
+		} catch (InterruptedException ie) {
+			// the job thread should stop, keep the flag for the caller
+			Thread.currentThread().interrupt();
+			cancel();
+			return false;
+		}
 
-			// 3) Build image
+		currentImage = end;
+		return currentImage >= updateList.size();
+	}
+
+	/**
+	 * check whether the given image has been changed. The checksum is only
+	 * calculated if the file size or modification date differs or if a full
+	 * verification is requested.
+	 * 
+	 * @param image
+	 * @return the kind of change detected
+	 * @throws InterruptedException
+	 */
+	private Change verifyImage(Image image) throws InterruptedException {
+		JobMetrics metrics = getMetrics();
+		long start = System.nanoTime();
+		ImageMetadata metadata = image.getMetadata();
+		File file = metadata.getPath();
+		if (file == null || !file.isFile()) {
+			metrics.addStageTime("stat", start);
+			return Change.MISSING;
+		}
+
+		// cheap first => compare file stats
+		DateTime modificationDate = metadata.getModificationDate();
+		boolean statChanged = file.length() != metadata.getSize() || modificationDate == null
+		        || modificationDate.getMillis() != file.lastModified();
+		metrics.addStageTime("stat", start);
+		if (!statChanged && !fullVerify) {
+			return Change.UNCHANGED;
+		}
+
+		// compare checksum
+		String checksum;
+		readPermits.acquire();
+		try {
+			start = System.nanoTime();
+			checksum = ImageUtil.getChecksum(file);
+			metrics.addStageTime("hash", start);
+			metrics.addBytes(file.length());
+		} catch (IOException ioe) {
+			return Change.MISSING;
+		} finally {
+			readPermits.release();
+		}
+
+		if (!ObjectUtils.equals(checksum, metadata.getChecksum())) {
+			return Change.MODIFIED;
+		}
+		return statChanged ? Change.TOUCHED : Change.UNCHANGED;
+	}
+
+	/**
+	 * update given image. Touched images only get fresh metadata, modified
+	 * images are resolved again.
+	 * 
+	 * @param image
+	 * @param touched -
+	 *            true if only the file stats of the image have changed
+	 */
+	private void updateImage(Image image, boolean touched) {
+		try {
 			ImageMetadata oldMetadata = image.getMetadata();
+			File file = oldMetadata.getPath();
 			long importId = oldMetadata.getImportId();
 			DateTime addedDate = oldMetadata.getDateAdded();
-			Image updated = ImageUtil.resolveImage(content, ImageQuality.getBest(), file, importId, addedDate);
-			
+
+			JobMetrics metrics = getMetrics();
+			long start = System.nanoTime();
+
+			// 1) cheap way => only file stats changed
+			if (touched) {
+				ImageMetadata metadata = ImageUtil.createMetadata(file, oldMetadata.getWidth(), oldMetadata
+				        .getHeight(), oldMetadata.getChecksum(), importId, addedDate);
+				image.setMetadata(metadata);
+				metrics.addStageTime("commit", start);
+				return;
+			}
+
+			// 2) Load File
+			byte[] content = ImageUtil.loadFile(file);
+			metrics.addStageTime("read", start);
+			metrics.addBytes(content.length);
+
+			// 3) Build image
+			Image updated = ImageUtil.resolveImage(content, ImageQuality.getBest(), file, importId, addedDate,
+			        metrics);
+			start = System.nanoTime();
+
 			// 4) exchange values
 			try {
 				BeanModificationManager.startTransaction();
@@ -148,12 +362,136 @@ public class UpdateJob extends Job {
 				// inform listeners
 				BeanModificationManager.commitTransaction();
 			}
+			metrics.addStageTime("commit", start);
 		} catch (IOException ioe) {
 			ioe.printStackTrace();
 			// so, update wasn't successfull, who cares
 		}
 	}
 
+	/**
+	 * store verified and remaining images, the report and the number of
+	 * updated images
+	 * 
+	 * @see org.jimcat.services.jobs.Job#createCheckpoint()
+	 */
+	@Override
+	protected JobCheckpoint createCheckpoint() {
+		JobCheckpoint checkpoint = new JobCheckpoint(this);
+		checkpoint.setBoolean("fullVerify", fullVerify);
+		checkpoint.setBoolean("reportOnly", reportOnly);
+		checkpoint.setString("state", state.name());
+
+		int verified = (state == UpdateState.VERIFYING) ? currentImage : updateList.size();
+		checkpoint.setStrings("verified", getPaths(updateList.subList(0, verified)));
+		checkpoint.setStrings("remaining", getPaths(updateList.subList(verified, updateList.size())));
+		checkpoint.setStrings("modified", getPaths(report.getImages(Change.MODIFIED)));
+		checkpoint.setStrings("touched", getPaths(report.getImages(Change.TOUCHED)));
+		checkpoint.setStrings("missing", getPaths(report.getImages(Change.MISSING)));
+		if (state == UpdateState.UPDATING) {
+			checkpoint.setStrings("updated", getPaths(pendingList.subList(0, currentImage)));
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * restore lists and report. Images removed from the library meanwhile are
+	 * skipped.
+	 * 
+	 * @see org.jimcat.services.jobs.Job#restoreCheckpoint(org.jimcat.services.jobs.JobCheckpoint)
+	 */
+	@Override
+	protected void restoreCheckpoint(JobCheckpoint checkpoint) throws IllegalArgumentException {
+		fullVerify = checkpoint.getBoolean("fullVerify", false);
+		reportOnly = checkpoint.getBoolean("reportOnly", false);
+		UpdateState restored = UpdateState.valueOf(checkpoint.getString("state"));
+
+		// resolve images
+		ImageLibrary library = ImageLibrary.getInstance();
+		library.awaitLoaded();
+		Map<String, Image> images = new HashMap<String, Image>();
+		for (Image image : library.getAll()) {
+			images.put(image.getMetadata().getPath().getPath(), image);
+		}
+		List<Image> verified = getImages(checkpoint.getStrings("verified"), images);
+		updateList = new ArrayList<Image>(verified);
+		updateList.addAll(getImages(checkpoint.getStrings("remaining"), images));
+
+		// rebuild report
+		Set<String> modified = new HashSet<String>(checkpoint.getStrings("modified"));
+		Set<String> touched = new HashSet<String>(checkpoint.getStrings("touched"));
+		Set<String> missing = new HashSet<String>(checkpoint.getStrings("missing"));
+		report = new UpdateReport();
+		for (Image image : verified) {
+			String path = image.getMetadata().getPath().getPath();
+			if (modified.contains(path)) {
+				report.add(image, Change.MODIFIED);
+			} else if (touched.contains(path)) {
+				report.add(image, Change.TOUCHED);
+			} else if (missing.contains(path)) {
+				report.add(image, Change.MISSING);
+			} else {
+				report.add(image, Change.UNCHANGED);
+			}
+		}
+
+		// restore position
+		if (restored == UpdateState.VERIFYING) {
+			currentImage = verified.size();
+		} else {
+			List<Image> pending = new ArrayList<Image>(report.getImages(Change.MODIFIED));
+			pending.addAll(report.getImages(Change.TOUCHED));
+			Set<String> updated = new HashSet<String>(checkpoint.getStrings("updated"));
+			int position = 0;
+			while (position < pending.size()
+			        && updated.contains(pending.get(position).getMetadata().getPath().getPath())) {
+				position++;
+			}
+			pendingList = pending;
+			currentImage = position;
+		}
+		state = restored;
+	}
+
+	/**
+	 * @param images
+	 * @return the paths of the given images
+	 */
+	private static List<String> getPaths(List<Image> images) {
+		List<String> result = new ArrayList<String>(images.size());
+		for (Image image : images) {
+			result.add(image.getMetadata().getPath().getPath());
+		}
+		return result;
+	}
+
+	/**
+	 * @param paths
+	 * @param images -
+	 *            all images by path
+	 * @return the images with the given paths, unknown paths are skipped
+	 */
+	private static List<Image> getImages(List<String> paths, Map<String, Image> images) {
+		List<Image> result = new ArrayList<Image>(paths.size());
+		for (String path : paths) {
+			Image image = images.get(path);
+			if (image != null) {
+				result.add(image);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * verifying images is limited by reading files
+	 * 
+	 * @see org.jimcat.services.jobs.Job#getResource()
+	 */
+	@Override
+	public JobResource getResource() {
+		return JobResource.IO;
+	}
+
 	/**
 	 * rollback isn't supported by this job
 	 * 
@@ -171,9 +509,17 @@ public class UpdateJob extends Job {
 	 */
 	@Override
 	public void postExecution() {
+		verifier.shutdownNow();
+
 		switch (getState()) {
 		case FINISHED: {
-			setJobDescription("Update of " + updateList.size() + " images finished successfully");
+			if (reportOnly) {
+				setJobDescription(report.toString());
+			} else {
+				setJobDescription("Update of " + updateList.size() + " images finished successfully ("
+				        + report.getCount(Change.MODIFIED) + " modified, " + report.getCount(Change.TOUCHED)
+				        + " touched)");
+			}
 			break;
 		}
 		case ABORTED: {
@@ -201,4 +547,46 @@ public class UpdateJob extends Job {
 		this.updateList = updateList;
 	}
 
+	/**
+	 * @return the result of the verification, complete as soon as the update
+	 *         section has been reached
+	 */
+	public UpdateReport getReport() {
+		return report;
+	}
+
+	/**
+	 * @return the fullVerify
+	 */
+	public boolean isFullVerify() {
+		return fullVerify;
+	}
+
+	/**
+	 * @param fullVerify
+	 *            if true, the checksum of every file is compared, even if its
+	 *            size and modification date are unchanged
+	 */
+	public void setFullVerify(boolean fullVerify) {
+		checkConfigState();
+		this.fullVerify = fullVerify;
+	}
+
+	/**
+	 * @return the reportOnly
+	 */
+	public boolean isReportOnly() {
+		return reportOnly;
+	}
+
+	/**
+	 * @param reportOnly
+	 *            if true, the job finishes after creating the UpdateReport
+	 *            without changing any image
+	 */
+	public void setReportOnly(boolean reportOnly) {
+		checkConfigState();
+		this.reportOnly = reportOnly;
+	}
+
 }
@@ -0,0 +1,155 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.imageupdate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jimcat.model.Image;
+
+/**
+ * The result of the verification phase of an UpdateJob. It lists all checked
+ * images by the kind of change detected.
+ * 
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class UpdateReport {
+
+	/**
+	 * the kind of change detected for a single image
+	 */
+	public enum Change {
+		/**
+		 * size and modification date are unchanged
+		 */
+		UNCHANGED,
+
+		/**
+		 * size or modification date changed, but content is still the same
+		 */
+		TOUCHED,
+
+		/**
+		 * the content of the file has changed
+		 */
+		MODIFIED,
+
+		/**
+		 * the file couldn't be read
+		 */
+		MISSING;
+	}
+
+	/**
+	 * images without any change
+	 */
+	private List<Image> unchanged = new ArrayList<Image>();
+
+	/**
+	 * images with changed file stats but same content
+	 */
+	private List<Image> touched = new ArrayList<Image>();
+
+	/**
+	 * images with changed content
+	 */
+	private List<Image> modified = new ArrayList<Image>();
+
+	/**
+	 * images which couldn't be read
+	 */
+	private List<Image> missing = new ArrayList<Image>();
+
+	/**
+	 * add the result for a single image to this report
+	 * 
+	 * @param image
+	 * @param change
+	 */
+	void add(Image image, Change change) {
+		getList(change).add(image);
+	}
+
+	/**
+	 * get all images with the given kind of change
+	 * 
+	 * @param change
+	 * @return an unmodifiable list of images
+	 */
+	public List<Image> getImages(Change change) {
+		return Collections.unmodifiableList(getList(change));
+	}
+
+	/**
+	 * get the number of images with the given kind of change
+	 * 
+	 * @param change
+	 * @return the number of images
+	 */
+	public int getCount(Change change) {
+		return getList(change).size();
+	}
+
+	/**
+	 * @return the total number of checked images
+	 */
+	public int getTotalCount() {
+		return unchanged.size() + touched.size() + modified.size() + missing.size();
+	}
+
+	/**
+	 * @return true if there is any image requiring an update
+	 */
+	public boolean hasChanges() {
+		return touched.size() > 0 || modified.size() > 0;
+	}
+
+	/**
+	 * get the list for the given kind of change
+	 * 
+	 * @param change
+	 * @return the internal list
+	 */
+	private List<Image> getList(Change change) {
+		switch (change) {
+		case TOUCHED:
+			return touched;
+		case MODIFIED:
+			return modified;
+		case MISSING:
+			return missing;
+		default:
+			return unchanged;
+		}
+	}
+
+	/**
+	 * a short summary of this report
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return getTotalCount() + " images checked: " + modified.size() + " modified, " + touched.size()
+		        + " touched, " + missing.size() + " missing, " + unchanged.size() + " unchanged";
+	}
+}
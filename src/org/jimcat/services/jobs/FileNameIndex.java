@@ -0,0 +1,148 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.jobs;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of the file names used within a destination directory.
+ * 
+ * Every directory is listed once, afterwards free names are found and reserved
+ * within memory. A reserved name is never handed out twice, so the index can
+ * be shared by parallel workers. Names are compared ignoring case, so the
+ * index works on case insensitive file systems too.
+ * 
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class FileNameIndex {
+
+	/**
+	 * the destination directory
+	 */
+	private File destination;
+
+	/**
+	 * the names used within every listed directory
+	 */
+	private Map<File, Set<String>> usedNames = new HashMap<File, Set<String>>();
+
+	/**
+	 * the next number to try for a name within a directory
+	 */
+	private Map<String, Integer> nextNumbers = new HashMap<String, Integer>();
+
+	/**
+	 * create a new index for the given destination directory
+	 * 
+	 * @param destination
+	 */
+	public FileNameIndex(File destination) {
+		this.destination = destination;
+	}
+
+	/**
+	 * find and reserve an unused file name for the given file within the
+	 * destination directory. If the name of the file is already used, a number
+	 * is added, e.g. name(2).jpg.
+	 * 
+	 * @param file
+	 * @param includeParent -
+	 *            if the parent directory should be included too
+	 * @return the reserved file within the destination directory
+	 */
+	public synchronized File reserve(File file, boolean includeParent) {
+		// split up name (parent directory, name and extension part)
+		String name = file.getName();
+		int dotIndex = name.indexOf('.');
+		String extension = "";
+		if (dotIndex != -1) {
+			extension = name.substring(dotIndex);
+			name = name.substring(0, dotIndex);
+		}
+
+		// the directory the name has to be unique within
+		File directory = destination;
+		if (includeParent) {
+			directory = new File(destination, file.getParentFile().getName());
+		}
+		Set<String> names = getUsedNames(directory);
+
+		// try name without number first
+		String testName = name + extension;
+		if (names.add(toKey(testName))) {
+			return new File(directory, testName);
+		}
+
+		// continue where the last search for this name stopped
+		String numberKey = toKey(new File(directory, testName).getPath());
+		Integer next = nextNumbers.get(numberKey);
+		int num = (next == null) ? 2 : next.intValue();
+		do {
+			testName = name + "(" + num + ")" + extension;
+			num++;
+		} while (!names.add(toKey(testName)));
+		nextNumbers.put(numberKey, Integer.valueOf(num));
+
+		return new File(directory, testName);
+	}
+
+	/**
+	 * get the names used within the given directory
+	 * 
+	 * @param directory
+	 * @return the set of used names (as keys)
+	 */
+	private Set<String> getUsedNames(File directory) {
+		Set<String> names = usedNames.get(directory);
+		if (names == null) {
+			names = new HashSet<String>();
+			String[] content = directory.list();
+			if (content != null) {
+				for (String name : content) {
+					names.add(toKey(name));
+				}
+			}
+			usedNames.put(directory, names);
+		}
+		return names;
+	}
+
+	/**
+	 * @param name
+	 * @return the key used to compare the given name
+	 */
+	private static String toKey(String name) {
+		return name.toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * @return the destination
+	 */
+	public File getDestination() {
+		return destination;
+	}
+
+}
@@ -18,6 +18,7 @@
 package org.jimcat.services.jobs;
 
 import static org.jimcat.services.jobs.JobCommand.CANCEL;
+import static org.jimcat.services.jobs.JobCommand.EXECUTE;
 import static org.jimcat.services.jobs.JobCommand.RESUME;
 import static org.jimcat.services.jobs.JobCommand.ROLLBACK;
 import static org.jimcat.services.jobs.JobCommand.START;
@@ -25,12 +26,15 @@ import static org.jimcat.services.jobs.JobCommand.SUSPEND;
 import static org.jimcat.services.jobs.JobState.RUNNING;
 import static org.jimcat.services.jobs.JobState.UNDOING;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Semaphore;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.jimcat.services.ServiceLocator;
+import org.jimcat.services.configuration.Configuration;
 import org.jimcat.services.failurefeedback.FailureDescription;
 
 /**
@@ -106,12 +110,58 @@ import org.jimcat.services.failurefeedback.FailureDescription;
  * if your job has finished in eighter way.
  * 
  * 
+ * 3. resumable jobs
+ * 
+ * Long running jobs may override createCheckpoint and restoreCheckpoint. The
+ * default run methode writes a checkpoint to the configuration directory once
+ * in a while (configuration key jobs.checkpoint.interval, in seconds) and
+ * deletes it after the job has finished. The JobManager recreates jobs from
+ * checkpoints left over by a crash.
+ * 
+ * 
  * $Id: Job.java 935 2007-06-15 09:21:09Z 07g1t1u2 $
  * 
  * @author Herbert
  */
 public abstract class Job implements Runnable {
 
+	/**
+	 * steps are executed in slices of this length (in nanoseconds) between full
+	 * state checks
+	 */
+	private static final long STEP_SLICE = 50L * 1000 * 1000;
+
+	/**
+	 * minimum time between two progress events fired by the execution loop (in
+	 * nanoseconds)
+	 */
+	private static final long PROGRESS_INTERVAL = 100L * 1000 * 1000;
+
+	/**
+	 * the time the last progress event was fired by the execution loop
+	 */
+	private long lastProgressEvent;
+
+	/**
+	 * the time the last checkpoint was written by the execution loop
+	 */
+	private long lastCheckpoint;
+
+	/**
+	 * the file storing the checkpoint of this job, null if there is none
+	 */
+	private File checkpointFile;
+
+	/**
+	 * true if writing a checkpoint failed, no further checkpoints are written
+	 */
+	private boolean checkpointFailed = false;
+
+	/**
+	 * throughput statistics of this job
+	 */
+	private JobMetrics metrics = new JobMetrics();
+
 	/**
 	 * a list of registered JobListeners
 	 */
@@ -122,7 +172,7 @@ public abstract class Job implements Runnable {
 	 * 
 	 * @see org.jimcat.services.jobs.JobState
 	 */
-	private JobState state;
+	private volatile JobState state;
 
 	/**
 	 * this Semaphore is used to suspend a job.
@@ -150,6 +200,11 @@ public abstract class Job implements Runnable {
 	 */
 	private JobFailureDescription failureDescription;
 
+	/**
+	 * the priority used by the jobmanager to schedule this job
+	 */
+	private JobPriority priority = JobPriority.NORMAL;
+
 	/**
 	 * the name of this Job
 	 */
@@ -268,27 +323,82 @@ public abstract class Job implements Runnable {
 	 */
 	public abstract boolean supportsRollback();
 
+	/**
+	 * Create a checkpoint describing the current progress. It is called within
+	 * the job thread between two steps, so the job is in a consistent state.
+	 * 
+	 * @return a checkpoint or null if this job can't be resumed
+	 */
+	protected JobCheckpoint createCheckpoint() {
+		return null;
+	}
+
+	/**
+	 * Restore the progress described by the given checkpoint. It is called
+	 * before the job is started again.
+	 * 
+	 * The default implementation rejects every checkpoint, jobs creating
+	 * checkpoints have to override it.
+	 * 
+	 * @param checkpoint -
+	 *            a checkpoint created by createCheckpoint
+	 * @throws IllegalArgumentException -
+	 *             if the checkpoint can't be restored
+	 */
+	protected void restoreCheckpoint(JobCheckpoint checkpoint) throws IllegalArgumentException {
+		throw new IllegalArgumentException("Job " + getJobName() + " can't be resumed");
+	}
+
 	/**
 	 * Main execution loop and disturbion control.
 	 * 
+	 * Steps are executed in time slices. Between two steps of a slice only the
+	 * (volatile) state is compared, the full check - which may suspend the job -
+	 * is done after every slice. Progress and metrics events are fired at most
+	 * every PROGRESS_INTERVAL. The duration of all slices is the active time of
+	 * the job metrics.
+	 * 
+	 * A queued job changes to RUNNING when this methode is entered. If it has
+	 * been canceled while waiting, nothing is executed.
+	 * 
 	 * @see java.lang.Runnable#run()
 	 */
 	public final void run() {
 		try {
 			JobState lastState = null;
 
+			// 0. Leave queue
+			try {
+				makeStateTransition(EXECUTE);
+			} catch (IllegalStateException ise) {
+				// job was canceled while it was queued
+				deleteCheckpoint();
+				return;
+			}
+
 			// 1. Prepair Job
 			preExecution();
 
 			// 2. Execution loop
 			boolean finished = false;
+			lastCheckpoint = System.nanoTime();
 			lastState = checkState();
 			while (lastState == RUNNING && !finished) {
-				// make a step
-				finished = nextStep();
+				// make a slice of steps
+				long sliceStart = System.nanoTime();
+				long sliceEnd = sliceStart + STEP_SLICE;
+				do {
+					finished = nextStep();
+				} while (!finished && state == RUNNING && System.nanoTime() < sliceEnd);
+				metrics.addActiveTime(System.nanoTime() - sliceStart);
 
 				// informe listeners about change
-				fireProgressChangedEvent();
+				fireThrottledProgressEvent(finished || state != RUNNING);
+
+				// store progress once in a while
+				if (!finished && state == RUNNING) {
+					writeCheckpoint();
+				}
 
 				// get current state and maybe wait
 				lastState = checkState();
@@ -307,11 +417,16 @@ public abstract class Job implements Runnable {
 			finished = false;
 			lastState = checkState();
 			while (lastState == UNDOING && !finished) {
-				// make a RollbackStep
-				finished = nextRollbackStep();
+				// make a slice of RollbackSteps
+				long sliceStart = System.nanoTime();
+				long sliceEnd = sliceStart + STEP_SLICE;
+				do {
+					finished = nextRollbackStep();
+				} while (!finished && state == UNDOING && System.nanoTime() < sliceEnd);
+				metrics.addActiveTime(System.nanoTime() - sliceStart);
 
 				// informe listeners about change
-				fireProgressChangedEvent();
+				fireThrottledProgressEvent(finished || state != UNDOING);
 
 				// get current state and maybe wait
 				lastState = checkState();
@@ -326,6 +441,7 @@ public abstract class Job implements Runnable {
 
 			// 3. Cleanup
 			postExecution();
+			deleteCheckpoint();
 
 		} catch (Throwable e) {
 			// inform user
@@ -342,7 +458,64 @@ public abstract class Job implements Runnable {
 	}
 
 	/**
-	 * call this methode to start execution.
+	 * write a checkpoint if the checkpoint interval has passed
+	 */
+	private void writeCheckpoint() {
+		long now = System.nanoTime();
+		long interval = Configuration.getInt("jobs.checkpoint.interval", 30) * 1000L * 1000 * 1000;
+		if (checkpointFailed || now - lastCheckpoint < interval) {
+			return;
+		}
+		lastCheckpoint = now;
+
+		JobCheckpoint checkpoint = createCheckpoint();
+		if (checkpoint == null) {
+			return;
+		}
+		if (checkpointFile == null) {
+			String name = getClass().getSimpleName() + "-" + System.currentTimeMillis() + "-"
+			        + System.identityHashCode(this) + JobCheckpoint.EXTENSION;
+			checkpointFile = new File(JobCheckpoint.getCheckpointDirectory(), name);
+		}
+		try {
+			checkpoint.save(checkpointFile);
+		} catch (IOException ioe) {
+			// job can't be resumed, but it still works => report once
+			checkpointFailed = true;
+			deleteCheckpoint();
+			String msg = "Unable to store the progress of job " + getJobName() + ", it can't be resumed";
+			FailureDescription description = new FailureDescription(ioe, "Job " + getJobName(), msg);
+			ServiceLocator.getFailureFeedbackService().reportFailure(description);
+		}
+	}
+
+	/**
+	 * remove the checkpoint of this job
+	 */
+	void deleteCheckpoint() {
+		if (checkpointFile != null && checkpointFile.exists()) {
+			checkpointFile.delete();
+		}
+	}
+
+	/**
+	 * prepare this job to resume the work stored within the given checkpoint
+	 * 
+	 * @param checkpoint
+	 * @param file -
+	 *            the file containing the checkpoint, it is reused by this job
+	 * @throws IllegalArgumentException -
+	 *             if the checkpoint can't be restored
+	 */
+	void restore(JobCheckpoint checkpoint, File file) throws IllegalArgumentException {
+		checkConfigState();
+		restoreCheckpoint(checkpoint);
+		checkpointFile = file;
+	}
+
+	/**
+	 * call this methode to start execution. The job is QUEUED until the job
+	 * manager has a free slot to execute it.
 	 * 
 	 * @throws IllegalStateException
 	 */
@@ -560,6 +733,35 @@ public abstract class Job implements Runnable {
 		this.jobManager = jobManager;
 	}
 
+	/**
+	 * @return the priority
+	 */
+	public JobPriority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * @param priority
+	 *            the priority to set
+	 * @throws IllegalStateException
+	 *             if this job isn't in Prepair states
+	 */
+	public void setPriority(JobPriority priority) throws IllegalStateException {
+		checkConfigState();
+		this.priority = priority;
+	}
+
+	/**
+	 * The resource mainly used by this job. Jobs limited by disc or processor
+	 * should override this methode, so the jobmanager can limit the number of
+	 * such jobs running at the same time.
+	 * 
+	 * @return the resource used by this job, OTHER by default
+	 */
+	public JobResource getResource() {
+		return JobResource.OTHER;
+	}
+
 	/**
 	 * @return the jobDescription
 	 */
@@ -586,6 +788,23 @@ public abstract class Job implements Runnable {
 		}
 	}
 
+	/**
+	 * @return the throughput statistics of this job
+	 */
+	public JobMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * estimate the time required to finish this job, based on its percentage
+	 * and the time it has been working up to now
+	 * 
+	 * @return the estimated time left in milliseconds, -1 if unknown
+	 */
+	public long getEstimatedTimeLeft() {
+		return metrics.getEstimatedTimeLeft(getPercentage());
+	}
+
 	/**
 	 * @return the jobName
 	 */
@@ -681,6 +900,31 @@ public abstract class Job implements Runnable {
 		}
 	}
 
+	/**
+	 * informs all listeners about a progress change if the last event fired by
+	 * this methode is older than PROGRESS_INTERVAL
+	 * 
+	 * @param force -
+	 *            fire event anyway
+	 */
+	private void fireThrottledProgressEvent(boolean force) {
+		long now = System.nanoTime();
+		if (force || now - lastProgressEvent >= PROGRESS_INTERVAL) {
+			lastProgressEvent = now;
+			fireProgressChangedEvent();
+			fireMetricsChangedEvent();
+		}
+	}
+
+	/**
+	 * informs all listeners about new metrics
+	 */
+	protected void fireMetricsChangedEvent() {
+		for (JobListener listener : listeners) {
+			listener.metricsChanged(this);
+		}
+	}
+
 	/**
 	 * informs all listeners about a progress change
 	 */
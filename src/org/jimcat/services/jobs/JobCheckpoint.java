@@ -0,0 +1,322 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.jobs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.jimcat.services.configuration.Configuration;
+
+/**
+ * The persistent progress of a job.
+ * 
+ * A checkpoint is a simple set of properties written to the jobs directory
+ * within the configuration directory. It names the class of the job, so the
+ * JobManager is able to recreate unfinished jobs on the next startup.
+ * 
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class JobCheckpoint {
+
+	/**
+	 * the key used to store the class of the job
+	 */
+	private static final String JOB_CLASS = "job.class";
+
+	/**
+	 * the file extension used for checkpoints
+	 */
+	static final String EXTENSION = ".checkpoint";
+
+	/**
+	 * the file extension of a checkpoint being written
+	 */
+	private static final String TMP_EXTENSION = ".tmp";
+
+	/**
+	 * the content of this checkpoint
+	 */
+	private Properties properties = new Properties();
+
+	/**
+	 * create an empty checkpoint for the given job
+	 * 
+	 * @param job
+	 */
+	public JobCheckpoint(Job job) {
+		properties.setProperty(JOB_CLASS, job.getClass().getName());
+	}
+
+	/**
+	 * create a checkpoint using the given properties
+	 * 
+	 * @param properties
+	 */
+	private JobCheckpoint(Properties properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * @return the name of the class of the checkpointed job
+	 */
+	public String getJobClass() {
+		return properties.getProperty(JOB_CLASS);
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 */
+	public void setString(String key, String value) {
+		if (value == null) {
+			properties.remove(key);
+		} else {
+			properties.setProperty(key, value);
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return the value or null if there is none
+	 */
+	public String getString(String key) {
+		return properties.getProperty(key);
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 */
+	public void setLong(String key, long value) {
+		properties.setProperty(key, Long.toString(value));
+	}
+
+	/**
+	 * @param key
+	 * @param defaultValue
+	 * @return the value or the defaultValue if there is none
+	 */
+	public long getLong(String key, long defaultValue) {
+		String value = properties.getProperty(key);
+		return (value == null) ? defaultValue : Long.parseLong(value);
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 */
+	public void setInt(String key, int value) {
+		setLong(key, value);
+	}
+
+	/**
+	 * @param key
+	 * @param defaultValue
+	 * @return the value or the defaultValue if there is none
+	 */
+	public int getInt(String key, int defaultValue) {
+		return (int) getLong(key, defaultValue);
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 */
+	public void setBoolean(String key, boolean value) {
+		properties.setProperty(key, Boolean.toString(value));
+	}
+
+	/**
+	 * @param key
+	 * @param defaultValue
+	 * @return the value or the defaultValue if there is none
+	 */
+	public boolean getBoolean(String key, boolean defaultValue) {
+		String value = properties.getProperty(key);
+		return (value == null) ? defaultValue : Boolean.valueOf(value).booleanValue();
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 *            a file or null
+	 */
+	public void setFile(String key, File value) {
+		setString(key, (value == null) ? null : value.getPath());
+	}
+
+	/**
+	 * @param key
+	 * @return the file or null if there is none
+	 */
+	public File getFile(String key) {
+		String path = properties.getProperty(key);
+		return (path == null) ? null : new File(path);
+	}
+
+	/**
+	 * store a list of strings using the keys key.count and key.&lt;index&gt;
+	 * 
+	 * @param key
+	 * @param values
+	 */
+	public void setStrings(String key, List<String> values) {
+		setInt(key + ".count", values.size());
+		int i = 0;
+		for (String value : values) {
+			properties.setProperty(key + "." + i, value);
+			i++;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return the list stored by setStrings, empty if there is none
+	 */
+	public List<String> getStrings(String key) {
+		int count = getInt(key + ".count", 0);
+		List<String> result = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(properties.getProperty(key + "." + i));
+		}
+		return result;
+	}
+
+	/**
+	 * store a list of files
+	 * 
+	 * @param key
+	 * @param files
+	 */
+	public void setFiles(String key, List<File> files) {
+		List<String> paths = new ArrayList<String>(files.size());
+		for (File file : files) {
+			paths.add(file.getPath());
+		}
+		setStrings(key, paths);
+	}
+
+	/**
+	 * @param key
+	 * @return the list stored by setFiles, empty if there is none
+	 */
+	public List<File> getFiles(String key) {
+		List<String> paths = getStrings(key);
+		List<File> result = new ArrayList<File>(paths.size());
+		for (String path : paths) {
+			result.add(new File(path));
+		}
+		return result;
+	}
+
+	/**
+	 * write this checkpoint to the given file. A temporary file is written
+	 * first and renamed afterwards, so the last checkpoint survives a crash
+	 * while writing. If the crash happens between deleting the old checkpoint
+	 * and renaming, the temporary file is complete and used instead (see
+	 * listCheckpointFiles).
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		File dir = file.getParentFile();
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Couldn't create directory " + dir);
+		}
+
+		File tmp = new File(dir, file.getName() + TMP_EXTENSION);
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			properties.store(out, "JimCat job checkpoint");
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Couldn't replace checkpoint " + file);
+		}
+		if (!tmp.renameTo(file)) {
+			throw new IOException("Couldn't rename checkpoint " + tmp);
+		}
+	}
+
+	/**
+	 * load a checkpoint
+	 * 
+	 * @param file
+	 * @return the checkpoint stored within the given file
+	 * @throws IOException
+	 */
+	public static JobCheckpoint load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		return new JobCheckpoint(properties);
+	}
+
+	/**
+	 * @return the directory containing all checkpoints
+	 */
+	public static File getCheckpointDirectory() {
+		return new File(Configuration.getConfigBaseDirectory() + "jobs/");
+	}
+
+	/**
+	 * get all checkpoint files. A temporary file left by a crash during save
+	 * replaces a missing checkpoint, otherwise it is incomplete and deleted.
+	 * 
+	 * @return the files found within the checkpoint directory
+	 */
+	static File[] listCheckpointFiles() {
+		File dir = getCheckpointDirectory();
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return new File[0];
+		}
+		List<File> result = new ArrayList<File>();
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(EXTENSION + TMP_EXTENSION)) {
+				File checkpoint = new File(dir, name.substring(0, name.length() - TMP_EXTENSION.length()));
+				if (checkpoint.exists()) {
+					file.delete();
+				} else if (file.renameTo(checkpoint)) {
+					result.add(checkpoint);
+				}
+			} else if (name.endsWith(EXTENSION)) {
+				result.add(file);
+			}
+		}
+		return result.toArray(new File[result.size()]);
+	}
+}
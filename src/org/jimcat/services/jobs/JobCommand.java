@@ -22,6 +22,7 @@ package org.jimcat.services.jobs;
  * 
  * <ul>
  * <li>START - starting a job, external</li>
+ * <li>EXECUTE - a queued job gets executed, internal</li>
  * <li>ROLLBACK - changing to rollback mode, external or internal</li>
  * <li>SUSPEND - suspend job, external or internal</li>
  * <li>RESUME - bring job back to work, external</li>
@@ -39,5 +40,5 @@ package org.jimcat.services.jobs;
  * @author Herbert
  */
 public enum JobCommand {
-	START, ROLLBACK, SUSPEND, RESUME, FAILURE, CANCEL, FINISHJOB, FINISHROLLBACK;
+	START, EXECUTE, ROLLBACK, SUSPEND, RESUME, FAILURE, CANCEL, FINISHJOB, FINISHROLLBACK;
 }
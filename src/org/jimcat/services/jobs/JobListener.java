@@ -62,4 +62,12 @@ public interface JobListener {
 	 * @param job
 	 */
 	void descriptionChanged(Job job);
+
+	/**
+	 * informes the listener about new throughput statistics. They are
+	 * available through job.getMetrics().
+	 * 
+	 * @param job
+	 */
+	void metricsChanged(Job job);
 }
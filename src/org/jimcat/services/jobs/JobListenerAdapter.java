@@ -61,4 +61,12 @@ public class JobListenerAdapter implements JobListener {
 		// leaf empty
 	}
 
+	/**
+	 * @see org.jimcat.services.jobs.JobListener#metricsChanged(org.jimcat.services.jobs.Job)
+	 */
+	@SuppressWarnings("unused")
+	public void metricsChanged(Job job) {
+		// leaf empty
+	}
+
 }
@@ -17,17 +17,40 @@
 
 package org.jimcat.services.jobs;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jimcat.services.configuration.Configuration;
 
 /**
  * This class is responsible for executiong jobs.
  * 
- * This is done by delegation to an internal executor. It also maintanes two job
- * lists. Active jobs and finished jobs.
+ * This is done by delegation to internal executors, one for every kind of
+ * JobResource. It also maintanes two job lists. Active jobs and finished jobs.
+ * 
+ * Started jobs are scheduled by their priority. The number of jobs running at
+ * the same time is limited for every resource (configuration keys jobs.limit.io
+ * and jobs.limit.cpu) and for every job type (jobs.limit.&lt;class name&gt;).
+ * Jobs exceeding a limit wait until another job has finished. Job threads run
+ * with a low thread priority, so interactive work is preferred.
+ * 
+ * While a job is running, its metrics are published through JMX (see
+ * JobStatistics).
+ * 
+ * Jobs left unfinished by a crash can be recreated from their checkpoints
+ * using loadResumableJobs.
  * 
  * $Id: JobManager.java 934 2007-06-15 08:40:58Z 07g1t1u2 $
  * 
@@ -36,9 +59,24 @@ import java.util.concurrent.Executors;
 public class JobManager {
 
 	/**
-	 * executor internally used for execution of jobs.
+	 * executors internally used for execution of jobs, one per resource
+	 */
+	private Map<JobResource, ExecutorService> executors;
+
+	/**
+	 * jobs waiting for execution, ordered by priority
+	 */
+	private List<Job> waitingJobs;
+
+	/**
+	 * number of running jobs per resource
+	 */
+	private Map<JobResource, Integer> runningPerResource;
+
+	/**
+	 * number of running jobs per job type
 	 */
-	private ExecutorService myExecutor;
+	private Map<Class<?>, Integer> runningPerType;
 
 	private List<JobManagerListener> subscribers;
 
@@ -78,7 +116,13 @@ public class JobManager {
 	 * default constructor
 	 */
 	public JobManager() {
-		myExecutor = Executors.newCachedThreadPool();
+		executors = new EnumMap<JobResource, ExecutorService>(JobResource.class);
+		for (JobResource resource : JobResource.values()) {
+			executors.put(resource, Executors.newCachedThreadPool(new JobThreadFactory(resource)));
+		}
+		waitingJobs = new LinkedList<Job>();
+		runningPerResource = new EnumMap<JobResource, Integer>(JobResource.class);
+		runningPerType = new HashMap<Class<?>, Integer>();
 		activJobs = new CopyOnWriteArrayList<Job>();
 		finishedJobs = new CopyOnWriteArrayList<Job>();
 		subscribers = new CopyOnWriteArrayList<JobManagerListener>();
@@ -89,7 +133,7 @@ public class JobManager {
 	 * 
 	 * @param job
 	 * @throws IllegalStateException -
-	 *             if job isn't in state RUNNING
+	 *             if job isn't in state QUEUED
 	 * 
 	 */
 	public final void excecuteJob(Job job) throws IllegalStateException {
@@ -103,8 +147,8 @@ public class JobManager {
 			return;
 		}
 
-		// Running is the only state after Prepair
-		if (state != JobState.RUNNING) {
+		// Queued is the only state after Prepair
+		if (state != JobState.QUEUED) {
 			throw new IllegalStateException("Job isn't runnable, current state: " + state);
 		}
 
@@ -114,8 +158,135 @@ public class JobManager {
 		// Add automated unregister to job
 		job.addJobListener(finishedJobHandler);
 
-		// execute job
-		myExecutor.execute(job);
+		// schedule job
+		synchronized (waitingJobs) {
+			// insert behind all jobs with the same or a higher priority
+			int index = 0;
+			for (Job waiting : waitingJobs) {
+				if (waiting.getPriority().compareTo(job.getPriority()) < 0) {
+					break;
+				}
+				index++;
+			}
+			waitingJobs.add(index, job);
+		}
+		dispatchJobs();
+	}
+
+	/**
+	 * start all waiting jobs which are within the limits
+	 */
+	private void dispatchJobs() {
+		synchronized (waitingJobs) {
+			Iterator<Job> iter = waitingJobs.iterator();
+			while (iter.hasNext()) {
+				Job job = iter.next();
+				JobResource resource = job.getResource();
+				if (getCount(runningPerResource, resource) >= getLimit(resource)
+				        || getCount(runningPerType, job.getClass()) >= getLimit(job.getClass())) {
+					// job has to wait
+					continue;
+				}
+
+				// start job
+				iter.remove();
+				increment(runningPerResource, resource, 1);
+				increment(runningPerType, job.getClass(), 1);
+				executors.get(resource).execute(new JobRunner(job));
+			}
+		}
+	}
+
+	/**
+	 * get the maximum number of jobs running at the same time using the given
+	 * resource
+	 * 
+	 * @param resource
+	 * @return the limit
+	 */
+	private int getLimit(JobResource resource) {
+		switch (resource) {
+		case IO:
+			return Math.max(1, Configuration.getInt("jobs.limit.io", 2));
+		case CPU:
+			return Math.max(1, Configuration.getInt("jobs.limit.cpu", Runtime.getRuntime().availableProcessors()));
+		default:
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * get the maximum number of jobs of the given type running at the same
+	 * time
+	 * 
+	 * @param type
+	 * @return the limit
+	 */
+	private int getLimit(Class<?> type) {
+		return Math.max(1, Configuration.getInt("jobs.limit." + type.getSimpleName(), Integer.MAX_VALUE));
+	}
+
+	/**
+	 * get a count out of the given map
+	 * 
+	 * @param <T>
+	 * @param counts
+	 * @param key
+	 * @return the count, 0 if there is no entry
+	 */
+	private static <T> int getCount(Map<T, Integer> counts, T key) {
+		Integer count = counts.get(key);
+		return (count == null) ? 0 : count.intValue();
+	}
+
+	/**
+	 * change a count within the given map
+	 * 
+	 * @param <T>
+	 * @param counts
+	 * @param key
+	 * @param delta
+	 */
+	private static <T> void increment(Map<T, Integer> counts, T key, int delta) {
+		counts.put(key, Integer.valueOf(getCount(counts, key) + delta));
+	}
+
+	/**
+	 * recreate all jobs which have left a checkpoint, e.g. because the
+	 * application has been terminated while they were running. The jobs are
+	 * not started, use excecuteJob to resume them or discardResumableJob to
+	 * forget about them. Checkpoints which can't be restored are deleted,
+	 * those of jobs unable to load the library are kept.
+	 * 
+	 * @return a list of restored jobs
+	 */
+	public List<Job> loadResumableJobs() {
+		List<Job> result = new ArrayList<Job>();
+		for (File file : JobCheckpoint.listCheckpointFiles()) {
+			try {
+				JobCheckpoint checkpoint = JobCheckpoint.load(file);
+				Job job = (Job) Class.forName(checkpoint.getJobClass()).getConstructor().newInstance();
+				job.setJobManager(this);
+				job.restore(checkpoint, file);
+				result.add(job);
+			} catch (IllegalStateException ise) {
+				// the library couldn't be loaded - try again next time
+				continue;
+			} catch (Exception e) {
+				// unreadable checkpoint, unknown job or content it can't restore
+				file.delete();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * forget about a job returned by loadResumableJobs
+	 * 
+	 * @param job
+	 */
+	public void discardResumableJob(Job job) {
+		job.deleteCheckpoint();
 	}
 
 	/**
@@ -179,7 +350,9 @@ public class JobManager {
 		if (getActiveJobs().size() > 0) {
 			throw new IllegalStateException("Jobs still running");
 		}
-		myExecutor.shutdown();
+		for (ExecutorService executor : executors.values()) {
+			executor.shutdown();
+		}
 	}
 
 	/**
@@ -226,4 +399,73 @@ public class JobManager {
 			listener.jobAddedToFinishedList(this, job);
 		}
 	}
+
+	/**
+	 * executes a job and frees its slot afterwards
+	 */
+	private class JobRunner implements Runnable {
+
+		/**
+		 * the job to execute
+		 */
+		private Job job;
+
+		/**
+		 * @param job
+		 */
+		public JobRunner(Job job) {
+			this.job = job;
+		}
+
+		/**
+		 * run job using its priority
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			Thread.currentThread().setPriority(job.getPriority().getThreadPriority());
+			JobStatistics statistics = new JobStatistics(job);
+			statistics.register();
+			try {
+				job.run();
+			} finally {
+				statistics.unregister();
+				synchronized (waitingJobs) {
+					increment(runningPerResource, job.getResource(), -1);
+					increment(runningPerType, job.getClass(), -1);
+				}
+				dispatchJobs();
+			}
+		}
+	}
+
+	/**
+	 * creates named threads for one of the executors
+	 */
+	private static class JobThreadFactory implements ThreadFactory {
+
+		/**
+		 * the resource of the executor
+		 */
+		private JobResource resource;
+
+		/**
+		 * used to number threads
+		 */
+		private AtomicInteger count = new AtomicInteger();
+
+		/**
+		 * @param resource
+		 */
+		public JobThreadFactory(JobResource resource) {
+			this.resource = resource;
+		}
+
+		/**
+		 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+		 */
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "Job-" + resource + "-" + count.incrementAndGet());
+		}
+	}
 }
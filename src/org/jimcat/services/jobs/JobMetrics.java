@@ -0,0 +1,250 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.jobs;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput statistics of a single job.
+ * 
+ * Every job owns an instance of this class. Jobs report the number of
+ * processed items and bytes and the time spent within their stages (e.g. read,
+ * decode or commit). The active time is measured by the job loop, so
+ * suspended or waiting jobs don't lower their rates.
+ * 
+ * All methodes are thread safe, so workers of a job may report their progress
+ * directly.
+ * 
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class JobMetrics {
+
+	/**
+	 * the number of nanoseconds per second
+	 */
+	private static final double NANOS_PER_SECOND = 1000.0 * 1000 * 1000;
+
+	/**
+	 * the number of processed items
+	 */
+	private AtomicLong items = new AtomicLong();
+
+	/**
+	 * the number of processed bytes
+	 */
+	private AtomicLong bytes = new AtomicLong();
+
+	/**
+	 * the time the job was actually working (in nanoseconds)
+	 */
+	private AtomicLong activeTime = new AtomicLong();
+
+	/**
+	 * the time spent within every stage (in nanoseconds), in order of
+	 * appearance
+	 */
+	private Map<String, AtomicLong> stageTimes = new LinkedHashMap<String, AtomicLong>();
+
+	/**
+	 * @param count -
+	 *            the number of items processed additionally
+	 */
+	public void addItems(long count) {
+		items.addAndGet(count);
+	}
+
+	/**
+	 * @param count -
+	 *            the number of bytes processed additionally
+	 */
+	public void addBytes(long count) {
+		bytes.addAndGet(count);
+	}
+
+	/**
+	 * @param nanos -
+	 *            additional time the job was working
+	 */
+	void addActiveTime(long nanos) {
+		activeTime.addAndGet(nanos);
+	}
+
+	/**
+	 * record the end of a stage. Use it like this:
+	 * 
+	 * <pre>
+	 * long start = System.nanoTime();
+	 * // do some work
+	 * metrics.addStageTime(&quot;read&quot;, start);
+	 * </pre>
+	 * 
+	 * @param stage -
+	 *            the name of the stage
+	 * @param start -
+	 *            the value of System.nanoTime() when the stage began
+	 * @return the current value of System.nanoTime(), the start of the next
+	 *         stage
+	 */
+	public long addStageTime(String stage, long start) {
+		long now = System.nanoTime();
+		AtomicLong time;
+		synchronized (stageTimes) {
+			time = stageTimes.get(stage);
+			if (time == null) {
+				time = new AtomicLong();
+				stageTimes.put(stage, time);
+			}
+		}
+		time.addAndGet(now - start);
+		return now;
+	}
+
+	/**
+	 * @return the number of processed items
+	 */
+	public long getItems() {
+		return items.get();
+	}
+
+	/**
+	 * @return the number of processed bytes
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * @return the time the job was working (in milliseconds)
+	 */
+	public long getActiveTime() {
+		return activeTime.get() / (1000 * 1000);
+	}
+
+	/**
+	 * @return the processed items per second, 0 if unknown
+	 */
+	public double getItemsPerSecond() {
+		return getRate(items.get());
+	}
+
+	/**
+	 * @return the processed bytes per second, 0 if unknown
+	 */
+	public double getBytesPerSecond() {
+		return getRate(bytes.get());
+	}
+
+	/**
+	 * @param count
+	 * @return count per second of active time
+	 */
+	private double getRate(long count) {
+		long time = activeTime.get();
+		if (time <= 0) {
+			return 0;
+		}
+		return count / (time / NANOS_PER_SECOND);
+	}
+
+	/**
+	 * estimate the time required to finish the job
+	 * 
+	 * @param percentage -
+	 *            the current progress of the job
+	 * @return the estimated time left in milliseconds, -1 if unknown
+	 */
+	public long getEstimatedTimeLeft(int percentage) {
+		long time = getActiveTime();
+		if (percentage <= 0 || percentage > 100 || time <= 0) {
+			return -1;
+		}
+		return time * (100 - percentage) / percentage;
+	}
+
+	/**
+	 * @return the time spent within every stage in milliseconds, in order of
+	 *         appearance
+	 */
+	public Map<String, Long> getStageTimes() {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		synchronized (stageTimes) {
+			for (Entry<String, AtomicLong> entry : stageTimes.entrySet()) {
+				result.put(entry.getKey(), Long.valueOf(entry.getValue().get() / (1000 * 1000)));
+			}
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * a short summary of the stage times, e.g. "read 40%, decode 60%"
+	 * 
+	 * @return the share of every stage of the total stage time
+	 */
+	public String getStageSummary() {
+		Map<String, Long> times = getStageTimes();
+		long total = 0;
+		for (Long time : times.values()) {
+			total += time.longValue();
+		}
+
+		StringBuffer result = new StringBuffer();
+		for (Entry<String, Long> entry : times.entrySet()) {
+			if (result.length() > 0) {
+				result.append(", ");
+			}
+			long share = (total == 0) ? 0 : entry.getValue().longValue() * 100 / total;
+			result.append(entry.getKey()).append(' ').append(share).append('%');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * a short summary of the current throughput, e.g. "12.5 items/s, 3.1 MB/s"
+	 * 
+	 * @return items per second and bytes per second if there are any
+	 */
+	public String getThroughputSummary() {
+		StringBuffer result = new StringBuffer();
+		result.append(Math.round(getItemsPerSecond() * 10) / 10.0).append(" items/s");
+		if (bytes.get() > 0) {
+			result.append(", ").append(Math.round(getBytesPerSecond() / (1024 * 1024) * 10) / 10.0).append(" MB/s");
+		}
+		return result.toString();
+	}
+
+	/**
+	 * throughput and stage times
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		String stages = getStageSummary();
+		if (stages.length() == 0) {
+			return getThroughputSummary();
+		}
+		return getThroughputSummary() + " (" + stages + ")";
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.jobs;
+
+/**
+ * The priority of a job. Waiting jobs with a higher priority are started
+ * first. All priorities are below the priority of interactive threads and of
+ * the image loader
+ * ({@link org.jimcat.services.imagemanager.PreloadService#THREAD_PRIORITY}), so
+ * loading images for the user always takes precedence over jobs.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public enum JobPriority {
+	LOW(Thread.MIN_PRIORITY), NORMAL(Thread.MIN_PRIORITY + 1), HIGH(Thread.MIN_PRIORITY + 2);
+
+	/**
+	 * the priority of the thread executing a job
+	 */
+	private int threadPriority;
+
+	/**
+	 * @param threadPriority
+	 */
+	private JobPriority(int threadPriority) {
+		this.threadPriority = threadPriority;
+	}
+
+	/**
+	 * @return the priority of the thread executing a job
+	 */
+	public int getThreadPriority() {
+		return threadPriority;
+	}
+}
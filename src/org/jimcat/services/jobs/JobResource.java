@@ -0,0 +1,43 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.jobs;
+
+/**
+ * The resource mainly used by a job. The JobManager limits the number of jobs
+ * running at the same time for each resource.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public enum JobResource {
+	/**
+	 * jobs mainly reading or writing files
+	 */
+	IO,
+
+	/**
+	 * jobs mainly performing calculations
+	 */
+	CPU,
+
+	/**
+	 * jobs which shouldn't be limited, e.g. jobs waiting for external events
+	 */
+	OTHER;
+}
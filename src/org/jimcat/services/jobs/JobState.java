@@ -23,6 +23,7 @@ package org.jimcat.services.jobs;
  * Those are the states a job can have during execution.
  * <ul>
  * <li>Preparing - before execution</li>
+ * <li>Queued - job was started and waits for a free execution slot</li>
  * <li>Running - job is ready to work or is working</li>
  * <li>Finished - job has finished its work</li>
  * <li>Failure - job required (user) interaction but will continue afterward</li>
@@ -46,11 +47,27 @@ public enum JobState {
 		@Override
 		public JobState getStateFollowingCommand(JobCommand command) {
 			if (command == JobCommand.START) {
-				return RUNNING;
+				return QUEUED;
 			}
 			return null;
 		}
 	},
+	QUEUED(false, true, false) {
+		/**
+		 * @see org.jimcat.services.jobs.JobState#getStateFollowingCommand(org.jimcat.services.jobs.JobCommand)
+		 */
+		@Override
+		public JobState getStateFollowingCommand(JobCommand command) {
+			switch (command) {
+			case EXECUTE:
+				return RUNNING;
+			case CANCEL:
+				return ABORTED;
+			default:
+				return null;
+			}
+		}
+	},
 	RUNNING(false, true, false) {
 		/**
 		 * @see org.jimcat.services.jobs.JobState#getStateFollowingCommand(org.jimcat.services.jobs.JobCommand)
@@ -0,0 +1,179 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.jobs;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the metrics of a running job through JMX.
+ * 
+ * The JobManager registers an instance for every job while it is executed,
+ * named org.jimcat:type=Job,name=&lt;job name&gt;,id=&lt;number&gt;.
+ * 
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+class JobStatistics implements JobStatisticsMBean {
+
+	/**
+	 * used to create unique names
+	 */
+	private static AtomicInteger counter = new AtomicInteger();
+
+	/**
+	 * the observed job
+	 */
+	private Job job;
+
+	/**
+	 * the name used to register this bean, null if not registered
+	 */
+	private ObjectName name;
+
+	/**
+	 * @param job -
+	 *            the job to observe
+	 */
+	JobStatistics(Job job) {
+		this.job = job;
+	}
+
+	/**
+	 * register this bean at the platform MBeanServer. If it fails, the job
+	 * simply isn't visible through JMX.
+	 */
+	void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			String jobName = (job.getJobName() == null) ? job.getClass().getSimpleName() : job.getJobName();
+			name = new ObjectName("org.jimcat:type=Job,name=" + ObjectName.quote(jobName) + ",id="
+			        + counter.incrementAndGet());
+			server.registerMBean(this, name);
+		} catch (JMException jme) {
+			name = null;
+		} catch (SecurityException se) {
+			name = null;
+		}
+	}
+
+	/**
+	 * unregister this bean
+	 */
+	void unregister() {
+		if (name == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch (JMException jme) {
+			// not registered anymore
+		}
+		name = null;
+	}
+
+	/**
+	 * @see org.jimcat.services.jobs.JobStatisticsMBean#getJobName()
+	 */
+	public String getJobName() {
+		return job.getJobName();
+	}
+
+	/**
+	 * @see org.jimcat.services.jobs.JobStatisticsMBean#getJobDescription()
+	 */
+	public String getJobDescription() {
+		return job.getJobDescription();
+	}
+
+	/**
+	 * @see org.jimcat.services.jobs.JobStatisticsMBean#getState()
+	 */
+	public String getState() {
+		return job.getState().toString();
+	}
+
+	/**
+	 * @see org.jimcat.services.jobs.JobStatisticsMBean#getPercentage()
+	 */
+	public int getPercentage() {
+		return job.getPercentage();
+	}
+
+	/**
+	 * @see org.jimcat.services.jobs.JobStatisticsMBean#getItems()
+	 */
+	public long getItems() {
+		return job.getMetrics().getItems();
+	}
+
+	/**
+	 * @see org.jimcat.services.jobs.JobStatisticsMBean#getBytes()
+	 */
+	public long getBytes() {
+		return job.getMetrics().getBytes();
+	}
+
+	/**
+	 * @see org.jimcat.services.jobs.JobStatisticsMBean#getItemsPerSecond()
+	 */
+	public double getItemsPerSecond() {
+		return job.getMetrics().getItemsPerSecond();
+	}
+
+	/**
+	 * @see org.jimcat.services.jobs.JobStatisticsMBean#getBytesPerSecond()
+	 */
+	public double getBytesPerSecond() {
+		return job.getMetrics().getBytesPerSecond();
+	}
+
+	/**
+	 * @see org.jimcat.services.jobs.JobStatisticsMBean#getActiveTime()
+	 */
+	public long getActiveTime() {
+		return job.getMetrics().getActiveTime();
+	}
+
+	/**
+	 * @see org.jimcat.services.jobs.JobStatisticsMBean#getEstimatedTimeLeft()
+	 */
+	public long getEstimatedTimeLeft() {
+		return job.getEstimatedTimeLeft();
+	}
+
+	/**
+	 * @see org.jimcat.services.jobs.JobStatisticsMBean#getStageTimes()
+	 */
+	public String[] getStageTimes() {
+		List<String> result = new ArrayList<String>();
+		for (Entry<String, Long> entry : job.getMetrics().getStageTimes().entrySet()) {
+			result.add(entry.getKey() + ": " + entry.getValue() + " ms");
+		}
+		return result.toArray(new String[result.size()]);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.jobs;
+
+/**
+ * The management interface of a running job, see JobStatistics.
+ * 
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public interface JobStatisticsMBean {
+
+	/**
+	 * @return the name of the job
+	 */
+	String getJobName();
+
+	/**
+	 * @return the current description of the job
+	 */
+	String getJobDescription();
+
+	/**
+	 * @return the current state of the job
+	 */
+	String getState();
+
+	/**
+	 * @return the progress in percent
+	 */
+	int getPercentage();
+
+	/**
+	 * @return the number of processed items
+	 */
+	long getItems();
+
+	/**
+	 * @return the number of processed bytes
+	 */
+	long getBytes();
+
+	/**
+	 * @return processed items per second
+	 */
+	double getItemsPerSecond();
+
+	/**
+	 * @return processed bytes per second
+	 */
+	double getBytesPerSecond();
+
+	/**
+	 * @return the time the job has been working in milliseconds
+	 */
+	long getActiveTime();
+
+	/**
+	 * @return the estimated time left in milliseconds, -1 if unknown
+	 */
+	long getEstimatedTimeLeft();
+
+	/**
+	 * @return the time spent within every stage, one entry per stage
+	 */
+	String[] getStageTimes();
+}
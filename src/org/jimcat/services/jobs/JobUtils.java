@@ -18,11 +18,15 @@
 package org.jimcat.services.jobs;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.LinkedList;
 import java.util.List;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 /**
  * This class encapsulates methods for operations on files.
@@ -36,6 +40,9 @@ public class JobUtils {
 	 * this methode will try to find an unused filename within the destination
 	 * directory.
 	 * 
+	 * If several names are required for the same destination, use a shared
+	 * FileNameIndex instead. It lists the destination directory only once.
+	 * 
 	 * @param destination
 	 * @param file
 	 * @param includeParent -
@@ -43,45 +50,14 @@ public class JobUtils {
 	 * @return the next free file name in the destination directory
 	 */
 	public static File getNextFreeCopyFileName(File destination, File file, boolean includeParent) {
-		// split up name (parent directory, name and extension part)
-		String parent = file.getParentFile().getName();
-		String name = file.getName();
-		int dotIndex = name.indexOf('.');
-		String extension = "";
-		if (dotIndex != -1) {
-			extension = name.substring(dotIndex);
-			name = name.substring(0, dotIndex);
-		}
-
-		// try names
-		int num = 1;
-
-		// build first name (without number)
-		String testName = "";
-		if (includeParent) {
-			testName = testName + parent + "/";
-		}
-		testName = testName + name + extension;
-
-		// test file
-		File dest = new File(destination, testName);
-		while (dest.exists()) {
-			// increment number
-			num++;
-
-			// build new name with incremental number
-			testName = "";
-			if (includeParent) {
-				testName = testName + parent + "/";
-			}
-			testName = testName + name + "(" + num + ")" + extension;
-
-			// new testfile
-			dest = new File(destination, testName);
-		}
-		return dest;
+		return new FileNameIndex(destination).reserve(file, includeParent);
 	}
 
+	/**
+	 * a marker returned by performCopy if the content wasn't requested
+	 */
+	private static final byte[] NO_CONTENT = new byte[0];
+
 	/**
 	 * This methode will copy the source file to the given destination.
 	 * 
@@ -106,14 +82,91 @@ public class JobUtils {
 	 *             afer an error - check job state!
 	 */
 	public static boolean copyFile(File source, File dest, Job job) throws IOException {
-		boolean done = false;
-		while (!done) {
+		return performCopy(source, null, dest, job, false) != null;
+	}
+
+	/**
+	 * This methode will copy the source file to the given destination and
+	 * returns the content of the file.
+	 * 
+	 * The file is read only once. The content is kept in memory, written to
+	 * the destination and handed back to the caller, so it can be decoded and
+	 * hashed without reading the copy from disc again.
+	 * 
+	 * Failures are handled the same way as by
+	 * {@link #copyFile(File, File, Job) copyFile}.
+	 * 
+	 * @param source -
+	 *            the source file
+	 * @param dest -
+	 *            the destination file
+	 * @param job -
+	 *            the calling job
+	 * @return - the content of the copied file or null if an error occured,
+	 *         but user ignored it
+	 * @throws IOException -
+	 *             will be thrown if user selectes cancel or rollback afer an
+	 *             error - check job state!
+	 */
+	public static byte[] copyAndLoadFile(File source, File dest, Job job) throws IOException {
+		return performCopy(source, null, dest, job, true);
+	}
+
+	/**
+	 * This methode will write the given content to the destination file.
+	 * 
+	 * Failures are handled the same way as by
+	 * {@link #copyFile(File, File, Job) copyFile}.
+	 * 
+	 * @param content -
+	 *            the data to write
+	 * @param dest -
+	 *            the destination file
+	 * @param job -
+	 *            the calling job
+	 * @return - true if successfull, false if an error occured, but user
+	 *         ignored it
+	 * @throws IOException -
+	 *             will be thrown if user selectes cancel or rollback afer an
+	 *             error - check job state!
+	 */
+	public static boolean writeFile(byte[] content, File dest, Job job) throws IOException {
+		return performCopy(null, content, dest, job, false) != null;
+	}
+
+	/**
+	 * the copy loop including the failure handling shared by copyFile,
+	 * copyAndLoadFile and writeFile
+	 * 
+	 * @param source -
+	 *            the source file
+	 * @param content -
+	 *            the content to write instead of the source file, may be null
+	 * @param dest -
+	 *            the destination file
+	 * @param job -
+	 *            the calling job
+	 * @param loadContent -
+	 *            should the content be returned
+	 * @return the content, NO_CONTENT if it wasn't requested or null if an
+	 *         error was ignored
+	 * @throws IOException
+	 */
+	private static byte[] performCopy(File source, byte[] content, File dest, Job job, boolean loadContent)
+	        throws IOException {
+		while (true) {
 			try {
+				// write given content
+				if (content != null) {
+					write(content, dest);
+					return NO_CONTENT;
+				}
 				// copy to destination
-				FileUtils.copyFile(source, dest);
-
-				// done
-				done = true;
+				if (loadContent) {
+					return transferAndLoad(source, dest);
+				}
+				transfer(source, dest);
+				return NO_CONTENT;
 
 			} catch (IOException ioe) {
 				// create a failure description
@@ -141,7 +194,6 @@ public class JobUtils {
 				// handle reaction
 				switch (desc.getRespond()) {
 				case Retry:
-					done = false;
 					break;
 				case Rollback:
 					job.rollback();
@@ -151,11 +203,137 @@ public class JobUtils {
 					throw ioe;
 				case Ignore:
 				case IgnoreAll:
-					return false;
+					return null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * copies the source file to the destination using
+	 * FileChannel.transferTo. The content is never copied into the java heap.
+	 * 
+	 * @param source
+	 * @param dest
+	 * @throws IOException
+	 */
+	private static void transfer(File source, File dest) throws IOException {
+		FileInputStream in = null;
+		FileOutputStream out = null;
+		try {
+			in = new FileInputStream(source);
+			out = openDestination(dest);
+
+			// let the channels do the work
+			FileChannel inChannel = in.getChannel();
+			FileChannel outChannel = out.getChannel();
+			long size = inChannel.size();
+			long position = 0;
+			while (position < size) {
+				position += inChannel.transferTo(position, size - position, outChannel);
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+			IOUtils.closeQuietly(out);
+		}
+		finishCopy(source, dest);
+	}
+
+	/**
+	 * copies the source file to the destination by reading it into a single
+	 * buffer which is written to the destination and returned afterwards.
+	 * 
+	 * @param source
+	 * @param dest
+	 * @return the content of the file
+	 * @throws IOException
+	 */
+	private static byte[] transferAndLoad(File source, File dest) throws IOException {
+		FileInputStream in = null;
+		FileOutputStream out = null;
+		ByteBuffer buffer = null;
+		try {
+			in = new FileInputStream(source);
+			FileChannel inChannel = in.getChannel();
+			long size = inChannel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File " + source.getName() + " is too big to be loaded");
+			}
+
+			// read file at once
+			buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (inChannel.read(buffer) < 0) {
+					throw new IOException("Unexpected end of file " + source.getName());
 				}
 			}
+			buffer.flip();
+
+			// write it to the destination
+			out = openDestination(dest);
+			FileChannel outChannel = out.getChannel();
+			while (buffer.hasRemaining()) {
+				outChannel.write(buffer);
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+			IOUtils.closeQuietly(out);
+		}
+		finishCopy(source, dest);
+		return buffer.array();
+	}
+
+	/**
+	 * writes the given content to the destination
+	 * 
+	 * @param content
+	 * @param dest
+	 * @throws IOException
+	 */
+	private static void write(byte[] content, File dest) throws IOException {
+		FileOutputStream out = openDestination(dest);
+		try {
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.wrap(content);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * opens the destination file, missing parent directories are created
+	 * 
+	 * @param dest
+	 * @return an output stream to the destination file
+	 * @throws IOException
+	 */
+	private static FileOutputStream openDestination(File dest) throws IOException {
+		File parent = dest.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Destination directory " + parent + " couldn't be created");
+		}
+		if (dest.isDirectory()) {
+			throw new IOException("Destination " + dest + " is a directory");
+		}
+		return new FileOutputStream(dest);
+	}
+
+	/**
+	 * checks the size of the copy and preserves the modification date of the
+	 * source
+	 * 
+	 * @param source
+	 * @param dest
+	 * @throws IOException
+	 */
+	private static void finishCopy(File source, File dest) throws IOException {
+		if (source.length() != dest.length()) {
+			throw new IOException("Failed to copy full contents from " + source + " to " + dest);
 		}
-		return true;
+		dest.setLastModified(source.lastModified());
 	}
 
 	/**
@@ -0,0 +1,480 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.services.jobs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A job processing a list of independent items in parallel.
+ * 
+ * Items are processed by processItem on a pool of worker threads. The results
+ * are handed to itemFinished within the job thread, one after the other and in
+ * the order of the item list. So itemFinished may maintain undo lists, names
+ * or counters without synchronisation. Every step of the job finishes a
+ * single item, percentage and rollback are based on finished items. Finished
+ * items and the time spent within processItem are recorded by the job
+ * metrics.
+ * 
+ * If the job is canceled or rolled back, items not started yet are dropped.
+ * Items already processed by a worker are still handed to itemFinished or
+ * reverted, so no work done gets lost.
+ * 
+ * If processItem fails, the user is asked what to do using the usual
+ * JobFailureDescription mechanism. Choosing IgnoreAll ignores all further
+ * failures of any worker.
+ * 
+ * Subclasses have to set the list of items before the job is executed or
+ * within preExecution.
+ * 
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ * @param <T> -
+ *            the type of items to process
+ * @param <R> -
+ *            the type of results
+ */
+public abstract class ParallelJob<T, R> extends Job {
+
+	/**
+	 * the items to process
+	 */
+	private List<T> items = Collections.emptyList();
+
+	/**
+	 * the results of all finished items, null if the item failed
+	 */
+	private List<R> results = new ArrayList<R>();
+
+	/**
+	 * the workers processing items
+	 */
+	private ExecutorService workers;
+
+	/**
+	 * items submitted to workers but not yet finished, in order
+	 */
+	private LinkedList<Future<R>> window = new LinkedList<Future<R>>();
+
+	/**
+	 * the number of items submitted to workers up to now
+	 */
+	private int submitted = 0;
+
+	/**
+	 * the number of items not yet reverted, -1 if there is no rollback
+	 */
+	private int rollbackIndex = -1;
+
+	/**
+	 * items processed in advance which have to be reverted first
+	 */
+	private LinkedList<Processed<T, R>> processedInAdvance = new LinkedList<Processed<T, R>>();
+
+	/**
+	 * the result of a successful retry within handleFailure
+	 */
+	private R retryResult;
+
+	/**
+	 * should all further failures be ignored
+	 */
+	private volatile boolean ignoreAll = false;
+
+	/**
+	 * create a new parallel job
+	 * 
+	 * @param manager -
+	 *            the jobManager used to execute this job.
+	 * @param name -
+	 *            the name of this job
+	 * @param description -
+	 *            a short description for the job
+	 */
+	public ParallelJob(JobManager manager, String name, String description) {
+		super(manager, name, description);
+	}
+
+	/**
+	 * process a single item. This is called by a worker thread.
+	 * 
+	 * @param item
+	 * @return the result for the given item
+	 * @throws Exception -
+	 *             if the item couldn't be processed
+	 */
+	protected abstract R processItem(T item) throws Exception;
+
+	/**
+	 * called within the job thread after an item has been processed
+	 * 
+	 * @param item -
+	 *            the finished item
+	 * @param result -
+	 *            the result of processItem or null if the failure was ignored
+	 */
+	protected abstract void itemFinished(T item, R result);
+
+	/**
+	 * revert the work done for a single item. Items are reverted in reverse
+	 * order within the job thread.
+	 * 
+	 * @param item -
+	 *            the item to revert
+	 * @param result -
+	 *            the result of processItem or null if the failure was ignored
+	 * @return false if this item should be reverted again within the next step
+	 */
+	protected boolean rollbackItem(T item, R result) {
+		return true;
+	}
+
+	/**
+	 * get a message describing the failure of the given item
+	 * 
+	 * @param item
+	 * @return a message shown to the user
+	 */
+	protected String getFailureMessage(T item) {
+		return "Error processing " + item + ".";
+	}
+
+	/**
+	 * @return the number of workers, the number of processors by default
+	 */
+	protected int getThreadCount() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @param items
+	 *            the items to process
+	 */
+	protected void setItems(List<T> items) {
+		this.items = new ArrayList<T>(items);
+	}
+
+	/**
+	 * @return the items to process
+	 */
+	protected List<T> getItems() {
+		return Collections.unmodifiableList(items);
+	}
+
+	/**
+	 * @return the number of finished items
+	 */
+	protected int getFinishedCount() {
+		return results.size();
+	}
+
+	/**
+	 * set up workers. Subclasses overriding this methode have to call it.
+	 * 
+	 * @see org.jimcat.services.jobs.Job#preExecution()
+	 */
+	@Override
+	public void preExecution() {
+		final int priority = getPriority().getThreadPriority();
+		workers = Executors.newFixedThreadPool(Math.max(1, getThreadCount()), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, getJobName() + " worker");
+				thread.setDaemon(true);
+				thread.setPriority(priority);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * stop workers. Items processed in advance are finished. Subclasses
+	 * overriding this methode have to call it.
+	 * 
+	 * @see org.jimcat.services.jobs.Job#postExecution()
+	 */
+	@Override
+	public void postExecution() {
+		if (workers != null) {
+			for (Processed<T, R> done : drainWindow()) {
+				getMetrics().addItems(1);
+				itemFinished(done.item, done.result);
+			}
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Cancel all submitted items not started yet and wait for the running
+	 * ones.
+	 * 
+	 * @return the items of the window processed successfully, in order
+	 */
+	private List<Processed<T, R>> drainWindow() {
+		List<Processed<T, R>> done = new ArrayList<Processed<T, R>>();
+		if (window.isEmpty()) {
+			return done;
+		}
+		for (Future<R> future : window) {
+			future.cancel(false);
+		}
+		workers.shutdown();
+		boolean interrupted = false;
+		while (!workers.isTerminated()) {
+			try {
+				workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ie) {
+				// running items have to be completed
+				interrupted = true;
+			}
+		}
+
+		int index = results.size();
+		for (Future<R> future : window) {
+			T item = items.get(index++);
+			if (future.isCancelled()) {
+				continue;
+			}
+			try {
+				done.add(new Processed<T, R>(item, future.get()));
+			} catch (ExecutionException ee) {
+				// nothing has been done for this item
+			} catch (InterruptedException ie) {
+				// doesn't happen, the future is done
+				interrupted = true;
+			}
+		}
+		window.clear();
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return done;
+	}
+
+	/**
+	 * percentage of finished or reverted items
+	 * 
+	 * @see org.jimcat.services.jobs.Job#getPercentage()
+	 */
+	@Override
+	public int getPercentage() {
+		if (items.size() == 0) {
+			return 100;
+		}
+		int done = (rollbackIndex == -1) ? results.size() : rollbackIndex;
+		return (int) ((done / (float) items.size()) * 100);
+	}
+
+	/**
+	 * finish the next item. Further items are submitted to the workers, so
+	 * there are always some items processed in advance.
+	 * 
+	 * @see org.jimcat.services.jobs.Job#nextStep()
+	 */
+	@Override
+	public boolean nextStep() {
+		int index = results.size();
+		if (index >= items.size()) {
+			return true;
+		}
+
+		// keep workers busy
+		int windowSize = Math.max(1, getThreadCount()) * 2;
+		while (submitted < items.size() && window.size() < windowSize) {
+			final T next = items.get(submitted++);
+			window.add(workers.submit(new Callable<R>() {
+				public R call() throws Exception {
+					long start = System.nanoTime();
+					try {
+						return processItem(next);
+					} finally {
+						getMetrics().addStageTime("process", start);
+					}
+				}
+			}));
+		}
+
+		// get result of next item
+		T item = items.get(index);
+		R result;
+		try {
+			result = window.getFirst().get();
+		} catch (InterruptedException ie) {
+			// the job thread should stop, keep the flag for the caller
+			Thread.currentThread().interrupt();
+			cancel();
+			return false;
+		} catch (ExecutionException ee) {
+			Exception cause = (ee.getCause() instanceof Exception) ? (Exception) ee.getCause() : ee;
+			if (!handleFailure(item, cause)) {
+				// job has been canceled or will be reverted
+				return false;
+			}
+			result = retryResult;
+			retryResult = null;
+		}
+		window.removeFirst();
+
+		// item finished
+		results.add(result);
+		getMetrics().addItems(1);
+		itemFinished(item, result);
+		return results.size() >= items.size();
+	}
+
+	/**
+	 * ask the user what to do about a failed item
+	 * 
+	 * @param item -
+	 *            the failed item
+	 * @param cause -
+	 *            the reason
+	 * @return true if the item has been processed by a retry (retryResult) or
+	 *         should be ignored (retryResult is null), false if the job has
+	 *         been canceled or rolled back
+	 */
+	private boolean handleFailure(T item, Exception cause) {
+		retryResult = null;
+		while (!ignoreAll) {
+			// prepair JobFailure
+			JobFailureDescription desc = new JobFailureDescription();
+			desc.setCause(cause);
+			desc.setDescription(getFailureMessage(item));
+
+			// create a list of options
+			List<JobFailureOption> options = new LinkedList<JobFailureOption>();
+			options.add(JobFailureOption.Retry);
+			options.add(JobFailureOption.Ignore);
+			options.add(JobFailureOption.IgnoreAll);
+			if (supportsRollback()) {
+				options.add(JobFailureOption.Rollback);
+			}
+			options.add(JobFailureOption.Cancel);
+			desc.setOptions(options);
+
+			// select default option
+			desc.setRespond(JobFailureOption.Retry);
+
+			// request failer handling
+			requestFailureHandling(desc);
+
+			// handle reaction
+			switch (desc.getRespond()) {
+			case Retry:
+				try {
+					retryResult = processItem(item);
+					return true;
+				} catch (Exception e) {
+					cause = e;
+				}
+				break;
+			case Ignore:
+				return true;
+			case IgnoreAll:
+				ignoreAll = true;
+				return true;
+			case Rollback:
+				rollback();
+				return false;
+			case Cancel:
+				cancel();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * revert the next finished item
+	 * 
+	 * @see org.jimcat.services.jobs.Job#nextRollbackStep()
+	 */
+	@Override
+	public boolean nextRollbackStep() {
+		if (rollbackIndex == -1) {
+			// stop processing further items
+			processedInAdvance.addAll(drainWindow());
+			rollbackIndex = results.size();
+		}
+
+		// items processed in advance are the latest ones
+		if (!processedInAdvance.isEmpty()) {
+			Processed<T, R> last = processedInAdvance.getLast();
+			if (rollbackItem(last.item, last.result)) {
+				processedInAdvance.removeLast();
+			}
+			return false;
+		}
+
+		if (rollbackIndex == 0) {
+			return true;
+		}
+
+		int index = rollbackIndex - 1;
+		if (rollbackItem(items.get(index), results.get(index))) {
+			rollbackIndex = index;
+		}
+		return rollbackIndex == 0;
+	}
+
+	/**
+	 * @return true if all further failures are ignored
+	 */
+	protected boolean isIgnoreAll() {
+		return ignoreAll;
+	}
+
+	/**
+	 * an item processed by a worker together with its result
+	 * 
+	 * @param <T>
+	 * @param <R>
+	 */
+	private static class Processed<T, R> {
+
+		/**
+		 * the processed item
+		 */
+		private T item;
+
+		/**
+		 * the result of processItem
+		 */
+		private R result;
+
+		/**
+		 * @param item
+		 * @param result
+		 */
+		private Processed(T item, R result) {
+			this.item = item;
+			this.result = result;
+		}
+	}
+}
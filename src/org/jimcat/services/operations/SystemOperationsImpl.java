@@ -116,6 +116,15 @@ public class SystemOperationsImpl implements SystemOperations {
 		feedbackService.removeFeedbackListener(listener);
 	}
 	
+	/**
+	 * Implemented through delegation.
+	 * @see org.jimcat.services.SystemOperations#startFolderWatching()
+	 * @see org.jimcat.services.folderwatch.FolderWatchService
+	 */
+	public void startFolderWatching() {
+		ServiceLocator.getFolderWatchService().startup();
+	}
+
 	/**
 	 * Initating shutdown process ...
 	 * 
@@ -123,6 +132,9 @@ public class SystemOperationsImpl implements SystemOperations {
 	 * 
 	 */
 	public void shutdown() throws IllegalStateException {
+		// stop watching folders - no more jobs should be started
+		ServiceLocator.getFolderWatchService().shutdown();
+
 		// check Jobsystem - no running jobs are allowed
 		JobManager jobManager = OperationsLocator.getJobOperations().getJobManager();
 
@@ -133,7 +145,7 @@ public class SystemOperationsImpl implements SystemOperations {
 		// shutdown job system
 		jobManager.shutdown();
 
-		// shutdown repository control
+		// shutdown repository control - waits for all pending writes
 		RepositoryControl repositoryControl = RepositoryLocator.getRepositoryControl();
 		repositoryControl.shutdown();
 
@@ -147,4 +159,15 @@ public class SystemOperationsImpl implements SystemOperations {
 		System.exit(0);
 	}
 
+	/**
+	 * @see org.jimcat.services.SystemOperations#getPendingWrites()
+	 */
+	public int getPendingWrites() {
+		RepositoryControl repositoryControl = RepositoryLocator.getRepositoryControl();
+		if (repositoryControl == null) {
+			return 0;
+		}
+		return repositoryControl.getPendingWrites();
+	}
+
 }
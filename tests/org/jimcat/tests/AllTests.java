@@ -34,6 +34,7 @@ public class AllTests {
 		suite.addTestSuite(TestProperties.class);
 
 		suite.addTestSuite(TestImageLibrary.class);
+		suite.addTestSuite(TestAbstractLibrary.class);
 		suite.addTestSuite(TestFilter.class);
 		suite.addTestSuite(TestComparator.class);
 		suite.addTestSuite(TestImage.class);
@@ -0,0 +1,120 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.jimcat.model.Image;
+import org.jimcat.model.libraries.AbstractLibrary;
+
+/**
+ * Tests waiting for a library loaded in background.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class TestAbstractLibrary extends JimcatTestCase {
+
+	public void testLoaded() {
+		TestLibrary library = new TestLibrary(false, false);
+		library.awaitLoaded();
+		assertTrue(library.isLoaded());
+		assertEquals(2, library.getAll().size());
+	}
+
+	public void testLoadFailure() {
+		TestLibrary library = new TestLibrary(true, false);
+		try {
+			library.awaitLoaded();
+			fail("an incomplete library is reported as loaded");
+		} catch (IllegalStateException ise) {
+			assertTrue(ise.getCause() instanceof UnsupportedOperationException);
+		}
+		assertFalse(library.isLoaded());
+	}
+
+	public void testInterrupt() throws Exception {
+		TestLibrary library = new TestLibrary(false, true);
+		Thread.currentThread().interrupt();
+		try {
+			library.awaitLoaded();
+			fail("an incomplete library is reported as loaded");
+		} catch (IllegalStateException ise) {
+			assertTrue(Thread.interrupted());
+		}
+		synchronized (library) {
+			library.blocked = false;
+			library.notifyAll();
+		}
+		library.awaitLoaded();
+	}
+
+	/**
+	 * a library loading two images, the second one may fail. A blocked loader
+	 * waits before returning an image.
+	 */
+	private class TestLibrary extends AbstractLibrary<Image, TestLibrary> {
+
+		/**
+		 * the loader waits while set
+		 */
+		private boolean blocked;
+
+		private boolean failing;
+
+		private TestLibrary(boolean failing, boolean blocked) {
+			super(null, false);
+			this.failing = failing;
+			this.blocked = blocked;
+			loadInBackground(1);
+		}
+
+		@Override
+		protected Iterator<Image> iterateRepository() {
+			final Iterator<Image> images = Arrays.asList(createImage("a"), createImage("b")).iterator();
+			return new Iterator<Image>() {
+				public boolean hasNext() {
+					return images.hasNext();
+				}
+
+				public Image next() {
+					Image result = images.next();
+					if (failing && !images.hasNext()) {
+						throw new UnsupportedOperationException("repository failure");
+					}
+					synchronized (TestLibrary.this) {
+						while (blocked) {
+							try {
+								TestLibrary.this.wait();
+							} catch (InterruptedException ie) {
+								return result;
+							}
+						}
+					}
+					return result;
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+}
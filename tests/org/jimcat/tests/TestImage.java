@@ -17,8 +17,19 @@
 
 package org.jimcat.tests;
 
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jimcat.model.Activation;
 import org.jimcat.model.Image;
+import org.jimcat.model.ImageMetadata;
+import org.jimcat.model.Thumbnail;
 import org.jimcat.model.tag.Tag;
+import org.joda.time.DateTime;
 
 /**
  * 
@@ -45,4 +56,49 @@ public class TestImage extends JimcatTestCase {
 		// now the tag should be removed even if assigned twice
 		assertFalse(image.hasTag(tag));
 	}
+
+	public void testLazyThumbnail() throws Exception {
+		final List<Object> activated = new ArrayList<Object>();
+		Activation.setActivator(new Activation.Activator() {
+			public void activate(Object o) {
+				activated.add(o);
+			}
+		});
+
+		try {
+			Image image = new Image();
+			assertNull(image.getThumbnail());
+			assertTrue(activated.isEmpty());
+
+			Thumbnail thumbnail = new Thumbnail(new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB));
+			image.setThumbnail(thumbnail);
+			assertSame(thumbnail, image.getThumbnail());
+			assertEquals(1, activated.size());
+			assertSame(thumbnail, activated.get(0));
+		} finally {
+			Activation.setActivator(null);
+		}
+	}
+
+	public void testIdentity() {
+		Image a = new Image();
+		Image b = new Image();
+		assertTrue(a.getImageId() != b.getImageId());
+		assertFalse(a.equals(b));
+
+		// same path, still different images
+		File file = new File("a.jpg");
+		a.setMetadata(new ImageMetadata(file, 10, 10, 20, null, 1, new DateTime(), new DateTime()));
+		b.setMetadata(new ImageMetadata(file, 10, 10, 20, null, 1, new DateTime(), new DateTime()));
+		assertFalse(a.equals(b));
+
+		Set<Image> images = new HashSet<Image>();
+		images.add(a);
+		long id = a.getImageId();
+
+		// renaming doesn't change the identity
+		a.setMetadata(new ImageMetadata(new File("b.jpg"), 10, 10, 20, null, 1, new DateTime(), new DateTime()));
+		assertEquals(id, a.getImageId());
+		assertTrue(images.contains(a));
+	}
 }
@@ -27,6 +27,12 @@ public class TestImageLibrary extends JimcatTestCase {
 
 	private ImageLibrary library = ImageLibrary.getInstance();
 
+	@Override
+	protected void setUp() throws Exception {
+		// sizes are compared, so the library has to be complete
+		library.awaitLoaded();
+	}
+
 	public void testAddImage() {
 
 		Image newImage = createImage("foo");
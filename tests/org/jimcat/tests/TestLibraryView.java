@@ -17,15 +17,21 @@
 
 package org.jimcat.tests;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 import org.jimcat.model.Image;
+import org.jimcat.model.comparator.TitleComparator;
 import org.jimcat.model.filter.TagFilter;
 import org.jimcat.model.libraries.ImageLibrary;
 import org.jimcat.model.libraries.LibraryView;
 import org.jimcat.model.notification.BeanChangeEvent;
+import org.jimcat.model.notification.BeanModificationManager;
 import org.jimcat.model.notification.CollectionListener;
+import org.jimcat.model.notification.IndexListener;
 import org.jimcat.model.tag.Tag;
 
 /**
@@ -49,6 +55,7 @@ public class TestLibraryView extends JimcatTestCase {
 
 	@Override
 	protected void setUp() throws Exception {
+		library.awaitLoaded();
 		library.removeAll();
 	}
 
@@ -152,4 +159,153 @@ public class TestLibraryView extends JimcatTestCase {
 		ic.setFilter(tagFilter);
 		assertEquals(1, ic.size());
 	}
+
+	public void testSortedIndexEvents() {
+		LibraryView ic = new LibraryView(ImageLibrary.getInstance(), null, new TitleComparator());
+		List<Image> mirror = mirror(ic);
+
+		Image images[] = addImages(5);
+		assertEquals(ic.getImages(), mirror);
+		assertEquals(images[2], ic.getImage(2));
+
+		// move to the end
+		images[1].setTitle("image 9");
+		assertEquals(ic.getImages(), mirror);
+		assertEquals(images[1], ic.getImage(4));
+		assertEquals(4, ic.indexOf(images[1]));
+
+		// update without moving
+		images[3].setTitle("image 3b");
+		assertEquals(ic.getImages(), mirror);
+		assertEquals(images[3], ic.getImage(2));
+
+		library.remove(images[0]);
+		assertEquals(ic.getImages(), mirror);
+		assertEquals(images[2], ic.getImage(0));
+		assertEquals(-1, ic.indexOf(images[0]));
+		for (int i = 0; i < mirror.size(); i++) {
+			assertEquals(i, ic.indexOf(mirror.get(i)));
+		}
+	}
+
+	public void testMoveSeveralAtOnce() {
+		LibraryView ic = new LibraryView(ImageLibrary.getInstance(), null, new TitleComparator());
+		List<Image> mirror = mirror(ic);
+		Image images[] = addImages(8);
+
+		// move to both ends and update in place within one transaction
+		BeanModificationManager.startTransaction();
+		images[1].setTitle("image 9");
+		images[6].setTitle("image 0b");
+		images[3].setTitle("image 3b");
+		BeanModificationManager.commitTransaction();
+
+		assertEquals(ic.getImages(), mirror);
+		assertEquals(images[6], ic.getImage(1));
+		assertEquals(images[1], ic.getImage(7));
+		assertSorted(ic, images);
+	}
+
+	public void testFrozenView() {
+		LibraryView ic = new LibraryView(ImageLibrary.getInstance(), null, new TitleComparator());
+		List<Image> mirror = mirror(ic);
+		Image images[] = addImages(5);
+
+		// positions are kept while freezed
+		ic.setFreezed(true);
+		images[0].setTitle("image 9");
+		images[4].setTitle("image 0b");
+		assertEquals(ic.getImages(), mirror);
+		assertEquals(images[0], ic.getImage(0));
+		assertEquals(images[4], ic.getImage(4));
+
+		// all changes take effect at once
+		ic.setFreezed(false);
+		assertEquals(ic.getImages(), mirror);
+		assertEquals(images[4], ic.getImage(0));
+		assertEquals(images[0], ic.getImage(4));
+		assertSorted(ic, images);
+	}
+
+	public void testFrozenViewAdd() {
+		LibraryView ic = new LibraryView(ImageLibrary.getInstance(), null, new TitleComparator());
+		Image images[] = addImages(20);
+
+		// the sort keys of every second image are changed while freezed
+		ic.setFreezed(true);
+		for (int i = 0; i < images.length; i += 2) {
+			images[i].setTitle("image z" + i);
+		}
+
+		// so new images may be inserted at a wrong position
+		List<Image> all = new ArrayList<Image>(Arrays.asList(images));
+		for (int i = 1; i < images.length; i += 2) {
+			Image newbie = new Image();
+			newbie.setTitle("image " + i + "a");
+			library.add(newbie);
+			assertTrue(ic.contains(newbie));
+			all.add(newbie);
+		}
+
+		// unfreezing has to sort everything again
+		ic.setFreezed(false);
+		assertSorted(ic, all.toArray(new Image[all.size()]));
+	}
+
+	/**
+	 * add images titled "image 0" .. "image n-1" to the library
+	 * 
+	 * @param count
+	 * @return the added images
+	 */
+	private Image[] addImages(int count) {
+		Image images[] = new Image[count];
+		for (int i = 0; i < images.length; i++) {
+			images[i] = new Image();
+			images[i].setTitle("image " + i);
+			library.add(images[i]);
+		}
+		return images;
+	}
+
+	/**
+	 * mirror the given view using index events only
+	 * 
+	 * @param ic
+	 * @return the mirror, updated by index events
+	 */
+	private List<Image> mirror(LibraryView ic) {
+		final List<Image> mirror = new ArrayList<Image>(ic.getImages());
+		ic.addIndexListener(new IndexListener<LibraryView>() {
+			public void intervalAdded(LibraryView collection, int index0, int index1) {
+				for (int i = index0; i <= index1; i++) {
+					mirror.add(i, collection.getImage(i));
+				}
+			}
+
+			@SuppressWarnings("unused")
+			public void intervalRemoved(LibraryView collection, int index0, int index1) {
+				for (int i = index1; i >= index0; i--) {
+					mirror.remove(i);
+				}
+			}
+		});
+		return mirror;
+	}
+
+	/**
+	 * check that the view contains exactly the given images sorted by title
+	 * 
+	 * @param ic
+	 * @param images
+	 */
+	private void assertSorted(LibraryView ic, Image images[]) {
+		List<Image> expected = new ArrayList<Image>(Arrays.asList(images));
+		Collections.sort(expected, new TitleComparator());
+		assertEquals(expected, ic.getImages());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i), ic.getImage(i));
+			assertEquals(i, ic.indexOf(expected.get(i)));
+		}
+	}
 }
@@ -46,6 +46,7 @@ public class TestGridLayoutPrintDocument extends JFrame {
 		RepositoryLocator.setConfigType(ConfigType.XSTREAM);
 
 		ImageLibrary imageLibrary = ImageLibrary.getInstance();
+		imageLibrary.awaitLoaded();
 		Set<Image> images = imageLibrary.getAll();
 
 		ArrayList<Image> list = new ArrayList<Image>(images);
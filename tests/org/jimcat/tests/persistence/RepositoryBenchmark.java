@@ -0,0 +1,508 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests.persistence;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.jimcat.model.Album;
+import org.jimcat.model.Image;
+import org.jimcat.model.ImageMetadata;
+import org.jimcat.model.ImageRating;
+import org.jimcat.model.ImportRecord;
+import org.jimcat.model.SmartList;
+import org.jimcat.model.Thumbnail;
+import org.jimcat.model.filter.RatingFilter;
+import org.jimcat.model.filter.TagFilter;
+import org.jimcat.model.filter.RatingFilter.Type;
+import org.jimcat.model.notification.BeanProperty;
+import org.jimcat.model.tag.Tag;
+import org.jimcat.model.tag.TagGroup;
+import org.jimcat.persistence.ImageRepository;
+import org.jimcat.persistence.RepositoryControl;
+import org.jimcat.persistence.RepositoryLocator;
+import org.jimcat.persistence.RepositoryLocator.ConfigType;
+import org.joda.time.DateTime;
+
+/**
+ * Compares the persistence backends using synthetic catalogs. For each backend
+ * and catalog size the following is measured:
+ * 
+ * <ul>
+ * <li>generate - creating the catalog in memory (not persistence related)</li>
+ * <li>bulkSave - saving tags, albums, smart lists and all images until they
+ * are stored</li>
+ * <li>update - latency of single property updates of random images until
+ * they are stored (mean, p50, p99)</li>
+ * <li>remove - removing 1% of the images at once until it is stored</li>
+ * <li>shutdown - shutting down, including the flush of pending writes</li>
+ * <li>coldLoad - starting a new VM on the stored data and loading everything</li>
+ * </ul>
+ * 
+ * Every backend stores its data within ~/.jimcat and RepositoryLocator can
+ * only be set up once, so each run uses its own VM and a temporary user home.
+ * Results are printed as CSV (backend,images,metric,value,unit) to stdout,
+ * progress goes to stderr.
+ * 
+ * Usage: RepositoryBenchmark [sizes [backends]], e.g.
+ * <code>RepositoryBenchmark 10000,100000 DB4O,LOG</code>. The default is
+ * 10000,100000,1000000 and all backends. Arguments of the child VMs can be
+ * given by -Dbenchmark.jvm (default -Xmx4096m). Every image gets its own
+ * thumbnail of all sizes, as created by an import (about 25 KB), so a catalog
+ * of 1M images needs a lot more.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class RepositoryBenchmark {
+
+	/**
+	 * prefix of result lines written by the child VMs
+	 */
+	private static final String RESULT_PREFIX = "RESULT,";
+
+	private static final String SEPERATOR = ",";
+
+	private static final int DEFAULT_SIZES[] = { 10000, 100000, 1000000 };
+
+	private static final ConfigType DEFAULT_TYPES[] = { ConfigType.MOCK, ConfigType.XSTREAM, ConfigType.DB4O,
+	        ConfigType.LOG };
+
+	/**
+	 * images saved per repository call
+	 */
+	private static final int SAVE_CHUNK = 1000;
+
+	/**
+	 * number of single property updates measured
+	 */
+	private static final int UPDATES = 1000;
+
+	/**
+	 * the maximum time to wait for pending writes in ms
+	 */
+	private static final long FLUSH_TIMEOUT = 600000;
+
+	/**
+	 * size of the pictures thumbnails are created from - larger than
+	 * Thumbnail.MAX_THUMBNAIL_SIZE, so all sizes are stored
+	 */
+	private static final int PICTURE_WIDTH = 400;
+
+	private static final int PICTURE_HEIGHT = 300;
+
+	/**
+	 * number of different pictures used for thumbnails
+	 */
+	private static final int PICTURES = 64;
+
+	/**
+	 * all random decisions use this seed, so catalogs are equal for all
+	 * backends
+	 */
+	private static final long SEED = 4711;
+
+	/**
+	 * run the benchmark, or a single phase of it within a child VM
+	 * 
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 3 && args[0].equals("write")) {
+			runWritePhase(ConfigType.valueOf(args[1]), Integer.parseInt(args[2]));
+			return;
+		}
+		if (args.length == 3 && args[0].equals("load")) {
+			runLoadPhase(ConfigType.valueOf(args[1]), Integer.parseInt(args[2]));
+			return;
+		}
+
+		int sizes[] = DEFAULT_SIZES;
+		if (args.length > 0) {
+			String values[] = args[0].split(",");
+			sizes = new int[values.length];
+			for (int i = 0; i < values.length; i++) {
+				sizes[i] = Integer.parseInt(values[i].trim());
+			}
+		}
+		List<ConfigType> types = Arrays.asList(DEFAULT_TYPES);
+		if (args.length > 1) {
+			types = new ArrayList<ConfigType>();
+			for (String value : args[1].split(",")) {
+				types.add(ConfigType.valueOf(value.trim().toUpperCase()));
+			}
+		}
+
+		System.out.println("backend,images,metric,value,unit");
+		for (int size : sizes) {
+			for (ConfigType type : types) {
+				File home = File.createTempFile("jimcat-benchmark", "");
+				home.delete();
+				home.mkdirs();
+				try {
+					runChild(home, "write", type, size);
+					// the mock backend doesn't store anything
+					if (type != ConfigType.MOCK) {
+						runChild(home, "load", type, size);
+					}
+				} finally {
+					FileUtils.deleteDirectory(home);
+				}
+			}
+		}
+	}
+
+	/**
+	 * run a phase within a new VM using the given user home. Result lines are
+	 * passed to stdout, all others to stderr.
+	 * 
+	 * @param home
+	 * @param phase
+	 * @param type
+	 * @param size
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private static void runChild(File home, String phase, ConfigType type, int size) throws IOException,
+	        InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.addAll(Arrays.asList(System.getProperty("benchmark.jvm", "-Xmx4096m").trim().split("\\s+")));
+		command.add("-Duser.home=" + home.getAbsolutePath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(RepositoryBenchmark.class.getName());
+		command.add(phase);
+		command.add(type.name());
+		command.add(String.valueOf(size));
+
+		System.err.println("running " + phase + " " + type + " " + size);
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+		BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.startsWith(RESULT_PREFIX)) {
+					System.out.println(line.substring(RESULT_PREFIX.length()));
+				} else {
+					System.err.println(line);
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		if (process.waitFor() != 0) {
+			System.err.println(phase + " " + type + " " + size + " failed");
+		}
+	}
+
+	/**
+	 * generate and save a catalog, measure updates, removal and shutdown
+	 * 
+	 * @param type
+	 * @param size
+	 */
+	private static void runWritePhase(ConfigType type, int size) {
+		RepositoryLocator.setConfigType(type);
+		Random random = new Random(SEED);
+
+		// generate
+		long time = System.nanoTime();
+		TagGroup root = RepositoryLocator.getTagRepository().getTagTree();
+		if (root == null) {
+			root = new TagGroup(true);
+		}
+		List<Tag> tags = createTags(root);
+		List<Album> albums = createAlbums(Math.max(10, size / 1000));
+		List<ImportRecord> imports = new ArrayList<ImportRecord>();
+		BufferedImage pictures[] = new BufferedImage[PICTURES];
+		for (int i = 0; i < pictures.length; i++) {
+			pictures[i] = createPicture(random);
+		}
+		List<Image> images = new ArrayList<Image>(size);
+		for (int i = 0; i < size; i++) {
+			if (i % SAVE_CHUNK == 0) {
+				imports.add(new ImportRecord(imports.size(), new DateTime(), "/benchmark/" + imports.size()));
+			}
+			images.add(createImage(i, imports.size() - 1, random, pictures, tags, albums));
+		}
+		List<SmartList> smartLists = createSmartLists(tags);
+		report(type, size, "generate", millis(time), "ms");
+
+		// bulk save
+		RepositoryControl control = RepositoryLocator.getRepositoryControl();
+		time = System.nanoTime();
+		RepositoryLocator.getTagRepository().save(root);
+		if (RepositoryLocator.getAlbumRepository() != null) {
+			RepositoryLocator.getAlbumRepository().save(albums);
+		}
+		if (RepositoryLocator.getSmartListRepository() != null) {
+			RepositoryLocator.getSmartListRepository().save(smartLists);
+		}
+		RepositoryLocator.getImportRepository().save(imports);
+		ImageRepository imageRepository = RepositoryLocator.getImageRepository();
+		for (int i = 0; i < size; i += SAVE_CHUNK) {
+			imageRepository.save(images.subList(i, Math.min(size, i + SAVE_CHUNK)));
+		}
+		flush(control);
+		report(type, size, "bulkSave", millis(time), "ms");
+
+		// single property updates
+		long latencies[] = new long[Math.min(UPDATES, size)];
+		ImageRating ratings[] = ImageRating.values();
+		for (int i = 0; i < latencies.length; i++) {
+			Image image = images.get(random.nextInt(size));
+			image.setRating(ratings[random.nextInt(ratings.length)]);
+			Map<Image, Set<BeanProperty>> changes = Collections.<Image, Set<BeanProperty>> singletonMap(image,
+			        EnumSet.of(BeanProperty.IMAGE_RATING));
+
+			time = System.nanoTime();
+			imageRepository.update(changes);
+			flush(control);
+			latencies[i] = System.nanoTime() - time;
+		}
+		Arrays.sort(latencies);
+		long sum = 0;
+		for (long latency : latencies) {
+			sum += latency;
+		}
+		report(type, size, "updateMean", sum / latencies.length / 1000, "us");
+		report(type, size, "updateP50", latencies[latencies.length / 2] / 1000, "us");
+		report(type, size, "updateP99", latencies[latencies.length * 99 / 100] / 1000, "us");
+
+		// removal of 1%
+		Collection<Image> removed = new HashSet<Image>();
+		while (removed.size() < Math.max(1, size / 100)) {
+			removed.add(images.get(random.nextInt(size)));
+		}
+		time = System.nanoTime();
+		imageRepository.remove(removed);
+		flush(control);
+		report(type, size, "remove", millis(time), "ms");
+
+		// shutdown
+		if (control != null) {
+			time = System.nanoTime();
+			control.shutdown();
+			report(type, size, "shutdown", millis(time), "ms");
+		}
+	}
+
+	/**
+	 * load a stored catalog
+	 * 
+	 * @param type
+	 * @param size
+	 */
+	private static void runLoadPhase(ConfigType type, int size) {
+		long time = System.nanoTime();
+		RepositoryLocator.setConfigType(type);
+		RepositoryLocator.getTagRepository().getTagTree();
+		RepositoryLocator.getAlbumRepository().getAll();
+		RepositoryLocator.getSmartListRepository().getAll();
+		RepositoryLocator.getImportRepository().getAll();
+		int count = RepositoryLocator.getImageRepository().getAll().size();
+		report(type, size, "coldLoad", millis(time), "ms");
+		report(type, size, "loadedImages", count, "images");
+
+		RepositoryLocator.getRepositoryControl().shutdown();
+	}
+
+	/**
+	 * add 10 groups of 10 tags each to the given root
+	 * 
+	 * @param root
+	 * @return all tags created
+	 */
+	private static List<Tag> createTags(TagGroup root) {
+		List<Tag> tags = new ArrayList<Tag>();
+		for (int i = 0; i < 10; i++) {
+			TagGroup group = new TagGroup();
+			group.setName("Group " + i);
+			root.addSubTag(group);
+			for (int j = 0; j < 10; j++) {
+				Tag tag = new Tag();
+				tag.setName("Tag " + i + "." + j);
+				group.addSubTag(tag);
+				tags.add(tag);
+			}
+		}
+		return tags;
+	}
+
+	/**
+	 * @param count
+	 * @return new empty albums
+	 */
+	private static List<Album> createAlbums(int count) {
+		List<Album> albums = new ArrayList<Album>(count);
+		for (int i = 0; i < count; i++) {
+			Album album = new Album();
+			album.setName("Album " + i);
+			albums.add(album);
+		}
+		return albums;
+	}
+
+	/**
+	 * @param tags
+	 * @return a smart list for each rating and some tags
+	 */
+	private static List<SmartList> createSmartLists(List<Tag> tags) {
+		List<SmartList> smartLists = new ArrayList<SmartList>();
+		for (ImageRating rating : ImageRating.values()) {
+			SmartList smartList = new SmartList();
+			smartList.setName("Rating " + rating);
+			smartList.setFilter(new RatingFilter(Type.AT_LEAST, rating));
+			smartLists.add(smartList);
+		}
+		for (int i = 0; i < tags.size(); i += 10) {
+			SmartList smartList = new SmartList();
+			smartList.setName(tags.get(i).getName());
+			smartList.setFilter(new TagFilter(tags.get(i)));
+			smartLists.add(smartList);
+		}
+		return smartLists;
+	}
+
+	/**
+	 * create an image with up to 3 tags, in an album by a chance of 10%
+	 * 
+	 * @param index
+	 * @param importId
+	 * @param random
+	 * @param pictures -
+	 *            the thumbnail is created from one of these
+	 * @param tags
+	 * @param albums
+	 * @return the new image
+	 */
+	private static Image createImage(int index, long importId, Random random, BufferedImage pictures[],
+	        List<Tag> tags, List<Album> albums) {
+		Image image = new Image();
+		image.setTitle("Image " + index);
+		image.setRating(ImageRating.values()[random.nextInt(ImageRating.values().length)]);
+		DateTime date = new DateTime(2000, 1, 1, 0, 0, 0, 0).plusMinutes(index);
+		image.setMetadata(new ImageMetadata(new File("/benchmark/" + (index / SAVE_CHUNK), "img" + index + ".jpg"),
+		        3072, 2304, 2500000 + random.nextInt(1000000), Long.toHexString(random.nextLong()), importId, date,
+		        date));
+		try {
+			image.setThumbnail(new Thumbnail(pictures[random.nextInt(pictures.length)]));
+		} catch (IOException ioe) {
+			throw new IllegalStateException(ioe.getMessage());
+		}
+
+		int tagCount = random.nextInt(4);
+		for (int i = 0; i < tagCount; i++) {
+			image.addTag(tags.get(random.nextInt(tags.size())));
+		}
+		if (random.nextInt(10) == 0) {
+			albums.get(random.nextInt(albums.size())).addImage(image);
+		}
+		return image;
+	}
+
+	/**
+	 * create a picture compressing like a photo: a gradient, some shapes and
+	 * a little noise
+	 * 
+	 * @param random
+	 * @return a picture used to create thumbnails
+	 */
+	private static BufferedImage createPicture(Random random) {
+		BufferedImage picture = new BufferedImage(PICTURE_WIDTH, PICTURE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = picture.createGraphics();
+		g.setPaint(new GradientPaint(0, 0, new Color(random.nextInt(0x1000000)), PICTURE_WIDTH, PICTURE_HEIGHT,
+		        new Color(random.nextInt(0x1000000))));
+		g.fillRect(0, 0, PICTURE_WIDTH, PICTURE_HEIGHT);
+		for (int i = 0; i < 20; i++) {
+			g.setColor(new Color(random.nextInt(0x1000000)));
+			g.fillOval(random.nextInt(PICTURE_WIDTH), random.nextInt(PICTURE_HEIGHT), 20 + random.nextInt(150),
+			        20 + random.nextInt(100));
+		}
+		g.dispose();
+
+		for (int y = 0; y < PICTURE_HEIGHT; y++) {
+			for (int x = 0; x < PICTURE_WIDTH; x++) {
+				int rgb = picture.getRGB(x, y);
+				int noise = random.nextInt(8) - 4;
+				int r = Math.max(0, Math.min(255, ((rgb >> 16) & 0xff) + noise));
+				int gr = Math.max(0, Math.min(255, ((rgb >> 8) & 0xff) + noise));
+				int b = Math.max(0, Math.min(255, (rgb & 0xff) + noise));
+				picture.setRGB(x, y, (r << 16) | (gr << 8) | b);
+			}
+		}
+		return picture;
+	}
+
+	/**
+	 * wait until all pending writes are stored
+	 * 
+	 * @param control -
+	 *            may be null if the backend has none
+	 */
+	private static void flush(RepositoryControl control) {
+		if (control != null && !control.flush(FLUSH_TIMEOUT)) {
+			throw new IllegalStateException("pending writes not stored within " + FLUSH_TIMEOUT + " ms");
+		}
+	}
+
+	/**
+	 * @param start
+	 * @return ms passed since start (by System.nanoTime())
+	 */
+	private static long millis(long start) {
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	/**
+	 * print a result line
+	 * 
+	 * @param type
+	 * @param size
+	 * @param metric
+	 * @param value
+	 * @param unit
+	 */
+	private static void report(ConfigType type, int size, String metric, long value, String unit) {
+		System.out.println(RESULT_PREFIX + type + SEPERATOR + size + SEPERATOR + metric + SEPERATOR + value
+		        + SEPERATOR + unit);
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests.persistence;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.jimcat.model.Image;
+import org.jimcat.model.ImageMetadata;
+import org.jimcat.persistence.ImageQueries;
+import org.joda.time.DateTime;
+
+/**
+ * Tests the in memory queries used by the mock and XStream image repositories.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class TestImageQueries extends TestCase {
+
+	private DateTime monday = new DateTime(2007, 6, 4, 12, 0, 0, 0);
+
+	private DateTime tuesday = monday.plusDays(1);
+
+	private DateTime wednesday = monday.plusDays(2);
+
+	private Image a = createImage("a.jpg", "1111", 1, monday);
+
+	private Image b = createImage("b.jpg", "2222", 1, tuesday);
+
+	private Image c = createImage("c.jpg", "1111", 2, wednesday);
+
+	private Image empty = new Image();
+
+	private List<Image> images = Arrays.asList(a, b, c, empty);
+
+	public void testGetByPath() {
+		assertEquals(set(b), ImageQueries.getByPath(images, new File("images", "b.jpg")));
+		// stored paths are absolute
+		assertEquals(set(b), ImageQueries.getByPath(images, new File("images", "b.jpg").getAbsoluteFile()));
+		assertEquals(set(), ImageQueries.getByPath(images, new File("images", "d.jpg")));
+	}
+
+	public void testGetByChecksum() {
+		assertEquals(set(a, c), ImageQueries.getByChecksum(images, "1111"));
+		assertEquals(set(b), ImageQueries.getByChecksum(images, "2222"));
+		assertEquals(set(), ImageQueries.getByChecksum(images, "3333"));
+	}
+
+	public void testGetByImport() {
+		assertEquals(set(a, b), ImageQueries.getByImport(images, 1));
+		assertEquals(set(c), ImageQueries.getByImport(images, 2));
+		assertEquals(set(), ImageQueries.getByImport(images, 3));
+	}
+
+	public void testGetByDateAdded() {
+		// both bounds are inclusive
+		assertEquals(set(a, b), ImageQueries.getByDateAdded(images, monday, tuesday));
+		assertEquals(set(b), ImageQueries.getByDateAdded(images, tuesday, tuesday));
+		assertEquals(set(), ImageQueries.getByDateAdded(images, monday.plusMillis(1), tuesday.minusMillis(1)));
+
+		// missing bounds are open
+		assertEquals(set(a, b), ImageQueries.getByDateAdded(images, null, tuesday));
+		assertEquals(set(b, c), ImageQueries.getByDateAdded(images, tuesday, null));
+		assertEquals(set(a, b, c), ImageQueries.getByDateAdded(images, null, null));
+	}
+
+	private Image createImage(String name, String checksum, long importId, DateTime dateAdded) {
+		Image image = new Image();
+		image.setTitle(name);
+		File path = new File("images", name);
+		image.setMetadata(new ImageMetadata(path, 1, 1, 1, checksum, importId, dateAdded, dateAdded));
+		return image;
+	}
+
+	private Set<Image> set(Image... content) {
+		return new HashSet<Image>(Arrays.asList(content));
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests.persistence;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.jimcat.model.Image;
+import org.jimcat.model.Thumbnail;
+import org.jimcat.persistence.log.LogStore;
+import org.jimcat.services.configuration.Configuration;
+import org.jimcat.tests.JimcatTestCase;
+
+/**
+ * Tests reopening, crash recovery and compaction of the LogStore.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class TestLogStore extends JimcatTestCase {
+
+	private File directory;
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("jimcat", "log");
+		directory.delete();
+		directory.mkdirs();
+		file = new File(directory, "library.log");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	public void testReopen() throws Exception {
+		LogStore store = new LogStore(file);
+		Image a = createImage("a");
+		store.save(Arrays.asList(a, createImage("b")));
+		store.close();
+
+		store = new LogStore(file);
+		assertEquals(titles("a", "b"), titlesOf(store));
+		Image loaded = find(store, "a");
+		assertEquals(a.getImageId(), loaded.getImageId());
+		store.remove(Collections.singleton(loaded));
+		store.close();
+
+		store = new LogStore(file);
+		assertEquals(titles("b"), titlesOf(store));
+		store.close();
+	}
+
+	public void testTornTail() throws Exception {
+		LogStore store = new LogStore(file);
+		store.save(Collections.singleton(createImage("a")));
+		store.flush();
+		long valid = file.length();
+		store.save(Collections.singleton(createImage("b")));
+		store.close();
+
+		// crash while writing the last record
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 3);
+		raf.close();
+
+		store = new LogStore(file);
+		assertEquals(titles("a"), titlesOf(store));
+		assertEquals(valid, file.length());
+
+		// new records mustn't follow the torn one
+		store.save(Collections.singleton(createImage("c")));
+		store.close();
+		store = new LogStore(file);
+		assertEquals(titles("a", "c"), titlesOf(store));
+		store.close();
+	}
+
+	public void testCorruptHeader() throws Exception {
+		LogStore store = new LogStore(file);
+		store.save(Collections.singleton(createImage("a")));
+		store.flush();
+		long start = file.length();
+		store.save(Collections.singleton(createImage("b")));
+		store.close();
+
+		// the checksum covers the id as well
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(start + 8);
+		int value = raf.read();
+		raf.seek(start + 8);
+		raf.write(value ^ 0xFF);
+		raf.close();
+
+		store = new LogStore(file);
+		assertEquals(titles("a"), titlesOf(store));
+		assertEquals(start, file.length());
+		store.close();
+	}
+
+	public void testCompaction() throws Exception {
+		String old = Configuration.getString("log.compact.size", null);
+		Configuration.set("log.compact.size", 0);
+		try {
+			LogStore store = new LogStore(file);
+			Image image = createImage("a");
+			image.setThumbnail(createThumbnail());
+			store.save(Collections.singleton(image));
+			store.flush();
+			long single = file.length();
+
+			// replaced thumbnails have to be reclaimed
+			for (int i = 0; i < 10; i++) {
+				image.setThumbnail(createThumbnail());
+				store.save(Collections.singleton(image));
+				store.flush();
+			}
+			assertTrue(file.length() < 3 * single);
+			store.close();
+
+			store = new LogStore(file);
+			assertEquals(titles("a"), titlesOf(store));
+			assertNotNull(find(store, "a").getThumbnail());
+			store.close();
+		} finally {
+			if (old == null) {
+				Configuration.remove("log.compact.size");
+			} else {
+				Configuration.set("log.compact.size", old);
+			}
+		}
+	}
+
+	private Thumbnail createThumbnail() throws IOException {
+		// noise doesn't compress, like real pictures
+		Random random = new Random();
+		BufferedImage picture = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < picture.getWidth(); x++) {
+			for (int y = 0; y < picture.getHeight(); y++) {
+				picture.setRGB(x, y, random.nextInt());
+			}
+		}
+		return new Thumbnail(picture);
+	}
+
+	private Set<String> titles(String... titles) {
+		return new HashSet<String>(Arrays.asList(titles));
+	}
+
+	private Set<String> titlesOf(LogStore store) {
+		Set<String> result = new HashSet<String>();
+		for (Image image : store.getImages()) {
+			result.add(image.getTitle());
+		}
+		return result;
+	}
+
+	private Image find(LogStore store, String title) {
+		for (Image image : store.getImages()) {
+			if (title.equals(image.getTitle())) {
+				return image;
+			}
+		}
+		fail("no image " + title);
+		return null;
+	}
+}
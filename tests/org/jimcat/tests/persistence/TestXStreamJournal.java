@@ -0,0 +1,185 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests.persistence;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.jimcat.model.Image;
+import org.jimcat.persistence.xstream.XStreamBackup;
+import org.jimcat.persistence.xstream.XStreamJournal;
+import org.jimcat.tests.JimcatTestCase;
+
+/**
+ * Tests replay, crash recovery and compaction of the XStreamJournal. A
+ * journal that isn't closed simulates a crash, closing it writes a snapshot.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class TestXStreamJournal extends JimcatTestCase {
+
+	private File directory;
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("jimcat", "xstream");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	public void testReplay() throws Exception {
+		XStreamJournal journal = new XStreamJournal(directory);
+		XStreamBackup backup = XStreamBackup.createEmpty();
+		journal.create(backup);
+		Image a = createImage("a");
+		save(journal, backup, a, createImage("b"));
+		a.setTitle("c");
+		save(journal, backup, a);
+
+		// crash - the snapshot doesn't contain any image
+		journal = new XStreamJournal(directory);
+		backup = journal.load();
+		assertEquals(titles("b", "c"), titlesOf(backup));
+		Image loaded = find(backup, "c");
+		assertEquals(a.getImageId(), loaded.getImageId());
+		remove(journal, backup, loaded);
+
+		journal = new XStreamJournal(directory);
+		assertEquals(titles("b"), titlesOf(journal.load()));
+	}
+
+	public void testTornTail() throws Exception {
+		XStreamJournal journal = new XStreamJournal(directory);
+		XStreamBackup backup = XStreamBackup.createEmpty();
+		journal.create(backup);
+		save(journal, backup, createImage("a"));
+		File file = getJournalFiles()[0];
+		long valid = file.length();
+		save(journal, backup, createImage("b"));
+
+		// crash while writing the last record
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 3);
+		raf.close();
+
+		journal = new XStreamJournal(directory);
+		backup = journal.load();
+		assertEquals(titles("a"), titlesOf(backup));
+		assertEquals(valid, file.length());
+
+		// new records mustn't follow the torn one
+		save(journal, backup, createImage("c"));
+		journal = new XStreamJournal(directory);
+		assertEquals(titles("a", "c"), titlesOf(journal.load()));
+	}
+
+	public void testCompaction() throws Exception {
+		XStreamJournal journal = new XStreamJournal(directory);
+		XStreamBackup backup = XStreamBackup.createEmpty();
+		journal.create(backup);
+		Image a = createImage("a");
+		save(journal, backup, a, createImage("b"));
+		File old = getJournalFiles()[0];
+
+		journal.compact();
+		File[] files = getJournalFiles();
+		assertEquals(1, files.length);
+		assertFalse(old.exists());
+		assertEquals(0, files[0].length());
+
+		// changes after the snapshot are journaled again
+		remove(journal, backup, a);
+		save(journal, backup, createImage("c"));
+		journal = new XStreamJournal(directory);
+		backup = journal.load();
+		assertEquals(titles("b", "c"), titlesOf(backup));
+
+		// entities loaded from the snapshot are known as persisted
+		Image b = find(backup, "b");
+		b.setTitle("d");
+		save(journal, backup, b);
+		journal.close();
+		assertEquals(1, getJournalFiles().length);
+
+		journal = new XStreamJournal(directory);
+		assertEquals(titles("c", "d"), titlesOf(journal.load()));
+		journal.close();
+	}
+
+	/**
+	 * save images like the repository does
+	 */
+	private void save(XStreamJournal journal, XStreamBackup backup, Image... images) {
+		synchronized (journal) {
+			backup.images.addAll(Arrays.asList(images));
+			journal.save(Arrays.asList(images));
+		}
+	}
+
+	/**
+	 * remove images like the repository does
+	 */
+	private void remove(XStreamJournal journal, XStreamBackup backup, Image... images) {
+		synchronized (journal) {
+			backup.images.removeAll(Arrays.asList(images));
+			journal.remove(Arrays.asList(images));
+		}
+	}
+
+	private File[] getJournalFiles() {
+		return directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".journal");
+			}
+		});
+	}
+
+	private Set<String> titles(String... titles) {
+		return new HashSet<String>(Arrays.asList(titles));
+	}
+
+	private Set<String> titlesOf(XStreamBackup backup) {
+		Set<String> result = new HashSet<String>();
+		for (Image image : backup.images) {
+			result.add(image.getTitle());
+		}
+		return result;
+	}
+
+	private Image find(XStreamBackup backup, String title) {
+		for (Image image : backup.images) {
+			if (title.equals(image.getTitle())) {
+				return image;
+			}
+		}
+		fail("no image " + title);
+		return null;
+	}
+}
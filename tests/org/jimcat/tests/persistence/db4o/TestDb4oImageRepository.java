@@ -0,0 +1,239 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests.persistence.db4o;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.jimcat.model.Album;
+import org.jimcat.model.Image;
+import org.jimcat.model.notification.BeanProperty;
+import org.jimcat.model.tag.Tag;
+import org.jimcat.model.tag.TagGroup;
+import org.jimcat.persistence.ImageRepository;
+import org.jimcat.persistence.RepositoryLocator;
+import org.jimcat.persistence.RepositoryLocator.ConfigType;
+
+/**
+ * Tests partial updates of images stored by db4o. The database can only be
+ * opened once per VM, so every step runs within a new VM using a temporary
+ * user home.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class TestDb4oImageRepository extends TestCase {
+
+	/**
+	 * the temporary user home containing the database
+	 */
+	private File home;
+
+	@Override
+	protected void setUp() throws Exception {
+		home = File.createTempFile("jimcat", "home");
+		home.delete();
+		home.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(home);
+	}
+
+	/**
+	 * changed tag and album sets of a stored image have to survive a restart
+	 * 
+	 * @throws Exception
+	 */
+	public void testUpdateMembership() throws Exception {
+		assertEquals("create failed", 0, runChild("create"));
+		assertEquals("unexpected content after create", 0, runChild("check", "tag a", "album a"));
+		assertEquals("update failed", 0, runChild("update"));
+		assertEquals("membership changes were lost", 0, runChild("check", "tag b", "album b"));
+	}
+
+	/**
+	 * run a step within a new VM
+	 * 
+	 * @param args -
+	 *            the step and its arguments
+	 * @return the exit code of the VM
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private int runChild(String... args) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.add("-Duser.home=" + home.getAbsolutePath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(TestDb4oImageRepository.class.getName());
+		Collections.addAll(command, args);
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+		BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				System.err.println(line);
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		return process.waitFor();
+	}
+
+	/**
+	 * execute a single step of the test
+	 * 
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		RepositoryLocator.setConfigType(ConfigType.DB4O);
+		int result = 0;
+		try {
+			if (args[0].equals("create")) {
+				create();
+			} else if (args[0].equals("update")) {
+				update();
+			} else if (!check(args[1], args[2])) {
+				result = 1;
+			}
+		} finally {
+			RepositoryLocator.getRepositoryControl().shutdown();
+		}
+		System.exit(result);
+	}
+
+	/**
+	 * store two tags, two albums and an image using the first of each
+	 */
+	private static void create() {
+		TagGroup root = new TagGroup(true);
+		Tag a = createTag(root, "tag a");
+		createTag(root, "tag b");
+		RepositoryLocator.getTagRepository().save(root);
+
+		Album albumA = createAlbum("album a");
+		Album albumB = createAlbum("album b");
+		RepositoryLocator.getAlbumRepository().save(Arrays.asList(albumA, albumB));
+
+		Image image = new Image();
+		image.setTitle("image");
+		image.addTag(a);
+		image.addToAlbum(albumA);
+		RepositoryLocator.getImageRepository().save(Collections.singleton(image));
+	}
+
+	/**
+	 * switch the stored image to the second tag and album, only the changed
+	 * properties are stored
+	 */
+	private static void update() {
+		Image image = getImage();
+		for (Tag tag : new ArrayList<Tag>(image.getTags())) {
+			image.removeTag(tag);
+		}
+		for (Album album : new ArrayList<Album>(image.getAlbums())) {
+			image.removeFromAlbum(album);
+		}
+		for (TagGroup group : RepositoryLocator.getTagRepository().getTagTree().getSubTags()) {
+			if (group.getName().equals("tag b")) {
+				image.addTag((Tag) group);
+			}
+		}
+		for (Album album : RepositoryLocator.getAlbumRepository().getAll()) {
+			if (album.getName().equals("album b")) {
+				image.addToAlbum(album);
+			}
+		}
+
+		ImageRepository repository = RepositoryLocator.getImageRepository();
+		repository.update(Collections.singletonMap(image, (Set<BeanProperty>) EnumSet.of(BeanProperty.IMAGE_TAGS,
+		        BeanProperty.IMAGE_ALBUMS)));
+	}
+
+	/**
+	 * @param tag
+	 * @param album
+	 * @return true if the stored image has exactly the given tag and album
+	 */
+	private static boolean check(String tag, String album) {
+		Image image = getImage();
+		Set<String> tags = new TreeSet<String>();
+		for (Tag t : image.getTags()) {
+			tags.add(t.getName());
+		}
+		Set<String> albums = new TreeSet<String>();
+		for (Album a : image.getAlbums()) {
+			albums.add(a.getName());
+		}
+		System.out.println("tags: " + tags + ", albums: " + albums);
+		return tags.equals(Collections.singleton(tag)) && albums.equals(Collections.singleton(album));
+	}
+
+	/**
+	 * @return the only stored image
+	 */
+	private static Image getImage() {
+		Set<Image> images = RepositoryLocator.getImageRepository().getAll();
+		if (images.size() != 1) {
+			throw new IllegalStateException("expected a single image, found " + images.size());
+		}
+		return images.iterator().next();
+	}
+
+	/**
+	 * @param parent
+	 * @param name
+	 * @return a new tag added to the parent
+	 */
+	private static Tag createTag(TagGroup parent, String name) {
+		Tag tag = new Tag();
+		tag.setName(name);
+		parent.addSubTag(tag);
+		return tag;
+	}
+
+	/**
+	 * @param name
+	 * @return a new album
+	 */
+	private static Album createAlbum(String name) {
+		Album album = new Album();
+		album.setName(name);
+		return album;
+	}
+}
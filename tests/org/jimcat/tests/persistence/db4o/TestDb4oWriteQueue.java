@@ -0,0 +1,214 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests.persistence.db4o;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.jimcat.persistence.db4o.Db4oWriteQueue;
+import org.jimcat.services.configuration.Configuration;
+import org.jimcat.tests.JimcatTestCase;
+
+import com.db4o.ObjectContainer;
+import com.db4o.ext.ExtObjectContainer;
+
+/**
+ * Tests coalescing, depth merging and the flush barrier of the
+ * Db4oWriteQueue. The database is a fake recording the calls it receives.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class TestDb4oWriteQueue extends JimcatTestCase {
+
+	/**
+	 * the calls received by the database
+	 */
+	private List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+	private ScheduledThreadPoolExecutor executor;
+
+	private String oldDelay;
+
+	private String oldBatch;
+
+	@Override
+	protected void setUp() throws Exception {
+		oldDelay = Configuration.getString("db4o.flush.delay", null);
+		oldBatch = Configuration.getString("db4o.flush.batch", null);
+		// nothing is written unless flushed or a batch is full
+		Configuration.set("db4o.flush.delay", 60 * 1000);
+		Configuration.set("db4o.flush.batch", 3);
+		executor = new ScheduledThreadPoolExecutor(1);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdownNow();
+		restore("db4o.flush.delay", oldDelay);
+		restore("db4o.flush.batch", oldBatch);
+	}
+
+	public void testCoalescing() throws Exception {
+		Db4oWriteQueue queue = new Db4oWriteQueue(createDatabase(), executor);
+		Item a = new Item("a");
+		Item b = new Item("b");
+		queue.set(a);
+		queue.set(b);
+		queue.set(a);
+		assertEquals(2, queue.getPendingCount());
+		queue.flush();
+		assertEquals(Arrays.asList("set b", "set a", "commit"), calls);
+
+		// a delete replaces a pending save
+		calls.clear();
+		queue.set(a);
+		queue.delete(a);
+		queue.flush();
+		assertEquals(Arrays.asList("delete a", "commit"), calls);
+		assertEquals(0, queue.getPendingCount());
+	}
+
+	public void testDepthMerging() throws Exception {
+		Db4oWriteQueue queue = new Db4oWriteQueue(createDatabase(), executor);
+		Item a = new Item("a");
+		Item b = new Item("b");
+		queue.set(a, 3);
+		queue.set(a, 1);
+		queue.set(b, 2);
+		queue.set(b);
+		queue.flush();
+		assertEquals(Arrays.asList("set a 3", "set b", "commit"), calls);
+	}
+
+	public void testFlushBarrier() throws Exception {
+		Db4oWriteQueue queue = new Db4oWriteQueue(createDatabase(), executor);
+		queue.set(new Item("a"));
+		queue.set(new Item("b"));
+		assertTrue(calls.isEmpty());
+
+		queue.flush();
+		assertEquals(Arrays.asList("set a", "set b", "commit"), calls);
+
+		// a blocked executor lets a timed flush give up
+		final CountDownLatch release = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		queue.set(new Item("c"));
+		assertFalse(queue.flush(100));
+		release.countDown();
+		assertTrue(queue.flush(10 * 1000));
+		assertEquals("set c", calls.get(3));
+	}
+
+	public void testSingleImmediateFlush() throws Exception {
+		Db4oWriteQueue queue = new Db4oWriteQueue(createDatabase(), executor);
+		final CountDownLatch release = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		// the delayed flush and a single one for the full batch
+		for (int i = 0; i < 10; i++) {
+			queue.set(new Item("i" + i));
+		}
+		assertEquals(2, executor.getQueue().size());
+
+		release.countDown();
+		queue.flush();
+		// written in batches of three
+		assertEquals(14, calls.size());
+		assertEquals(Arrays.asList("set i9", "commit"), calls.subList(12, 14));
+	}
+
+	/**
+	 * @return a database recording the calls in calls
+	 */
+	private ObjectContainer createDatabase() {
+		InvocationHandler handler = new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("ext")) {
+					return proxy;
+				} else if (name.equals("set") && args.length == 2) {
+					calls.add("set " + args[0] + " " + args[1]);
+				} else if (name.equals("set") || name.equals("delete")) {
+					calls.add(name + " " + args[0]);
+				} else if (name.equals("commit")) {
+					calls.add(name);
+				} else {
+					throw new UnsupportedOperationException(name);
+				}
+				return null;
+			}
+		};
+		return (ObjectContainer) Proxy.newProxyInstance(getClass().getClassLoader(),
+		        new Class[] { ExtObjectContainer.class }, handler);
+	}
+
+	/**
+	 * @param key
+	 * @param value -
+	 *            the former value or null
+	 */
+	private void restore(String key, String value) {
+		if (value == null) {
+			Configuration.remove(key);
+		} else {
+			Configuration.set(key, value);
+		}
+	}
+
+	/**
+	 * an object stored by identity
+	 */
+	private static class Item {
+
+		private String name;
+
+		private Item(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
@@ -34,6 +34,11 @@ public class AllJobTests {
 		// $JUnit-BEGIN$
 		suite.addTestSuite(TestJobs.class);
 		suite.addTestSuite(TestJobManager.class);
+		suite.addTestSuite(TestFileNameIndex.class);
+		suite.addTestSuite(TestParallelJob.class);
+		suite.addTestSuite(TestJobCheckpoint.class);
+		suite.addTestSuite(TestJobMetrics.class);
+		suite.addTestSuite(TestJobPriority.class);
 		// $JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,97 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests.services.jobs;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.jimcat.services.jobs.FileNameIndex;
+
+/**
+ * Tests the name reservation of a FileNameIndex.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class TestFileNameIndex extends TestCase {
+
+	/**
+	 * the destination directory used by the test
+	 */
+	private File destination;
+
+	/**
+	 * create an empty destination directory
+	 * 
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		destination = File.createTempFile("jimcat", "index");
+		destination.delete();
+		destination.mkdir();
+	}
+
+	/**
+	 * delete destination directory
+	 * 
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		for (File file : destination.listFiles()) {
+			file.delete();
+		}
+		destination.delete();
+	}
+
+	/**
+	 * existing files and former reservations are skipped
+	 * 
+	 * @throws IOException
+	 */
+	public void testReserve() throws IOException {
+		new File(destination, "IMG_0001.JPG").createNewFile();
+		new File(destination, "IMG_0001(2).JPG").createNewFile();
+
+		FileNameIndex index = new FileNameIndex(destination);
+		File source = new File("card", "IMG_0001.JPG");
+
+		assertEquals(new File(destination, "IMG_0001(3).JPG"), index.reserve(source, false));
+		assertEquals(new File(destination, "IMG_0001(4).JPG"), index.reserve(source, false));
+		assertEquals(new File(destination, "IMG_0002.JPG"), index.reserve(new File("card", "IMG_0002.JPG"), false));
+
+		// names are compared ignoring case
+		assertEquals(new File(destination, "img_0002(2).jpg"), index.reserve(new File("card", "img_0002.jpg"), false));
+	}
+
+	/**
+	 * the parent directory is part of the name
+	 */
+	public void testReserveWithParent() {
+		FileNameIndex index = new FileNameIndex(destination);
+		File card = new File(destination, "card");
+
+		assertEquals(new File(card, "a.jpg"), index.reserve(new File("card", "a.jpg"), true));
+		assertEquals(new File(card, "a(2).jpg"), index.reserve(new File("card", "a.jpg"), true));
+		assertEquals(new File(destination, "a.jpg"), index.reserve(new File("card", "a.jpg"), false));
+	}
+}
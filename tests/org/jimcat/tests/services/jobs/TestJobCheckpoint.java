@@ -0,0 +1,130 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests.services.jobs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jimcat.services.jobs.Job;
+import org.jimcat.services.jobs.JobCheckpoint;
+
+/**
+ * Tests storing and loading job checkpoints.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class TestJobCheckpoint extends TestCase {
+
+	/**
+	 * the file used by the test
+	 */
+	private File file;
+
+	/**
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("jimcat", JobCheckpointTestJob.class.getSimpleName());
+	}
+
+	/**
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	/**
+	 * all values have to survive save and load
+	 * 
+	 * @throws IOException
+	 */
+	public void testSaveAndLoad() throws IOException {
+		List<File> files = new ArrayList<File>();
+		files.add(new File("a", "IMG_0001.JPG"));
+		files.add(new File("b", "IMG 0002.JPG"));
+
+		JobCheckpoint checkpoint = new JobCheckpoint(new JobCheckpointTestJob());
+		checkpoint.setLong("id", 1234567890123L);
+		checkpoint.setInt("index", 42);
+		checkpoint.setBoolean("flag", true);
+		checkpoint.setString("name", "Holiday = 2007");
+		checkpoint.setFile("destination", new File("dest"));
+		checkpoint.setFiles("files", files);
+		checkpoint.save(file);
+
+		JobCheckpoint loaded = JobCheckpoint.load(file);
+		assertEquals(JobCheckpointTestJob.class.getName(), loaded.getJobClass());
+		assertEquals(1234567890123L, loaded.getLong("id", -1));
+		assertEquals(42, loaded.getInt("index", -1));
+		assertTrue(loaded.getBoolean("flag", false));
+		assertEquals("Holiday = 2007", loaded.getString("name"));
+		assertEquals(new File("dest"), loaded.getFile("destination"));
+		assertEquals(files, loaded.getFiles("files"));
+	}
+
+	/**
+	 * missing values are replaced by defaults
+	 * 
+	 * @throws IOException
+	 */
+	public void testDefaults() throws IOException {
+		new JobCheckpoint(new JobCheckpointTestJob()).save(file);
+
+		JobCheckpoint loaded = JobCheckpoint.load(file);
+		assertEquals(7, loaded.getInt("index", 7));
+		assertFalse(loaded.getBoolean("flag", false));
+		assertNull(loaded.getString("name"));
+		assertNull(loaded.getFile("destination"));
+		assertEquals(0, loaded.getFiles("files").size());
+	}
+
+	/**
+	 * a job doing nothing
+	 */
+	public static class JobCheckpointTestJob extends Job {
+
+		@Override
+		public int getPercentage() {
+			return 0;
+		}
+
+		@Override
+		public boolean nextStep() {
+			return true;
+		}
+
+		@Override
+		public boolean nextRollbackStep() {
+			return true;
+		}
+
+		@Override
+		public boolean supportsRollback() {
+			return false;
+		}
+	}
+}
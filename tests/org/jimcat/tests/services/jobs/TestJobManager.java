@@ -117,7 +117,8 @@ public class TestJobManager extends TestCase {
 			assertTrue("Manager should know job", myManager.getActiveJobs().contains(jobs[i]));
 
 			// checkJob
-			assertEquals("Job should be running", jobs[i].getState(), JobState.RUNNING);
+			JobState state = jobs[i].getState();
+			assertTrue("Job should be queued or running", state == JobState.QUEUED || state == JobState.RUNNING);
 		}
 
 		// start finishing jobs
@@ -0,0 +1,74 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests.services.jobs;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.jimcat.services.jobs.JobMetrics;
+
+/**
+ * Tests the throughput statistics of jobs.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class TestJobMetrics extends TestCase {
+
+	/**
+	 * counters should sum up, without active time there are no rates
+	 */
+	public void testCounters() {
+		JobMetrics metrics = new JobMetrics();
+		metrics.addItems(3);
+		metrics.addItems(2);
+		metrics.addBytes(1024);
+
+		assertEquals(5, metrics.getItems());
+		assertEquals(1024, metrics.getBytes());
+		assertEquals(0.0, metrics.getItemsPerSecond(), 0.0);
+		assertEquals(-1, metrics.getEstimatedTimeLeft(50));
+	}
+
+	/**
+	 * stages are listed in order of appearance
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void testStages() throws InterruptedException {
+		JobMetrics metrics = new JobMetrics();
+		long start = System.nanoTime();
+		Thread.sleep(20);
+		start = metrics.addStageTime("read", start);
+		Thread.sleep(20);
+		start = metrics.addStageTime("decode", start);
+		metrics.addStageTime("read", start);
+
+		Map<String, Long> times = metrics.getStageTimes();
+		Iterator<String> stages = times.keySet().iterator();
+		assertEquals("read", stages.next());
+		assertEquals("decode", stages.next());
+		assertFalse(stages.hasNext());
+		assertTrue(times.get("read").longValue() >= 15);
+		assertTrue(times.get("decode").longValue() >= 15);
+		assertTrue(metrics.getStageSummary().startsWith("read "));
+	}
+}
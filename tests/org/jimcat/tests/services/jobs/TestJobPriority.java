@@ -0,0 +1,54 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests.services.jobs;
+
+import junit.framework.TestCase;
+
+import org.jimcat.services.imagemanager.PreloadService;
+import org.jimcat.services.jobs.JobPriority;
+
+/**
+ * Tests the thread priorities used for jobs.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class TestJobPriority extends TestCase {
+
+	/**
+	 * every job has to run below the image loader and interactive threads
+	 */
+	public void testBelowImageLoading() {
+		for (JobPriority priority : JobPriority.values()) {
+			assertTrue(priority + " isn't below the image loader",
+			        priority.getThreadPriority() < PreloadService.THREAD_PRIORITY);
+			assertTrue(priority + " isn't below interactive threads",
+			        priority.getThreadPriority() < Thread.NORM_PRIORITY);
+		}
+		assertTrue("image loader isn't below interactive threads", PreloadService.THREAD_PRIORITY < Thread.NORM_PRIORITY);
+	}
+
+	/**
+	 * higher priorities get higher thread priorities
+	 */
+	public void testOrdering() {
+		assertTrue(JobPriority.LOW.getThreadPriority() < JobPriority.NORMAL.getThreadPriority());
+		assertTrue(JobPriority.NORMAL.getThreadPriority() < JobPriority.HIGH.getThreadPriority());
+	}
+}
@@ -115,10 +115,14 @@ public class TestJobs extends TestCase {
 			@Override
 			@SuppressWarnings("unused")
 			public void stateChanged(Job job, JobState oldState, JobState newState, JobCommand command) {
-				if (job == testJob && oldState == JobState.PREPARING && newState == JobState.RUNNING
+				if (job == testJob && oldState == JobState.PREPARING && newState == JobState.QUEUED
 				        && command == JobCommand.START) {
 					value = 1;
 				}
+				if (job == testJob && oldState == JobState.QUEUED && newState == JobState.RUNNING
+				        && command == JobCommand.EXECUTE) {
+					mux3.release();
+				}
 			}
 		};
 
@@ -126,10 +130,16 @@ public class TestJobs extends TestCase {
 
 		// Job starten
 		testJob.start();
-		assertEquals("New State should be RUNNING", testJob.getState(), JobState.RUNNING);
+		JobState started = testJob.getState();
+		assertTrue("New State should be QUEUED or RUNNING", started == JobState.QUEUED
+		        || started == JobState.RUNNING);
 
 		// Test JobListener
 		assertEquals("Listener should have changed value to 1", value, 1);
+
+		// the job manager executes the job
+		assertTrue("Job should have been executed", mux3.tryAcquire(1, TimeUnit.SECONDS));
+		assertEquals("New State should be RUNNING", testJob.getState(), JobState.RUNNING);
 		// reset
 		value = 0;
 		testJob.removeJobListener(listener);
@@ -303,14 +313,14 @@ public class TestJobs extends TestCase {
 		}
 		supportsRollback = true;
 
-		// testJob might run nextStep first => insert empty job
-		// to avoid deadlock
+		// bring job in a working state, a queued job can't be reverted
 		runQueue.put(new Runnable() {
 			public void run() {
-				// nothing
+				mux3.release();
 				mux.acquireUninterruptibly();
 			}
 		});
+		mux3.acquireUninterruptibly();
 
 		// now enable rollback
 		testJob.rollback();
@@ -0,0 +1,222 @@
+/*
+ *  This file is part of JimCat.
+ *
+ *  JimCat is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation version 2.
+ *
+ *  JimCat is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with JimCat; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jimcat.tests.services.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.jimcat.services.jobs.Job;
+import org.jimcat.services.jobs.JobCommand;
+import org.jimcat.services.jobs.JobFailureDescription;
+import org.jimcat.services.jobs.JobFailureOption;
+import org.jimcat.services.jobs.JobListenerAdapter;
+import org.jimcat.services.jobs.JobManager;
+import org.jimcat.services.jobs.JobState;
+import org.jimcat.services.jobs.ParallelJob;
+
+/**
+ * Tests the ParallelJob base class.
+ * 
+ * $Id$
+ * 
+ * @author Herbert
+ */
+public class TestParallelJob extends TestCase {
+
+	private static final int ITEM_COUNT = 200;
+
+	/**
+	 * the jobmanager for execution
+	 */
+	private JobManager jobManager = new JobManager();
+
+	/**
+	 * released if the job reached a final state
+	 */
+	private Semaphore done = new Semaphore(0);
+
+	/**
+	 * the number of failures reported to the user
+	 */
+	private int failures = 0;
+
+	/**
+	 * all items must be finished in order, failed items with a null result
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void testIgnoreAll() throws InterruptedException {
+		TestJob job = new TestJob(false);
+		runJob(job, JobFailureOption.IgnoreAll);
+
+		assertEquals("Job should be finished", JobState.FINISHED, job.getState());
+		assertEquals("IgnoreAll should be asked only once", 1, failures);
+		assertEquals("All items should be finished", ITEM_COUNT, job.finished.size());
+		for (int i = 0; i < ITEM_COUNT; i++) {
+			Integer expected = (i % 10 == 5) ? null : Integer.valueOf(i * 2);
+			assertEquals("Wrong result or order", expected, job.finished.get(i));
+		}
+		assertEquals("Percentage should be 100", 100, job.getPercentage());
+	}
+
+	/**
+	 * a rollback has to revert all finished items and the ones processed in
+	 * advance in reverse order
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void testRollback() throws InterruptedException {
+		TestJob job = new TestJob(true);
+		runJob(job, JobFailureOption.Rollback);
+
+		assertEquals("Job should be reverted", JobState.REVERTED, job.getState());
+		assertEquals("One failure should be reported", 1, failures);
+		assertEquals("Failure should stop processing", 5, job.finished.size());
+		assertEquals("All processed items should be reverted", job.succeeded.get(), job.reverted.size());
+		int inAdvance = job.reverted.size() - 5;
+		for (int i = 0; i < job.reverted.size(); i++) {
+			int item = job.reverted.get(i).intValue();
+			if (i < inAdvance) {
+				assertTrue("Items processed in advance first", item > 5);
+				if (i > 0) {
+					assertTrue("Wrong rollback order", item < job.reverted.get(i - 1).intValue());
+				}
+			} else {
+				assertEquals("Wrong rollback order", job.reverted.size() - 1 - i, item);
+			}
+		}
+		assertTrue("Items must be processed by workers", job.processed.get() >= 5);
+	}
+
+	/**
+	 * canceling must finish all items already processed by workers
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void testCancel() throws InterruptedException {
+		TestJob job = new TestJob(false);
+		runJob(job, JobFailureOption.Cancel);
+
+		assertEquals("Job should be aborted", JobState.ABORTED, job.getState());
+		assertTrue("Job should clean up", job.cleanedUp.tryAcquire(10, TimeUnit.SECONDS));
+		assertEquals("One failure should be reported", 1, failures);
+		assertEquals("All processed items should be finished", job.succeeded.get(), job.finished.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals("Wrong result or order", Integer.valueOf(i * 2), job.finished.get(i));
+		}
+	}
+
+	/**
+	 * run the given job answering all failures with the given option
+	 * 
+	 * @param job
+	 * @param respond
+	 * @throws InterruptedException
+	 */
+	private void runJob(final TestJob job, final JobFailureOption respond) throws InterruptedException {
+		job.addJobListener(new JobListenerAdapter() {
+			@Override
+			public void failerEmerged(Job source, JobFailureDescription desc) {
+				failures++;
+				desc.setRespond(respond);
+				// resume from outside the job thread
+				new Thread() {
+					@Override
+					public void run() {
+						job.resume();
+					}
+				}.start();
+			}
+
+			@Override
+			public void stateChanged(Job source, JobState oldState, JobState newState, JobCommand command) {
+				if (newState == JobState.FINISHED || newState == JobState.REVERTED || newState == JobState.ABORTED) {
+					done.release();
+				}
+			}
+		});
+		job.start();
+		assertTrue("Job should terminate", done.tryAcquire(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * doubles all items, fails for every item ending with 5
+	 */
+	private class TestJob extends ParallelJob<Integer, Integer> {
+
+		private boolean supportsRollback;
+
+		private List<Integer> finished = new ArrayList<Integer>();
+
+		private List<Integer> reverted = new ArrayList<Integer>();
+
+		private AtomicInteger processed = new AtomicInteger();
+
+		private AtomicInteger succeeded = new AtomicInteger();
+
+		private Semaphore cleanedUp = new Semaphore(0);
+
+		public TestJob(boolean supportsRollback) {
+			super(jobManager, "Parallel-Test", "testing parallel execution");
+			this.supportsRollback = supportsRollback;
+
+			List<Integer> items = new ArrayList<Integer>();
+			for (int i = 0; i < ITEM_COUNT; i++) {
+				items.add(Integer.valueOf(i));
+			}
+			setItems(items);
+		}
+
+		@Override
+		protected Integer processItem(Integer item) throws Exception {
+			processed.incrementAndGet();
+			if (item.intValue() % 10 == 5) {
+				throw new Exception("Test Failure");
+			}
+			succeeded.incrementAndGet();
+			return Integer.valueOf(item.intValue() * 2);
+		}
+
+		@Override
+		protected void itemFinished(Integer item, Integer result) {
+			finished.add(result);
+		}
+
+		@Override
+		protected boolean rollbackItem(Integer item, Integer result) {
+			reverted.add(item);
+			return true;
+		}
+
+		@Override
+		public boolean supportsRollback() {
+			return supportsRollback;
+		}
+
+		@Override
+		public void postExecution() {
+			super.postExecution();
+			cleanedUp.release();
+		}
+	}
+}